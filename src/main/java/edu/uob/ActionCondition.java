@@ -0,0 +1,135 @@
+package edu.uob;
+
+import java.util.LinkedList;
+
+/**
+ * One precondition of a custom action, read from the conditions element of the actions
+ * file. A condition is either about the player performing the action (its health, or an
+ * entity being at hand or not) or, when it names a location, about the world (an entity
+ * being at that location or not). World conditions are kept up to date by the rule
+ * network of each world; player conditions are checked when the action is chosen.
+ */
+public final class ActionCondition {
+    /**
+     * Kinds of condition
+     */
+    public enum Kind {
+        //Player health lies between a minimum and a maximum
+        HEALTH,
+        //Entity is at the location, or with the player if no location is named
+        PRESENT,
+        //Entity is not at the location, or not with the player if no location is named
+        ABSENT
+    }
+
+    private final Kind kind;
+    private final String entity;
+    private final String location;
+    private final int minimumHealth;
+    private final int maximumHealth;
+
+    //Symbol ids of the entity and location, NO_SYMBOL until resolved or if not named
+    private int entitySymbol = SymbolTable.NO_SYMBOL;
+    private int locationSymbol = SymbolTable.NO_SYMBOL;
+
+    private ActionCondition(Kind kind, String entity, String location, int minimumHealth, int maximumHealth) {
+        this.kind = kind;
+        this.entity = entity;
+        this.location = location;
+        this.minimumHealth = minimumHealth;
+        this.maximumHealth = maximumHealth;
+    }
+
+    /**
+     * Creates a condition on the player's health
+     * @param minimum Lowest health allowed
+     * @param maximum Highest health allowed
+     * @return The condition
+     */
+    static ActionCondition health(int minimum, int maximum) {
+        return new ActionCondition(Kind.HEALTH, null, null, minimum, maximum);
+    }
+
+    /**
+     * Creates a condition on where an entity is
+     * @param present True if the entity must be there, false if it must not
+     * @param entity Name of the entity
+     * @param location Name of the location, or null for the player's location and inventory
+     * @return The condition
+     */
+    static ActionCondition placement(boolean present, String entity, String location) {
+        if (present) {
+            return new ActionCondition(Kind.PRESENT, entity, location, 0, 0);
+        }
+        return new ActionCondition(Kind.ABSENT, entity, location, 0, 0);
+    }
+
+    /**
+     * Resolves the names of the condition against the symbol table of the world
+     * @param symbols Symbol table of the world
+     * @param action Action the condition belongs to, named in problems
+     * @param problems Receives a description of every name that refers to nothing
+     */
+    void resolveSymbols(SymbolTable symbols, GameAction action, LinkedList<String> problems) {
+        if (kind == Kind.HEALTH) {
+            return;
+        }
+        entitySymbol = symbols.idOf(entity);
+        if (entitySymbol == SymbolTable.NO_SYMBOL || symbols.isLocation(entitySymbol)) {
+            problems.add(ActionCondition.describeProblem(action, "entity", entity));
+        }
+        if (location != null) {
+            locationSymbol = symbols.idOf(location);
+            if (!symbols.isLocation(locationSymbol)) {
+                problems.add(ActionCondition.describeProblem(action, "location", location));
+                locationSymbol = SymbolTable.NO_SYMBOL;
+            }
+        }
+    }
+
+    private static String describeProblem(GameAction action, String role, String name) {
+        StringBuilder problem = new StringBuilder();
+        problem.append("Action '").append(action.getLabel()).append("' has a condition on ").append(role)
+                .append(" '").append(name).append("', which is not in the world");
+        return problem.toString();
+    }
+
+    /**
+     * Whether the condition is about the world rather than the player
+     * @return True if the condition names a location
+     */
+    public boolean isWorldCondition() {
+        return location != null;
+    }
+
+    /**
+     * Checks a condition about the player
+     * @param gamePlayer Player performing the action
+     * @param here Location of the player
+     * @return True if the condition holds
+     */
+    boolean holdsFor(GamePlayer gamePlayer, GameLocation here) {
+        if (kind == Kind.HEALTH) {
+            return gamePlayer.getHealth() >= minimumHealth && gamePlayer.getHealth() <= maximumHealth;
+        }
+        boolean atHand = entitySymbol != SymbolTable.NO_SYMBOL
+                && (here.isEntityPresent(entitySymbol) || gamePlayer.isArtefactPresentInInventory(entitySymbol));
+        return atHand == (kind == Kind.PRESENT);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getEntitySymbol() {
+        return entitySymbol;
+    }
+
+    public int getLocationSymbol() {
+        return locationSymbol;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+}
@@ -0,0 +1,176 @@
+package edu.uob;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Effects of a custom action resolved once at load time. Every produced or consumed name
+ * is classified as a health change, a path to a location or an entity move, so running
+ * the action only walks its steps instead of re-deciding what each name refers to.
+ */
+public final class ActionPlan {
+    /**
+     * Kinds of effect a step can have
+     */
+    public enum StepKind {
+        //Produced or consumed "health"
+        HEALTH,
+        //Produced or consumed location: a path from the player's location is added or removed
+        PATH,
+        //Produced or consumed entity: it is moved to the player's location or the storeroom
+        ENTITY
+    }
+
+    /**
+     * One resolved effect of an action
+     */
+    public static final class Step {
+        private final StepKind kind;
+        private final String target;
+        private final int symbol;
+
+        Step(StepKind kind, String target, int symbol) {
+            this.kind = kind;
+            this.target = target;
+            this.symbol = symbol;
+        }
+
+        public StepKind getKind() {
+            return kind;
+        }
+
+        /**
+         * Name of the location or entity the step acts on, as spelt in the world
+         * @return Target name
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         * Symbol id of the target
+         * @return Symbol id
+         */
+        public int getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final List<Step> produceSteps;
+    private final List<Step> consumeSteps;
+
+    private ActionPlan(List<Step> produceSteps, List<Step> consumeSteps) {
+        this.produceSteps = Collections.unmodifiableList(produceSteps);
+        this.consumeSteps = Collections.unmodifiableList(consumeSteps);
+    }
+
+    /**
+     * Compiles the produced and consumed names of an action into steps. Names that are
+     * neither health, a location nor an entity of the world are left out of the plan and
+     * reported as problems.
+     * @param action Action to compile
+     * @param symbols Symbol table of the world
+     * @param locations Locations of the world with their initial entities
+     * @param problems Receives a description of every bad reference
+     * @return Compiled plan
+     */
+    static ActionPlan compile(GameAction action, SymbolTable symbols, Map<String, GameLocation> locations,
+                              LinkedList<String> problems) {
+        return ActionPlan.compile(action, symbols, locations, null, problems);
+    }
+
+    /**
+     * Compiles the produced and consumed names of an action into steps against a stored
+     * world, which knows every entity it was written with wherever the entity is now
+     * @param action Action to compile
+     * @param symbols Symbol table of the world
+     * @param store Store of the world
+     * @param problems Receives a description of every bad reference
+     * @return Compiled plan
+     */
+    static ActionPlan compile(GameAction action, SymbolTable symbols, MappedWorldStore store,
+                              LinkedList<String> problems) {
+        return ActionPlan.compile(action, symbols, null, store, problems);
+    }
+
+    private static ActionPlan compile(GameAction action, SymbolTable symbols, Map<String, GameLocation> locations,
+                                      MappedWorldStore store, LinkedList<String> problems) {
+        LinkedList<Step> produceSteps = new LinkedList<>();
+        for (String item : action.getProduced()) {
+            Step step = ActionPlan.resolve(item, symbols, locations, store);
+            if (step == null) {
+                problems.add(ActionPlan.describeProblem(action, "produced", item));
+            } else {
+                produceSteps.add(step);
+            }
+        }
+        LinkedList<Step> consumeSteps = new LinkedList<>();
+        for (String item : action.getConsumed()) {
+            Step step = ActionPlan.resolve(item, symbols, locations, store);
+            if (step == null) {
+                problems.add(ActionPlan.describeProblem(action, "consumed", item));
+            } else {
+                consumeSteps.add(step);
+            }
+        }
+        return new ActionPlan(produceSteps, consumeSteps);
+    }
+
+    /**
+     * Works out what a produced or consumed name refers to
+     * @param item Name from the actions file
+     * @param symbols Symbol table of the world
+     * @param locations Locations of the world with their initial entities, or null for a stored world
+     * @param store Store of a stored world, or null
+     * @return Step for the name, or null if the name refers to nothing in the world
+     */
+    private static Step resolve(String item, SymbolTable symbols, Map<String, GameLocation> locations,
+                                MappedWorldStore store) {
+        if (item.equalsIgnoreCase("health")) {
+            return new Step(StepKind.HEALTH, item, symbols.idOf(item));
+        }
+        int symbol = symbols.idOf(item);
+        // the storeroom only holds entities, it can never be reached by a path
+        if (symbols.isLocation(symbol) && !item.equalsIgnoreCase("storeroom")) {
+            return new Step(StepKind.PATH, symbols.nameOf(symbol), symbol);
+        }
+        if (store != null) {
+            if (store.isEntity(symbol)) {
+                return new Step(StepKind.ENTITY, symbols.nameOf(symbol), symbol);
+            }
+            return null;
+        }
+        for (GameLocation location : locations.values()) {
+            GameEntity entity = location.getEntity(symbol);
+            if (entity != null) {
+                return new Step(StepKind.ENTITY, entity.getName(), symbol);
+            }
+        }
+        return null;
+    }
+
+    private static String describeProblem(GameAction action, String role, String item) {
+        StringBuilder problem = new StringBuilder();
+        problem.append("Action '").append(action.getLabel()).append("' has ").append(role)
+                .append(" '").append(item).append("', which is not health, a location or an entity");
+        return problem.toString();
+    }
+
+    /**
+     * Steps run when the action produces its entities
+     * @return Read-only list of steps
+     */
+    public List<Step> getProduceSteps() {
+        return produceSteps;
+    }
+
+    /**
+     * Steps run when the action consumes its entities
+     * @return Read-only list of steps
+     */
+    public List<Step> getConsumeSteps() {
+        return consumeSteps;
+    }
+}
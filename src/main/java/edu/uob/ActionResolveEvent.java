@@ -0,0 +1,17 @@
+package edu.uob;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.uob.ActionResolve")
+@Label("Action Resolve")
+@Description("Resolution of the triggers and subjects of a command to exactly one custom action")
+public final class ActionResolveEvent extends GameEvent {
+    @Label("Candidate Subjects")
+    protected int subjects;
+
+    public void setSubjects(int subjects) {
+        this.subjects = subjects;
+    }
+}
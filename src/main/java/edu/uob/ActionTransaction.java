@@ -0,0 +1,53 @@
+package edu.uob;
+
+import java.util.Map;
+
+/**
+ * Custom action run with optimistic concurrency control. The action is resolved and checked
+ * against the published snapshots of the acting player and its location without the world
+ * lock; those two snapshots are its read set and the compiled plan of the action is its
+ * write set. The world commits the transaction under its lock only if neither snapshot has
+ * been replaced since, and otherwise runs it again on the new snapshots.
+ */
+public final class ActionTransaction {
+    //Snapshots the action was resolved and checked against
+    private final PlayerSnapshot player;
+    private final LocationSnapshot location;
+
+    //Action to commit, null if the command was found to be invalid
+    private final GameAction action;
+
+    //Reason the command is invalid, reported only once the snapshots are known to be current
+    private final RuntimeException failure;
+
+    ActionTransaction(PlayerSnapshot player, LocationSnapshot location, GameAction action, RuntimeException failure) {
+        this.player = player;
+        this.location = location;
+        this.action = action;
+        this.failure = failure;
+    }
+
+    public String getPlayerName() {
+        return player.getName();
+    }
+
+    public GameAction getAction() {
+        return action;
+    }
+
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Validates the read set. Must be called holding the world lock, where the published
+     * snapshots always match the live state.
+     * @param players Published player snapshots with lower case player name as key
+     * @param locations Published location snapshots with location name as key
+     * @return True if the snapshots read are still the published ones
+     */
+    boolean isCurrent(Map<String, PlayerSnapshot> players, Map<String, LocationSnapshot> locations) {
+        return players.get(player.getName().toLowerCase()) == player
+                && locations.get(location.getLocationName()) == location;
+    }
+}
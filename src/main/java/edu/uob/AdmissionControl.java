@@ -0,0 +1,208 @@
+package edu.uob;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a request read from a connection is served, before it is decoded any
+ * further than its player name. Every client address and every player has a token bucket,
+ * and the number of requests admitted but not yet answered is capped so an overloaded
+ * server sheds load with a cheap error instead of queueing without bound. Everything is
+ * kept in atomics and concurrent maps, so admitting a request takes no lock.
+ */
+public final class AdmissionControl {
+    //Bucket count above which full buckets are dropped, since they behave like new ones
+    private static final int PRUNE_THRESHOLD = 4096;
+
+    //Reply to a request refused by a token bucket
+    static final String RATE_LIMITED = "[ERROR]: Too many commands, slow down";
+
+    //Reply to a request refused because too many requests are waiting
+    static final String OVERLOADED = "[ERROR]: Server is busy, try again later";
+
+    //Refill rate and capacity of player buckets, no player limit if the rate is not positive
+    private final double playerRate;
+    private final int playerBurst;
+
+    //Refill rate and capacity of address buckets, no address limit if the rate is not positive
+    private final double addressRate;
+    private final int addressBurst;
+
+    //Most requests admitted and not yet answered, no limit if not positive
+    private final int maxQueueDepth;
+
+    //Buckets with "world/player" in lower case as key
+    private final ConcurrentHashMap<String, TokenBucket> playerBuckets = new ConcurrentHashMap<>();
+
+    //Buckets with the client's host address as key
+    private final ConcurrentHashMap<String, TokenBucket> addressBuckets = new ConcurrentHashMap<>();
+
+    //Bucket count at which the next prune runs
+    private final AtomicInteger nextPrune = new AtomicInteger(PRUNE_THRESHOLD);
+
+    //Requests admitted and not yet answered, and the most there have been at once
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong overloaded = new AtomicLong();
+
+    /**
+     * Creates the admission control of a server
+     * @param playerRate Commands per second each player may send in the long run
+     * @param playerBurst Commands a player may send at once
+     * @param addressRate Requests per second each client address may send in the long run
+     * @param addressBurst Requests a client address may send at once
+     * @param maxQueueDepth Most requests waiting for their reply at once
+     */
+    public AdmissionControl(double playerRate, int playerBurst, double addressRate, int addressBurst, int maxQueueDepth) {
+        this.playerRate = playerRate;
+        this.playerBurst = Math.max(1, playerBurst);
+        this.addressRate = addressRate;
+        this.addressBurst = Math.max(1, addressBurst);
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    /**
+     * Checks the bucket of a client address, before anything of its request is decoded
+     * @param address Host address of the client, or null if unknown
+     * @param now Current time in nanoseconds
+     * @return Null if the request may go on, otherwise the error to reply with
+     */
+    public String admitAddress(String address, long now) {
+        if (addressRate <= 0 || address == null) {
+            return null;
+        }
+        if (!this.takeToken(addressBuckets, address, addressRate, addressBurst, now)) {
+            rateLimited.incrementAndGet();
+            return RATE_LIMITED;
+        }
+        return null;
+    }
+
+    /**
+     * Checks the bucket of a player and takes a place among the requests waiting for their
+     * reply. A request admitted here must be released once it has been answered.
+     * @param worldId World named by the request
+     * @param playerName Player named by the request
+     * @param now Current time in nanoseconds
+     * @return Null if the request was admitted, otherwise the error to reply with
+     */
+    public String admitCommand(String worldId, String playerName, long now) {
+        if (playerRate > 0) {
+            StringBuilder key = new StringBuilder();
+            key.append(worldId).append('/').append(playerName.toLowerCase());
+            if (!this.takeToken(playerBuckets, key.toString(), playerRate, playerBurst, now)) {
+                rateLimited.incrementAndGet();
+                return RATE_LIMITED;
+            }
+        }
+        int depth = queueDepth.incrementAndGet();
+        if (maxQueueDepth > 0 && depth > maxQueueDepth) {
+            queueDepth.decrementAndGet();
+            overloaded.incrementAndGet();
+            return OVERLOADED;
+        }
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+            peak = peakQueueDepth.get();
+        }
+        return null;
+    }
+
+    /**
+     * Gives back the place of an admitted request once it has been answered
+     */
+    public void release() {
+        queueDepth.decrementAndGet();
+    }
+
+    /**
+     * Takes a token from the bucket of a key, creating a full bucket for a new key
+     * @param buckets Buckets of one kind
+     * @param key Key of the bucket
+     * @param rate Refill rate of new buckets
+     * @param burst Capacity of new buckets
+     * @param now Current time in nanoseconds
+     * @return True if a token was taken
+     */
+    private boolean takeToken(ConcurrentHashMap<String, TokenBucket> buckets, String key, double rate, int burst, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(rate, burst, now);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+                this.pruneIfLarge(now);
+            }
+        }
+        return bucket.tryAcquire(now);
+    }
+
+    /**
+     * Drops the full buckets once there are many, so clients that went away are forgotten.
+     * The next prune waits until the buckets that remain have doubled.
+     * @param now Current time in nanoseconds
+     */
+    private void pruneIfLarge(long now) {
+        int threshold = nextPrune.get();
+        if (this.getBucketCount() < threshold || !nextPrune.compareAndSet(threshold, Integer.MAX_VALUE)) {
+            return;
+        }
+        AdmissionControl.removeFull(playerBuckets, now);
+        AdmissionControl.removeFull(addressBuckets, now);
+        nextPrune.set(Math.max(PRUNE_THRESHOLD, this.getBucketCount() * 2));
+    }
+
+    /**
+     * Removes the buckets that have refilled completely
+     * @param buckets Buckets of one kind
+     * @param now Current time in nanoseconds
+     */
+    private static void removeFull(ConcurrentHashMap<String, TokenBucket> buckets, long now) {
+        Iterator<TokenBucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFull(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of requests admitted and not yet answered
+     * @return Current queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * Number of requests refused by a player or address bucket
+     * @return Rate limited requests
+     */
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /**
+     * Number of requests refused because too many were waiting
+     * @return Shed requests
+     */
+    public long getOverloaded() {
+        return overloaded.get();
+    }
+
+    /**
+     * Number of buckets currently held
+     * @return Player and address buckets
+     */
+    public int getBucketCount() {
+        return playerBuckets.size() + addressBuckets.size();
+    }
+}
@@ -0,0 +1,198 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+/**
+ * Index of the custom actions a player could perform, answering "what can I do here?"
+ * without testing every action of the world. Actions are indexed by the subjects they
+ * need, and every location asked about remembers how many subjects of each action lie
+ * there. Published locations update those counts from the entities that came or went, so
+ * a query only tests the actions that have a subject at the location, in the inventory or
+ * named after the location itself. Must be used holding the world lock.
+ */
+public final class AffordanceIndex {
+    //Actions with subject id as key
+    private final HashMap<Integer, LinkedList<GameAction>> actionsBySubject = new HashMap<>();
+
+    //Ids of the subjects of all actions
+    private final BitSet indexedSubjects = new BitSet();
+
+    //Counts of the locations asked about, with location id as key
+    private final HashMap<Integer, LocationCounts> counts = new HashMap<>();
+
+    //Number of actions tested against a player since the world started
+    private long candidatesTested;
+
+    /**
+     * Indexes the actions of a world by their subjects
+     * @param gameActions Actions of the world by trigger
+     */
+    AffordanceIndex(Collection<HashSet<GameAction>> gameActions) {
+        HashSet<GameAction> indexed = new HashSet<>();
+        for (HashSet<GameAction> actions : gameActions) {
+            for (GameAction action : actions) {
+                if (!indexed.add(action)) {
+                    continue;
+                }
+                BitSet subjects = action.getSubjectSymbols();
+                for (int subject = subjects.nextSetBit(0); subject >= 0; subject = subjects.nextSetBit(subject + 1)) {
+                    indexedSubjects.set(subject);
+                    LinkedList<GameAction> requiring = actionsBySubject.get(subject);
+                    if (requiring == null) {
+                        requiring = new LinkedList<>();
+                        actionsBySubject.put(subject, requiring);
+                    }
+                    requiring.add(action);
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the counts of a location up to date after the location changed. Locations no
+     * one has asked about are counted when they are first asked about.
+     * @param location Changed location
+     */
+    void locationChanged(GameLocation location) {
+        LocationCounts locationCounts = counts.get(location.getSymbol());
+        if (locationCounts == null) {
+            return;
+        }
+        BitSet present = this.indexedEntitiesOf(location);
+        BitSet flipped = (BitSet) present.clone();
+        flipped.xor(locationCounts.present);
+        for (int subject = flipped.nextSetBit(0); subject >= 0; subject = flipped.nextSetBit(subject + 1)) {
+            int change = 1;
+            if (!present.get(subject)) {
+                change = -1;
+            }
+            for (GameAction action : actionsBySubject.get(subject)) {
+                locationCounts.add(action, change);
+            }
+        }
+        locationCounts.present = present;
+    }
+
+    /**
+     * Finds the actions whose subjects are all at the player's location or in its inventory
+     * @param gamePlayer Player asking
+     * @param here Location of the player
+     * @return Actions by label, in label order
+     */
+    TreeMap<String, GameAction> findAffordances(GamePlayer gamePlayer, GameLocation here) {
+        LocationCounts locationCounts = counts.get(here.getSymbol());
+        if (locationCounts == null) {
+            locationCounts = new LocationCounts();
+            locationCounts.present = this.indexedEntitiesOf(here);
+            BitSet present = locationCounts.present;
+            for (int subject = present.nextSetBit(0); subject >= 0; subject = present.nextSetBit(subject + 1)) {
+                for (GameAction action : actionsBySubject.get(subject)) {
+                    locationCounts.add(action, 1);
+                }
+            }
+            counts.put(here.getSymbol(), locationCounts);
+        }
+        HashSet<GameAction> candidates = new HashSet<>(locationCounts.found.keySet());
+        BitSet inventory = gamePlayer.getArtefactSymbols();
+        for (int subject = inventory.nextSetBit(0); subject >= 0; subject = inventory.nextSetBit(subject + 1)) {
+            this.addRequiring(subject, candidates);
+        }
+        this.addRequiring(here.getSymbol(), candidates);
+
+        TreeMap<String, GameAction> affordances = new TreeMap<>();
+        for (GameAction action : candidates) {
+            candidatesTested++;
+            if (AffordanceIndex.isAvailable(action, here, inventory)) {
+                affordances.put(action.getLabel(), action);
+            }
+        }
+        return affordances;
+    }
+
+    /**
+     * Adds the actions needing a subject to a set
+     * @param subject Subject id
+     * @param candidates Set of actions
+     */
+    private void addRequiring(int subject, HashSet<GameAction> candidates) {
+        LinkedList<GameAction> requiring = actionsBySubject.get(subject);
+        if (requiring != null) {
+            candidates.addAll(requiring);
+        }
+    }
+
+    /**
+     * Restricts the entities of a location to the ones some action needs
+     * @param location Location
+     * @return Ids of the indexed entities at the location
+     */
+    private BitSet indexedEntitiesOf(GameLocation location) {
+        BitSet present = (BitSet) location.getEntitySymbols().clone();
+        present.and(indexedSubjects);
+        return present;
+    }
+
+    /**
+     * Checks that every subject of an action is at a location, in an inventory or the location itself
+     * @param action Action
+     * @param here Location
+     * @param inventory Ids of the artefacts in the inventory
+     * @return True if all subjects are available
+     */
+    private static boolean isAvailable(GameAction action, GameLocation here, BitSet inventory) {
+        BitSet required = action.getSubjectSymbols();
+        BitSet atLocation = here.getEntitySymbols();
+        for (int subject = required.nextSetBit(0); subject >= 0; subject = required.nextSetBit(subject + 1)) {
+            if (subject != here.getSymbol() && !atLocation.get(subject) && !inventory.get(subject)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of locations whose counts are kept
+     * @return Counted locations
+     */
+    public int getCountedLocations() {
+        return counts.size();
+    }
+
+    /**
+     * Number of actions tested against a player's location and inventory
+     * @return Tested candidates
+     */
+    public long getCandidatesTested() {
+        return candidatesTested;
+    }
+
+    /**
+     * How many subjects of each action lie at one location
+     */
+    private static final class LocationCounts {
+        //Ids of the indexed entities at the location when it was last counted
+        private BitSet present;
+
+        //Number of subjects at the location, only for actions with at least one
+        private final HashMap<GameAction, Integer> found = new HashMap<>();
+
+        void add(GameAction action, int change) {
+            Integer count = found.get(action);
+            int updated = change;
+            if (count != null) {
+                updated += count;
+            }
+            if (updated <= 0) {
+                found.remove(action);
+            }
+            else {
+                found.put(action, updated);
+            }
+        }
+    }
+}
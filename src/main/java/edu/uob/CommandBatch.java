@@ -0,0 +1,91 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.LinkedList;
+
+/**
+ * Splits the command text of a request into the commands of a batch. Commands separated by
+ * ';' all run in order; a command following "&&" only runs if the command before it ran
+ * without an error, so "get axe && goto forest && chop tree" stops at the first failure
+ * while "look; inv" always answers both.
+ */
+public final class CommandBatch {
+    //Most commands one request may carry
+    static final int MAX_COMMANDS = Integer.getInteger("stag.batch.max", 32);
+
+    private final LinkedList<String> commands = new LinkedList<>();
+
+    //Indexes of the commands that only run if the previous command succeeded
+    private final BitSet chained = new BitSet();
+
+    /**
+     * Decodes the command text of a request
+     * @param text Command text following the player name
+     */
+    public CommandBatch(String text) {
+        int length = text.length();
+        int start = 0;
+        boolean chainNext = false;
+        int i = 0;
+        while (i <= length) {
+            boolean end = i == length;
+            boolean sequence = !end && text.charAt(i) == ';';
+            boolean chain = !end && text.startsWith("&&", i);
+            if (end || sequence || chain) {
+                String command = text.substring(start, i).trim();
+                if (!command.isEmpty()) {
+                    chained.set(commands.size(), chainNext);
+                    commands.add(command);
+                    chainNext = chain;
+                }
+                else if (sequence) {
+                    chainNext = false;
+                }
+                else if (chain) {
+                    chainNext = true;
+                }
+                i += CommandBatch.separatorLength(chain);
+                start = i;
+            }
+            else {
+                i++;
+            }
+        }
+        if (commands.size() > MAX_COMMANDS) {
+            throw new RuntimeException("Too many commands in one request");
+        }
+    }
+
+    private static int separatorLength(boolean chain) {
+        if (chain) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Checks whether command text holds more than one command, without decoding it
+     * @param text Command text following the player name
+     * @return True if the text contains a command separator
+     */
+    public static boolean isBatch(String text) {
+        return text.indexOf(';') >= 0 || text.contains("&&");
+    }
+
+    /**
+     * Commands of the batch in the order they are run
+     * @return Trimmed, non-empty commands
+     */
+    public LinkedList<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Whether a command only runs if the command before it ran without an error
+     * @param index Position of the command in the batch
+     * @return True if the command follows "&&"
+     */
+    public boolean isChained(int index) {
+        return chained.get(index);
+    }
+}
@@ -0,0 +1,17 @@
+package edu.uob;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.uob.Command")
+@Label("Command")
+@Description("A complete command handled by the game server")
+public final class CommandEvent extends GameEvent {
+    @Label("Command")
+    protected String command;
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+}
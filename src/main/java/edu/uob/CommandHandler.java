@@ -1,65 +1,148 @@
 package edu.uob;
 
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 
 public class CommandHandler {
+    //Built in triggers supported by the game
+    static final Set<String> BUILT_IN_TRIGGERS = Set.of("inventory", "inv", "get", "drop", "goto", "travel", "look", "health", "options");
+
     private final HashMap<String, HashSet<GameAction>> gameActions;
-    private final HashMap<String, HashSet<String>> gamePaths;
-    private final HashMap<String, GameLocation> gameLocations;
-    private final HashMap<String, GamePlayer> gamePlayers;
+    //One-way paths between locations of the world
+    private final PathGraph pathGraph;
+    private final Map<String, GameLocation> gameLocations;
+    private final Map<String, GamePlayer> gamePlayers;
     private final String playersStartLocation;
 
-    //Built in triggers supported by the game
-    private final HashSet<String> builtInTriggers = new HashSet<>(
-            Set.of("inventory", "inv", "get", "drop", "goto", "look", "health")
-    );
+    //Name of the world this handler serves, reported in flight recorder events
+    private final String worldName;
+
+    //Template holding the keyword dictionaries, which may be replaced after loading
+    private final WorldTemplate worldTemplate;
+
+    //Parsed commands shared by all worlds of the template
+    private final ParseCache parseCache;
+
+    //Int ids of all location, entity and keyword names of the world
+    private final SymbolTable symbols;
+
+    //Shortest routes over the paths of the world, used by travel
+    private final RouteCache routeCache;
+
+    //Timed events of the world, null until set
+    private WorldClock worldClock;
 
-    //All triggers from all the actions
-    private final HashSet<String> availableTriggers;
+    //Reaches locations owned by other nodes of a sharded world, null if the world is not sharded
+    private ShardCoordinator shardCoordinator;
 
-    //All the subjects from all actions
-    private final HashSet<String> availableSubjects;
+    //Changes on other nodes recorded by the running command, carried out by the world once it
+    //has released its lock
+    private LinkedList<ShardTransfer> shardTransfers = new LinkedList<>();
 
-    CommandHandler(HashMap<String, HashSet<GameAction>> actions, HashMap<String, HashSet<String>> paths,
-                   HashMap<String, GameLocation> locations, HashMap<String, GamePlayer> player, String startLocation) {
-        gameActions = actions;
-        gamePaths = paths;
+    //Preconditions of the actions of the world, null until set
+    private RuleNetwork ruleNetwork;
+
+    //Actions by the subjects they need, answering the options command, null until set
+    private AffordanceIndex affordanceIndex;
+
+    //Triggers of at least one action with conditions, which are only resolved holding the world lock
+    private final HashSet<String> conditionalTriggers = new HashSet<>();
+
+    /**
+     * Creates a handler acting on the state of one world. Actions and the start location
+     * come from the template and are never modified; the keyword dictionaries are read from
+     * the template on every parse that misses the parse cache.
+     * @param template Template the world was created from
+     * @param paths Paths of the world
+     * @param locations Locations of the world
+     * @param player Players of the world
+     * @param world Name of the world, reported in flight recorder events
+     */
+    CommandHandler(WorldTemplate template, PathGraph paths,
+                   Map<String, GameLocation> locations, Map<String, GamePlayer> player, String world) {
+        gameActions = template.getGameActions();
+        pathGraph = paths;
         gameLocations = locations;
         gamePlayers = player;
-        playersStartLocation = startLocation;
-        availableTriggers = new HashSet<>();
-        availableSubjects = new HashSet<>();
-        this.computeAvailableTriggers();
-        this.computeAvailableSubjects();
+        playersStartLocation = template.getPlayersStartLocation();
+        worldName = world;
+        worldTemplate = template;
+        parseCache = template.getParseCache();
+        symbols = template.getSymbolTable();
+        routeCache = new RouteCache(paths);
+        for (Map.Entry<String, HashSet<GameAction>> entry : gameActions.entrySet()) {
+            for (GameAction action : entry.getValue()) {
+                if (!action.getConditions().isEmpty()) {
+                    conditionalTriggers.add(entry.getKey());
+                }
+            }
+        }
     }
 
     /**
-     * Compiles a list of all the available Triggers and populate availableTriggers
+     * Lets the handler report lost health and consumed entities to the clock of its world
+     * @param clock Clock of the world
      */
-    private void computeAvailableTriggers() {
-        availableTriggers.addAll(builtInTriggers);
-        availableTriggers.addAll(gameActions.keySet());
+    void setWorldClock(WorldClock clock) {
+        worldClock = clock;
     }
 
     /**
-     * Compiles a list of all the available subjects and populate availableSubjects
+     * Lets the handler choose between actions and refuse them by their conditions
+     * @param network Rule network of the world
      */
-    private void computeAvailableSubjects(){
-        // action can be performed on artefacts, characters, furniture and location
-        if(gameLocations != null && !gameLocations.isEmpty()) {
-            for (GameLocation location : gameLocations.values()) {
-                availableSubjects.add(location.getLocationName());
-                availableSubjects.addAll(location.getArtefactNames());
-                availableSubjects.addAll(location.getCharacterNames());
-                availableSubjects.addAll(location.getFurnitureNames());
-            }
-        }
+    void setRuleNetwork(RuleNetwork network) {
+        ruleNetwork = network;
+    }
+
+    /**
+     * Lets the handler answer the options command from an index of the world's actions
+     * @param index Affordance index of the world
+     */
+    void setAffordanceIndex(AffordanceIndex index) {
+        affordanceIndex = index;
+    }
+
+    /**
+     * Retrieves the shortest routes over the paths of the world, kept up to date as paths change
+     * @return Route cache of the world
+     */
+    RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Connects the handler to the other shards of its world
+     * @param coordinator Coordinator of the local shard
+     */
+    void setShardCoordinator(ShardCoordinator coordinator) {
+        shardCoordinator = coordinator;
+    }
+
+    /**
+     * Checks whether the commands run so far have changes to make on other nodes
+     * @return True if there are transfers to carry out
+     */
+    boolean hasShardTransfers() {
+        return !shardTransfers.isEmpty();
+    }
+
+    /**
+     * Hands over the changes on other nodes recorded by the commands run so far. Must be
+     * called holding the world lock.
+     * @return Transfers in the order the commands recorded them
+     */
+    LinkedList<ShardTransfer> takeShardTransfers() {
+        LinkedList<ShardTransfer> transfers = shardTransfers;
+        shardTransfers = new LinkedList<>();
+        return transfers;
     }
 
     /**
@@ -67,32 +150,166 @@ public class CommandHandler {
     * based on triggers and subjects in the command
     * @param gamePlayer The current player who is performing the action
     * @param input Command provided by the user in raw form
-     * @return Action narration
+    * @param commandEvent Event of the enclosing command, filled in with the trigger and action
+    * @param sink Reply to write the action narration to
     */
-    public String parseIncomingCommand(GamePlayer gamePlayer, String input) {
+    public void parseIncomingCommand(GamePlayer gamePlayer, String input, CommandEvent commandEvent, ResponseSink sink) {
         GameLocation gameLocation = gameLocations.get(gamePlayer.getLocation());
         if (gameLocation == null) {
             throw new RuntimeException("Invalid player location");
         }
-        input = input.trim();
-        StringBuilder command = new StringBuilder(input);
-        HashSet<String> triggers = new HashSet<String>();
-        this.compileListOfKeywordsFromCommand(command, triggers, availableTriggers);
-        HashSet<String> subjects = new HashSet<String>();
-        this.compileListOfKeywordsFromCommand(command, subjects, availableSubjects);
+        ParsedCommand parsedCommand = this.parseCommand(gamePlayer.getName(), input, gamePlayers.keySet());
+        this.performAction(gamePlayer, parsedCommand.getTriggers(), parsedCommand.getSubjects(), commandEvent, sink);
+    }
+
+    /**
+     * Answers a look, inventory or health command from the published snapshots of the
+     * player and its location. Runs without the world lock, so it reads nothing but the
+     * snapshots and the actions.
+     * @param player Snapshot of the current player
+     * @param location Snapshot of the player's location
+     * @param parsedCommand Command parsed by {@link #parseCommand(String, String, Collection)}
+     * @param commandEvent Event of the enclosing command, filled in with the trigger
+     * @param sink Reply to write the response to
+     * @return True if the command was answered, false if it changes the world
+     */
+    boolean performReadOnlyAction(PlayerSnapshot player, LocationSnapshot location, ParsedCommand parsedCommand,
+                                  CommandEvent commandEvent, ResponseSink sink) {
+        HashSet<String> triggers = parsedCommand.getTriggers();
+        HashSet<String> subjects = parsedCommand.getSubjects();
+        String trigger = triggers.iterator().next();
+        switch (trigger) {
+            case "inv":
+            case "inventory":
+                commandEvent.setTrigger(trigger);
+                this.checkInventoryCommand(triggers, subjects);
+                sink.append(player.getInventory());
+                return true;
+            case "look":
+                commandEvent.setTrigger(trigger);
+                this.checkLookCommand(triggers, subjects);
+                location.describeTo(player.getName(), sink);
+                return true;
+            case "health":
+                commandEvent.setTrigger(trigger);
+                this.checkHealthCommand(triggers, subjects);
+                sink.append(player.getHealth());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Resolves a custom action and checks that it can be performed, against the published
+     * snapshots of the player and its location. Runs without the world lock; the action
+     * takes effect only when the world commits the transaction.
+     * @param player Snapshot of the current player
+     * @param location Snapshot of the player's location
+     * @param parsedCommand Command parsed by {@link #parseCommand(String, String, Collection)}
+     * @param commandEvent Event of the enclosing command, filled in with the trigger and action
+     * @return Transaction of the action, or null if the command is a built-in one
+     */
+    ActionTransaction beginCustomAction(PlayerSnapshot player, LocationSnapshot location, ParsedCommand parsedCommand,
+                                        CommandEvent commandEvent) {
+        HashSet<String> triggers = parsedCommand.getTriggers();
+        String trigger = triggers.iterator().next();
+        if (BUILT_IN_TRIGGERS.contains(trigger)) {
+            return null;
+        }
+        for (String commandTrigger : triggers) {
+            // conditions are matched against the live world, which the snapshots do not hold
+            if (conditionalTriggers.contains(commandTrigger)) {
+                return null;
+            }
+        }
+        commandEvent.setTrigger(trigger);
+        try {
+            GameAction commandAction = this.isCommandValid(player.getName(), null, null, triggers,
+                    parsedCommand.getSubjects(), trigger);
+            commandEvent.setAction(commandAction.getLabel());
+            this.ensureActionIsPerformable(commandAction, location.getSymbol(),
+                    location.getEntitySymbols(), player.getArtefactSymbols());
+            return new ActionTransaction(player, location, commandAction, null);
+        }
+        catch (RuntimeException e) {
+            return new ActionTransaction(player, location, null, e);
+        }
+    }
+
+    /**
+     * Applies a custom action whose transaction has been validated. Must be called holding
+     * the world lock.
+     * @param gamePlayer The current player
+     * @param transaction Transaction of the action
+     * @param commandEvent Event of the enclosing command
+     * @param sink Reply to write the narration of the action to
+     */
+    void commitCustomAction(GamePlayer gamePlayer, ActionTransaction transaction, CommandEvent commandEvent,
+                            ResponseSink sink) {
+        if (transaction.getFailure() != null) {
+            throw transaction.getFailure();
+        }
+        GameLocation gameLocation = gameLocations.get(gamePlayer.getLocation());
+        this.ensureConditionsHold(transaction.getAction(), gamePlayer, gameLocation);
+        this.applyCustomAction(transaction.getAction(), gamePlayer, gameLocation, commandEvent, sink);
+    }
+
+    /**
+     * Extracts the triggers and subjects of a command and checks that it names no other
+     * player and at least one trigger
+     * @param playerName Name of the current player
+     * @param input Command provided by the user in raw form
+     * @param playerNames Names of the players of the world
+     * @return Triggers, subjects and left over text of the command
+     */
+    ParsedCommand parseCommand(String playerName, String input, Collection<String> playerNames) {
+        ParsedCommand parsedCommand = this.parseKeywords(playerName, input);
+        // players come and go, so their names are looked for on every call
         HashSet<String> players = new HashSet<String>();
-        this.compileListOfKeywordsFromCommand(command, players, new HashSet<String>(gamePlayers.keySet()));
+        CommandTokenizer residual = new CommandTokenizer(parsedCommand.getResidual());
+        this.compileListOfKeywordsFromCommand(playerName, residual, players, new KeywordIndex(playerNames), "player");
 
         //Ensure that the command does not have names of other players
-        if(this.doesSetContainWordsExcept(players, new HashSet<>(Set.of(gamePlayer.getName())))) {
+        if(this.doesSetContainWordsExcept(players, new HashSet<>(Set.of(playerName)))) {
             throw new RuntimeException("Name(s) of other players are not allowed in command");
         }
         //We must have at least one trigger
-        if (triggers.isEmpty()) {
+        if (parsedCommand.getTriggers().isEmpty()) {
             throw new RuntimeException("No action found");
         }
+        return parsedCommand;
+    }
 
-        return this.performAction(gamePlayer, triggers, subjects);
+    /**
+     * Extracts the triggers and subjects of a command, reusing the result of an earlier
+     * parse of the same text when the parse cache still holds it
+     * @param playerName Name of the current player, reported in parse events
+     * @param input Command provided by the user in raw form
+     * @return Triggers, subjects and left over text of the command
+     */
+    private ParsedCommand parseKeywords(String playerName, String input) {
+        String key = ParseCache.normalise(input);
+        ParsedCommand parsedCommand = parseCache.get(key);
+        if (parsedCommand != null) {
+            KeywordParseEvent parseEvent = new KeywordParseEvent();
+            parseEvent.begin();
+            parseEvent.setKeywordKind("trigger,subject");
+            parseEvent.setMatches(parsedCommand.getTriggers().size() + parsedCommand.getSubjects().size());
+            parseEvent.setCacheHit(true);
+            parseEvent.complete(worldName, playerName, null, null, "OK");
+            return parsedCommand;
+        }
+        // the version is read before the dictionaries so a parse racing a dictionary change is not cached
+        long version = parseCache.getVersion();
+        CommandTokenizer command = new CommandTokenizer(key);
+        HashSet<String> triggers = new HashSet<String>();
+        this.compileListOfKeywordsFromCommand(playerName, command, triggers, worldTemplate.getTriggerIndex(), "trigger");
+        HashSet<String> subjects = new HashSet<String>();
+        this.compileListOfKeywordsFromCommand(playerName, command, subjects, worldTemplate.getSubjectIndex(), "subject");
+        parsedCommand = new ParsedCommand(triggers, subjects, command.residual());
+        parseCache.put(key, parsedCommand, version);
+        return parsedCommand;
     }
 
     /**
@@ -100,50 +317,62 @@ public class CommandHandler {
      * @param gamePlayer The current player who is performing the action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Action narration
+     * @param commandEvent Event of the enclosing command
+     * @param sink Reply to write the action narration to
      */
-    private String performAction(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void performAction(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                               CommandEvent commandEvent, ResponseSink sink) {
         String trigger = triggers.iterator().next();
+        commandEvent.setTrigger(trigger);
         switch (trigger) {
             case "inv":
             case "inventory":
-                return this.performActionInventory(gamePlayer, triggers, subjects);
+                this.performActionInventory(gamePlayer, triggers, subjects, sink);
+                break;
             case "get":
-                return this.performActionGet(gamePlayer, triggers, subjects);
+                this.performActionGet(gamePlayer, triggers, subjects, sink);
+                break;
             case "drop":
-                return this.performActionDrop(gamePlayer, triggers, subjects);
+                this.performActionDrop(gamePlayer, triggers, subjects, sink);
+                break;
             case "goto":
-                return this.performActionGoto(gamePlayer, triggers, subjects);
+                this.performActionGoto(gamePlayer, triggers, subjects, sink);
+                break;
+            case "travel":
+                this.performActionTravel(gamePlayer, triggers, subjects, sink);
+                break;
             case "look":
-                return this.performActionLook(gamePlayer, triggers, subjects);
+                this.performActionLook(gamePlayer, triggers, subjects, sink);
+                break;
             case "health":
-                return this.performActionHealth(gamePlayer, triggers, subjects);
+                this.performActionHealth(gamePlayer, triggers, subjects, sink);
+                break;
+            case "options":
+                this.performActionOptions(gamePlayer, triggers, subjects, sink);
+                break;
             default:
-                return this.performCustomAction(gamePlayer, triggers, subjects);
+                this.performCustomAction(gamePlayer, triggers, subjects, commandEvent, sink);
+                break;
         }
     }
 
     /**
-     * Compiles list of keywords(triggers or subjects) found in input command
-     * @param command Command entered by user
+     * Finds the keywords of a dictionary in the words of a command not yet claimed by an
+     * earlier dictionary. The longest keyword starting at a word wins.
+     * @param playerName Name of the current player, reported in the parse event
+     * @param command Tokenized command
      * @param foundKeywords Keywords found in the command
-     * @param availableKeywords List of available keywords
-     */
-    private void compileListOfKeywordsFromCommand(StringBuilder command, HashSet<String> foundKeywords, HashSet<String> availableKeywords) {
-        if(availableKeywords != null && !availableKeywords.isEmpty()) {
-            for (String keyword : availableKeywords) {
-                StringBuilder patternString = new StringBuilder();
-                patternString.append("\\b").append(keyword).append("\\b");
-                Pattern pattern = Pattern.compile(patternString.toString(), Pattern.CASE_INSENSITIVE);
-                Matcher matcher = pattern.matcher(command);
-
-                while (matcher.find()) {
-                    foundKeywords.add(keyword);
-                    command.delete(matcher.start(), matcher.end());
-                    matcher = pattern.matcher(command);
-                }
-            }
-        }
+     * @param availableKeywords Dictionary of keywords
+     * @param keywordKind Kind of keywords being searched for, reported in the parse event
+     */
+    private void compileListOfKeywordsFromCommand(String playerName, CommandTokenizer command, HashSet<String> foundKeywords,
+                                                  KeywordIndex availableKeywords, String keywordKind) {
+        KeywordParseEvent parseEvent = new KeywordParseEvent();
+        parseEvent.begin();
+        command.match(availableKeywords, foundKeywords);
+        parseEvent.setKeywordKind(keywordKind);
+        parseEvent.setMatches(foundKeywords.size());
+        parseEvent.complete(worldName, playerName, null, null, "OK");
     }
 
     /**
@@ -178,14 +407,7 @@ public class CommandHandler {
      * @return True if subject is location else false
      */
     private boolean isThisSubjectLocation(String subject) {
-        if(gameLocations != null && !gameLocations.isEmpty()) {
-            for (String location : gameLocations.keySet()) {
-                if (location.equalsIgnoreCase(subject)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return symbols.isLocation(symbols.idOf(subject));
     }
 
     /**
@@ -195,50 +417,38 @@ public class CommandHandler {
      * @return GameLocation object corresponding to the input name
      */
     private GameLocation getGameLocation(String location) {
-        if(gameLocations != null && !gameLocations.isEmpty()) {
-            for (String locationName : gameLocations.keySet()) {
-                if (location.equalsIgnoreCase(locationName)) {
-                    return gameLocations.get(locationName);
-                }
-            }
+        int symbol = symbols.idOf(location);
+        if (!symbols.isLocation(symbol)) {
+            return null;
         }
-        return null;
+        return gameLocations.get(symbols.nameOf(symbol));
     }
 
     /**
      * Creates one way path between origin and destination location if it doesn't exist
-     * @param origin Name of the origin location.
-     * @param destination Name of destination location.
+     * @param origin Symbol id of the origin location.
+     * @param destination Symbol id of destination location.
      */
-    private void createPathBetween(String origin, String destination) {
-        // See if origin is actually a location
-        // see if destination is actually a location
-        GameLocation originLocation = this.getGameLocation(origin);
-        GameLocation destinationLocation = this.getGameLocation(destination);
-        if(originLocation == null || destinationLocation == null) {return;}
-
-        gamePaths.putIfAbsent(originLocation.getLocationName(), new HashSet<>());
-        HashSet<String> destinations = gamePaths.get(originLocation.getLocationName());
-
-        destinations.add(destinationLocation.getLocationName());
+    private void createPathBetween(int origin, int destination) {
+        // See if origin and destination are actually locations
+        if(!symbols.isLocation(origin) || !symbols.isLocation(destination)) {return;}
+        if (pathGraph.addPath(origin, destination)) {
+            routeCache.pathAdded(origin, destination);
+            gameLocations.get(symbols.nameOf(origin)).markChanged();
+        }
     }
 
     /**
      * Removes one way path between origin and destination location if it exists
-     * @param origin Name of the origin location.
-     * @param destination Name of destination location.
+     * @param origin Symbol id of the origin location.
+     * @param destination Symbol id of destination location.
      */
-    private void removePathBetween(String origin, String destination) {
-        //See if origin is actually a location
-        // see if destination is actually a location
-        GameLocation originLocation = this.getGameLocation(origin);
-        GameLocation destinationLocation = this.getGameLocation(destination);
-        if(originLocation == null || destinationLocation == null) {return;}
-
-        // See if a path already exists. if exists then remove path
-        HashSet<String> destinations = gamePaths.get(originLocation.getLocationName());
-        if(destinations != null) {
-            destinations.remove(destinationLocation.getLocationName());
+    private void removePathBetween(int origin, int destination) {
+        // See if origin and destination are actually locations
+        if(!symbols.isLocation(origin) || !symbols.isLocation(destination)) {return;}
+        if (pathGraph.removePath(origin, destination)) {
+            routeCache.pathRemoved(origin, destination);
+            gameLocations.get(symbols.nameOf(origin)).markChanged();
         }
     }
 
@@ -249,15 +459,7 @@ public class CommandHandler {
      * @return True if path exists else False
      */
     private boolean doesPathExistBetween(String originLocation, String destinationLocation) {
-        GameLocation start = this.getGameLocation(originLocation);
-        if(start != null && gamePaths.get(start.getLocationName()) != null && !gamePaths.get(start.getLocationName()).isEmpty()) {
-            for (String destination : gamePaths.get(start.getLocationName())) {
-                if (destination.equalsIgnoreCase(destinationLocation)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return pathGraph.hasPath(symbols.idOf(originLocation), symbols.idOf(destinationLocation));
     }
 
     /**
@@ -265,9 +467,20 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Contents of player's inventory
+     * @param sink Reply to write the contents of player's inventory to
+     */
+    private void performActionInventory(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                        ResponseSink sink) {
+        this.checkInventoryCommand(triggers, subjects);
+        gamePlayer.showInventoryTo(sink);
+    }
+
+    /**
+     * Checks that an inventory command has no subjects or other triggers
+     * @param triggers Triggers of actions found in the command
+     * @param subjects Subjects of actions found in the command
      */
-    private String performActionInventory(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void checkInventoryCommand(HashSet<String> triggers, HashSet<String> subjects) {
         //  for inventory, we only need word inventory no extra built-in
         //  trigger or subjects should be present
 
@@ -278,7 +491,6 @@ public class CommandHandler {
         if(this.doesSetContainWordsExcept(triggers, new HashSet<String> (Set.of("inv", "inventory")))) {
             throw new RuntimeException("Multiple triggers now allowed in command");
         }
-        return gamePlayer.showInventoryContents();
     }
 
     /**
@@ -286,9 +498,10 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Description of artefact picked up by the player
+     * @param sink Reply to write the artefact picked up by the player to
      */
-    private String performActionGet(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void performActionGet(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                  ResponseSink sink) {
         if(this.doesSetContainWordsExcept(triggers, new HashSet<String>(Set.of("get")))) {
             throw new RuntimeException("Multiple triggers not allowed in get command");
         }
@@ -313,9 +526,7 @@ public class CommandHandler {
         // Remove the item from the location and add it in player's inventory
         gamePlayer.addArtefactToInventory(gameLocation.getArtefact(subject));
         gameLocation.removeArtefact(subject);
-        StringBuilder ret = new StringBuilder();
-        ret.append(gamePlayer.getName()).append(" picked up ").append(subject);
-        return ret.toString();
+        sink.append(gamePlayer.getName()).append(" picked up ").append(subject);
     }
 
     /**
@@ -323,9 +534,10 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Description of artefact dropped by the player
+     * @param sink Reply to write the artefact dropped by the player to
      */
-    private String performActionDrop(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void performActionDrop(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                   ResponseSink sink) {
         if(this.doesSetContainWordsExcept(triggers, new HashSet<String>(Set.of("drop")))) {
             throw new RuntimeException("Multiple triggers not allowed in drop command");
         }
@@ -350,9 +562,7 @@ public class CommandHandler {
         gameLocation.addArtefact(gamePlayer.getArtefact(subject));
         gamePlayer.removeArtefactFromInventory(subject);
 
-        StringBuilder ret = new StringBuilder();
-        ret.append(gamePlayer.getName()).append(" dropped ").append(subject);
-        return ret.toString();
+        sink.append(gamePlayer.getName()).append(" dropped ").append(subject);
     }
 
     /**
@@ -361,9 +571,10 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Description of player's perspective in the new location
+     * @param sink Reply to write player's perspective in the new location to
      */
-    private String performActionGoto(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void performActionGoto(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                   ResponseSink sink) {
         if(this.doesSetContainWordsExcept(triggers, new HashSet<String> (Set.of("goto")))) {
             throw new RuntimeException("Multiple triggers not allowed in goto command");
         }
@@ -384,12 +595,83 @@ public class CommandHandler {
             throw new RuntimeException("Location is not accessible from current location of the player");
         }
 
+        this.movePlayerTo(gamePlayer, newLocationName, sink);
+    }
+
+    /**
+     * Performs built-in action 'travel' to move the player to a location any number of
+     * paths away, along a shortest route
+     * @param gamePlayer Name of player performing an action
+     * @param triggers Triggers of actions found in the command
+     * @param subjects Subjects of actions found in the command
+     * @param sink Reply to write the locations passed through and player's perspective in the new location to
+     */
+    private void performActionTravel(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                     ResponseSink sink) {
+        if(this.doesSetContainWordsExcept(triggers, new HashSet<String> (Set.of("travel")))) {
+            throw new RuntimeException("Multiple triggers not allowed in travel command");
+        }
+
+        if(subjects.size() != 1) {
+            throw new RuntimeException("Travel command must have exactly one valid subject");
+        }
+
+        String newLocationName = subjects.iterator().next();
+        if(!this.isThisSubjectLocation(newLocationName)) {
+            throw new RuntimeException("Travel command must have a valid location");
+        }
+        if(newLocationName.equalsIgnoreCase(gamePlayer.getLocation())) {
+            throw new RuntimeException("You are already at this location");
+        }
+        LinkedList<Integer> route = routeCache.findRoute(
+                symbols.idOf(gamePlayer.getLocation()), symbols.idOf(newLocationName));
+        if (route == null) {
+            throw new RuntimeException("There is no route from current location of the player to that location");
+        }
+
+        sink.append("You travel through");
+        for (Integer step : route) {
+            sink.append(' ').append(symbols.nameOf(step));
+        }
+        sink.append(System.lineSeparator());
+        this.movePlayerTo(gamePlayer, newLocationName, sink);
+    }
+
+    /**
+     * Moves the player from its current location to another one, handing it over to the
+     * owning shard if the other location is not local
+     * @param gamePlayer Player to move
+     * @param newLocationName Name of the location the player moves to
+     * @param sink Reply to write player's perspective in the new location to, which the
+     *             owning shard writes once the player is handed over
+     */
+    private void movePlayerTo(GamePlayer gamePlayer, String newLocationName, ResponseSink sink) {
         GameLocation oldLocation = gameLocations.get(gamePlayer.getLocation());
+        // a location owned by another shard is entered by handing the player over to it
+        if (shardCoordinator != null && !shardCoordinator.isLocal(newLocationName)) {
+            this.leaveForShard(gamePlayer, oldLocation, newLocationName);
+            return;
+        }
         GameLocation newLocation = gameLocations.get(newLocationName);
         newLocation.addPlayer(gamePlayer.getName());
         gamePlayer.setLocation(newLocationName);
         oldLocation.removePlayer(gamePlayer.getName());
-        return this.getPlayerPerspective(gamePlayer);
+        this.getPlayerPerspective(gamePlayer, sink);
+    }
+
+    /**
+     * Takes a player off this node and records its hand-over to the node owning another
+     * location. The player is in no location until the hand-over is carried out, and its
+     * commands are refused meanwhile.
+     * @param gamePlayer Player leaving
+     * @param fromLocation Location the player leaves, where it is put back if the other node refuses it
+     * @param newLocationName Location on the other node the player arrives at
+     */
+    private void leaveForShard(GamePlayer gamePlayer, GameLocation fromLocation, String newLocationName) {
+        fromLocation.removePlayer(gamePlayer.getName());
+        gamePlayers.remove(gamePlayer.getName());
+        shardCoordinator.playerLeaving(gamePlayer.getName());
+        shardTransfers.add(ShardTransfer.handOff(gamePlayer, newLocationName, fromLocation.getLocationName()));
     }
 
     /**
@@ -398,9 +680,20 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Description of what player can see at its current location
+     * @param sink Reply to write what player can see at its current location to
+     */
+    private void performActionLook(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                   ResponseSink sink) {
+        this.checkLookCommand(triggers, subjects);
+        this.getPlayerPerspective(gamePlayer, sink);
+    }
+
+    /**
+     * Checks that a look command has no subjects or other triggers
+     * @param triggers Triggers of actions found in the command
+     * @param subjects Subjects of actions found in the command
      */
-    private String performActionLook(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void checkLookCommand(HashSet<String> triggers, HashSet<String> subjects) {
         // no other trigger, no subjects and no location is required
         if(this.doesSetContainWordsExcept(triggers, new HashSet<String>(Set.of("look")))) {
             throw new RuntimeException("Multiple triggers not allowed in look command");
@@ -408,8 +701,6 @@ public class CommandHandler {
         if(!subjects.isEmpty()) {
             throw new RuntimeException("Look command requires does not require subjects");
         }
-
-        return this.getPlayerPerspective(gamePlayer);
     }
 
     /**
@@ -417,9 +708,20 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Message mentioning current status of player's health
+     * @param sink Reply to write current status of player's health to
+     */
+    private void performActionHealth(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                     ResponseSink sink) {
+        this.checkHealthCommand(triggers, subjects);
+        sink.append(gamePlayer.showHealth());
+    }
+
+    /**
+     * Checks that a health command has no subjects or other triggers
+     * @param triggers Triggers of actions found in the command
+     * @param subjects Subjects of actions found in the command
      */
-    private String performActionHealth(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void checkHealthCommand(HashSet<String> triggers, HashSet<String> subjects) {
         // no other trigger, no subjects and no location is required
         if(this.doesSetContainWordsExcept(triggers, new HashSet<String> (Set.of("health")))) {
             throw new RuntimeException("Multiple triggers not allowed in health command");
@@ -427,60 +729,71 @@ public class CommandHandler {
         if(!subjects.isEmpty()) {
             throw new RuntimeException("Health command requires does not require subjects");
         }
-
-        StringBuilder ret = new StringBuilder();
-        ret.append(gamePlayer.getName()).append("'s health is: ")
-                .append(gamePlayer.getHealth()).append(System.lineSeparator());
-        return ret.toString();
     }
 
     /**
-     * Return player's perspective i.e; things which can be seen by player at a location
+     * Performs built-in action 'options' to list the custom actions a player can perform
+     * where it stands, i.e; whose subjects are all at hand and whose conditions hold
      * @param gamePlayer Name of player performing an action
-     * @return String describing what a player can see at its current location
+     * @param triggers Triggers of actions found in the command
+     * @param subjects Subjects of actions found in the command
+     * @param sink Reply to write the labels of the actions to, one per line
      */
-    private String getPlayerPerspective(GamePlayer gamePlayer) {
+    private void performActionOptions(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                      ResponseSink sink) {
+        if(this.doesSetContainWordsExcept(triggers, new HashSet<String>(Set.of("options")))) {
+            throw new RuntimeException("Multiple triggers not allowed in options command");
+        }
+        if(!subjects.isEmpty()) {
+            throw new RuntimeException("Options command does not require subjects");
+        }
         GameLocation gameLocation = gameLocations.get(gamePlayer.getLocation());
-        if(gameLocation == null) {
-            return "";
-        }
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("You are in ").append(gameLocation.getLocationDescription()).append(System.lineSeparator());
-        stringBuilder.append("You can see:").append(System.lineSeparator());
-        //iterate through characters, artefacts, furniture
-        if(gameLocation.getCharacters() != null && !gameLocation.getCharacters().isEmpty()) {
-            for (GameCharacter character : gameLocation.getCharacters()) {
-                stringBuilder.append(character.getName()).append(": ")
-                        .append(character.getDescription()).append(System.lineSeparator());
-            }
+        if (gameLocation == null) {
+            throw new RuntimeException("Invalid player location");
         }
-        if(gameLocation.getArtefacts() != null && !gameLocation.getArtefacts().isEmpty()) {
-            for (GameArtefact gameArtefact : gameLocation.getArtefacts()) {
-                stringBuilder.append(gameArtefact.getName()).append(": ")
-                        .append(gameArtefact.getDescription()).append(System.lineSeparator());
+        int start = sink.length();
+        sink.append("You can:").append(System.lineSeparator());
+        int heading = sink.length();
+        for (GameAction action : affordanceIndex.findAffordances(gamePlayer, gameLocation).values()) {
+            if (ruleNetwork == null || ruleNetwork.isEligible(action, gamePlayer, gameLocation)) {
+                sink.append(action.getLabel()).append(System.lineSeparator());
             }
         }
-        if(gameLocation.getFurnitures() != null && !gameLocation.getFurnitures().isEmpty()) {
-            for (GameFurniture furniture : gameLocation.getFurnitures()) {
-                stringBuilder.append(furniture.getName()).append(": ")
-                        .append(furniture.getDescription()).append(System.lineSeparator());
-            }
+        if (sink.length() == heading) {
+            sink.truncate(start);
+            sink.append("There is nothing you can do here");
         }
-        if(gameLocation.getPlayers() != null && !gameLocation.getPlayers().isEmpty()) {
-            for (String player : gameLocation.getPlayers()) {
-                if (!gamePlayer.getName().equalsIgnoreCase(player)) {
-                    stringBuilder.append("Player :").append(player).append(System.lineSeparator());
-                }
-            }
+    }
+
+    /**
+     * Return player's perspective i.e; things which can be seen by player at a location
+     * @param gamePlayer Name of player performing an action
+     * @return String describing what a player can see at its current location
+     */
+    String getPlayerPerspective(GamePlayer gamePlayer) {
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer perspective = pool.acquire();
+        try {
+            this.getPlayerPerspective(gamePlayer, perspective);
+            return perspective.toString();
         }
-        stringBuilder.append("You can access from here:").append(System.lineSeparator());
-        HashSet<String> gPaths = gamePaths.get(gamePlayer.getLocation());
-        if(gPaths != null && !gPaths.isEmpty()) {
-            for (String path : gPaths) {
-                stringBuilder.append(path).append(System.lineSeparator());
-            }
+        finally {
+            pool.release(perspective);
         }
-        return stringBuilder.toString();
+    }
+
+    /**
+     * Writes player's perspective i.e; things which can be seen by player at a location
+     * @param gamePlayer Name of player performing an action
+     * @param sink Reply to write what a player can see at its current location to
+     */
+    void getPlayerPerspective(GamePlayer gamePlayer, ResponseSink sink) {
+        GameLocation gameLocation = gameLocations.get(gamePlayer.getLocation());
+        if(gameLocation == null) {
+            return;
+        }
+        // written straight from the live location rather than through a snapshot
+        LocationSnapshot.describe(gameLocation, pathGraph, symbols, gamePlayer.getName(), sink);
     }
 
     /**
@@ -490,47 +803,130 @@ public class CommandHandler {
      * @param gamePlayer Name of player performing an action
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
-     * @return Narration of action after performing it
+     * @param commandEvent Event of the enclosing command
+     * @param sink Reply to write the narration of the action to
      */
-    private String performCustomAction(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects) {
+    private void performCustomAction(GamePlayer gamePlayer, HashSet<String> triggers, HashSet<String> subjects,
+                                     CommandEvent commandEvent, ResponseSink sink) {
         GameLocation gameLocation = gameLocations.get(gamePlayer.getLocation());
 
         //See if the input command is valid
-        GameAction commandAction = this.isCommandValid(triggers, subjects);
+        GameAction commandAction = this.isCommandValid(gamePlayer.getName(), gamePlayer, gameLocation, triggers,
+                subjects, commandEvent.getTrigger());
+        commandEvent.setAction(commandAction.getLabel());
         //See if we can act on valid query
-        this.ensureActionIsPerformable(commandAction, gamePlayer, gameLocation);
+        this.ensureActionIsPerformable(commandAction, gameLocation.getSymbol(),
+                gameLocation.getEntitySymbols(), gamePlayer.getArtefactSymbols());
+        this.ensureConditionsHold(commandAction, gamePlayer, gameLocation);
+        this.applyCustomAction(commandAction, gamePlayer, gameLocation, commandEvent, sink);
+    }
 
+    /**
+     * Produces and consumes the entities of an action that can be performed
+     * @param commandAction Action to be performed
+     * @param gamePlayer Player performing the action
+     * @param gameLocation Current location of the player
+     * @param commandEvent Event of the enclosing command
+     * @param sink Reply to write the narration of the action to
+     */
+    private void applyCustomAction(GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation,
+                                   CommandEvent commandEvent, ResponseSink sink) {
         //Act on the query/command
-        this.produceEntity(commandAction, gamePlayer, gameLocation);
-        this.consumeEntity(commandAction, gamePlayer, gameLocation);
+        this.produceEntity(commandAction, gamePlayer, gameLocation, commandEvent.getTrigger());
+        this.consumeEntity(commandAction, gamePlayer, gameLocation, commandEvent.getTrigger());
 
         //Print the narration of the action
-        return commandAction.getNarration();
+        sink.append(commandAction.getNarration());
     }
 
     /**
      * Checks if command provided by user is valid i.e; The command does not contain
      * extraneous entities, the command is not ambiguous.
+     * Actions that match equally well are told apart by their conditions when a player is given.
+     * @param playerName Name of the player performing the action, reported in the resolve event
+     * @param gamePlayer Player performing the action, or null to ignore conditions
+     * @param here Current location of the player, or null to ignore conditions
      * @param triggers Triggers of actions found in the command
      * @param subjects Subjects of actions found in the command
+     * @param trigger Trigger the command was dispatched on, reported in the resolve event
      * returns GameAction deduced from command
      */
-    private GameAction isCommandValid(HashSet<String> triggers, HashSet<String> subjects) {
-        if(triggers.isEmpty()) {
-            throw new RuntimeException("No command triggers in action ");
+    private GameAction isCommandValid(String playerName, GamePlayer gamePlayer, GameLocation here,
+                                      HashSet<String> triggers, HashSet<String> subjects, String trigger) {
+        ActionResolveEvent resolveEvent = new ActionResolveEvent();
+        resolveEvent.begin();
+        resolveEvent.setSubjects(subjects.size());
+        GameAction commandAction = null;
+        try {
+            if (triggers.isEmpty()) {
+                throw new RuntimeException("No command triggers in action ");
+            }
+
+            HashSet<GameAction> validActions = this.compilePossibleActionsFromCommand(triggers, subjects);
+            if (validActions.size() > 1 && ruleNetwork != null && gamePlayer != null) {
+                validActions = this.keepEligibleActions(validActions, gamePlayer, here);
+            }
+            if (validActions.size() != 1) {
+                throw new RuntimeException("Input command is ambiguous");
+            }
+            commandAction = validActions.iterator().next();
+
+            //Ensure that the command does not contain subjects other than the ones required to perform this action
+            if (this.doesSetContainWordsExcept(subjects, commandAction.getSubjects())) {
+                throw new RuntimeException("All the subjects should be from exactly one action");
+            }
         }
+        catch (RuntimeException e) {
+            resolveEvent.complete(worldName, playerName, trigger, this.labelOf(commandAction), e.getMessage());
+            throw e;
+        }
+        resolveEvent.complete(worldName, playerName, trigger, commandAction.getLabel(), "OK");
+        return commandAction;
+    }
 
-        HashSet<GameAction> validActions = this.compilePossibleActionsFromCommand(triggers, subjects);
-        if (validActions.size() != 1) {
-            throw new RuntimeException("Input command is ambiguous");
+    /**
+     * Narrows down actions matching a command to those whose conditions hold, unless none do
+     * @param validActions Actions matching the command
+     * @param gamePlayer Player performing the action
+     * @param here Current location of the player
+     * @return Actions whose conditions hold, or all of them if no conditions hold
+     */
+    private HashSet<GameAction> keepEligibleActions(HashSet<GameAction> validActions, GamePlayer gamePlayer,
+                                                    GameLocation here) {
+        HashSet<GameAction> eligibleActions = new HashSet<>();
+        for (GameAction action : validActions) {
+            if (ruleNetwork.isEligible(action, gamePlayer, here)) {
+                eligibleActions.add(action);
+            }
+        }
+        if (eligibleActions.isEmpty()) {
+            return validActions;
         }
-        GameAction commandAction = validActions.iterator().next();
+        return eligibleActions;
+    }
 
-        //Ensure that the command does not contain subjects other than the ones required to perform this action
-        if(this.doesSetContainWordsExcept(subjects, commandAction.getSubjects())) {
-            throw new RuntimeException("All the subjects should be from exactly one action");
+    /**
+     * Checks that the conditions of an action hold for the player performing it
+     * @param commandAction Action to be performed
+     * @param gamePlayer Player performing the action
+     * @param gameLocation Current location of the player
+     */
+    private void ensureConditionsHold(GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation) {
+        if (ruleNetwork != null && !ruleNetwork.isEligible(commandAction, gamePlayer, gameLocation)) {
+            throw new RuntimeException("Conditions required to execute action are not met");
         }
-        return commandAction;
+    }
+
+    /**
+     * Retrieves the label of an action for flight recorder events, tolerating unresolved actions
+     * @param gameAction Action or null
+     * @return Label of the action or null
+     */
+    private String labelOf(GameAction gameAction) {
+        if (gameAction == null) {
+            return null;
+        }
+        return gameAction.getLabel();
     }
 
     /**
@@ -568,24 +964,19 @@ public class CommandHandler {
      * Checks if an action can actually be performed by a player i.e; the entities
      * required to perform an action is available to the player
      * @param commandAction Action to be performed
-     * @param gamePlayer Player performing the action
-     * @param gameLocation Current location of the player
+     * @param locationSymbol Symbol id of the current location of the player
+     * @param atLocation Symbol ids of the entities at the current location
+     * @param inInventory Symbol ids of the artefacts in player's inventory
      */
-    private void ensureActionIsPerformable(GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation) {
+    private void ensureActionIsPerformable(GameAction commandAction, int locationSymbol, BitSet atLocation, BitSet inInventory) {
         //We should now check if all the subject required to perform the actions are either possessed by player or in the room.
         // If even a single subject is unavailable throw exception.
-        HashSet<String> availableEntities = new HashSet<>();
-        availableEntities.addAll(gamePlayer.getArtefactNames()); // player's inventory
-        availableEntities.addAll(gameLocation.getEntityNames()); // Entities at current location
-        availableEntities.add(gamePlayer.getLocation()); // Current location
-
-        if(commandAction.getSubjects() != null && !commandAction.getSubjects().isEmpty()) {
-            for (String subject : commandAction.getSubjects()) {
-                if (!availableEntities.stream()
-                        .map(String::toLowerCase)
-                        .collect(Collectors.toSet()).contains(subject.toLowerCase())) {
-                    throw new RuntimeException("Subject(s) required to execute action are missing");
-                }
+        // (required & (location | inventory)) == required, tested bit by bit so nothing is allocated;
+        // the current location itself also counts as available
+        BitSet required = commandAction.getSubjectSymbols();
+        for (int subject = required.nextSetBit(0); subject >= 0; subject = required.nextSetBit(subject + 1)) {
+            if (subject != locationSymbol && !atLocation.get(subject) && !inInventory.get(subject)) {
+                throw new RuntimeException("Subject(s) required to execute action are missing");
             }
         }
     }
@@ -595,36 +986,51 @@ public class CommandHandler {
      * @param commandAction Action to be performed
      * @param gamePlayer Player performing the action
      * @param gameLocation Current location of the player
+     * @param trigger Trigger the command was dispatched on, reported in the transfer event
      */
-    private void produceEntity(GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation) {
-        // produced item is moved from its current location to current location
-        HashSet<String> produced = commandAction.getProduced();
-        if(produced != null && !produced.isEmpty()) {
-            for (String item : produced) {
-                if (item.equalsIgnoreCase("health")) {
+    private void produceEntity(GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation, String trigger) {
+        EntityTransferEvent transferEvent = new EntityTransferEvent();
+        transferEvent.begin();
+        List<ActionPlan.Step> steps = commandAction.getPlan().getProduceSteps();
+        for (ActionPlan.Step step : steps) {
+            switch (step.getKind()) {
+                case HEALTH:
                     gamePlayer.incrementHealth();
-                }
-                // If it is not in storeroom then the item is location
-                else if (gameLocations.keySet().stream().map(String::toLowerCase)
-                        .collect(Collectors.toSet()).contains(item.toLowerCase())
-                        && !item.equalsIgnoreCase("storeroom")) {
+                    break;
+                case PATH:
                     // Add new path from current to said path
-                    this.createPathBetween(gameLocation.getLocationName(), item);
-                }
-                // see if produced item is entity and present anywhere in the game. If present move to player's current location.
-                else {
-                    if(!gameLocations.isEmpty()) {
-                        for (GameLocation location : gameLocations.values()) {
-                            if (!location.getLocationName().equalsIgnoreCase(gameLocation.getLocationName())
-                                    && location.isEntityPresent(item)) {
-                                gameLocation.addEntity(location.getEntity(item));
-                                location.removeEntity(item);
-                            }
-                        }
-                    }
-                }
+                    this.createPathBetween(gameLocation.getSymbol(), step.getSymbol());
+                    break;
+                default:
+                    // produced item is moved from its current location to player's current location
+                    this.moveEntityTo(step, gameLocation);
+                    break;
+            }
+        }
+        transferEvent.setDirection("produce");
+        transferEvent.setEntities(steps.size());
+        transferEvent.complete(worldName, gamePlayer.getName(), trigger, commandAction.getLabel(), "OK");
+    }
+
+    /**
+     * Moves a produced entity from wherever it is in the game to a location
+     * @param step Entity step of the action plan
+     * @param gameLocation Location receiving the entity
+     */
+    private void moveEntityTo(ActionPlan.Step step, GameLocation gameLocation) {
+        boolean found = false;
+        for (GameLocation location : StoredLocationMap.holdersOf(gameLocations, step.getSymbol())) {
+            if (!location.getLocationName().equalsIgnoreCase(gameLocation.getLocationName())
+                    && location.isEntityPresent(step.getSymbol())) {
+                gameLocation.addEntity(location.getEntity(step.getSymbol()));
+                location.removeEntity(step.getTarget());
+                found = true;
             }
         }
+        // the entity may be held by another shard
+        if (!found && shardCoordinator != null && !gameLocation.isEntityPresent(step.getSymbol())) {
+            shardTransfers.add(ShardTransfer.take(step.getTarget(), true, gameLocation.getLocationName()));
+        }
     }
 
     /**
@@ -632,41 +1038,60 @@ public class CommandHandler {
      * @param commandAction Action to be performed
      * @param gamePlayer Player performing the action
      * @param gameLocation Current location of the player
+     * @param trigger Trigger the command was dispatched on, reported in the transfer event
      */
-    private void consumeEntity( GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation) {
-        HashSet<String> consumed = commandAction.getConsumed();
-        if(consumed != null && !consumed.isEmpty()) {
-            for (String item : consumed) {
-                // If health is consumed
-                if (item.equalsIgnoreCase("health")) {
+    private void consumeEntity( GameAction commandAction, GamePlayer gamePlayer, GameLocation gameLocation, String trigger) {
+        EntityTransferEvent transferEvent = new EntityTransferEvent();
+        transferEvent.begin();
+        List<ActionPlan.Step> steps = commandAction.getPlan().getConsumeSteps();
+        for (ActionPlan.Step step : steps) {
+            switch (step.getKind()) {
+                case HEALTH:
                     this.consumePlayerHealth(gamePlayer, gameLocation);
+                    break;
+                case PATH:
+                    this.removePathBetween(gameLocation.getSymbol(), step.getSymbol());
+                    break;
+                default:
+                    this.storeConsumedEntity(step, gamePlayer);
+                    break;
+            }
+        }
+        transferEvent.setDirection("consume");
+        transferEvent.setEntities(steps.size());
+        transferEvent.complete(worldName, gamePlayer.getName(), trigger, commandAction.getLabel(), "OK");
+    }
+
+    /**
+     * Moves a consumed entity from player's inventory, or else from the first location
+     * holding it, to the storeroom
+     * @param step Entity step of the action plan
+     * @param gamePlayer Player performing the action
+     */
+    private void storeConsumedEntity(ActionPlan.Step step, GamePlayer gamePlayer) {
+        // see if the item is present in player's inventory
+        if (gamePlayer.isArtefactPresentInInventory(step.getSymbol())) {
+            this.storeEntity(gamePlayer.getArtefact(step.getSymbol()));
+            gamePlayer.removeArtefactFromInventory(step.getTarget());
+            return;
+        }
+        // else the consumed item is an entity in a location in map
+        for (GameLocation location : StoredLocationMap.holdersOf(gameLocations, step.getSymbol())) {
+            if (!location.getLocationName().equalsIgnoreCase("storeroom")
+                    && location.isEntityPresent(step.getSymbol())) {
+                GameEntity entity = location.getEntity(step.getSymbol());
+                this.storeEntity(entity);
+                location.removeEntity(step.getTarget());
+                if (worldClock != null) {
+                    worldClock.entityConsumed(entity, location.getLocationName());
                 }
-                // see if the item is present in player's inventory
-                else if (gamePlayer.isArtefactPresentInInventory(item)) {
-                    gameLocations.get("storeroom").addArtefact(gamePlayer.getArtefact(item));
-                    gamePlayer.removeArtefactFromInventory(item);
-                }
-                // else if consumed entity is a location
-                else if (gameLocations.keySet().stream().map(String::toLowerCase)
-                        .collect(Collectors.toSet()).contains(item.toLowerCase())
-                        && !item.equalsIgnoreCase("storeroom")) {
-                    this.removePathBetween(gameLocation.getLocationName(), item);
-                }
-                // else if consumed item is entity in a location in map
-                else {
-                    if(!gameLocations.isEmpty()) {
-                        for (GameLocation location : gameLocations.values()) {
-                            if (!location.getLocationName().equalsIgnoreCase("storeroom")
-                                    && location.isEntityPresent(item)) {
-                                gameLocations.get("storeroom").addEntity(location.getEntity(item));
-                                location.removeEntity(item);
-                                break;
-                            }
-                        }
-                    }
-                }
+                return;
             }
         }
+        // the entity may be held by another shard
+        if (shardCoordinator != null) {
+            shardTransfers.add(ShardTransfer.take(step.getTarget(), false, "storeroom"));
+        }
     }
 
     /**
@@ -676,17 +1101,39 @@ public class CommandHandler {
      */
     private void consumePlayerHealth(GamePlayer gamePlayer, GameLocation gameLocation) {
         gamePlayer.decrementHealth();
+        if (worldClock != null) {
+            worldClock.healthLost(gamePlayer);
+        }
         if(gamePlayer.getHealth() == 0){
             // drop everything
-            gameLocation.getArtefacts().addAll(gamePlayer.getArtefacts());
+            for (GameArtefact artefact : gamePlayer.getArtefacts()) {
+                gameLocation.addArtefact(artefact);
+            }
             gameLocation.removePlayer(gamePlayer.getName());
             gamePlayer.removeAllArtefacts();
             //respawn
             gamePlayer.checkHealthAndRespawn(playersStartLocation);
+            if (shardCoordinator != null && !shardCoordinator.isLocal(playersStartLocation)) {
+                // if the start location's node refuses the player, it respawns where it died
+                this.leaveForShard(gamePlayer, gameLocation, playersStartLocation);
+                return;
+            }
             GameLocation startLocation = gameLocations.get(playersStartLocation);
             if(startLocation != null) {
                 startLocation.addPlayer(gamePlayer.getName());
             }
         }
     }
+
+    /**
+     * Moves an entity to the storeroom, which may be owned by another shard
+     * @param entity Entity to store
+     */
+    private void storeEntity(GameEntity entity) {
+        if (shardCoordinator != null && !shardCoordinator.isLocal("storeroom")) {
+            shardTransfers.add(ShardTransfer.put(entity, "storeroom"));
+            return;
+        }
+        gameLocations.get("storeroom").addEntity(entity);
+    }
 }
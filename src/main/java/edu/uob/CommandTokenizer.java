@@ -0,0 +1,129 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * Splits lower case command text into words in one pass and matches keywords of one or
+ * more words against them. Words are runs of ASCII letters, digits and underscores, the
+ * characters a regex word boundary separates, and are kept as offsets into the text.
+ * A keyword of several words only matches the same separators it is written with.
+ * Matching is greedy: at each word the longest keyword starting there wins. Matched text
+ * is marked consumed so that later dictionaries only see what is left.
+ */
+public final class CommandTokenizer {
+    private final String text;
+
+    //Index of the first character of every word
+    private final BitSet wordStarts = new BitSet();
+
+    //Index after the last character of every word
+    private final BitSet wordEnds = new BitSet();
+
+    //Characters belonging to matched keywords
+    private final BitSet consumed = new BitSet();
+
+    private final KeywordView view;
+    private int tokenCount;
+
+    /**
+     * Finds the words of a text
+     * @param text Lower case command text
+     */
+    CommandTokenizer(String text) {
+        this.text = text;
+        this.view = new KeywordView(text);
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean wordChar = CommandTokenizer.isWordChar(text.charAt(i));
+            if (wordChar && !inWord) {
+                wordStarts.set(i);
+                tokenCount++;
+            } else if (!wordChar && inWord) {
+                wordEnds.set(i);
+            }
+            inWord = wordChar;
+        }
+        if (inWord) {
+            wordEnds.set(text.length());
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Finds the keywords of a dictionary in the words not consumed yet and consumes them
+     * @param index Dictionary to match
+     * @param found Receives each keyword found, as spelt in the dictionary
+     */
+    void match(KeywordIndex index, HashSet<String> found) {
+        int start = wordStarts.nextSetBit(0);
+        while (start >= 0) {
+            int matchEnd = -1;
+            if (!consumed.get(start)) {
+                matchEnd = this.longestMatchAt(start, index, found);
+            }
+            if (matchEnd >= 0) {
+                consumed.set(start, matchEnd);
+                start = wordStarts.nextSetBit(matchEnd);
+            } else {
+                start = wordStarts.nextSetBit(start + 1);
+            }
+        }
+    }
+
+    /**
+     * Tries the keywords of up to the index's maximum number of words starting at a word,
+     * longest first
+     * @param start Index of the first character of the word
+     * @param index Dictionary to match
+     * @param found Receives the keyword found
+     * @return Index after the match, or -1 if no keyword starts here
+     */
+    private int longestMatchAt(int start, KeywordIndex index, HashSet<String> found) {
+        // walk forward over the following unconsumed words to the end of the longest candidate
+        int farthest = wordEnds.nextSetBit(start + 1);
+        for (int words = 1; words < index.getMaxWords(); words++) {
+            int nextStart = wordStarts.nextSetBit(farthest);
+            if (nextStart < 0 || consumed.get(nextStart)) {
+                break;
+            }
+            farthest = wordEnds.nextSetBit(nextStart + 1);
+        }
+        // then try the candidates back to the single word, each through the same view
+        for (int end = farthest; end > start; end = wordEnds.previousSetBit(end - 1)) {
+            String keyword = index.lookup(view.reset(start, end));
+            if (keyword != null) {
+                found.add(keyword);
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Text left once all matched keywords are removed
+     * @return Text without consumed characters
+     */
+    String residual() {
+        if (consumed.isEmpty()) {
+            return text;
+        }
+        StringBuilder residual = new StringBuilder(text.length());
+        int from = 0;
+        int consumedStart = consumed.nextSetBit(0);
+        while (consumedStart >= 0) {
+            residual.append(text, from, consumedStart);
+            from = consumed.nextClearBit(consumedStart);
+            consumedStart = consumed.nextSetBit(from);
+        }
+        residual.append(text, from, text.length());
+        return residual.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package edu.uob;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flyweight store of entity and location descriptions. Generated worlds repeat the same
+ * few descriptions for thousands of entities, and each parse or transfer would otherwise
+ * give every entity its own copy; the pool hands out one shared instance per distinct
+ * text instead. Descriptions are never removed, as they only come from world files and
+ * from entities of those worlds moving between nodes.
+ */
+// singleton class
+public class DescriptionPool {
+    private static final DescriptionPool instance = new DescriptionPool();
+
+    //Shared instance of every description seen, keyed by itself
+    private final ConcurrentHashMap<String, String> descriptions = new ConcurrentHashMap<>();
+
+    private DescriptionPool() {}
+
+    public static DescriptionPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Retrieves the shared instance of a description
+     * @param description Description text, may be null
+     * @return Instance equal to the text, the same one for every equal text
+     */
+    public String share(String description) {
+        if (description == null) {
+            return null;
+        }
+        String shared = descriptions.putIfAbsent(description, description);
+        if (shared == null) {
+            return description;
+        }
+        return shared;
+    }
+
+    /**
+     * Number of distinct descriptions held
+     * @return Pool size
+     */
+    public int size() {
+        return descriptions.size();
+    }
+}
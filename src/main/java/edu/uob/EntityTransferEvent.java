@@ -0,0 +1,24 @@
+package edu.uob;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.uob.EntityTransfer")
+@Label("Entity Transfer")
+@Description("Entities produced into or consumed from the world by a custom action")
+public final class EntityTransferEvent extends GameEvent {
+    @Label("Direction")
+    protected String direction;
+
+    @Label("Entities")
+    protected int entities;
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
+    public void setEntities(int entities) {
+        this.entities = entities;
+    }
+}
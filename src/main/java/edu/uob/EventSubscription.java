@@ -0,0 +1,89 @@
+package edu.uob;
+
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Events waiting to be pushed to one subscribed player. Worlds offer events without ever
+ * blocking; a subscriber that does not keep up loses the events that do not fit in its
+ * queue and is told how many it missed with the next batch.
+ */
+public class EventSubscription {
+    //Events a subscriber may fall behind by before further events are dropped
+    static final int DEFAULT_CAPACITY = Integer.getInteger("stag.events.queue", 64);
+
+    //Lower case name of the subscribed player
+    private final String playerKey;
+
+    private final LinkedBlockingQueue<String> pending;
+
+    //Events dropped since the last batch
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean open = true;
+
+    EventSubscription(String playerKey, int capacity) {
+        this.playerKey = playerKey;
+        this.pending = new LinkedBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    public String getPlayerKey() {
+        return playerKey;
+    }
+
+    /**
+     * Queues an event without blocking
+     * @param event Event line
+     * @return True if the event was queued, false if it was dropped
+     */
+    boolean offer(String event) {
+        if (open && pending.offer(event)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Waits for events and takes all of those queued, so a burst of events is written in
+     * one go
+     * @param timeoutMillis Longest time to wait for the first event
+     * @return Event lines ending in a line separator, or null if none arrived in time
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    String awaitBatch(long timeoutMillis) throws InterruptedException {
+        String first = pending.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return null;
+        }
+        LinkedList<String> events = new LinkedList<>();
+        events.add(first);
+        pending.drainTo(events);
+        StringBuilder batch = new StringBuilder();
+        long missed = dropped.getAndSet(0);
+        if (missed > 0) {
+            batch.append("MISSED ").append(missed).append(System.lineSeparator());
+        }
+        for (String event : events) {
+            batch.append(event).append(System.lineSeparator());
+        }
+        return batch.toString();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Stops the subscription; further events are dropped
+     */
+    void close() {
+        open = false;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.stream.Collectors;
 
 // singleton class
@@ -61,7 +62,7 @@ public class FileParser {
                 first = false;
             }
             GameLocation gameLocation = new GameLocation(locationName, locationDescription);
-            this.parseEntitiesOfLocation(location, gameLocation, locationName);
+            this.parseEntitiesOfLocation(location, gameLocation);
             gameLocations.put(locationName, gameLocation);
         }
         this.ensureStoreroomExists(gameLocations);
@@ -72,9 +73,8 @@ public class FileParser {
      * Retrieves entities from entities file for a specific location and adds them to input game location.
      * @param location Graph to read the file
      * @param gameLocation Game location object to hold the retrieved data
-     * @param locationName Name of the location to be provided to newly created entities to set their location
      */
-    private void parseEntitiesOfLocation(Graph location, GameLocation gameLocation, String locationName){
+    private void parseEntitiesOfLocation(Graph location, GameLocation gameLocation){
         // Iterate through all the entity categories inside a location
         if(location.getSubgraphs() != null && !location.getSubgraphs().isEmpty()) {
             for (Graph entity : location.getSubgraphs()) {
@@ -85,13 +85,15 @@ public class FileParser {
                         String itemDescription = item.getAttribute("description");
                         switch (graphName) {
                             case "characters":
-                                gameLocation.addCharacter(new GameCharacter(itemName, itemDescription, locationName));
+                                GameCharacter character = new GameCharacter(itemName, itemDescription);
+                                character.setBehaviour(item.getAttribute("behaviour"));
+                                gameLocation.addCharacter(character);
                                 break;
                             case "artefacts":
-                                gameLocation.addArtefact(new GameArtefact(itemName, itemDescription, locationName));
+                                gameLocation.addArtefact(new GameArtefact(itemName, itemDescription));
                                 break;
                             case "furniture":
-                                gameLocation.addFurniture(new GameFurniture(itemName, itemDescription, locationName));
+                                gameLocation.addFurniture(new GameFurniture(itemName, itemDescription));
                                 break;
                         }
                     }
@@ -133,8 +135,9 @@ public class FileParser {
      * Parses actions file provided to the GameServer
      * @param actionsFile Name of action file
      * @param gameActions Set of actions to be filled
+     * @param problems Receives a description of every malformed value in the file
      */
-    public void parseActionsFile(File actionsFile, HashMap<String, HashSet<GameAction>> gameActions) throws IOException, SAXException, ParserConfigurationException {
+    public void parseActionsFile(File actionsFile, HashMap<String, HashSet<GameAction>> gameActions, LinkedList<String> problems) throws IOException, SAXException, ParserConfigurationException {
         DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
         Document document = builder.parse(actionsFile.getAbsolutePath());
         Element root = document.getDocumentElement();
@@ -151,6 +154,8 @@ public class FileParser {
                 this.parseConsumedEntities(gameAction, action.getElementsByTagName("consumed"));
                 // Add produced
                 this.parseProducedEntities(gameAction, action.getElementsByTagName("produced"));
+                // Add optional preconditions
+                this.parseConditions(gameAction, action.getElementsByTagName("conditions"), problems);
                 //Get action narration
                 this.parseNarration(gameAction, action.getElementsByTagName("narration"));
                 // Add game action to list of game actions
@@ -231,6 +236,86 @@ public class FileParser {
         }
     }
 
+    /**
+     * Adds the optional preconditions of an action, e.g.
+     * &lt;health&gt;&lt;max&gt;2&lt;/max&gt;&lt;/health&gt;,
+     * &lt;absent&gt;&lt;entity&gt;elf&lt;/entity&gt;&lt;/absent&gt; or
+     * &lt;present&gt;&lt;entity&gt;elf&lt;/entity&gt;&lt;location&gt;cellar&lt;/location&gt;&lt;/present&gt;
+     * @param gameAction Newly created action
+     * @param conditions Conditions from actions file
+     * @param problems Receives a description of every malformed number
+     */
+    private void parseConditions(GameAction gameAction, NodeList conditions, LinkedList<String> problems) {
+        for (int j = 0; j < conditions.getLength(); j++) {
+            NodeList children = conditions.item(j).getChildNodes();
+            for (int k = 0; k < children.getLength(); k++) {
+                if (!(children.item(k) instanceof Element)) {
+                    continue;
+                }
+                Element condition = (Element) children.item(k);
+                switch (condition.getTagName()) {
+                    case "health":
+                        int minimum = this.parseNumber(gameAction, condition, "min", 0, problems);
+                        int maximum = this.parseNumber(gameAction, condition, "max", Integer.MAX_VALUE, problems);
+                        gameAction.addCondition(ActionCondition.health(minimum, maximum));
+                        break;
+                    case "present":
+                    case "absent":
+                        String entity = this.parseText(condition, "entity");
+                        if (entity != null) {
+                            boolean present = condition.getTagName().equals("present");
+                            gameAction.addCondition(ActionCondition.placement(present, entity, this.parseText(condition, "location")));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the trimmed text of the first child element with a tag name
+     * @param element Parent element
+     * @param tagName Tag name of the child
+     * @return Text or null if there is no such child
+     */
+    private String parseText(Element element, String tagName) {
+        NodeList children = element.getElementsByTagName(tagName);
+        if (children.getLength() == 0) {
+            return null;
+        }
+        return children.item(0).getTextContent().trim();
+    }
+
+    /**
+     * Reads a whole number from the first child element with a tag name. A child that is
+     * not a whole number is reported as a problem, so that a typo does not silently change
+     * what the condition checks.
+     * @param gameAction Action the number belongs to
+     * @param element Parent element
+     * @param tagName Tag name of the child
+     * @param fallback Value used if there is no such child or it is not a number
+     * @param problems Receives a description of a malformed number
+     * @return Number read
+     */
+    private int parseNumber(GameAction gameAction, Element element, String tagName, int fallback, LinkedList<String> problems) {
+        String text = this.parseText(element, tagName);
+        if (text == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(text);
+        }
+        catch (NumberFormatException e) {
+            StringBuilder problem = new StringBuilder();
+            problem.append("Action '").append(gameAction.getLabel()).append("' has a ").append(element.getTagName())
+                    .append(" condition with ").append(tagName).append(" '").append(text).append("', which is not a whole number");
+            problems.add(problem.toString());
+            return fallback;
+        }
+    }
+
     /**
      * Adds action narration from action.xml file to newly created action object
      * @param gameAction Newly created action
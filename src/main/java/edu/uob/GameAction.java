@@ -1,6 +1,9 @@
 package edu.uob;
 
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.TreeSet;
 
 public class GameAction
 {
@@ -9,6 +12,16 @@ public class GameAction
     private final HashSet<String> consumedItems;
     private final HashSet<String> producedItems;
     private String narration;
+    private String label;
+
+    //Symbol ids of the subjects, filled in once the symbol table of the world is built
+    private final BitSet subjectSymbols = new BitSet();
+
+    //Preconditions that must hold for the action to be performed, empty for unconditional actions
+    private final LinkedList<ActionCondition> conditions = new LinkedList<>();
+
+    //Produced and consumed effects resolved against the world, set once the world is loaded
+    private ActionPlan plan;
 
     GameAction(){
         triggers = new HashSet<String>();
@@ -50,6 +63,22 @@ public class GameAction
         producedItems.add(produced);
     }
 
+    /**
+     * Adds a precondition of action
+     * @param condition Condition that must hold
+     */
+    void addCondition(ActionCondition condition) {
+        conditions.add(condition);
+    }
+
+    /**
+     * Get the preconditions of this action
+     * @return conditions, empty if the action is unconditional
+     */
+    public LinkedList<ActionCondition> getConditions() {
+        return conditions;
+    }
+
     /**
      * Set narration for this action
      * @param narration Narration text
@@ -88,9 +117,59 @@ public class GameAction
         return producedItems;
     }
 
+    /**
+     * Resolves the subjects of this action to ids of a symbol table, interning any that
+     * are not entity or location names
+     * @param symbols Symbol table of the world
+     */
+    void resolveSymbols(SymbolTable symbols) {
+        subjectSymbols.clear();
+        for (String subject : subjects) {
+            subjectSymbols.set(symbols.intern(subject));
+        }
+    }
+
+    /**
+     * Get symbol ids of the subjects of this action. The set must not be modified.
+     * @return subject ids
+     */
+    public BitSet getSubjectSymbols() {
+        return subjectSymbols;
+    }
+
+    void setPlan(ActionPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Get the compiled effects of this action
+     * @return Plan of produce and consume steps
+     */
+    public ActionPlan getPlan() {
+        return plan;
+    }
+
     /**
      * Get narration for this action
      * @return Narration text
      */
     public String getNarration() { return narration; }
+
+    /**
+     * Get a short, stable label for this action made of its first trigger and its subjects
+     * @return Action label
+     */
+    public String getLabel() {
+        if (label == null) {
+            StringBuilder stringBuilder = new StringBuilder();
+            if (!triggers.isEmpty()) {
+                stringBuilder.append(new TreeSet<String>(triggers).first());
+            }
+            for (String subject : new TreeSet<String>(subjects)) {
+                stringBuilder.append(' ').append(subject);
+            }
+            label = stringBuilder.toString();
+        }
+        return label;
+    }
 }
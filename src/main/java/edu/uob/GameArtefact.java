@@ -1,7 +1,7 @@
 package edu.uob;
 
 public class GameArtefact extends GameEntity {
-    GameArtefact(String name, String description, String location) {
-        super(name, description, location);
+    GameArtefact(String name, String description) {
+        super(name, description);
     }
 }
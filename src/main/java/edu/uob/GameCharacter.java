@@ -1,7 +1,26 @@
 package edu.uob;
 
 public class GameCharacter extends GameEntity{
-    GameCharacter(String name, String description, String location){
-        super(name, description, location);
+    //How the character moves as given in the entities file, e.g. "wander 5", null if it stays put
+    private String behaviour;
+
+    GameCharacter(String name, String description){
+        super(name, description);
+    }
+
+    /**
+     * Retrieves how the character moves around the world
+     * @return behaviour specification or null if the character stays put
+     */
+    public String getBehaviour() {
+        return behaviour;
+    }
+
+    /**
+     * Sets how the character moves around the world
+     * @param behaviour behaviour specification or null
+     */
+    void setBehaviour(String behaviour) {
+        this.behaviour = behaviour;
     }
 }
@@ -3,14 +3,20 @@ package edu.uob;
 public class GameEntity
 {
     protected final String name;
+
+    //Shared with every other entity of the same description, see DescriptionPool
     protected final String description;
-    protected String location;
 
-    public GameEntity(String name, String description, String location)
+    //Id of the entity's name in the symbol table of its world, NO_SYMBOL until resolved
+    private int symbol = SymbolTable.NO_SYMBOL;
+
+    //Id of the location the entity was last placed at, NO_SYMBOL until placed at a resolved location
+    private int locationSymbol = SymbolTable.NO_SYMBOL;
+
+    public GameEntity(String name, String description)
     {
         this.name = name;
-        this.description = description;
-        this.location = location;
+        this.description = DescriptionPool.getInstance().share(description);
     }
 
     /**
@@ -32,18 +38,34 @@ public class GameEntity
     }
 
     /**
-     * Retrieves current location name of this entity
-     * @return location name
+     * Retrieves the id of this entity's name in the symbol table of its world
+     * @return symbol id or NO_SYMBOL if the name is not interned
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Sets the id of this entity's name in the symbol table of its world
+     * @param symbol symbol id
+     */
+    public void setSymbol(int symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Retrieves the id of the location this entity was last placed at
+     * @return location symbol id or NO_SYMBOL if unknown
      */
-    public String getLocation(){
-        return location;
+    public int getLocationSymbol() {
+        return locationSymbol;
     }
 
     /**
-     * Sets location of this entity
-     * @param location location name
+     * Sets the id of the location of this entity
+     * @param locationSymbol location symbol id
      */
-    public void setLocation(String location){
-        this.location = location;
+    void setLocationSymbol(int locationSymbol) {
+        this.locationSymbol = locationSymbol;
     }
 }
@@ -0,0 +1,76 @@
+package edu.uob;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base class of all Flight Recorder events emitted by the game engine. Every event
+ * carries the world, player, trigger, action and outcome it relates to so that
+ * latency spikes can be linked back to specific actions and worlds.
+ */
+@Category("STAG")
+public abstract class GameEvent extends Event {
+    @Label("World")
+    protected String world;
+
+    @Label("Player")
+    protected String player;
+
+    @Label("Trigger")
+    protected String trigger;
+
+    @Label("Action")
+    protected String action;
+
+    @Label("Outcome")
+    protected String outcome;
+
+    /**
+     * Ends the event and, if recording is enabled for it, fills in its context and commits it
+     * @param world Name of the world the event happened in
+     * @param player Name of the player who issued the command
+     * @param trigger Trigger of the command, if known
+     * @param action Label of the resolved action, if known
+     * @param outcome "OK" or the error reported to the player
+     */
+    public void complete(String world, String player, String trigger, String action, String outcome) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.world = world;
+            this.player = player;
+            this.trigger = trigger;
+            this.action = action;
+            this.outcome = outcome;
+            this.commit();
+        }
+    }
+
+    public void setWorld(String world) {
+        this.world = world;
+    }
+
+    public void setPlayer(String player) {
+        this.player = player;
+    }
+
+    public void setTrigger(String trigger) {
+        this.trigger = trigger;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public String getAction() {
+        return action;
+    }
+}
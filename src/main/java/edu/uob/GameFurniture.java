@@ -1,7 +1,7 @@
 package edu.uob;
 
 public class GameFurniture extends GameEntity {
-    GameFurniture(String name, String description, String location) {
-        super(name, description, location);
+    GameFurniture(String name, String description) {
+        super(name, description);
     }
 }
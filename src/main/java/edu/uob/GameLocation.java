@@ -1,19 +1,75 @@
 package edu.uob;
 
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 
 public class GameLocation {
     private final String locationName;
     private final String locationDescription;
-    private final HashSet<GameCharacter> characters = new HashSet<>();
-    private final HashSet<GameArtefact> artefacts = new HashSet<>();
-    private final HashSet<GameFurniture> furnitures = new HashSet<>();
-    private final HashSet<String> players = new HashSet<>();
+
+    //Id of the location name in the symbol table of its world
+    private int symbol = SymbolTable.NO_SYMBOL;
+
+    //Entities here in the order they arrived, in arrays that grow from a single slot, which
+    //costs a few bytes per entity where hash sets cost a node and a table slot each. Characters
+    //move between locations every few ticks, so they pay for a linked hash set to leave in O(1).
+    private LinkedHashSet<GameCharacter> characters = new LinkedHashSet<>(0);
+    private ArrayDeque<GameArtefact> artefacts = new ArrayDeque<>(0);
+    private ArrayDeque<GameFurniture> furnitures = new ArrayDeque<>(0);
+    private HashSet<String> players = new HashSet<>();
+
+    //Symbol ids of the characters, artefacts and furniture here, kept in step with the sets
+    private BitSet entitySymbols = new BitSet();
+
+    //Location of the shared template world this location is an instance of, null if it owns its contents
+    private final GameLocation base;
+
+    //Which of the sets are still shared with the base location and must be copied before a write
+    private boolean sharedCharacters;
+    private boolean sharedArtefacts;
+    private boolean sharedFurnitures;
+    private boolean sharedPlayers;
+    private boolean sharedSymbols;
+
+    //Whether the location changed since its snapshot was last published
+    private boolean changed;
+
+    //Locations of the world changed since the last publish, which this location joins on its first change
+    private LinkedList<GameLocation> changedLocations;
 
     GameLocation(String locationName, String locationDescription) {
         this.locationName = locationName;
-        this.locationDescription = locationDescription;
+        this.locationDescription = DescriptionPool.getInstance().share(locationDescription);
+        this.base = null;
+    }
+
+    /**
+     * Creates a copy-on-write instance of a template location. The instance shares the
+     * contents of the base until it is first changed, and each set is copied separately,
+     * so an instance only pays for the sets it actually modifies. The base must not be
+     * modified while instances of it exist.
+     * @param base Location of the template world
+     */
+    GameLocation(GameLocation base) {
+        this.locationName = base.locationName;
+        this.locationDescription = base.locationDescription;
+        this.symbol = base.symbol;
+        this.base = base;
+        this.characters = base.characters;
+        this.artefacts = base.artefacts;
+        this.furnitures = base.furnitures;
+        this.players = base.players;
+        this.entitySymbols = base.entitySymbols;
+        this.sharedCharacters = true;
+        this.sharedArtefacts = true;
+        this.sharedFurnitures = true;
+        this.sharedPlayers = true;
+        this.sharedSymbols = true;
     }
 
     public String getLocationName() {
@@ -23,19 +79,156 @@ public class GameLocation {
         return locationDescription;
     }
 
+    public int getSymbol() {
+        return symbol;
+    }
+
+    void setSymbol(int symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Makes the location report its changes to its world, which publishes a new snapshot
+     * of every changed location once the running command has finished
+     * @param changedLocations Locations of the world changed since the last publish
+     */
+    void trackChanges(LinkedList<GameLocation> changedLocations) {
+        this.changedLocations = changedLocations;
+    }
+
+    /**
+     * Records a change of the contents or of the paths leading away from this location
+     */
+    void markChanged() {
+        if (changed) {
+            return;
+        }
+        changed = true;
+        if (changedLocations != null) {
+            changedLocations.add(this);
+        }
+    }
+
+    /**
+     * Records that the current state of the location has been published
+     */
+    void markPublished() {
+        changed = false;
+    }
+
+    /**
+     * Checks whether the location has changed since it was last published
+     * @return True if a change is waiting to be published
+     */
+    boolean hasUnpublishedChanges() {
+        return changed;
+    }
+
+    /**
+     * Checks whether this location still shares all of its contents with its template location
+     * @return True if no set has been copied yet
+     */
+    public boolean isPristineInstance() {
+        return base != null && sharedCharacters && sharedArtefacts && sharedFurnitures && sharedPlayers && sharedSymbols;
+    }
+
+    /**
+     * Records the location of an entity placed here, in an instance location as in any other
+     * @param entity Entity placed at this location
+     */
+    private void claimEntity(GameEntity entity) {
+        entity.setLocationSymbol(symbol);
+        if (entity.getSymbol() != SymbolTable.NO_SYMBOL && !entitySymbols.get(entity.getSymbol())) {
+            this.writableSymbols().set(entity.getSymbol());
+        }
+    }
+
+    /**
+     * Clears the bit of a symbol once no entity with it is left here
+     * @param symbol symbol id of a removed entity
+     */
+    private void refreshSymbol(int symbol) {
+        if (!this.isEntityPresent(symbol)) {
+            return;
+        }
+        if (this.getEntity(symbol) == null) {
+            this.writableSymbols().clear(symbol);
+        }
+    }
+
+    private LinkedHashSet<GameCharacter> writableCharacters() {
+        this.markChanged();
+        if (sharedCharacters) {
+            characters = new LinkedHashSet<>(characters);
+            sharedCharacters = false;
+        }
+        return characters;
+    }
+
+    private ArrayDeque<GameArtefact> writableArtefacts() {
+        this.markChanged();
+        if (sharedArtefacts) {
+            artefacts = new ArrayDeque<>(artefacts);
+            sharedArtefacts = false;
+        }
+        return artefacts;
+    }
+
+    private ArrayDeque<GameFurniture> writableFurnitures() {
+        this.markChanged();
+        if (sharedFurnitures) {
+            furnitures = new ArrayDeque<>(furnitures);
+            sharedFurnitures = false;
+        }
+        return furnitures;
+    }
+
+    /**
+     * Recomputes the symbol bits from the entities here, for entities whose symbols were
+     * assigned after they were placed
+     */
+    void rebuildSymbols() {
+        BitSet symbols = new BitSet();
+        for (GameEntity entity : this.getEntities()) {
+            if (entity.getSymbol() != SymbolTable.NO_SYMBOL) {
+                symbols.set(entity.getSymbol());
+            }
+            entity.setLocationSymbol(symbol);
+        }
+        entitySymbols = symbols;
+        sharedSymbols = false;
+    }
+
+    private BitSet writableSymbols() {
+        this.markChanged();
+        if (sharedSymbols) {
+            entitySymbols = (BitSet) entitySymbols.clone();
+            sharedSymbols = false;
+        }
+        return entitySymbols;
+    }
+
+    private HashSet<String> writablePlayers() {
+        this.markChanged();
+        if (sharedPlayers) {
+            players = new HashSet<>(players);
+            sharedPlayers = false;
+        }
+        return players;
+    }
+
 
     /**
      * Adds a new entity to list of entities based on its type
      * @param entity GameEntity object
      */
     public void addEntity(GameEntity entity) {
-        entity.setLocation(locationName);
         if (entity instanceof GameCharacter) {
-            characters.add((GameCharacter) entity);
+            this.addCharacter((GameCharacter) entity);
         } else if (entity instanceof GameArtefact) {
-            artefacts.add((GameArtefact) entity);
+            this.addArtefact((GameArtefact) entity);
         } else if (entity instanceof GameFurniture) {
-            furnitures.add((GameFurniture) entity);
+            this.addFurniture((GameFurniture) entity);
         }
     }
 
@@ -44,8 +237,11 @@ public class GameLocation {
      * @param character GameCharacter object
      */
     public void addCharacter(GameCharacter character){
-        character.setLocation(locationName);
-        this.characters.add(character);
+        if (this.isHeld(character, characters)) {
+            return;
+        }
+        this.claimEntity(character);
+        this.writableCharacters().add(character);
     }
 
     /**
@@ -53,8 +249,11 @@ public class GameLocation {
      * @param artefact GameArtefact object
      */
     public void addArtefact(GameArtefact artefact){
-        artefact.setLocation(locationName);
-        this.artefacts.add(artefact);
+        if (this.isHeld(artefact, artefacts)) {
+            return;
+        }
+        this.claimEntity(artefact);
+        this.writableArtefacts().add(artefact);
     }
 
     /**
@@ -62,8 +261,26 @@ public class GameLocation {
      * @param furniture GameFurniture object
      */
     public void addFurniture(GameFurniture furniture){
-        furniture.setLocation(locationName);
-        this.furnitures.add(furniture);
+        if (this.isHeld(furniture, furnitures)) {
+            return;
+        }
+        this.claimEntity(furniture);
+        this.writableFurnitures().add(furniture);
+    }
+
+    /**
+     * Checks whether an entity is already here, scanning the entities only when the symbol
+     * bits say it may be. Entities without a symbol are only added while their world is
+     * parsed, once each, so they are never searched for.
+     * @param entity Entity about to be added
+     * @param members Entities of the same kind here
+     * @return True if the entity is here
+     */
+    private boolean isHeld(GameEntity entity, Collection<? extends GameEntity> members) {
+        if (!this.isEntityPresent(entity.getSymbol())) {
+            return false;
+        }
+        return members.contains(entity);
     }
 
     /**
@@ -71,7 +288,7 @@ public class GameLocation {
      * @param playerName Player name
      */
     public void addPlayer(String playerName){
-        this.players.add(playerName);
+        this.writablePlayers().add(playerName);
     }
 
     /**
@@ -87,35 +304,44 @@ public class GameLocation {
     }
 
     /**
-     * Retrieves set of characters present at the location
-     * @return Set of character
+     * Retrieves characters present at the location. The collection must not be modified directly.
+     * @return Characters
      */
-    public HashSet<GameCharacter> getCharacters(){
+    public Collection<GameCharacter> getCharacters(){
         return characters;
     }
 
     /**
-     * Retrieves list of artefacts present at the location
-     * @return Set of artefacts
+     * Retrieves list of artefacts present at the location. The collection must not be modified directly.
+     * @return Artefacts
      */
-    public HashSet<GameArtefact> getArtefacts(){
+    public Collection<GameArtefact> getArtefacts(){
         return artefacts;
     }
 
     /**
-     * Retrieves list of furniture items present at the location
-     * @return Set of furniture items
+     * Retrieves list of furniture items present at the location. The collection must not be modified directly.
+     * @return Furniture items
      */
-    public HashSet<GameFurniture> getFurnitures(){
+    public Collection<GameFurniture> getFurnitures(){
         return furnitures;
     }
 
     /**
-     * Retrieves list of player present at the location
+     * Retrieves list of player present at the location. The set must not be modified directly.
      * @return Set of player names
      */
     public HashSet<String> getPlayers(){return players;}
 
+    /**
+     * Retrieves symbol ids of all the entities present at the location. The set is live and
+     * must not be modified.
+     * @return Set of entity ids
+     */
+    public BitSet getEntitySymbols() {
+        return entitySymbols;
+    }
+
     /**
      * Retrieves names of all the entities present at the location
      * @return Set of names of entities
@@ -170,6 +396,42 @@ public class GameLocation {
         return names;
     }
 
+    /**
+     * Retrieves the entity with a symbol id
+     * @param symbol symbol id of the entity name
+     * @return GameEntity object or null if it is not here
+     */
+    public GameEntity getEntity(int symbol) {
+        if (!this.isEntityPresent(symbol)) {
+            return null;
+        }
+        for (GameCharacter character : characters) {
+            if (character.getSymbol() == symbol) {
+                return character;
+            }
+        }
+        for (GameArtefact artefact : artefacts) {
+            if (artefact.getSymbol() == symbol) {
+                return artefact;
+            }
+        }
+        for (GameFurniture furniture : furnitures) {
+            if (furniture.getSymbol() == symbol) {
+                return furniture;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an entity with a symbol id is present at the location
+     * @param symbol symbol id of the entity name
+     * @return True if present else false
+     */
+    public boolean isEntityPresent(int symbol) {
+        return symbol != SymbolTable.NO_SYMBOL && entitySymbols.get(symbol);
+    }
+
     /**
      * Checks whether an entity is present at the location
      * @param entityName name of entity
@@ -316,27 +578,50 @@ public class GameLocation {
      */
     public void removeCharacter(String characterName){
         if(this.isCharacterPresent(characterName)) {
-            Iterator<GameCharacter> iterator = characters.iterator();
+            Iterator<GameCharacter> iterator = this.writableCharacters().iterator();
             while (iterator.hasNext()) {
                 GameCharacter character = iterator.next();
                 if (character.getName().equalsIgnoreCase(characterName)) {
                     iterator.remove();
+                    this.refreshSymbol(character.getSymbol());
                 }
             }
         }
     }
 
+    /**
+     * Removes a character without looking it up by name, for characters that move often.
+     * The symbol bits answer whether it is here and the set removes it in constant time.
+     * @param character GameCharacter object
+     * @return True if the character was here
+     */
+    public boolean removeCharacter(GameCharacter character) {
+        if (character.getSymbol() != SymbolTable.NO_SYMBOL && !this.isEntityPresent(character.getSymbol())) {
+            return false;
+        }
+        if (!characters.contains(character)) {
+            return false;
+        }
+        this.writableCharacters().remove(character);
+        // entity names are unique within a world, so no other entity shares the symbol
+        if (character.getSymbol() != SymbolTable.NO_SYMBOL) {
+            this.writableSymbols().clear(character.getSymbol());
+        }
+        return true;
+    }
+
     /**
      * Removes an artefact corresponding to artefact  name
      * @param artefactName name of artefact
      */
     public void removeArtefact(String artefactName){
         if(this.isArtefactPresent(artefactName)) {
-            Iterator<GameArtefact> iterator = artefacts.iterator();
+            Iterator<GameArtefact> iterator = this.writableArtefacts().iterator();
             while (iterator.hasNext()) {
                 GameArtefact artefact = iterator.next();
                 if (artefact.getName().equalsIgnoreCase(artefactName)) {
                     iterator.remove();
+                    this.refreshSymbol(artefact.getSymbol());
                 }
             }
         }
@@ -347,21 +632,44 @@ public class GameLocation {
      * @param furnitureName name of furniture
      */
     public void removeFurniture(String furnitureName){
-        Iterator<GameFurniture> iterator = furnitures.iterator();
+        if(!this.isFurniturePresent(furnitureName)) {
+            return;
+        }
+        Iterator<GameFurniture> iterator = this.writableFurnitures().iterator();
         while (iterator.hasNext()) {
             GameFurniture furniture = iterator.next();
             if (furniture.getName().equalsIgnoreCase(furnitureName)) {
                 iterator.remove();
+                this.refreshSymbol(furniture.getSymbol());
             }
         }
     }
 
+    /**
+     * Removes all characters, artefacts and furniture from the location. Used by a shard
+     * node for the locations another node owns.
+     */
+    public void clearContents() {
+        this.markChanged();
+        characters = new LinkedHashSet<>(0);
+        artefacts = new ArrayDeque<>(0);
+        furnitures = new ArrayDeque<>(0);
+        entitySymbols = new BitSet();
+        sharedCharacters = false;
+        sharedArtefacts = false;
+        sharedFurnitures = false;
+        sharedSymbols = false;
+    }
+
     /**
      * Removes a player corresponding to player name
      * @param playerName name of player
      */
     public void removePlayer(String playerName){
-        Iterator<String> iterator = players.iterator();
+        if(players.isEmpty()) {
+            return;
+        }
+        Iterator<String> iterator = this.writablePlayers().iterator();
         while (iterator.hasNext()) {
             if (iterator.next().equalsIgnoreCase(playerName)) {
                 iterator.remove();
@@ -0,0 +1,335 @@
+package edu.uob;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logger. Callers append records to a bounded lock-free ring buffer and a
+ * single background thread formats and writes them, so the command path never waits on
+ * log I/O. The writer sleeps while the buffer is empty and is woken by the next record. When the buffer is full the record is dropped and counted instead.
+ */
+// singleton class
+public class GameLogger {
+    private static GameLogger instance;
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Slots of the ring buffer, indexed by sequence number modulo capacity
+    private final AtomicReferenceArray<LogRecord> slots;
+    private final int mask;
+
+    // Next sequence to be claimed by a producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // Next sequence to be written by the background writer
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong writtenRecords = new AtomicLong();
+
+    // Every nth record of a level is kept, all others are sampled out
+    private final EnumMap<LogLevel, AtomicInteger> sampleRates = new EnumMap<>(LogLevel.class);
+    private final EnumMap<LogLevel, AtomicLong> sampleCounters = new EnumMap<>(LogLevel.class);
+
+    private final PrintStream output;
+    private final Thread writer;
+
+    // Set while the background writer is parked on an empty buffer, waiting for a producer to wake it
+    private final AtomicBoolean writerParked = new AtomicBoolean();
+    private volatile LogLevel minimumLevel;
+    private volatile boolean running = true;
+
+    public static synchronized GameLogger getInstance() {
+        if (instance == null) {
+            instance = new GameLogger(System.out, DEFAULT_CAPACITY);
+            instance.configureFromSystemProperties();
+            Runtime.getRuntime().addShutdownHook(new ShutdownFlusher(instance));
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a logger writing to the given stream through a ring buffer
+     * @param output Stream the background writer prints to
+     * @param capacity Requested ring buffer size, rounded up to a power of two
+     */
+    GameLogger(PrintStream output, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.output = output;
+        this.minimumLevel = LogLevel.INFO;
+        for (LogLevel level : LogLevel.values()) {
+            sampleRates.put(level, new AtomicInteger(1));
+            sampleCounters.put(level, new AtomicLong());
+        }
+        this.writer = new Thread(new BackgroundWriter(this), "stag-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Reads level and sampling settings from stag.log.level and stag.log.sample.(level) properties
+     */
+    private void configureFromSystemProperties() {
+        String level = System.getProperty("stag.log.level");
+        if (level != null) {
+            this.setMinimumLevel(LogLevel.valueOf(level.trim().toUpperCase()));
+        }
+        for (LogLevel logLevel : LogLevel.values()) {
+            StringBuilder property = new StringBuilder("stag.log.sample.");
+            property.append(logLevel.name().toLowerCase());
+            Integer rate = Integer.getInteger(property.toString());
+            if (rate != null) {
+                this.setSampleRate(logLevel, rate);
+            }
+        }
+    }
+
+    /**
+     * Sets the least severe level that is recorded
+     * @param level Minimum level
+     */
+    public void setMinimumLevel(LogLevel level) {
+        this.minimumLevel = level;
+    }
+
+    /**
+     * Keeps only one of every n records logged at a level
+     * @param level Level to sample
+     * @param everyNth Sampling rate, 1 keeps every record
+     */
+    public void setSampleRate(LogLevel level, int everyNth) {
+        sampleRates.get(level).set(Math.max(1, everyNth));
+    }
+
+    /**
+     * Checks whether records at a level would currently be recorded
+     * @param level Level of the record
+     * @return True if the level is enabled
+     */
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(minimumLevel) >= 0;
+    }
+
+    public void debug(String message, Object argument) {
+        this.log(LogLevel.DEBUG, message, argument);
+    }
+
+    public void info(String message, Object argument) {
+        this.log(LogLevel.INFO, message, argument);
+    }
+
+    public void warn(String message, Object argument) {
+        this.log(LogLevel.WARN, message, argument);
+    }
+
+    public void error(String message, Object argument) {
+        this.log(LogLevel.ERROR, message, argument);
+    }
+
+    /**
+     * Queues a record for the background writer. Formatting of the argument is deferred to the
+     * writer thread, and the call never blocks: a full buffer drops the record.
+     * @param level Level of the record
+     * @param message Fixed message text
+     * @param argument Optional value appended to the message, may be null
+     */
+    public void log(LogLevel level, String message, Object argument) {
+        if (!this.isEnabled(level) || !this.isSampled(level)) {
+            return;
+        }
+        LogRecord record = new LogRecord(level, System.currentTimeMillis(), message, argument);
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                droppedRecords.incrementAndGet();
+                return;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.set((int) (sequence & mask), record);
+                if (writerParked.get() && writerParked.compareAndSet(true, false)) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decides whether a record passes the sampling rate of its level
+     * @param level Level of the record
+     * @return True if the record should be kept
+     */
+    private boolean isSampled(LogLevel level) {
+        int rate = sampleRates.get(level).get();
+        if (rate == 1) {
+            return true;
+        }
+        return sampleCounters.get(level).getAndIncrement() % rate == 0;
+    }
+
+    /**
+     * Writes every record published so far
+     * @return Number of records written
+     */
+    private int drain() {
+        int written = 0;
+        while (true) {
+            long sequence = head.get();
+            int index = (int) (sequence & mask);
+            LogRecord record = slots.get(index);
+            if (record == null) {
+                break;
+            }
+            slots.set(index, null);
+            head.set(sequence + 1);
+            record.writeTo(output);
+            written++;
+        }
+        if (written > 0) {
+            output.flush();
+            writtenRecords.addAndGet(written);
+        }
+        return written;
+    }
+
+    /**
+     * Parks the background writer until a producer publishes a record or the logger is shut
+     * down. The writer announces that it parks before checking the buffer once more, and a
+     * producer checks the announcement after publishing, so a record is never left waiting.
+     */
+    private void awaitRecords() {
+        writerParked.set(true);
+        if (tail.get() == head.get()) {
+            if (running) {
+                LockSupport.park(this);
+            }
+        }
+        else {
+            // a producer has claimed a slot and is about to fill it
+            Thread.onSpinWait();
+        }
+        writerParked.set(false);
+    }
+
+    /**
+     * Waits until everything logged before this call has been written, or the timeout expires
+     * @param timeoutMillis Maximum time to wait
+     * @return True if the buffer was flushed in time
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (head.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the background writer after writing the records already queued
+     */
+    public void shutdown() {
+        this.flush(1000);
+        running = false;
+        LockSupport.unpark(writer);
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    /**
+     * Whether the background writer is asleep, waiting for a record
+     * @return True if the writer is parked
+     */
+    boolean isWriterParked() {
+        return writerParked.get();
+    }
+
+    /**
+     * Number of records waiting to be written
+     * @return Queue depth
+     */
+    public long getPendingRecords() {
+        return tail.get() - head.get();
+    }
+
+    /**
+     * A single queued log record
+     */
+    private static final class LogRecord {
+        private final LogLevel level;
+        private final long timestamp;
+        private final String message;
+        private final Object argument;
+
+        LogRecord(LogLevel level, long timestamp, String message, Object argument) {
+            this.level = level;
+            this.timestamp = timestamp;
+            this.message = message;
+            this.argument = argument;
+        }
+
+        void writeTo(PrintStream output) {
+            StringBuilder line = new StringBuilder();
+            line.append(timestamp).append(' ').append(level.name()).append(' ').append(message);
+            if (argument != null) {
+                line.append(argument);
+            }
+            output.println(line);
+        }
+    }
+
+    /**
+     * Loop of the background writer thread
+     */
+    private static final class BackgroundWriter implements Runnable {
+        private final GameLogger logger;
+
+        BackgroundWriter(GameLogger logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        public void run() {
+            while (logger.running) {
+                if (logger.drain() == 0) {
+                    logger.awaitRecords();
+                }
+            }
+            logger.drain();
+        }
+    }
+
+    /**
+     * Writes out queued records when the JVM exits
+     */
+    private static final class ShutdownFlusher extends Thread {
+        private final GameLogger logger;
+
+        ShutdownFlusher(GameLogger logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        public void run() {
+            logger.shutdown();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.uob;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 
@@ -7,8 +8,18 @@ public class GamePlayer extends GameEntity {
     protected HashSet<GameArtefact> artefacts;
     private int health;
 
+    //Name of the location the player is at
+    private String location;
+
+    //Symbol ids of the artefacts in the inventory, kept in step with artefacts
+    private final BitSet artefactSymbols = new BitSet();
+
+    //Whether the player changed since its snapshot was last published
+    private boolean changed = true;
+
     public GamePlayer(String name, String description, String location) {
-        super(name, description, location);
+        super(name, description);
+        this.location = location;
         artefacts = new HashSet<>();
         health = 3;
     }
@@ -27,6 +38,7 @@ public class GamePlayer extends GameEntity {
     public void incrementHealth() {
         if(health < 3) {
             health++;
+            changed = true;
         }
     }
 
@@ -36,9 +48,19 @@ public class GamePlayer extends GameEntity {
     public void decrementHealth() {
         if(health > 0) {
             health--;
+            changed = true;
         }
     }
 
+    /**
+     * Sets player's health, e.g. for a player handed over by another shard
+     * @param value new health, kept between 0 and 3
+     */
+    public void restoreHealth(int value) {
+        health = Math.max(0, Math.min(3, value));
+        changed = true;
+    }
+
     /**
      * Check if player's health has reached zero and set it to new location with full health
      * @param location name of new location after respawn
@@ -46,8 +68,41 @@ public class GamePlayer extends GameEntity {
     public void checkHealthAndRespawn(String location) {
         if(health < 1) {
             health = 3;
+            changed = true;
         }
-        setLocation(location);
+        this.setLocation(location);
+    }
+
+    /**
+     * Retrieves current location name of this player
+     * @return location name
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Moves the player to a location
+     * @param location location name
+     */
+    public void setLocation(String location) {
+        this.location = location;
+        changed = true;
+    }
+
+    /**
+     * Checks whether the player changed since its snapshot was last published
+     * @return True if a new snapshot is needed
+     */
+    boolean hasUnpublishedChanges() {
+        return changed;
+    }
+
+    /**
+     * Records that the current state of the player has been published
+     */
+    void markPublished() {
+        changed = false;
     }
 
     /**
@@ -55,8 +110,13 @@ public class GamePlayer extends GameEntity {
      * @param item GameArtefact object
      */
     public void addArtefactToInventory(GameArtefact item) {
-        item.setLocation(name);
+        // carried entities are at no location
+        item.setLocationSymbol(SymbolTable.NO_SYMBOL);
         artefacts.add(item);
+        changed = true;
+        if (item.getSymbol() != SymbolTable.NO_SYMBOL) {
+            artefactSymbols.set(item.getSymbol());
+        }
     }
 
     /**
@@ -66,8 +126,11 @@ public class GamePlayer extends GameEntity {
     public void removeArtefactFromInventory(String artefactName) {
         Iterator<GameArtefact> iterator = artefacts.iterator();
         while (iterator.hasNext()) {
-            if (iterator.next().getName().equalsIgnoreCase(artefactName)) {
+            GameArtefact artefact = iterator.next();
+            if (artefact.getName().equalsIgnoreCase(artefactName)) {
                 iterator.remove();
+                this.refreshSymbol(artefact.getSymbol());
+                changed = true;
                 break;
             }
         }
@@ -78,6 +141,33 @@ public class GamePlayer extends GameEntity {
      */
     public void removeAllArtefacts() {
         artefacts.clear();
+        artefactSymbols.clear();
+        changed = true;
+    }
+
+    /**
+     * Clears the bit of a symbol once no artefact with it is left in the inventory
+     * @param symbol symbol id of a removed artefact
+     */
+    private void refreshSymbol(int symbol) {
+        if (symbol == SymbolTable.NO_SYMBOL) {
+            return;
+        }
+        for (GameArtefact artefact : artefacts) {
+            if (artefact.getSymbol() == symbol) {
+                return;
+            }
+        }
+        artefactSymbols.clear(symbol);
+    }
+
+    /**
+     * Retrieves the symbol ids of the artefacts in the inventory. The set is live and must
+     * not be modified.
+     * @return Set of artefact ids
+     */
+    public BitSet getArtefactSymbols() {
+        return artefactSymbols;
     }
 
     /**
@@ -118,6 +208,32 @@ public class GamePlayer extends GameEntity {
         return null;
     }
 
+    /**
+     * Retrieves game artefact object with a symbol id
+     * @param symbol symbol id of the artefact name
+     * @return GameArtefact object or null
+     */
+    public GameArtefact getArtefact(int symbol) {
+        if (!this.isArtefactPresentInInventory(symbol)) {
+            return null;
+        }
+        for (GameArtefact artefact : artefacts) {
+            if (artefact.getSymbol() == symbol) {
+                return artefact;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an artefact with a symbol id is present in player's inventory
+     * @param symbol symbol id of the artefact name
+     * @return True if present else false
+     */
+    public boolean isArtefactPresentInInventory(int symbol) {
+        return symbol != SymbolTable.NO_SYMBOL && artefactSymbols.get(symbol);
+    }
+
     /**
      * Checks if artefact is present in player's inventory
      * @param artefactName name of artefact
@@ -139,11 +255,35 @@ public class GamePlayer extends GameEntity {
      * @return Text describing what is present in player's inventory
      */
     public String showInventoryContents() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(name).append(" has:").append(System.lineSeparator());
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer text = pool.acquire();
+        try {
+            this.showInventoryTo(text);
+            return text.toString();
+        }
+        finally {
+            pool.release(text);
+        }
+    }
+
+    /**
+     * Writes the contents of player's inventory to a reply
+     * @param sink Reply to write to
+     */
+    public void showInventoryTo(ResponseSink sink) {
+        sink.append(name).append(" has:").append(System.lineSeparator());
         for (GameArtefact item : artefacts) {
-            stringBuilder.append(item.getName()).append(System.lineSeparator());
+            sink.append(item.getName()).append(System.lineSeparator());
         }
+    }
+
+    /**
+     * Returns player's health to user
+     * @return Text mentioning current status of player's health
+     */
+    public String showHealth() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(name).append("'s health is: ").append(health).append(System.lineSeparator());
         return stringBuilder.toString();
     }
 }
@@ -3,35 +3,60 @@ package edu.uob;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.Channels;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public final class GameServer {
-    // Map of actions in the game with trigger as key and set of action as value
-    HashMap<String, HashSet<GameAction>> gameActions;
+    //World ids may only use characters that cannot appear in a player name
+    private static final Pattern WORLD_ID_PATTERN = Pattern.compile("^[A-Za-z0-9_-]+$");
 
-    //Paths between location in the game. paths are one-way
-    private final HashMap<String, HashSet<String>> gamePaths;
+    //Identifier of the world loaded by the constructor, used when a command names no world
+    static final String DEFAULT_WORLD = "default";
 
-    //Map of players in the game with player name being key
-    private final HashMap<String, GamePlayer> gamePlayers;
+    //Worlds hosted by this server with world id as key
+    private final ConcurrentHashMap<String, GameWorld> gameWorlds;
 
-    //Map of locations with name of location as key
-    private final HashMap<String, GameLocation> gameLocations;
+    //World used by commands that do not name a world
+    private final GameWorld defaultWorld;
 
-    //First location in the map is constant for all new and respawned player
-    private final StringBuilder playersStartLocation;
+    //Shares worker threads fairly between worlds for commands arriving over sockets
+    private WorldScheduler worldScheduler;
 
-    //Handles incoming user command and
-    private final CommandHandler commandHandler;
+    //Reads requests and writes replies of client connections
+    private ExecutorService connectionPool;
 
-    //Parses action and entities file
-    private final FileParser fileParser = FileParser.getInstance();
+    //Directory of the on-disk player stores of all worlds, null if idle players are kept in memory
+    private volatile File playerStoreDirectory;
+
+    //Milliseconds without a command after which a player is moved to the player store
+    private volatile long idleMillis;
+
+    //Ticks per health point regenerated and ticks until a consumed entity returns, in every world
+    private volatile long regenerationTicks;
+    private volatile long respawnTicks;
+
+    //Rate limits and queue cap applied to requests read from connections, null if none
+    private volatile AdmissionControl admissionControl;
+
+    //Writes server messages without blocking the command path
+    private final GameLogger logger = GameLogger.getInstance();
 
     private static final char END_OF_TRANSMISSION = 4;
 
+    //First word of a request that keeps its connection open to receive location events
+    private static final String SUBSCRIBE_PREFIX = "SUBSCRIBE ";
+
+    //Milliseconds a subscription connection waits for events before checking it is still open
+    private static final long SUBSCRIPTION_POLL_MILLIS = 1000;
+
     public static void main(String[] args) throws IOException {
         StringBuilder entitiesFilePath = new StringBuilder();
         StringBuilder actionsFilePath = new StringBuilder();
@@ -41,7 +66,56 @@ public final class GameServer {
         File entitiesFile = Paths.get(entitiesFilePath.toString()).toAbsolutePath().toFile();
         File actionsFile = Paths.get(actionsFilePath.toString()).toAbsolutePath().toFile();
         GameServer server = new GameServer(entitiesFile, actionsFile);
-        server.blockingListenOn(8888);
+        // Further worlds are kept in store files in this directory, with this many locations on the heap
+        String storeDirectory = System.getProperty("stag.store.dir");
+        int cachedLocations = Integer.getInteger("stag.store.cache", 1024);
+        // Further worlds are given as triples of world id, entities file and actions file
+        Iterator<String> arguments = Arrays.asList(args).iterator();
+        while (arguments.hasNext()) {
+            String worldId = arguments.next();
+            if (!arguments.hasNext()) {
+                break;
+            }
+            File worldEntities = Paths.get(arguments.next()).toAbsolutePath().toFile();
+            if (!arguments.hasNext()) {
+                break;
+            }
+            File worldActions = Paths.get(arguments.next()).toAbsolutePath().toFile();
+            if (storeDirectory != null) {
+                File storeFile = Paths.get(storeDirectory, new StringBuilder(worldId).append(".world").toString()).toAbsolutePath().toFile();
+                server.addStoredWorld(worldId, worldEntities, worldActions, storeFile, cachedLocations);
+            }
+            else {
+                server.addWorld(worldId, worldEntities, worldActions);
+            }
+        }
+        // A node of a sharded deployment names the shard map and its own address in it
+        String shardMapPath = System.getProperty("stag.shard.map");
+        String shardNode = System.getProperty("stag.shard.node");
+        if (shardMapPath != null && shardNode != null) {
+            server.enableSharding(ShardMap.load(Paths.get(shardMapPath).toAbsolutePath().toFile()), shardNode);
+        }
+        // Players idle for this many seconds are moved to disk until their next command
+        long idleSeconds = Long.getLong("stag.idle.seconds", 0);
+        if (idleSeconds > 0) {
+            File playerStore = Paths.get(System.getProperty("stag.player.store",
+                    Paths.get(System.getProperty("java.io.tmpdir"), "stag-players").toString())).toAbsolutePath().toFile();
+            server.enableIdleEviction(playerStore, idleSeconds * 1000);
+        }
+        // Commands per second allowed per player and per client address, and the most requests waiting at once
+        double playerRate = Double.parseDouble(System.getProperty("stag.rate.player", "0"));
+        double addressRate = Double.parseDouble(System.getProperty("stag.rate.address", "0"));
+        int burst = Integer.getInteger("stag.rate.burst", 20);
+        int maxQueueDepth = Integer.getInteger("stag.queue.max", 0);
+        if (playerRate > 0 || addressRate > 0 || maxQueueDepth > 0) {
+            server.enableAdmissionControl(new AdmissionControl(playerRate, burst, addressRate, burst, maxQueueDepth));
+        }
+        // Timed world events, counted in ticks of the world clock
+        long tickMillis = Long.getLong("stag.tick.millis", 0);
+        if (tickMillis > 0) {
+            server.enableWorldClock(tickMillis, Long.getLong("stag.regen.ticks", 0), Long.getLong("stag.respawn.ticks", 0));
+        }
+        server.blockingListenOn(Integer.getInteger("stag.port", 8888));
     }
 
     /**
@@ -52,20 +126,201 @@ public final class GameServer {
      * @param actionsFile The game configuration file containing all game actions to use in your game
      */
     public GameServer(File entitiesFile, File actionsFile) {
-        gameActions = new HashMap<>();
-        gamePaths = new HashMap<>();
-        gamePlayers = new HashMap<>();
-        gameLocations = new HashMap<>();
-        playersStartLocation = new StringBuilder();
-        // read entities file
-        try {
-            fileParser.parseEntitiesFile(entitiesFile, gameLocations, gamePaths, playersStartLocation);
-            fileParser.parseActionsFile(actionsFile, gameActions);
+        gameWorlds = new ConcurrentHashMap<>();
+        defaultWorld = new GameWorld(DEFAULT_WORLD, entitiesFile, actionsFile);
+        gameWorlds.put(DEFAULT_WORLD, defaultWorld);
+    }
+
+    /**
+     * Loads another independent world into this server. Commands reach it by prefixing the
+     * player name with the world id and a slash, e.g. "castle/simon: look".
+     * @param worldId Identifier of the new world
+     * @param entitiesFile The game configuration file containing all game entities of the world
+     * @param actionsFile The game configuration file containing all game actions of the world
+     * @return The newly loaded world
+     */
+    public GameWorld addWorld(String worldId, File entitiesFile, File actionsFile) {
+        if (!WORLD_ID_PATTERN.matcher(worldId).matches()) {
+            throw new IllegalArgumentException("World id must consist only of letters, digits, hyphens and underscores");
+        }
+        GameWorld gameWorld = new GameWorld(worldId, entitiesFile, actionsFile);
+        if (gameWorlds.putIfAbsent(worldId, gameWorld) != null) {
+            throw new IllegalArgumentException("World id is already in use");
         }
-        catch (Exception e) {
-            System.out.println(e.getMessage());
+        this.configureIdleEviction(gameWorld);
+        gameWorld.enableTimedEvents(regenerationTicks, respawnTicks);
+        logger.info("Loaded world ", worldId);
+        return gameWorld;
+    }
+
+    /**
+     * Loads another world whose locations are kept in a memory-mapped store file rather
+     * than on the heap, for worlds with more locations and entities than fit in memory. A
+     * store file written from the same configuration files is reopened as it was left.
+     * @param worldId Identifier of the new world
+     * @param entitiesFile The game configuration file containing all game entities of the world
+     * @param actionsFile The game configuration file containing all game actions of the world
+     * @param storeFile File the locations are stored in, reopened or replaced if it exists
+     * @param cachedLocations Number of locations kept on the heap
+     * @return The newly loaded world
+     */
+    public GameWorld addStoredWorld(String worldId, File entitiesFile, File actionsFile, File storeFile, int cachedLocations) {
+        if (!WORLD_ID_PATTERN.matcher(worldId).matches()) {
+            throw new IllegalArgumentException("World id must consist only of letters, digits, hyphens and underscores");
+        }
+        GameWorld gameWorld = new GameWorld(worldId, entitiesFile, actionsFile, storeFile, cachedLocations);
+        if (gameWorlds.putIfAbsent(worldId, gameWorld) != null) {
+            gameWorld.close();
+            throw new IllegalArgumentException("World id is already in use");
+        }
+        this.configureIdleEviction(gameWorld);
+        gameWorld.enableTimedEvents(regenerationTicks, respawnTicks);
+        logger.info("Loaded stored world ", worldId);
+        return gameWorld;
+    }
+
+    /**
+     * Creates a copy-on-write instance of a shared template and hosts it as a new world.
+     * Instances only store their own changes, so many private copies of the same adventure
+     * cost little more than the state their players change.
+     * @param worldId Identifier of the new world
+     * @param template Template shared by all its instances
+     * @return The newly created world
+     */
+    public GameWorld addWorldInstance(String worldId, WorldTemplate template) {
+        if (!WORLD_ID_PATTERN.matcher(worldId).matches()) {
+            throw new IllegalArgumentException("World id must consist only of letters, digits, hyphens and underscores");
+        }
+        GameWorld gameWorld = new GameWorld(worldId, template);
+        if (gameWorlds.putIfAbsent(worldId, gameWorld) != null) {
+            throw new IllegalArgumentException("World id is already in use");
+        }
+        this.configureIdleEviction(gameWorld);
+        gameWorld.enableTimedEvents(regenerationTicks, respawnTicks);
+        logger.info("Loaded world instance ", worldId);
+        return gameWorld;
+    }
+
+    /**
+     * Runs the default world as one shard of a multi-node deployment. Each node owns the
+     * locations the shard map assigns to it; players and entities move between nodes as
+     * they cross location boundaries, and clients may connect to any node.
+     * @param shardMap Owner node of each location
+     * @param localNode Address of this node's shard listener as it appears in the shard map
+     * @throws IOException If the shard listener cannot be started
+     */
+    public void enableSharding(ShardMap shardMap, String localNode) throws IOException {
+        defaultWorld.enableSharding(shardMap, localNode);
+    }
+
+    /**
+     * Makes requests read from connections pass per-player and per-address token buckets and
+     * a cap on the requests waiting for their reply. Refused requests are answered with an
+     * error right away. Commands given to handleCommand directly are not limited.
+     * @param control Limits to apply
+     */
+    public void enableAdmissionControl(AdmissionControl control) {
+        admissionControl = control;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * Starts the clocks of all worlds, those hosted now and those added later. A background
+     * thread moves every world's clock on once per tick, catching up on ticks it fell
+     * behind on; each world fires its due events under its own lock, so a command waits at
+     * most for the events of one tick of its own world.
+     * @param tickMillis Milliseconds per tick
+     * @param regenerationTicksPerPoint Ticks per health point a hurt player regenerates, 0 for none
+     * @param respawnDelayTicks Ticks until an entity consumed from a location returns, 0 for never
+     */
+    public void enableWorldClock(long tickMillis, long regenerationTicksPerPoint, long respawnDelayTicks) {
+        regenerationTicks = regenerationTicksPerPoint;
+        respawnTicks = respawnDelayTicks;
+        for (GameWorld gameWorld : gameWorlds.values()) {
+            gameWorld.enableTimedEvents(regenerationTicks, respawnTicks);
         }
-        commandHandler = new CommandHandler(gameActions, gamePaths, gameLocations, gamePlayers, playersStartLocation.toString());
+        Thread ticker = new Thread(new WorldTicker(this, tickMillis), "stag-world-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Moves the clocks of all worlds on
+     * @param ticks Number of ticks
+     * @return Number of events fired
+     */
+    public int advanceClocks(long ticks) {
+        int fired = 0;
+        for (GameWorld gameWorld : gameWorlds.values()) {
+            fired += gameWorld.advanceClock(ticks);
+        }
+        return fired;
+    }
+
+    /**
+     * Moves players that sent no command for a while out of memory into one on-disk store per
+     * world, for the worlds hosted now and those added later. A background thread looks for
+     * idle players every half idle time; they are restored on their next command.
+     * @param directory Directory holding the player stores
+     * @param idleTimeMillis Milliseconds without a command after which a player is evicted
+     */
+    public void enableIdleEviction(File directory, long idleTimeMillis) {
+        idleMillis = idleTimeMillis;
+        playerStoreDirectory = directory;
+        for (GameWorld gameWorld : gameWorlds.values()) {
+            this.configureIdleEviction(gameWorld);
+        }
+        Thread sweeper = new Thread(new IdleSweep(this), "stag-idle-sweep");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * Gives a world its player store if idle eviction is enabled
+     * @param gameWorld World to configure
+     */
+    private void configureIdleEviction(GameWorld gameWorld) {
+        File directory = playerStoreDirectory;
+        if (directory == null) {
+            return;
+        }
+        PlayerStore store = new PlayerStore(new File(directory, gameWorld.getWorldId()), gameWorld.getSymbolTable());
+        gameWorld.enableIdleEviction(store, idleMillis);
+    }
+
+    /**
+     * Evicts the idle players of every world
+     * @return Number of players evicted
+     */
+    public int evictIdlePlayers() {
+        int evicted = 0;
+        long now = System.currentTimeMillis();
+        for (GameWorld gameWorld : gameWorlds.values()) {
+            evicted += gameWorld.evictIdlePlayers(now);
+        }
+        return evicted;
+    }
+
+    /**
+     * Closes every hosted world, writing stored worlds back to their files. Called when the
+     * server stops listening.
+     */
+    public void closeWorlds() {
+        for (GameWorld gameWorld : gameWorlds.values()) {
+            gameWorld.close();
+        }
+    }
+
+    /**
+     * Retrieves a hosted world
+     * @param worldId Identifier of the world
+     * @return The world or null if there is no such world
+     */
+    public GameWorld getWorld(String worldId) {
+        return gameWorlds.get(worldId);
     }
 
     /**
@@ -75,34 +330,73 @@ public final class GameServer {
      * @param command The incoming command to be processed
      */
     public String handleCommand(String command) {
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer response = pool.acquire();
+        try {
+            this.handleCommand(command, response, true, true);
+            return response.toString();
+        }
+        finally {
+            pool.release(response);
+        }
+    }
+
+    /**
+     * Handles an incoming game command on the calling thread. A command that fails replies
+     * with its error only, whatever it wrote before failing.
+     * @param command The incoming command to be processed
+     * @param sink Reply to write the response to
+     * @param useSnapshots Whether look, inventory, health and custom actions may be run
+     *                     against the snapshots of the world, holding the world lock only
+     *                     to commit custom actions
+     * @param useWorldLock Whether other commands are run under the world lock
+     * @return True if the command was answered, false if it could not be answered as allowed
+     */
+    private boolean handleCommand(String command, ResponseSink sink, boolean useSnapshots, boolean useWorldLock) {
         // TODO implement your server logic here
         // Handle standard built in commands first;
         // find ":" in the incoming string. anything to its left is username
+        CommandEvent commandEvent = new CommandEvent();
+        commandEvent.begin();
+        String name = null;
+        String worldId = DEFAULT_WORLD;
+        int start = sink.length();
         try {
-            Iterator<String> iterator = Arrays.stream(command.split(":")).iterator();
-            String name = iterator.next().trim();
-            String regex = "^[A-Za-z '-]+$";
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(name);
-            if (!matcher.matches()) {
+            // anything left of the first ':' is the player name, with an optional "world/" prefix
+            RequestDecoder request = new RequestDecoder(command);
+            worldId = request.getWorldId();
+            name = request.getPlayerName();
+            GameWorld gameWorld = gameWorlds.get(worldId);
+            if (gameWorld == null) {
+                throw new RuntimeException("Unknown world");
+            }
+            if (!request.isValidName()) {
                 throw new RuntimeException("Name must consist only of letters, spaces, apostrophes and hyphens");
             }
-            String action = iterator.next();
-            if(!gamePlayers.isEmpty()) {
-                for (GamePlayer player : gamePlayers.values()) {
-                    if (player.getName().equalsIgnoreCase(name)) {
-                        return commandHandler.parseIncomingCommand(player, action);
-                    }
-                }
+            String action = request.getCommand();
+            if (action == null) {
+                throw new RuntimeException("Command must follow the player name and a ':'");
+            }
+            commandEvent.setCommand(action);
+            boolean answered = false;
+            if (useSnapshots) {
+                answered = gameWorld.runFromSnapshots(name, action, commandEvent, sink);
             }
-            gamePlayers.put(name, new GamePlayer(name, "", playersStartLocation.toString()));
-            gameLocations.get(playersStartLocation.toString()).addPlayer(name);
-            return commandHandler.parseIncomingCommand(gamePlayers.get(name), action);
+            if (!answered && useWorldLock) {
+                gameWorld.handleCommand(name, action, commandEvent, sink);
+                answered = true;
+            }
+            if (!answered) {
+                return false;
+            }
+            commandEvent.complete(worldId, name, commandEvent.getTrigger(), commandEvent.getAction(), "OK");
+            return true;
         }
         catch (Exception e){
-            StringBuilder error = new StringBuilder();
-            error.append("[ERROR]: ").append(e.getMessage());
-            return error.toString();
+            commandEvent.complete(worldId, name, commandEvent.getTrigger(), commandEvent.getAction(), e.getMessage());
+            sink.truncate(start);
+            sink.append("[ERROR]: ").append(e.getMessage());
+            return true;
         }
     }
 
@@ -114,18 +408,23 @@ public final class GameServer {
      * @throws IOException If any IO related operation fails.
      */
     public void blockingListenOn(int portNumber) throws IOException {
+        worldScheduler = new WorldScheduler(Runtime.getRuntime().availableProcessors());
+        connectionPool = Executors.newCachedThreadPool();
         try (ServerSocket s = new ServerSocket(portNumber)) {
-            StringBuilder message = new StringBuilder();
-            message.append("Server listening on port ").append(portNumber);
-            System.out.println(message);
+            logger.info("Server listening on port ", portNumber);
             while (!Thread.interrupted()) {
                 try {
                     this.blockingHandleConnection(s);
                 } catch (IOException e) {
-                    System.out.println("Connection closed");
+                    logger.info("Connection closed", null);
                 }
             }
         }
+        finally {
+            connectionPool.shutdownNow();
+            worldScheduler.shutdown();
+            this.closeWorlds();
+        }
     }
 
     /**
@@ -136,22 +435,304 @@ public final class GameServer {
      * @throws IOException If any IO related operation fails.
      */
     private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept();
+        Socket socket = serverSocket.accept();
+        connectionPool.execute(new ConnectionTask(this, socket));
+    }
+
+    /**
+     * Reads one request from a client connection, runs it on the scheduler slot of its world
+     * and writes the reply back.
+     * @param socket Accepted client connection
+     * @throws IOException If any IO related operation fails.
+     */
+    private void serveConnection(Socket socket) throws IOException {
+        try (Socket s = socket;
              BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
              BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
-            System.out.println("Connection established");
+            logger.info("Connection established", null);
+            SocketIOEvent readEvent = new SocketIOEvent();
+            readEvent.begin();
             String incomingCommand = reader.readLine();
-            if(incomingCommand != null) {
-                StringBuilder message = new StringBuilder();
-                message.append("Received message from ").append(incomingCommand);
-                System.out.println(message);
-                String result = this.handleCommand(incomingCommand);
-                writer.write(result);
-                writer.write("\n");
-                writer.write(END_OF_TRANSMISSION);
-                writer.write("\n");
-                writer.flush();
+            readEvent.setOperation("read");
+            String remoteAddress = null;
+            if (readEvent.isEnabled()) {
+                remoteAddress = String.valueOf(s.getRemoteSocketAddress());
+            }
+            readEvent.setRemoteAddress(remoteAddress);
+            AdmissionControl control = admissionControl;
+            String refusal = null;
+            if (control != null && incomingCommand != null) {
+                refusal = control.admitAddress(s.getInetAddress().getHostAddress(), System.nanoTime());
+            }
+            if (refusal != null) {
+                readEvent.setCharacters(incomingCommand.length());
+                readEvent.complete(null, null, null, null, refusal);
+                GameServer.writeReply(writer, refusal);
+            }
+            else if (incomingCommand != null && incomingCommand.startsWith(SUBSCRIBE_PREFIX) && incomingCommand.indexOf(':') < 0) {
+                readEvent.setCharacters(incomingCommand.length());
+                readEvent.complete(null, null, null, null, "OK");
+                this.serveSubscription(incomingCommand, writer);
+            }
+            else if(incomingCommand != null) {
+                RequestDecoder request = new RequestDecoder(incomingCommand);
+                String worldId = request.getWorldId();
+                String player = request.getPlayerName();
+                readEvent.setCharacters(incomingCommand.length());
+                readEvent.complete(worldId, player, null, null, "OK");
+                logger.info("Received message from ", incomingCommand);
+                ResponseBufferPool pool = ResponseBufferPool.getInstance();
+                ResponseBuffer response = pool.acquire();
+                try {
+                    if (control == null) {
+                        this.scheduleCommand(worldId, incomingCommand, response);
+                    }
+                    else {
+                        this.scheduleAdmittedCommand(control, worldId, player, incomingCommand, response);
+                    }
+                }
+                catch (InterruptedIOException e) {
+                    // the buffer may still be written by the worker, so it is not given back
+                    GameServer.writeReply(writer, "[ERROR]: Server is shutting down");
+                    return;
+                }
+                SocketIOEvent writeEvent = new SocketIOEvent();
+                writeEvent.begin();
+                int characters = response.length();
+                response.append('\n').append(END_OF_TRANSMISSION).append('\n');
+                // the reply is encoded straight into the socket, past the connection's writer
+                response.writeTo(Channels.newChannel(s.getOutputStream()));
+                pool.release(response);
+                writeEvent.setOperation("write");
+                writeEvent.setRemoteAddress(remoteAddress);
+                writeEvent.setCharacters(characters);
+                writeEvent.complete(worldId, player, null, null, "OK");
+            }
+            else {
+                readEvent.complete(null, null, null, null, "end of stream");
+            }
+        }
+    }
+
+    /**
+     * Runs a command if its player has a token left and the server is not overloaded
+     * @param control Admission control of the server
+     * @param worldId Identifier of the world named by the command
+     * @param player Player named by the command
+     * @param command The incoming command to be processed
+     * @param sink Reply to write the response to the command, or the error it was refused with, to
+     * @throws InterruptedIOException If the server shut down while the command was waiting
+     */
+    private void scheduleAdmittedCommand(AdmissionControl control, String worldId, String player, String command,
+                                         ResponseSink sink) throws InterruptedIOException {
+        String refusal = control.admitCommand(worldId, player, System.nanoTime());
+        if (refusal != null) {
+            sink.append(refusal);
+            return;
+        }
+        try {
+            this.scheduleCommand(worldId, command, sink);
+        }
+        finally {
+            control.release();
+        }
+    }
+
+    /**
+     * Writes a reply followed by the end of transmission line
+     * @param writer Writer of the connection
+     * @param reply Reply to write
+     * @throws IOException If the client can no longer be written to
+     */
+    private static void writeReply(BufferedWriter writer, String reply) throws IOException {
+        writer.write(reply);
+        writer.write("\n");
+        writer.write(END_OF_TRANSMISSION);
+        writer.write("\n");
+        writer.flush();
+    }
+
+    /**
+     * Pushes the changes of a player's location over a connection until the client goes
+     * away or the player subscribes again elsewhere. The request is "SUBSCRIBE [world/]player",
+     * which has no ':' and so cannot be a command. It is acknowledged with "SUBSCRIBED", and
+     * every batch of events that follows ends with an end of transmission line, like the
+     * reply to a command.
+     * @param request Subscription request line
+     * @param writer Writer of the connection
+     * @throws IOException If the client can no longer be written to
+     */
+    private void serveSubscription(String request, BufferedWriter writer) throws IOException {
+        int nameStart = SUBSCRIBE_PREFIX.length();
+        RequestDecoder decoder = new RequestDecoder(request.substring(nameStart));
+        GameWorld gameWorld = gameWorlds.get(decoder.getWorldId());
+        if (gameWorld == null || !decoder.isValidName()) {
+            writer.write("[ERROR]: Subscriptions need a valid player name and world");
+            writer.write("\n");
+            writer.write(END_OF_TRANSMISSION);
+            writer.write("\n");
+            writer.flush();
+            return;
+        }
+        EventSubscription subscription = gameWorld.subscribe(decoder.getPlayerName());
+        try {
+            writer.write("SUBSCRIBED");
+            writer.write("\n");
+            writer.write(END_OF_TRANSMISSION);
+            writer.write("\n");
+            writer.flush();
+            while (subscription.isOpen()) {
+                String batch = subscription.awaitBatch(SUBSCRIPTION_POLL_MILLIS);
+                if (batch != null) {
+                    writer.write(batch);
+                    writer.write(END_OF_TRANSMISSION);
+                    writer.write("\n");
+                    writer.flush();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            gameWorld.unsubscribe(subscription);
+        }
+    }
+
+    /**
+     * Runs a command on the worker pool, queued behind the other commands of its world only,
+     * so that a busy world cannot starve a quiet one. Look, inventory, health and custom
+     * actions are run against the world's snapshots on the calling thread instead.
+     * @param worldId Identifier of the world named by the command
+     * @param command The incoming command to be processed
+     * @param sink Reply to write the response to the command to
+     * @throws InterruptedIOException If the server shut down while the command was waiting,
+     *                                in which case its worker may still write to the sink
+     */
+    private void scheduleCommand(String worldId, String command, ResponseSink sink) throws InterruptedIOException {
+        GameWorld gameWorld = gameWorlds.get(worldId);
+        if (gameWorld == null) {
+            this.handleCommand(command, sink, true, true);
+            return;
+        }
+        if (this.handleCommand(command, sink, true, false)) {
+            return;
+        }
+        // the worker writes to the sink while this thread waits for it, never both at once
+        int start = sink.length();
+        try {
+            worldScheduler.submit(gameWorld, new CommandTask(this, command, sink)).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Server is shutting down");
+        }
+        catch (ExecutionException e) {
+            sink.truncate(start);
+            sink.append("[ERROR]: ").append(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Periodically moves idle players of all worlds to their player stores
+     */
+    private static final class IdleSweep implements Runnable {
+        private final GameServer server;
+
+        IdleSweep(GameServer server) {
+            this.server = server;
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(Math.max(1, server.idleMillis / 2));
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                int evicted = server.evictIdlePlayers();
+                if (evicted > 0) {
+                    server.logger.info("Evicted idle players: ", evicted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the clocks of all worlds on at a fixed rate, measured against the system clock
+     * so that slow ticks are caught up on instead of stretching time
+     */
+    private static final class WorldTicker implements Runnable {
+        private final GameServer server;
+        private final long tickNanos;
+
+        WorldTicker(GameServer server, long tickMillis) {
+            this.server = server;
+            this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            long ticksDone = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                long due = (System.nanoTime() - start) / tickNanos;
+                if (due > ticksDone) {
+                    server.advanceClocks(due - ticksDone);
+                    ticksDone = due;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(start + (ticksDone + 1) * tickNanos - System.nanoTime());
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
             }
         }
     }
+
+    /**
+     * Serves one accepted client connection on the connection pool
+     */
+    private static final class ConnectionTask implements Runnable {
+        private final GameServer server;
+        private final Socket socket;
+
+        ConnectionTask(GameServer server, Socket socket) {
+            this.server = server;
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                server.serveConnection(socket);
+            }
+            catch (IOException e) {
+                server.logger.info("Connection closed", null);
+            }
+        }
+    }
+
+    /**
+     * Runs one request against the server, scheduled on the slot of its world
+     */
+    private static final class CommandTask implements Callable<Boolean> {
+        private final GameServer server;
+        private final String command;
+        private final ResponseSink sink;
+
+        CommandTask(GameServer server, String command, ResponseSink sink) {
+            this.server = server;
+            this.command = command;
+            this.sink = sink;
+        }
+
+        @Override
+        public Boolean call() {
+            return server.handleCommand(command, sink, false, true);
+        }
+    }
 }
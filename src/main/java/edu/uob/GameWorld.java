@@ -0,0 +1,1188 @@
+package edu.uob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One independent game world: its locations, paths, actions, players and the
+ * command handler acting on them. A server process can host many worlds.
+ */
+public class GameWorld {
+    //Identifier clients use to address this world
+    private final String worldId;
+
+    //Paths between location in the game. paths are one-way
+    private final PathGraph pathGraph;
+
+    //Map of players in the game with player name being key
+    private final HashMap<String, GamePlayer> gamePlayers;
+
+    //Map of locations with name of location as key
+    private final Map<String, GameLocation> gameLocations;
+
+    //First location in the map is constant for all new and respawned player
+    private final String playersStartLocation;
+
+    //Int ids of the names of this world, shared with its template
+    private final SymbolTable symbolTable;
+
+    //Handles incoming user commands for this world
+    private final CommandHandler commandHandler;
+
+    //Serialises commands and shard requests acting on this world
+    private final ReentrantLock worldLock = new ReentrantLock();
+
+    private final GameLogger logger = GameLogger.getInstance();
+
+    //Locations changed by the running command, republished before the world lock is released
+    private final LinkedList<GameLocation> changedLocations = new LinkedList<>();
+
+    //Last published state of every location, read by look without the world lock
+    private final ConcurrentHashMap<String, LocationSnapshot> locationSnapshots;
+
+    //Last published state of every player hosted here with lower case player name as key,
+    //read by inventory and health without the world lock
+    private final ConcurrentHashMap<String, PlayerSnapshot> playerSnapshots = new ConcurrentHashMap<>();
+
+    //Number of commands whose changes have been published, written under the world lock
+    private long snapshotVersion;
+
+    //Players receiving the changes of their location with lower case player name as key
+    private final ConcurrentHashMap<String, EventSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    //Time of the last command of every player hosted here with lower case player name as key
+    private final ConcurrentHashMap<String, Long> playerActivity = new ConcurrentHashMap<>();
+
+    //Holds the players evicted for being idle, null if idle players are kept in memory
+    private volatile PlayerStore playerStore;
+
+    //Milliseconds without a command after which a player is evicted
+    private volatile long idleMillis;
+
+    //Times a custom action checked against snapshots may be run again before it is queued instead
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+
+    //Custom actions whose snapshots were replaced before they could commit
+    private final AtomicLong transactionConflicts = new AtomicLong();
+
+    //Timed events of this world, advanced under the world lock
+    private final WorldClock worldClock = new WorldClock();
+
+    //Moves the characters that have a behaviour, driven by the world clock
+    private final NpcEngine npcEngine;
+
+    //Preconditions of the world's actions, told about every published location
+    private final RuleNetwork ruleNetwork;
+
+    //Actions by the subjects they need, told about every published location
+    private final AffordanceIndex affordanceIndex;
+
+    //Connects this world to the other nodes of a sharded deployment, null if the world is not sharded
+    private volatile ShardCoordinator shardCoordinator;
+
+    //Locations kept in a store file, or null if the world keeps all of its locations on the heap
+    private final StoredLocationMap storedLocations;
+
+    /**
+     * Loads a world that owns its state from a pair of configuration files
+     * @param worldId Identifier of the world
+     * @param entitiesFile The game configuration file containing all game entities
+     * @param actionsFile The game configuration file containing all game actions
+     */
+    GameWorld(String worldId, File entitiesFile, File actionsFile) {
+        this.worldId = worldId;
+        WorldTemplate template = new WorldTemplate(entitiesFile, actionsFile);
+        pathGraph = template.getPathGraph();
+        gameLocations = template.getGameLocations();
+        storedLocations = null;
+        for (GameLocation location : gameLocations.values()) {
+            location.trackChanges(changedLocations);
+        }
+        locationSnapshots = new ConcurrentHashMap<>(template.getLocationSnapshots());
+        gamePlayers = new HashMap<>();
+        playersStartLocation = template.getPlayersStartLocation();
+        symbolTable = template.getSymbolTable();
+        commandHandler = new CommandHandler(template, pathGraph, gameLocations, gamePlayers, worldId);
+        commandHandler.setWorldClock(worldClock);
+        npcEngine = new NpcEngine(gameLocations, pathGraph, symbolTable, gamePlayers, commandHandler.getRouteCache(), new Random());
+        ruleNetwork = new RuleNetwork(template.getGameActions().values(), template.getGameLocations());
+        commandHandler.setRuleNetwork(ruleNetwork);
+        affordanceIndex = new AffordanceIndex(template.getGameActions().values());
+        commandHandler.setAffordanceIndex(affordanceIndex);
+        this.startCharacters(template.getGameLocations());
+    }
+
+    /**
+     * Creates a copy-on-write instance of a shared template. Descriptions, actions, keyword
+     * dictionaries and the initial graph stay in the template; the instance only stores the
+     * locations and path sets it changes, and its own players.
+     * @param worldId Identifier of the world
+     * @param template Template shared by all instances, which must not be played directly
+     */
+    GameWorld(String worldId, WorldTemplate template) {
+        this.worldId = worldId;
+        pathGraph = new PathGraph(template.getPathGraph());
+        storedLocations = null;
+        gameLocations = new WorldOverlayMap<GameLocation>(template.getGameLocations()) {
+            @Override
+            protected GameLocation deriveValue(GameLocation baseValue) {
+                GameLocation location = new GameLocation(baseValue);
+                location.trackChanges(changedLocations);
+                return location;
+            }
+        };
+        // the template's snapshots stay valid until this instance changes a location
+        locationSnapshots = new ConcurrentHashMap<>(template.getLocationSnapshots());
+        gamePlayers = new HashMap<>();
+        playersStartLocation = template.getPlayersStartLocation();
+        symbolTable = template.getSymbolTable();
+        commandHandler = new CommandHandler(template, pathGraph, gameLocations, gamePlayers, worldId);
+        commandHandler.setWorldClock(worldClock);
+        npcEngine = new NpcEngine(gameLocations, pathGraph, symbolTable, gamePlayers, commandHandler.getRouteCache(), new Random());
+        ruleNetwork = new RuleNetwork(template.getGameActions().values(), template.getGameLocations());
+        commandHandler.setRuleNetwork(ruleNetwork);
+        affordanceIndex = new AffordanceIndex(template.getGameActions().values());
+        commandHandler.setAffordanceIndex(affordanceIndex);
+        this.startCharacters(template.getGameLocations());
+    }
+
+    /**
+     * Loads a world whose locations live in a memory-mapped store file, of which only a
+     * bounded number are kept on the heap at a time. Names, subjects and paths are looked up
+     * in the store as well, so the heap taken does not grow with the world. A store written
+     * from the same configuration files is reopened as it was left, without parsing the
+     * entities file; otherwise the store is written afresh. Locations without a snapshot
+     * are read under the world lock, so the snapshot of a location is dropped with the
+     * location.
+     * @param worldId Identifier of the world
+     * @param entitiesFile The game configuration file containing all game entities
+     * @param actionsFile The game configuration file containing all game actions
+     * @param storeFile File the locations are stored in, reopened or replaced if it exists
+     * @param cachedLocations Number of locations kept on the heap
+     */
+    GameWorld(String worldId, File entitiesFile, File actionsFile, File storeFile, int cachedLocations) {
+        this.worldId = worldId;
+        MappedWorldStore store = GameWorld.openStore(entitiesFile, actionsFile, storeFile);
+        // the actions are parsed again over the store, so the world keeps no parsed locations or names
+        WorldTemplate template = new WorldTemplate(store, actionsFile);
+        symbolTable = template.getSymbolTable();
+        pathGraph = template.getPathGraph();
+        locationSnapshots = new ConcurrentHashMap<>();
+        storedLocations = new StoredLocationMap(store, symbolTable, cachedLocations, changedLocations) {
+            @Override
+            protected void evicted(GameLocation location) {
+                locationSnapshots.remove(location.getLocationName());
+            }
+        };
+        gameLocations = storedLocations;
+        gamePlayers = new HashMap<>();
+        playersStartLocation = template.getPlayersStartLocation();
+        commandHandler = new CommandHandler(template, pathGraph, gameLocations, gamePlayers, worldId);
+        commandHandler.setWorldClock(worldClock);
+        npcEngine = new NpcEngine(gameLocations, pathGraph, symbolTable, gamePlayers, commandHandler.getRouteCache(), new Random());
+        // the conditions are matched against the locations as they were left
+        ruleNetwork = new RuleNetwork(template.getGameActions().values(), gameLocations);
+        storedLocations.releasePinned();
+        commandHandler.setRuleNetwork(ruleNetwork);
+        affordanceIndex = new AffordanceIndex(template.getGameActions().values());
+        commandHandler.setAffordanceIndex(affordanceIndex);
+        this.startStoredCharacters(store);
+    }
+
+    /**
+     * Reopens the store of a world, or writes it from the configuration files if there is
+     * none written from them yet
+     * @param entitiesFile The game configuration file containing all game entities
+     * @param actionsFile The game configuration file containing all game actions
+     * @param storeFile File the locations are stored in
+     * @return The store
+     */
+    private static MappedWorldStore openStore(File entitiesFile, File actionsFile, File storeFile) {
+        GameLogger logger = GameLogger.getInstance();
+        long sourceStamp = MappedWorldStore.stampOf(entitiesFile, actionsFile);
+        try {
+            MappedWorldStore store = MappedWorldStore.open(storeFile, sourceStamp);
+            if (store != null) {
+                logger.info("Reopened world store ", storeFile);
+                return store;
+            }
+            return MappedWorldStore.create(storeFile, new WorldTemplate(entitiesFile, actionsFile), sourceStamp);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(new StringBuilder("Could not open the world store ").append(storeFile).toString(), e);
+        }
+    }
+
+    /**
+     * Starts moving the characters of a stored world that were given a behaviour in the
+     * entities file, from wherever the store has them now
+     * @param store Store of the world
+     */
+    private void startStoredCharacters(MappedWorldStore store) {
+        for (int symbol = store.getLocationCount(); symbol < store.getSymbolCount(); symbol++) {
+            String behaviour = store.getBehaviour(symbol);
+            int location = store.getLocationOf(symbol);
+            if (behaviour == null || location == SymbolTable.NO_SYMBOL) {
+                continue;
+            }
+            // the engine looks the character up at its location before every move
+            GameCharacter character = new GameCharacter(symbolTable.nameOf(symbol), null);
+            character.setSymbol(symbol);
+            NpcBehaviour npcBehaviour = NpcBehaviour.parse(behaviour, symbolTable);
+            npcEngine.assign(character, symbolTable.nameOf(location), npcBehaviour, worldClock);
+        }
+    }
+
+    /**
+     * Starts moving the characters given a behaviour in the entities file. The template's
+     * locations are read, so that instances do not copy locations they have not changed.
+     * @param templateLocations Locations of the world's template
+     */
+    private void startCharacters(Map<String, GameLocation> templateLocations) {
+        for (GameLocation location : templateLocations.values()) {
+            for (GameCharacter character : location.getCharacters()) {
+                if (character.getBehaviour() != null) {
+                    NpcBehaviour behaviour = NpcBehaviour.parse(character.getBehaviour(), symbolTable);
+                    npcEngine.assign(character, location.getLocationName(), behaviour, worldClock);
+                }
+            }
+        }
+    }
+
+    public String getWorldId() {
+        return worldId;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Retrieves the locations of a world kept in a store file
+     * @return The stored locations, or null if the world keeps its locations on the heap
+     */
+    public StoredLocationMap getStoredLocations() {
+        return storedLocations;
+    }
+
+    /**
+     * Number of locations and path sets this world holds itself instead of sharing them with
+     * a template. Worlds that own their state hold everything themselves.
+     * @return Size of the world's own state
+     */
+    public int getDeltaSize() {
+        int size = 0;
+        if (gameLocations instanceof WorldOverlayMap<?>) {
+            size += ((WorldOverlayMap<?>) gameLocations).getDeltaSize();
+        } else {
+            size += gameLocations.size();
+        }
+        size += pathGraph.getOwnRowCount();
+        return size;
+    }
+
+    /**
+     * Makes this node one shard of the world. Every node loads the whole world and then
+     * empties the locations it does not own, so entities only exist on their owning node.
+     * @param shardMap Owner node of each location
+     * @param localNode Address of this node as it appears in the shard map
+     * @throws IOException If the shard listener cannot be started
+     */
+    public void enableSharding(ShardMap shardMap, String localNode) throws IOException {
+        ShardCoordinator coordinator = new ShardCoordinator(this, shardMap, localNode);
+        worldLock.lock();
+        try {
+            for (GameLocation location : gameLocations.values()) {
+                if (!coordinator.isLocal(location.getLocationName())) {
+                    location.clearContents();
+                }
+            }
+            commandHandler.setShardCoordinator(coordinator);
+            npcEngine.setShardCoordinator(coordinator);
+            shardCoordinator = coordinator;
+        }
+        finally {
+            this.publishLocations(null);
+            worldLock.unlock();
+        }
+        coordinator.start();
+    }
+
+    /**
+     * Releases what the world holds outside the heap: the changes still pending are saved
+     * and the store file of a stored world is closed, and the shard listener is stopped.
+     * The world must not be used afterwards.
+     */
+    public void close() {
+        worldLock.lock();
+        try {
+            this.publishLocations(null);
+            if (storedLocations != null) {
+                storedLocations.close();
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Could not close the world store of ", worldId);
+        }
+        finally {
+            worldLock.unlock();
+        }
+        ShardCoordinator coordinator = shardCoordinator;
+        if (coordinator != null) {
+            coordinator.close();
+        }
+    }
+
+    /**
+     * Retrieves the shard coordinator of this world
+     * @return The coordinator, or null if the world is not sharded
+     */
+    public ShardCoordinator getShardCoordinator() {
+        return shardCoordinator;
+    }
+
+    /**
+     * Runs a command for a player of this world, creating the player at the start location
+     * on its first command. Commands of one world are executed one at a time. In a sharded
+     * world the commands of players hosted by another node are forwarded to that node.
+     * @param name Name of the player
+     * @param command Command text following the player name
+     * @param commandEvent Event of the enclosing command
+     * @return Response to be sent to the player
+     */
+    public String handleCommand(String name, String command, CommandEvent commandEvent) {
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer response = pool.acquire();
+        try {
+            this.handleCommand(name, command, commandEvent, 0, response);
+            return response.toString();
+        }
+        finally {
+            pool.release(response);
+        }
+    }
+
+    /**
+     * Runs a command for a player of this world, writing the response as it is made
+     * @param name Name of the player
+     * @param command Command text following the player name
+     * @param commandEvent Event of the enclosing command
+     * @param sink Reply to write the response to
+     */
+    public void handleCommand(String name, String command, CommandEvent commandEvent, ResponseSink sink) {
+        this.handleCommand(name, command, commandEvent, 0, sink);
+    }
+
+    /**
+     * Runs a command forwarded by another shard
+     * @param name Name of the player
+     * @param command Command text following the player name
+     * @param hops Number of times the command has been forwarded
+     * @return Response to be sent to the player
+     */
+    String runForwardedCommand(String name, String command, int hops) {
+        CommandEvent commandEvent = new CommandEvent();
+        commandEvent.begin();
+        commandEvent.setCommand(command);
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer response = pool.acquire();
+        try {
+            this.handleCommand(name, command, commandEvent, hops, response);
+            commandEvent.complete(worldId, name, commandEvent.getTrigger(), commandEvent.getAction(), "OK");
+            // the response travels back to the other shard as a string in any case
+            return response.toString();
+        }
+        catch (RuntimeException e) {
+            commandEvent.complete(worldId, name, commandEvent.getTrigger(), commandEvent.getAction(), e.getMessage());
+            throw e;
+        }
+        finally {
+            pool.release(response);
+        }
+    }
+
+    private void handleCommand(String name, String command, CommandEvent commandEvent, int hops, ResponseSink sink) {
+        ShardCoordinator coordinator = shardCoordinator;
+        String remoteNode;
+        GamePlayer gamePlayer = null;
+        worldLock.lock();
+        try {
+            gamePlayer = this.findPlayer(name);
+            if (gamePlayer == null) {
+                gamePlayer = this.restorePlayer(name);
+            }
+            remoteNode = null;
+            if (coordinator != null) {
+                remoteNode = coordinator.locatePlayer(name, gamePlayer != null, playersStartLocation);
+            }
+            if (remoteNode == null) {
+                if (gamePlayer == null) {
+                    gamePlayer = new GamePlayer(name, "", playersStartLocation);
+                    gamePlayers.put(name, gamePlayer);
+                    gameLocations.get(playersStartLocation).addPlayer(name);
+                }
+                playerActivity.put(gamePlayer.getName().toLowerCase(), System.currentTimeMillis());
+                if (CommandBatch.isBatch(command)) {
+                    this.runBatch(gamePlayer, new CommandBatch(command), commandEvent, sink);
+                    return;
+                }
+                this.runCommand(gamePlayer, command, commandEvent, sink);
+                return;
+            }
+        }
+        finally {
+            // a failed command may have changed the world before failing, so it is published too
+            this.publishLocations(name);
+            this.publishPlayer(gamePlayer);
+            worldLock.unlock();
+        }
+        // the player lives on another node, which is called without holding this world
+        sink.append(coordinator.forwardCommand(remoteNode, name, command, hops));
+    }
+
+    /**
+     * Runs the commands of a batch back to back for one player, with no command of another
+     * player in between. Their replies are returned together, in order; a failed command
+     * replies with its error, and the commands chained to it are skipped. Changes are
+     * published after every command, so subscribers see each step. Must be called holding
+     * the world lock, which is only let go while a command calls another shard.
+     * @param gamePlayer Player sending the batch
+     * @param batch Commands to run
+     * @param commandEvent Event of the enclosing request
+     * @param sink Reply to write the replies of the commands that were run to
+     */
+    private void runBatch(GamePlayer gamePlayer, CommandBatch batch, CommandEvent commandEvent, ResponseSink sink) {
+        int start = sink.length();
+        boolean succeeded = true;
+        int index = 0;
+        for (String command : batch.getCommands()) {
+            boolean chained = batch.isChained(index);
+            index++;
+            if (chained && !succeeded) {
+                continue;
+            }
+            if (!gamePlayers.containsKey(gamePlayer.getName())) {
+                // the player crossed into a location of another shard
+                sink.append("[ERROR]: Player moved to another node, the remaining commands were not run");
+                sink.append(System.lineSeparator());
+                break;
+            }
+            int reply = sink.length();
+            try {
+                this.runCommand(gamePlayer, command, commandEvent, sink);
+                succeeded = true;
+            }
+            catch (RuntimeException e) {
+                // a command may have started replying before it failed
+                sink.truncate(reply);
+                sink.append("[ERROR]: ").append(e.getMessage());
+                succeeded = false;
+            }
+            sink.append(System.lineSeparator());
+            this.publishLocations(gamePlayer.getName());
+            this.publishPlayer(gamePlayer);
+        }
+        sink.trim(start);
+    }
+
+    /**
+     * Runs one command of a player hosted here, then carries out the changes it makes on
+     * other shards. Must be called holding the world lock.
+     * @param gamePlayer Player sending the command
+     * @param command Command text following the player name
+     * @param commandEvent Event of the enclosing request
+     * @param sink Reply to write the response to
+     */
+    private void runCommand(GamePlayer gamePlayer, String command, CommandEvent commandEvent, ResponseSink sink) {
+        try {
+            commandHandler.parseIncomingCommand(gamePlayer, command, commandEvent, sink);
+        }
+        finally {
+            // a failed command may have changed other shards before failing as well
+            this.completeShardTransfers(gamePlayer.getName(), gamePlayer, sink);
+        }
+    }
+
+    /**
+     * Carries out the changes on other shards recorded by the command that just ran. The
+     * changes made here are published and the world lock is let go for the RPCs, so this
+     * node never waits on another one while holding its world. Must be called holding the
+     * world lock, which is held again on return.
+     * @param actorName Name of the player whose command made the changes
+     * @param gamePlayer Player that ran the command, or null
+     * @param sink Reply to write what a handed over player sees to
+     */
+    private void completeShardTransfers(String actorName, GamePlayer gamePlayer, ResponseSink sink) {
+        if (!commandHandler.hasShardTransfers()) {
+            return;
+        }
+        LinkedList<ShardTransfer> transfers = commandHandler.takeShardTransfers();
+        this.publishLocations(actorName);
+        this.publishPlayer(gamePlayer);
+        worldLock.unlock();
+        try {
+            this.runShardTransfers(transfers, sink);
+        }
+        finally {
+            worldLock.lock();
+        }
+    }
+
+    /**
+     * Sends the changes on other shards recorded by a command, in order. Must not be called
+     * holding the world lock. A player refused by its new node is put back where it came
+     * from and the refusal is raised once every change has been sent; an entity that cannot
+     * be moved stays where it is.
+     * @param transfers Changes to send
+     * @param sink Reply to write what a handed over player sees to
+     */
+    private void runShardTransfers(LinkedList<ShardTransfer> transfers, ResponseSink sink) {
+        ShardCoordinator coordinator = shardCoordinator;
+        RuntimeException refusal = null;
+        for (ShardTransfer transfer : transfers) {
+            try {
+                switch (transfer.getKind()) {
+                    case HAND_OFF:
+                        sink.append(coordinator.handOff(transfer.getPlayer(), transfer.getLocation()));
+                        break;
+                    case TAKE:
+                        GameEntity entity = coordinator.takeRemoteEntity(transfer.getEntityName(),
+                                transfer.isStoreroomIncluded());
+                        if (entity != null) {
+                            this.placeEntity(transfer.getLocation(), entity);
+                        }
+                        break;
+                    default:
+                        coordinator.putRemoteEntity(transfer.getLocation(), transfer.getEntity());
+                        break;
+                }
+            }
+            catch (RuntimeException e) {
+                if (transfer.getKind() == ShardTransfer.Kind.HAND_OFF) {
+                    this.returnPlayer(transfer.getPlayer(), transfer.getReturnLocation());
+                    refusal = e;
+                } else {
+                    logger.warn("Failed to move an entity between shards: ", e.getMessage());
+                }
+            }
+        }
+        if (refusal != null) {
+            throw refusal;
+        }
+    }
+
+    /**
+     * Places an entity taken from another shard in a location of any shard. Must not be
+     * called holding the world lock.
+     * @param locationName Name of the location
+     * @param entity Entity to place
+     */
+    private void placeEntity(String locationName, GameEntity entity) {
+        if (!shardCoordinator.isLocal(locationName)) {
+            shardCoordinator.putRemoteEntity(locationName, entity);
+            return;
+        }
+        worldLock.lock();
+        try {
+            GameLocation location = gameLocations.get(locationName);
+            if (location != null) {
+                location.addEntity(entity);
+            }
+        }
+        finally {
+            this.publishLocations(null);
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Puts a player whose hand-off was refused back in the location it left. Must not be
+     * called holding the world lock.
+     * @param gamePlayer Player that left
+     * @param locationName Location of this shard the player left
+     */
+    private void returnPlayer(GamePlayer gamePlayer, String locationName) {
+        worldLock.lock();
+        try {
+            gamePlayer.setLocation(locationName);
+            gamePlayers.put(gamePlayer.getName(), gamePlayer);
+            gameLocations.get(locationName).addPlayer(gamePlayer.getName());
+            playerActivity.put(gamePlayer.getName().toLowerCase(), System.currentTimeMillis());
+        }
+        finally {
+            this.publishLocations(gamePlayer.getName());
+            this.publishPlayer(gamePlayer);
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a command of a player hosted here against the published snapshots. Look, inventory
+     * and health are answered without taking the world lock and reflect the world as it was
+     * after the last command that finished changing it. Custom actions are resolved and
+     * checked without the lock and then committed under it, provided the snapshots of the
+     * player and its location are still current; otherwise they are run again on the new
+     * snapshots, a few times at most.
+     * @param name Name of the player
+     * @param command Command text following the player name
+     * @param commandEvent Event of the enclosing command
+     * @return Response to be sent to the player, or null if the command has to be run by
+     *         {@link #handleCommand(String, String, CommandEvent)}
+     */
+    public String runFromSnapshots(String name, String command, CommandEvent commandEvent) {
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer response = pool.acquire();
+        try {
+            if (!this.runFromSnapshots(name, command, commandEvent, response)) {
+                return null;
+            }
+            return response.toString();
+        }
+        finally {
+            pool.release(response);
+        }
+    }
+
+    /**
+     * Runs a command of a player hosted here against the published snapshots, writing the
+     * response only if the command could be answered this way
+     * @param name Name of the player
+     * @param command Command text following the player name
+     * @param commandEvent Event of the enclosing command
+     * @param sink Reply to write the response to
+     * @return True if the command was answered, false if it has to be run by
+     *         {@link #handleCommand(String, String, CommandEvent, ResponseSink)}
+     */
+    public boolean runFromSnapshots(String name, String command, CommandEvent commandEvent, ResponseSink sink) {
+        if (CommandBatch.isBatch(command)) {
+            return false;
+        }
+        String key = name.toLowerCase();
+        PlayerSnapshot player = playerSnapshots.get(key);
+        if (player == null) {
+            return false;
+        }
+        playerActivity.put(key, System.currentTimeMillis());
+        ParsedCommand parsedCommand = commandHandler.parseCommand(player.getName(), command, playerSnapshots.keySet());
+        for (int attempt = 0; attempt < MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            player = playerSnapshots.get(key);
+            if (player == null) {
+                return false;
+            }
+            LocationSnapshot location = locationSnapshots.get(player.getLocation());
+            if (location == null) {
+                return false;
+            }
+            if (commandHandler.performReadOnlyAction(player, location, parsedCommand, commandEvent, sink)) {
+                return true;
+            }
+            ActionTransaction transaction = commandHandler.beginCustomAction(player, location, parsedCommand, commandEvent);
+            if (transaction == null) {
+                return false;
+            }
+            GamePlayer gamePlayer = null;
+            worldLock.lock();
+            try {
+                if (transaction.isCurrent(playerSnapshots, locationSnapshots)) {
+                    gamePlayer = gamePlayers.get(transaction.getPlayerName());
+                    try {
+                        commandHandler.commitCustomAction(gamePlayer, transaction, commandEvent, sink);
+                    }
+                    finally {
+                        this.completeShardTransfers(name, gamePlayer, sink);
+                    }
+                    return true;
+                }
+            }
+            finally {
+                this.publishLocations(name);
+                this.publishPlayer(gamePlayer);
+                worldLock.unlock();
+            }
+            transactionConflicts.incrementAndGet();
+        }
+        // too much contention on this player or location, so the command waits its turn instead
+        return false;
+    }
+
+    /**
+     * Number of custom actions that had to be run again because a command changed their
+     * player or location after they were checked
+     * @return Number of conflicts
+     */
+    public long getTransactionConflicts() {
+        return transactionConflicts.get();
+    }
+
+    /**
+     * Publishes a new snapshot of every location changed since the last publish and pushes
+     * what changed to the subscribed players there. A stored world may drop the locations
+     * the command looked up afterwards. Must be called holding the world lock.
+     * @param actorName Name of the player whose command made the changes, who is not sent
+     *                  an event, or null
+     */
+    private void publishLocations(String actorName) {
+        if (changedLocations.isEmpty()) {
+            this.releasePinnedLocations();
+            return;
+        }
+        snapshotVersion++;
+        for (GameLocation location : changedLocations) {
+            location.markPublished();
+            if (storedLocations != null) {
+                storedLocations.locationPublished(location);
+            }
+            ruleNetwork.locationChanged(location);
+            affordanceIndex.locationChanged(location);
+            LocationSnapshot snapshot = LocationSnapshot.capture(location, pathGraph, symbolTable, snapshotVersion);
+            LocationSnapshot previous = locationSnapshots.put(location.getLocationName(), snapshot);
+            if (previous != null && !subscriptions.isEmpty()) {
+                this.pushEvent(previous, snapshot, actorName);
+            }
+        }
+        changedLocations.clear();
+        this.releasePinnedLocations();
+    }
+
+    /**
+     * Lets a stored world drop the locations the command that just published looked up
+     */
+    private void releasePinnedLocations() {
+        if (storedLocations != null) {
+            storedLocations.releasePinned();
+        }
+    }
+
+    /**
+     * Offers the change of a location to the subscribed players at it, never blocking on
+     * a subscriber
+     * @param previous Previous snapshot of the location
+     * @param snapshot New snapshot of the location
+     * @param actorName Name of the player who made the change, or null
+     */
+    private void pushEvent(LocationSnapshot previous, LocationSnapshot snapshot, String actorName) {
+        String event = null;
+        for (String player : snapshot.getPlayers()) {
+            EventSubscription subscription = subscriptions.get(player.toLowerCase());
+            if (subscription == null || player.equalsIgnoreCase(actorName)) {
+                continue;
+            }
+            if (event == null) {
+                event = LocationEvent.describe(previous, snapshot, symbolTable);
+                if (event == null) {
+                    return;
+                }
+            }
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Subscribes a player to the changes of the location it is at, replacing an earlier
+     * subscription of the same player
+     * @param name Name of the player
+     * @return New subscription
+     */
+    public EventSubscription subscribe(String name) {
+        String key = name.toLowerCase();
+        EventSubscription subscription = new EventSubscription(key, EventSubscription.DEFAULT_CAPACITY);
+        EventSubscription previous = subscriptions.put(key, subscription);
+        if (previous != null) {
+            previous.close();
+        }
+        return subscription;
+    }
+
+    /**
+     * Ends a subscription unless it has already been replaced
+     * @param subscription Subscription to end
+     */
+    public void unsubscribe(EventSubscription subscription) {
+        subscription.close();
+        subscriptions.remove(subscription.getPlayerKey(), subscription);
+    }
+
+    /**
+     * Publishes a new snapshot of a player if it changed, or withdraws its snapshot if the
+     * player is no longer hosted here. Must be called holding the world lock.
+     * @param gamePlayer Player that ran a command, or null
+     */
+    private void publishPlayer(GamePlayer gamePlayer) {
+        if (gamePlayer == null) {
+            return;
+        }
+        String key = gamePlayer.getName().toLowerCase();
+        if (gamePlayers.get(gamePlayer.getName()) != gamePlayer) {
+            playerSnapshots.remove(key);
+            return;
+        }
+        if (gamePlayer.hasUnpublishedChanges() || !playerSnapshots.containsKey(key)) {
+            snapshotVersion++;
+            gamePlayer.markPublished();
+            playerSnapshots.put(key, PlayerSnapshot.capture(gamePlayer, snapshotVersion));
+        }
+    }
+
+    /**
+     * Version of the snapshot currently published for a location
+     * @param locationName Name of the location
+     * @return Version, or -1 if the location is unknown
+     */
+    public long getLocationSnapshotVersion(String locationName) {
+        LocationSnapshot snapshot = locationSnapshots.get(locationName);
+        if (snapshot == null) {
+            return -1;
+        }
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Makes this world move players that sent no command for a while to an on-disk store.
+     * They are brought back on their next command, so memory and the per-command scans over
+     * players grow with the active players only.
+     * @param store Store receiving the evicted players
+     * @param idleTimeMillis Milliseconds without a command after which a player is evicted
+     */
+    public void enableIdleEviction(PlayerStore store, long idleTimeMillis) {
+        idleMillis = idleTimeMillis;
+        playerStore = store;
+    }
+
+    /**
+     * Moves the players that have been idle for too long to the player store. Players with
+     * an open event subscription are never idle. A player that cannot be written stays in
+     * memory.
+     * @param now Current time in milliseconds
+     * @return Number of players evicted
+     */
+    public int evictIdlePlayers(long now) {
+        PlayerStore store = playerStore;
+        if (store == null) {
+            return 0;
+        }
+        int evicted = 0;
+        worldLock.lock();
+        try {
+            Iterator<GamePlayer> players = gamePlayers.values().iterator();
+            while (players.hasNext()) {
+                GamePlayer gamePlayer = players.next();
+                String key = gamePlayer.getName().toLowerCase();
+                Long lastActive = playerActivity.putIfAbsent(key, now);
+                // a player without recorded activity has only just arrived, so it starts idling now
+                if (lastActive == null || now - lastActive < idleMillis || subscriptions.containsKey(key)) {
+                    continue;
+                }
+                try {
+                    store.save(gamePlayer);
+                }
+                catch (IOException e) {
+                    logger.warn("Could not evict idle player ", gamePlayer.getName());
+                    continue;
+                }
+                players.remove();
+                playerSnapshots.remove(key);
+                playerActivity.remove(key);
+                GameLocation location = gameLocations.get(gamePlayer.getLocation());
+                if (location != null) {
+                    location.removePlayer(gamePlayer.getName());
+                }
+                evicted++;
+            }
+        }
+        finally {
+            this.publishLocations(null);
+            worldLock.unlock();
+        }
+        return evicted;
+    }
+
+    /**
+     * Brings a player back from the player store to where it was, or to the start location
+     * if that location no longer exists. Must be called holding the world lock.
+     * @param name Name of the player
+     * @return The player, or null if the store does not hold it
+     */
+    private GamePlayer restorePlayer(String name) {
+        PlayerStore store = playerStore;
+        if (store == null) {
+            return null;
+        }
+        GamePlayer gamePlayer = store.take(name);
+        if (gamePlayer == null) {
+            return null;
+        }
+        GameLocation location = gameLocations.get(gamePlayer.getLocation());
+        if (location == null) {
+            gamePlayer.setLocation(playersStartLocation);
+            location = gameLocations.get(playersStartLocation);
+        }
+        gamePlayers.put(gamePlayer.getName(), gamePlayer);
+        location.addPlayer(gamePlayer.getName());
+        playerActivity.put(gamePlayer.getName().toLowerCase(), System.currentTimeMillis());
+        worldClock.healthLost(gamePlayer);
+        return gamePlayer;
+    }
+
+    /**
+     * Turns on the built in timed events of this world
+     * @param regenerationTicks Ticks per health point a hurt player regenerates, 0 for none
+     * @param respawnTicks Ticks after which an entity consumed from a location returns to
+     *                     it from the storeroom, 0 for never
+     */
+    public void enableTimedEvents(long regenerationTicks, long respawnTicks) {
+        worldLock.lock();
+        try {
+            worldClock.configure(regenerationTicks, respawnTicks);
+        }
+        finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the world's clock on, firing the events that have become due. The events run
+     * under the world lock like a command, and their changes are published when they are
+     * done. A world without pending events only moves its clock.
+     * @param ticks Number of ticks to move on by
+     * @return Number of events fired
+     */
+    public int advanceClock(long ticks) {
+        worldLock.lock();
+        try {
+            return worldClock.advance(this, ticks);
+        }
+        finally {
+            this.publishLocations(null);
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Schedules an event of this world
+     * @param delay Ticks from now at which the event happens
+     * @param event Event to schedule
+     * @return Handle to cancel the event with
+     */
+    public TimingWheel.Timer<TimedEvent> scheduleEvent(long delay, TimedEvent event) {
+        worldLock.lock();
+        try {
+            return worldClock.schedule(delay, event);
+        }
+        finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Clock of this world, which must only be used holding the world lock, e.g. from events
+     * @return Clock of the world
+     */
+    WorldClock getWorldClock() {
+        return worldClock;
+    }
+
+    /**
+     * Gives a character a new behaviour, or makes it stand still
+     * @param characterName Name of the character
+     * @param specification Behaviour text such as "wander 5", or null to stop the character
+     * @return True if the character was found in a location of this world
+     */
+    public boolean setCharacterBehaviour(String characterName, String specification) {
+        worldLock.lock();
+        try {
+            if (specification == null) {
+                return npcEngine.stop(characterName, worldClock);
+            }
+            NpcBehaviour behaviour = NpcBehaviour.parse(specification, symbolTable);
+            int symbol = symbolTable.idOf(characterName);
+            for (GameLocation location : StoredLocationMap.holdersOf(gameLocations, symbol)) {
+                if (location.isEntityPresent(symbol) && location.getEntity(symbol) instanceof GameCharacter) {
+                    npcEngine.assign((GameCharacter) location.getEntity(symbol), location.getLocationName(), behaviour, worldClock);
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Engine moving the characters of this world, which must only be read holding the world
+     * lock or while no clock is running
+     * @return NPC engine of the world
+     */
+    NpcEngine getNpcEngine() {
+        return npcEngine;
+    }
+
+    /**
+     * Network matching the conditions of this world's actions, which must only be read
+     * holding the world lock or while no command is running
+     * @return Rule network of the world
+     */
+    RuleNetwork getRuleNetwork() {
+        return ruleNetwork;
+    }
+
+    /**
+     * Index answering the options command, which must only be read holding the world lock
+     * or while no command is running
+     * @return Affordance index of the world
+     */
+    AffordanceIndex getAffordanceIndex() {
+        return affordanceIndex;
+    }
+
+    /**
+     * Gives a player hosted here one health point. Called by the world clock.
+     * @param playerName Name of the player
+     * @return True if the player is still hurt and keeps regenerating
+     */
+    boolean regenerateHealth(String playerName) {
+        GamePlayer gamePlayer = gamePlayers.get(playerName);
+        if (gamePlayer == null) {
+            return false;
+        }
+        gamePlayer.incrementHealth();
+        this.publishPlayer(gamePlayer);
+        return gamePlayer.getHealth() < 3;
+    }
+
+    /**
+     * Moves an entity from the storeroom back to a location, unless it has left the
+     * storeroom already or the location is gone. Called by the world clock.
+     * @param entityName Name of the entity
+     * @param locationName Location the entity returns to
+     * @return True if the entity was moved
+     */
+    boolean respawnEntity(String entityName, String locationName) {
+        GameLocation storeroom = gameLocations.get("storeroom");
+        GameLocation location = gameLocations.get(locationName);
+        int symbol = symbolTable.idOf(entityName);
+        if (storeroom == null || location == null || symbol == SymbolTable.NO_SYMBOL || !storeroom.isEntityPresent(symbol)) {
+            return false;
+        }
+        GameEntity entity = storeroom.getEntity(symbol);
+        storeroom.removeEntity(entity.getName());
+        location.addEntity(entity);
+        return true;
+    }
+
+    /**
+     * Number of players currently held in memory
+     * @return Number of active players
+     */
+    public int getActivePlayerCount() {
+        worldLock.lock();
+        try {
+            return gamePlayers.size();
+        }
+        finally {
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves a player of this world, ignoring the case of its name
+     * @param name Name of the player
+     * @return The player or null if it is not hosted here
+     */
+    private GamePlayer findPlayer(String name) {
+        GamePlayer exact = gamePlayers.get(name);
+        if (exact != null) {
+            return exact;
+        }
+        if(!gamePlayers.isEmpty()) {
+            for (GamePlayer player : gamePlayers.values()) {
+                if (player.getName().equalsIgnoreCase(name)) {
+                    return player;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Receives a player handed over by another shard
+     * @param gamePlayer Player with its health and inventory
+     * @return What the player sees at its new location
+     */
+    String acceptPlayer(GamePlayer gamePlayer) {
+        worldLock.lock();
+        try {
+            GameLocation location = gameLocations.get(gamePlayer.getLocation());
+            if (location == null) {
+                throw new RuntimeException("Invalid player location");
+            }
+            GamePlayer previous = this.findPlayer(gamePlayer.getName());
+            if (previous != null) {
+                gamePlayers.remove(previous.getName());
+            }
+            gamePlayers.put(gamePlayer.getName(), gamePlayer);
+            location.addPlayer(gamePlayer.getName());
+            playerActivity.put(gamePlayer.getName().toLowerCase(), System.currentTimeMillis());
+            return commandHandler.getPlayerPerspective(gamePlayer);
+        }
+        finally {
+            this.publishLocations(gamePlayer.getName());
+            this.publishPlayer(gamePlayer);
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Removes an entity from the locations of this shard for another shard
+     * @param entityName Name of the entity
+     * @param includeStoreroom Whether an entity in the storeroom may be taken
+     * @return The entity or null if this shard does not hold it
+     */
+    GameEntity takeEntity(String entityName, boolean includeStoreroom) {
+        worldLock.lock();
+        try {
+            int symbol = symbolTable.idOf(entityName);
+            for (GameLocation location : StoredLocationMap.holdersOf(gameLocations, symbol)) {
+                if ((includeStoreroom || !location.getLocationName().equalsIgnoreCase("storeroom"))
+                        && location.isEntityPresent(entityName)) {
+                    GameEntity entity = location.getEntity(entityName);
+                    location.removeEntity(entityName);
+                    return entity;
+                }
+            }
+            return null;
+        }
+        finally {
+            this.publishLocations(null);
+            worldLock.unlock();
+        }
+    }
+
+    /**
+     * Places an entity sent by another shard in a location of this shard
+     * @param locationName Name of the location
+     * @param entity Entity to place
+     */
+    void putEntity(String locationName, GameEntity entity) {
+        worldLock.lock();
+        try {
+            GameLocation location = gameLocations.get(locationName);
+            if (location == null) {
+                throw new RuntimeException("Invalid location");
+            }
+            location.addEntity(entity);
+        }
+        finally {
+            this.publishLocations(null);
+            worldLock.unlock();
+        }
+    }
+}
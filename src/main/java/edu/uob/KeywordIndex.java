@@ -0,0 +1,50 @@
+package edu.uob;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Dictionary of keywords for the command tokenizer. Keywords are stored under their lower
+ * case text, and the number of words of the longest keyword bounds how far a match looks
+ * ahead. Subclasses may look keywords up elsewhere.
+ */
+public class KeywordIndex {
+    //Keyword as spelt in the dictionary with lower case keyword as key
+    private final HashMap<String, String> keywords = new HashMap<>();
+
+    //Number of words of the longest keyword
+    private int maxWords;
+
+    /**
+     * Builds an index over a dictionary
+     * @param dictionary Keywords, possibly of several words
+     */
+    KeywordIndex(Collection<String> dictionary) {
+        for (String keyword : dictionary) {
+            String key = keyword.toLowerCase();
+            keywords.put(key, keyword);
+            maxWords = Math.max(maxWords, new CommandTokenizer(key).getTokenCount());
+        }
+    }
+
+    /**
+     * Creates an index whose keywords are looked up by a subclass
+     * @param maxWords Number of words of the longest keyword
+     */
+    KeywordIndex(int maxWords) {
+        this.maxWords = maxWords;
+    }
+
+    /**
+     * Looks up a keyword by the text of a view
+     * @param text Lower case text
+     * @return Keyword as spelt in the dictionary, or null if there is none
+     */
+    String lookup(CharSequence text) {
+        return keywords.get(text);
+    }
+
+    int getMaxWords() {
+        return maxWords;
+    }
+}
@@ -0,0 +1,32 @@
+package edu.uob;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.uob.KeywordParse")
+@Label("Keyword Parse")
+@Description("Extraction of one kind of keyword (trigger, subject or player) from a command")
+public final class KeywordParseEvent extends GameEvent {
+    @Label("Keyword Kind")
+    protected String keywordKind;
+
+    @Label("Matches")
+    protected int matches;
+
+    @Label("Cache Hit")
+    @Description("Whether the keywords were taken from the parse cache instead of being extracted")
+    protected boolean cacheHit;
+
+    public void setKeywordKind(String keywordKind) {
+        this.keywordKind = keywordKind;
+    }
+
+    public void setMatches(int matches) {
+        this.matches = matches;
+    }
+
+    public void setCacheHit(boolean cacheHit) {
+        this.cacheHit = cacheHit;
+    }
+}
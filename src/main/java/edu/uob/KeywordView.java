@@ -0,0 +1,76 @@
+package edu.uob;
+
+/**
+ * Window onto a range of a command's text, used to look keywords up in a HashMap keyed by
+ * String without copying the range. Its hashCode is computed exactly like String's and it
+ * equals any CharSequence holding the same characters, which is all HashMap.get needs to
+ * find a String key. A view is moved with {@link #reset} so one instance serves every
+ * lookup of a command.
+ */
+public final class KeywordView implements CharSequence {
+    private final String source;
+    private int start;
+    private int end;
+
+    KeywordView(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Moves the window
+     * @param start Index of the first character
+     * @param end Index after the last character
+     * @return This view
+     */
+    KeywordView reset(int start, int end) {
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return source.subSequence(start + from, start + to);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CharSequence)) {
+            return false;
+        }
+        CharSequence sequence = (CharSequence) other;
+        if (sequence.length() != this.length()) {
+            return false;
+        }
+        for (int i = 0; i < sequence.length(); i++) {
+            if (sequence.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return source.substring(start, end);
+    }
+}
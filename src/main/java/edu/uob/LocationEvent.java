@@ -0,0 +1,83 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact description of what changed at a location between two of its snapshots, pushed
+ * to the subscribed players there. An event is one line of the form
+ * {@code EVENT <location> <version> arrived:<players> left:<players> added:<entities>
+ * removed:<entities> opened:<locations> closed:<locations>}, where only the non-empty
+ * fields are present and names are separated by commas.
+ */
+public final class LocationEvent {
+    private LocationEvent() {
+    }
+
+    /**
+     * Describes the change between two snapshots of a location
+     * @param before Previous snapshot of the location
+     * @param after New snapshot of the location
+     * @param symbols Symbol table of the world
+     * @return Event line, or null if nothing a player could see has changed
+     */
+    static String describe(LocationSnapshot before, LocationSnapshot after, SymbolTable symbols) {
+        StringBuilder event = new StringBuilder("EVENT ");
+        event.append(after.getLocationName()).append(" ").append(after.getVersion());
+        int length = event.length();
+        LocationEvent.appendMissing(event, "arrived", after.getPlayers(), before.getPlayers());
+        LocationEvent.appendMissing(event, "left", before.getPlayers(), after.getPlayers());
+        LocationEvent.appendMissing(event, "added", after.getEntitySymbols(), before.getEntitySymbols(), symbols);
+        LocationEvent.appendMissing(event, "removed", before.getEntitySymbols(), after.getEntitySymbols(), symbols);
+        LocationEvent.appendMissing(event, "opened", after.getDestinations(), before.getDestinations(), symbols);
+        LocationEvent.appendMissing(event, "closed", before.getDestinations(), after.getDestinations(), symbols);
+        if (event.length() == length) {
+            return null;
+        }
+        return event.toString();
+    }
+
+    /**
+     * Appends a field listing the players of one list missing from another
+     * @param event Event being built
+     * @param field Name of the field
+     * @param players Players to list
+     * @param others Players not to list
+     */
+    private static void appendMissing(StringBuilder event, String field, List<String> players, List<String> others) {
+        boolean first = true;
+        for (String player : players) {
+            if (!others.contains(player)) {
+                LocationEvent.appendName(event, field, player, first);
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * Appends a field naming the symbols of one set missing from another
+     * @param event Event being built
+     * @param field Name of the field
+     * @param ids Symbol ids to name
+     * @param others Symbol ids not to name
+     * @param symbols Symbol table of the world
+     */
+    private static void appendMissing(StringBuilder event, String field, BitSet ids, BitSet others, SymbolTable symbols) {
+        boolean first = true;
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            if (!others.get(id)) {
+                LocationEvent.appendName(event, field, symbols.nameOf(id), first);
+                first = false;
+            }
+        }
+    }
+
+    private static void appendName(StringBuilder event, String field, String name, boolean first) {
+        if (first) {
+            event.append(" ").append(field).append(":");
+        } else {
+            event.append(",");
+        }
+        event.append(name);
+    }
+}
@@ -0,0 +1,189 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable state of a location as it was when a command last finished changing it. Look
+ * commands are answered from snapshots without taking the world lock. The perspective of a
+ * player after it moved is written from the live location by the same methods, so both
+ * read the same text.
+ */
+public final class LocationSnapshot {
+    //Publish round of the world this snapshot was taken in
+    private final long version;
+
+    private final String locationName;
+
+    //Id of the location name in the symbol table of its world
+    private final int symbol;
+
+    //Symbol ids of the characters, artefacts and furniture here, which custom actions are checked against
+    private final BitSet entitySymbols;
+
+    //Description line and the lines of the characters, artefacts and furniture, the same for every viewer
+    private final String contents;
+
+    //Names of the players at the location
+    private final List<String> players;
+
+    //Lines naming the locations reachable from here
+    private final String exits;
+
+    //Symbol ids of the locations reachable from here
+    private final BitSet destinations;
+
+    private LocationSnapshot(long version, GameLocation location, String contents, List<String> players,
+                             String exits, BitSet destinations) {
+        this.version = version;
+        this.locationName = location.getLocationName();
+        this.symbol = location.getSymbol();
+        this.entitySymbols = (BitSet) location.getEntitySymbols().clone();
+        this.contents = contents;
+        this.players = players;
+        this.exits = exits;
+        this.destinations = destinations;
+    }
+
+    /**
+     * Takes a snapshot of the current state of a location. Must be called by the thread
+     * holding the world lock.
+     * @param location Location to copy
+     * @param paths Paths of the world
+     * @param symbols Symbol table of the world
+     * @param version Publish round of the world
+     * @return Snapshot of the location
+     */
+    static LocationSnapshot capture(GameLocation location, PathGraph paths, SymbolTable symbols, long version) {
+        ResponseBufferPool pool = ResponseBufferPool.getInstance();
+        ResponseBuffer text = pool.acquire();
+        try {
+            LocationSnapshot.writeContents(location, text);
+            String contents = text.toString();
+            text.clear();
+            LocationSnapshot.writeExits(location, paths, symbols, text);
+            return new LocationSnapshot(version, location, contents, List.copyOf(location.getPlayers()),
+                    text.toString(), (BitSet) paths.destinationsOf(location.getSymbol()).clone());
+        }
+        finally {
+            pool.release(text);
+        }
+    }
+
+    /**
+     * Writes what a player sees at a location straight from the live location, for a reply
+     * that is sent once and need not be kept as a snapshot. Must be called by the thread
+     * holding the world lock.
+     * @param location Location looked at
+     * @param paths Paths of the world
+     * @param symbols Symbol table of the world
+     * @param viewerName Name of the player looking, who is not listed among the players
+     * @param sink Reply to write to
+     */
+    static void describe(GameLocation location, PathGraph paths, SymbolTable symbols, String viewerName,
+                         ResponseSink sink) {
+        LocationSnapshot.writeContents(location, sink);
+        LocationSnapshot.writePlayers(location.getPlayers(), viewerName, sink);
+        LocationSnapshot.writeExits(location, paths, symbols, sink);
+    }
+
+    /**
+     * Writes the description line and the lines of the characters, artefacts and furniture
+     * @param location Location looked at
+     * @param sink Text to write to
+     */
+    private static void writeContents(GameLocation location, ResponseSink sink) {
+        sink.append("You are in ").append(location.getLocationDescription()).append(System.lineSeparator());
+        sink.append("You can see:").append(System.lineSeparator());
+        //iterate through characters, artefacts, furniture
+        for (GameCharacter character : location.getCharacters()) {
+            sink.append(character.getName()).append(": ")
+                    .append(character.getDescription()).append(System.lineSeparator());
+        }
+        for (GameArtefact artefact : location.getArtefacts()) {
+            sink.append(artefact.getName()).append(": ")
+                    .append(artefact.getDescription()).append(System.lineSeparator());
+        }
+        for (GameFurniture furniture : location.getFurnitures()) {
+            sink.append(furniture.getName()).append(": ")
+                    .append(furniture.getDescription()).append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Writes a line for every player at a location other than the viewer
+     * @param players Names of the players at the location
+     * @param viewerName Name of the player looking
+     * @param sink Text to write to
+     */
+    private static void writePlayers(Collection<String> players, String viewerName, ResponseSink sink) {
+        for (String player : players) {
+            if (!player.equalsIgnoreCase(viewerName)) {
+                sink.append("Player :").append(player).append(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Writes the lines naming the locations reachable from a location
+     * @param location Location looked at
+     * @param paths Paths of the world
+     * @param symbols Symbol table of the world
+     * @param sink Text to write to
+     */
+    private static void writeExits(GameLocation location, PathGraph paths, SymbolTable symbols, ResponseSink sink) {
+        sink.append("You can access from here:").append(System.lineSeparator());
+        BitSet destinations = paths.destinationsOf(location.getSymbol());
+        for (int path = destinations.nextSetBit(0); path >= 0; path = destinations.nextSetBit(path + 1)) {
+            sink.append(symbols.nameOf(path)).append(System.lineSeparator());
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getLocationName() {
+        return locationName;
+    }
+
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Retrieves the symbol ids of the entities at the location. The set must not be modified.
+     * @return Set of entity ids
+     */
+    public BitSet getEntitySymbols() {
+        return entitySymbols;
+    }
+
+    /**
+     * Retrieves the names of the players at the location
+     * @return Unmodifiable list of player names
+     */
+    public List<String> getPlayers() {
+        return players;
+    }
+
+    /**
+     * Retrieves the symbol ids of the locations reachable from here. The set must not be modified.
+     * @return Set of location ids
+     */
+    public BitSet getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * Writes what a player sees at this location
+     * @param viewerName Name of the player looking, who is not listed among the players
+     * @param sink Reply to write to
+     */
+    public void describeTo(String viewerName, ResponseSink sink) {
+        sink.append(contents);
+        LocationSnapshot.writePlayers(players, viewerName, sink);
+        sink.append(exits);
+    }
+}
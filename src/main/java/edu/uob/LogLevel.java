@@ -0,0 +1,11 @@
+package edu.uob;
+
+/**
+ * Severity levels understood by the game logger, in increasing order of severity
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR
+}
@@ -0,0 +1,771 @@
+package edu.uob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Off-heap image of a world's locations, entities, names, descriptions and paths in a
+ * memory-mapped file of fixed-layout records, so a world far larger than the heap only
+ * keeps the locations in play as objects. The file holds, one region after another:
+ * <ul>
+ *     <li>a header with the record counts and the stamp of the configuration files the
+ *     store was written from</li>
+ *     <li>one location record per location id: name, description, first entity, first
+ *     path, number of paths and number of path slots</li>
+ *     <li>one symbol record per symbol id: kind, name, description, location and the next
+ *     and previous entity at that location, so an entity moves in constant time, and
+ *     whether the name is a subject and the behaviour of a character</li>
+ *     <li>the destinations of all paths, grouped by origin, with room for the paths the
+ *     actions can open</li>
+ *     <li>an open-addressing hash table from lower case name to symbol id</li>
+ *     <li>every distinct name, description and behaviour once, as a length and UTF-8 bytes</li>
+ * </ul>
+ * Records refer to each other by symbol id and to text by offset. Each region is mapped
+ * on its own, so none may exceed 2 GB. A store outlives the server: it is reopened as it
+ * was left as long as the configuration files have not changed since it was written, so a
+ * world restarts without parsing its entities file again. Not thread-safe; the state of
+ * the locations, entities and paths is used holding the world lock, while names are only
+ * written when the store is created and may be looked up by any thread.
+ */
+public final class MappedWorldStore {
+    //"STAG" in ASCII, first int of every store file
+    private static final int MAGIC = 0x53544147;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 48;
+
+    //Name, description, first entity, first path, path count, path slots
+    private static final int LOCATION_RECORD = 24;
+
+    //Kind, name, description, location, next, previous, flags, behaviour
+    private static final int SYMBOL_RECORD = 32;
+
+    private static final int KIND_NONE = 0;
+    private static final int KIND_CHARACTER = 1;
+    private static final int KIND_ARTEFACT = 2;
+    private static final int KIND_FURNITURE = 3;
+
+    //Flag of a symbol whose name is a subject commands can refer to
+    private static final int FLAG_SUBJECT = 1;
+
+    //Offsets of the fields within the header
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_LOCATION_COUNT = 8;
+    private static final int HEADER_SYMBOL_COUNT = 12;
+    private static final int HEADER_PATH_SLOTS = 16;
+    private static final int HEADER_TEXT_BYTES = 20;
+    private static final int HEADER_NAME_SLOTS = 24;
+    private static final int HEADER_SUBJECT_WORDS = 28;
+    private static final int HEADER_SOURCE_STAMP = 32;
+
+    //Offsets of the fields within a location record
+    private static final int LOCATION_NAME = 0;
+    private static final int LOCATION_DESCRIPTION = 4;
+    private static final int LOCATION_FIRST_ENTITY = 8;
+    private static final int LOCATION_FIRST_PATH = 12;
+    private static final int LOCATION_PATH_COUNT = 16;
+    private static final int LOCATION_PATH_SLOTS = 20;
+
+    //Offsets of the fields within a symbol record
+    private static final int ENTITY_KIND = 0;
+    private static final int ENTITY_NAME = 4;
+    private static final int ENTITY_DESCRIPTION = 8;
+    private static final int ENTITY_LOCATION = 12;
+    private static final int ENTITY_NEXT = 16;
+    private static final int ENTITY_PREVIOUS = 20;
+    private static final int SYMBOL_FLAGS = 24;
+    private static final int SYMBOL_BEHAVIOUR = 28;
+
+    //Text offset standing for no text
+    private static final int NO_TEXT = -1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer locations;
+    private final MappedByteBuffer entities;
+    private final MappedByteBuffer paths;
+    private final MappedByteBuffer names;
+    private final MappedByteBuffer texts;
+
+    private final int locationCount;
+    private final int symbolCount;
+
+    //Number of slots of the name table, a power of two
+    private final int nameSlots;
+
+    //Number of words of the longest subject
+    private final int maxSubjectWords;
+
+    private MappedWorldStore(RandomAccessFile file, int locationCount, int symbolCount, int pathSlots,
+                             int textBytes, int nameSlots, int maxSubjectWords) throws IOException {
+        this.file = file;
+        this.locationCount = locationCount;
+        this.symbolCount = symbolCount;
+        this.nameSlots = nameSlots;
+        this.maxSubjectWords = maxSubjectWords;
+        FileChannel channel = file.getChannel();
+        long offset = HEADER_BYTES;
+        long locationBytes = (long) locationCount * LOCATION_RECORD;
+        long entityBytes = (long) symbolCount * SYMBOL_RECORD;
+        long pathBytes = (long) pathSlots * Integer.BYTES;
+        long nameBytes = (long) nameSlots * Integer.BYTES;
+        locations = channel.map(FileChannel.MapMode.READ_WRITE, offset, locationBytes);
+        offset += locationBytes;
+        entities = channel.map(FileChannel.MapMode.READ_WRITE, offset, entityBytes);
+        offset += entityBytes;
+        paths = channel.map(FileChannel.MapMode.READ_WRITE, offset, pathBytes);
+        offset += pathBytes;
+        names = channel.map(FileChannel.MapMode.READ_WRITE, offset, nameBytes);
+        offset += nameBytes;
+        texts = channel.map(FileChannel.MapMode.READ_WRITE, offset, textBytes);
+    }
+
+    /**
+     * Stamps the configuration files of a world, so that a store written from other
+     * versions of them is not reopened
+     * @param entitiesFile The game configuration file containing all game entities
+     * @param actionsFile The game configuration file containing all game actions
+     * @return Stamp of the two files
+     */
+    static long stampOf(File entitiesFile, File actionsFile) {
+        long stamp = entitiesFile.getAbsolutePath().hashCode();
+        stamp = 31 * stamp + entitiesFile.lastModified();
+        stamp = 31 * stamp + entitiesFile.length();
+        stamp = 31 * stamp + actionsFile.getAbsolutePath().hashCode();
+        stamp = 31 * stamp + actionsFile.lastModified();
+        return 31 * stamp + actionsFile.length();
+    }
+
+    /**
+     * Reopens a store file as it was left, if it was written from the same configuration
+     * files by this version of the store
+     * @param storeFile File to open
+     * @param sourceStamp Stamp of the configuration files of the world
+     * @return The store, mapped and ready, or null if there is no such file or it has to
+     *         be written again
+     * @throws IOException If the file cannot be read
+     */
+    static MappedWorldStore open(File storeFile, long sourceStamp) throws IOException {
+        if (!storeFile.isFile() || storeFile.length() < HEADER_BYTES) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(storeFile, "rw");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            randomAccessFile.getChannel().read(header, 0);
+            int locationCount = header.getInt(HEADER_LOCATION_COUNT);
+            int symbolCount = header.getInt(HEADER_SYMBOL_COUNT);
+            int pathSlots = header.getInt(HEADER_PATH_SLOTS);
+            int textBytes = header.getInt(HEADER_TEXT_BYTES);
+            int nameSlots = header.getInt(HEADER_NAME_SLOTS);
+            long expectedLength = HEADER_BYTES + (long) locationCount * LOCATION_RECORD
+                    + (long) symbolCount * SYMBOL_RECORD + (long) pathSlots * Integer.BYTES
+                    + (long) nameSlots * Integer.BYTES + textBytes;
+            if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION
+                    || header.getLong(HEADER_SOURCE_STAMP) != sourceStamp
+                    || randomAccessFile.length() != expectedLength) {
+                randomAccessFile.close();
+                return null;
+            }
+            return new MappedWorldStore(randomAccessFile, locationCount, symbolCount, pathSlots, textBytes, nameSlots,
+                    header.getInt(HEADER_SUBJECT_WORDS));
+        }
+        catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the image of a loaded world to a new store file, replacing any file there
+     * @param storeFile File to create
+     * @param template Template loaded from the configuration files of the world
+     * @param sourceStamp Stamp of the configuration files, see {@link #stampOf(File, File)}
+     * @return The store, mapped and ready
+     * @throws IOException If the file cannot be written
+     */
+    static MappedWorldStore create(File storeFile, WorldTemplate template, long sourceStamp) throws IOException {
+        SymbolTable symbols = template.getSymbolTable();
+        Map<String, GameLocation> gameLocations = template.getGameLocations();
+        PathGraph pathGraph = template.getPathGraph();
+        // every distinct text is encoded once and laid out in the order first met
+        HashMap<String, Integer> textOffsets = new HashMap<>();
+        LinkedList<ByteBuffer> encodedTexts = new LinkedList<>();
+        int textBytes = 0;
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            textBytes = MappedWorldStore.collectText(symbols.nameOf(symbol), textOffsets, encodedTexts, textBytes);
+        }
+        int extraPaths = Math.min(symbols.getLocationCount(), MappedWorldStore.countOpenablePaths(template));
+        int pathSlots = 0;
+        for (int location = 0; location < symbols.getLocationCount(); location++) {
+            pathSlots = Math.addExact(pathSlots, pathGraph.destinationsOf(location).cardinality() + extraPaths);
+            GameLocation gameLocation = gameLocations.get(symbols.nameOf(location));
+            if (gameLocation == null) {
+                continue;
+            }
+            textBytes = MappedWorldStore.collectText(gameLocation.getLocationName(), textOffsets, encodedTexts, textBytes);
+            textBytes = MappedWorldStore.collectText(gameLocation.getLocationDescription(), textOffsets, encodedTexts, textBytes);
+            for (GameEntity entity : gameLocation.getEntities()) {
+                textBytes = MappedWorldStore.collectText(entity.getName(), textOffsets, encodedTexts, textBytes);
+                textBytes = MappedWorldStore.collectText(entity.getDescription(), textOffsets, encodedTexts, textBytes);
+            }
+            for (GameCharacter character : gameLocation.getCharacters()) {
+                textBytes = MappedWorldStore.collectText(character.getBehaviour(), textOffsets, encodedTexts, textBytes);
+            }
+        }
+        int maxSubjectWords = 0;
+        for (String subject : template.getAvailableSubjects()) {
+            maxSubjectWords = Math.max(maxSubjectWords, new CommandTokenizer(subject.toLowerCase()).getTokenCount());
+        }
+        // at most half full, so that probes stay short
+        int nameSlots = Integer.highestOneBit(Math.max(2, Math.multiplyExact(symbols.size(), 2)) - 1) << 1;
+        if (storeFile.getParentFile() != null) {
+            storeFile.getParentFile().mkdirs();
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(storeFile, "rw");
+        randomAccessFile.setLength(0);
+        randomAccessFile.writeInt(MAGIC);
+        randomAccessFile.writeInt(VERSION);
+        randomAccessFile.writeInt(symbols.getLocationCount());
+        randomAccessFile.writeInt(symbols.size());
+        randomAccessFile.writeInt(pathSlots);
+        randomAccessFile.writeInt(textBytes);
+        randomAccessFile.writeInt(nameSlots);
+        randomAccessFile.writeInt(maxSubjectWords);
+        randomAccessFile.writeLong(sourceStamp);
+        randomAccessFile.writeLong(0);
+        MappedWorldStore store = new MappedWorldStore(randomAccessFile, symbols.getLocationCount(), symbols.size(),
+                pathSlots, textBytes, nameSlots, maxSubjectWords);
+        for (ByteBuffer encoded : encodedTexts) {
+            store.texts.put(encoded);
+        }
+        store.writeRecords(gameLocations, pathGraph, symbols, textOffsets, extraPaths);
+        store.writeNames(symbols, template.getAvailableSubjects(), textOffsets);
+        return store;
+    }
+
+    /**
+     * Counts the locations the actions of a world can open a path to, which is how many
+     * paths a location may gain while the world runs
+     * @param template Template of the world
+     * @return Number of distinct locations
+     */
+    private static int countOpenablePaths(WorldTemplate template) {
+        BitSet destinations = new BitSet();
+        for (HashSet<GameAction> actions : template.getGameActions().values()) {
+            for (GameAction action : actions) {
+                if (action.getPlan() == null) {
+                    continue;
+                }
+                for (ActionPlan.Step step : action.getPlan().getProduceSteps()) {
+                    if (step.getKind() == ActionPlan.StepKind.PATH) {
+                        destinations.set(step.getSymbol());
+                    }
+                }
+            }
+        }
+        return destinations.cardinality();
+    }
+
+    /**
+     * Assigns a text its offset in the text region the first time it is met
+     * @param text Name or description, may be null
+     * @param textOffsets Offsets of the texts met so far
+     * @param encodedTexts Encoded texts in the order met
+     * @param textBytes Bytes of the text region so far
+     * @return Bytes of the text region with the text
+     */
+    private static int collectText(String text, HashMap<String, Integer> textOffsets,
+                                   LinkedList<ByteBuffer> encodedTexts, int textBytes) {
+        if (text == null || textOffsets.containsKey(text)) {
+            return textBytes;
+        }
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(text);
+        ByteBuffer encoded = ByteBuffer.allocate(Integer.BYTES + bytes.remaining());
+        encoded.putInt(bytes.remaining()).put(bytes).flip();
+        textOffsets.put(text, textBytes);
+        encodedTexts.add(encoded);
+        return Math.addExact(textBytes, encoded.remaining());
+    }
+
+    /**
+     * Fills in the location, symbol and path records
+     * @param gameLocations Locations of the world with their entities
+     * @param pathGraph Paths of the world
+     * @param symbols Symbol table of the world
+     * @param textOffsets Offsets of every text in the text region
+     * @param extraPaths Number of path slots each location has beyond its paths
+     */
+    private void writeRecords(Map<String, GameLocation> gameLocations, PathGraph pathGraph, SymbolTable symbols,
+                              HashMap<String, Integer> textOffsets, int extraPaths) {
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            int record = symbol * SYMBOL_RECORD;
+            entities.putInt(record + ENTITY_KIND, KIND_NONE);
+            entities.putInt(record + ENTITY_NAME, MappedWorldStore.offsetOf(symbols.nameOf(symbol), textOffsets));
+            entities.putInt(record + ENTITY_DESCRIPTION, NO_TEXT);
+            entities.putInt(record + ENTITY_LOCATION, SymbolTable.NO_SYMBOL);
+            entities.putInt(record + ENTITY_NEXT, SymbolTable.NO_SYMBOL);
+            entities.putInt(record + ENTITY_PREVIOUS, SymbolTable.NO_SYMBOL);
+            entities.putInt(record + SYMBOL_FLAGS, 0);
+            entities.putInt(record + SYMBOL_BEHAVIOUR, NO_TEXT);
+        }
+        int path = 0;
+        for (int location = 0; location < locationCount; location++) {
+            int record = location * LOCATION_RECORD;
+            GameLocation gameLocation = gameLocations.get(symbols.nameOf(location));
+            BitSet destinations = pathGraph.destinationsOf(location);
+            locations.putInt(record + LOCATION_NAME, MappedWorldStore.offsetOf(symbols.nameOf(location), textOffsets));
+            locations.putInt(record + LOCATION_DESCRIPTION, NO_TEXT);
+            locations.putInt(record + LOCATION_FIRST_ENTITY, SymbolTable.NO_SYMBOL);
+            locations.putInt(record + LOCATION_FIRST_PATH, path);
+            locations.putInt(record + LOCATION_PATH_COUNT, destinations.cardinality());
+            locations.putInt(record + LOCATION_PATH_SLOTS, destinations.cardinality() + extraPaths);
+            for (int destination = destinations.nextSetBit(0); destination >= 0;
+                 destination = destinations.nextSetBit(destination + 1)) {
+                paths.putInt(path * Integer.BYTES, destination);
+                path++;
+            }
+            path += extraPaths;
+            if (gameLocation == null) {
+                continue;
+            }
+            locations.putInt(record + LOCATION_NAME, MappedWorldStore.offsetOf(gameLocation.getLocationName(), textOffsets));
+            locations.putInt(record + LOCATION_DESCRIPTION,
+                    MappedWorldStore.offsetOf(gameLocation.getLocationDescription(), textOffsets));
+            for (GameEntity entity : gameLocation.getEntities()) {
+                int symbol = entity.getSymbol();
+                if (!this.isEntitySymbol(symbol)) {
+                    continue;
+                }
+                int entityRecord = symbol * SYMBOL_RECORD;
+                entities.putInt(entityRecord + ENTITY_KIND, MappedWorldStore.kindOf(entity));
+                entities.putInt(entityRecord + ENTITY_NAME, MappedWorldStore.offsetOf(entity.getName(), textOffsets));
+                entities.putInt(entityRecord + ENTITY_DESCRIPTION,
+                        MappedWorldStore.offsetOf(entity.getDescription(), textOffsets));
+                if (entity instanceof GameCharacter) {
+                    entities.putInt(entityRecord + SYMBOL_BEHAVIOUR,
+                            MappedWorldStore.offsetOf(((GameCharacter) entity).getBehaviour(), textOffsets));
+                }
+                this.link(symbol, location);
+            }
+        }
+    }
+
+    /**
+     * Fills in the name table and marks the subjects
+     * @param symbols Symbol table of the world
+     * @param subjects Names commands can refer to
+     * @param textOffsets Offsets of every text in the text region
+     */
+    private void writeNames(SymbolTable symbols, Collection<String> subjects, HashMap<String, Integer> textOffsets) {
+        for (int slot = 0; slot < nameSlots; slot++) {
+            names.putInt(slot * Integer.BYTES, SymbolTable.NO_SYMBOL);
+        }
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            int slot = MappedWorldStore.hashOf(symbols.nameOf(symbol)) & (nameSlots - 1);
+            while (names.getInt(slot * Integer.BYTES) != SymbolTable.NO_SYMBOL) {
+                slot = (slot + 1) & (nameSlots - 1);
+            }
+            names.putInt(slot * Integer.BYTES, symbol);
+        }
+        for (String subject : subjects) {
+            int symbol = symbols.idOf(subject);
+            if (symbol != SymbolTable.NO_SYMBOL) {
+                int record = symbol * SYMBOL_RECORD;
+                entities.putInt(record + SYMBOL_FLAGS, entities.getInt(record + SYMBOL_FLAGS) | FLAG_SUBJECT);
+            }
+        }
+    }
+
+    /**
+     * Hashes a name regardless of its case
+     * @param name Name in any case
+     * @return Hash of the lower case name
+     */
+    private static int hashOf(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int offsetOf(String text, HashMap<String, Integer> textOffsets) {
+        Integer offset = textOffsets.get(text);
+        if (offset == null) {
+            return NO_TEXT;
+        }
+        return offset;
+    }
+
+    private static int kindOf(GameEntity entity) {
+        if (entity instanceof GameCharacter) {
+            return KIND_CHARACTER;
+        }
+        if (entity instanceof GameFurniture) {
+            return KIND_FURNITURE;
+        }
+        return KIND_ARTEFACT;
+    }
+
+    /**
+     * Checks that a symbol id has an entity record, i.e. is in range and not a location
+     * @param symbol Symbol id
+     * @return True if the id can be stored as an entity
+     */
+    private boolean isEntitySymbol(int symbol) {
+        return symbol >= locationCount && symbol < symbolCount;
+    }
+
+    /**
+     * Reads a text from the text region
+     * @param offset Offset of the text
+     * @return The text, or null for NO_TEXT
+     */
+    private String readText(int offset) {
+        if (offset == NO_TEXT) {
+            return null;
+        }
+        int length = texts.getInt(offset);
+        return StandardCharsets.UTF_8.decode(texts.slice(offset + Integer.BYTES, length)).toString();
+    }
+
+    /**
+     * Creates the heap view of a stored location, with its entities, as it was last saved
+     * @param location Location id
+     * @return The location, not yet tracked by any world
+     */
+    GameLocation loadLocation(int location) {
+        int record = location * LOCATION_RECORD;
+        GameLocation gameLocation = new GameLocation(this.readText(locations.getInt(record + LOCATION_NAME)),
+                this.readText(locations.getInt(record + LOCATION_DESCRIPTION)));
+        gameLocation.setSymbol(location);
+        for (int symbol = locations.getInt(record + LOCATION_FIRST_ENTITY); symbol != SymbolTable.NO_SYMBOL;
+             symbol = entities.getInt(symbol * SYMBOL_RECORD + ENTITY_NEXT)) {
+            int entityRecord = symbol * SYMBOL_RECORD;
+            int nameOffset = entities.getInt(entityRecord + ENTITY_NAME);
+            int descriptionOffset = entities.getInt(entityRecord + ENTITY_DESCRIPTION);
+            String name = this.readText(nameOffset);
+            String description = this.readText(descriptionOffset);
+            GameEntity entity;
+            switch (entities.getInt(entityRecord + ENTITY_KIND)) {
+                case KIND_CHARACTER:
+                    entity = new GameCharacter(name, description);
+                    break;
+                case KIND_FURNITURE:
+                    entity = new GameFurniture(name, description);
+                    break;
+                default:
+                    entity = new GameArtefact(name, description);
+                    break;
+            }
+            entity.setSymbol(symbol);
+            gameLocation.addEntity(entity);
+        }
+        return gameLocation;
+    }
+
+    /**
+     * Brings the stored contents of a location in line with its heap view. Entities that
+     * left are unlinked unless another location has claimed them already, and entities
+     * that arrived are moved here from wherever they were stored.
+     * @param gameLocation Heap view of the location
+     */
+    void saveLocation(GameLocation gameLocation) {
+        int location = gameLocation.getSymbol();
+        if (location < 0 || location >= locationCount) {
+            return;
+        }
+        BitSet present = gameLocation.getEntitySymbols();
+        int symbol = locations.getInt(location * LOCATION_RECORD + LOCATION_FIRST_ENTITY);
+        while (symbol != SymbolTable.NO_SYMBOL) {
+            int next = entities.getInt(symbol * SYMBOL_RECORD + ENTITY_NEXT);
+            if (!present.get(symbol)) {
+                this.unlink(symbol);
+            }
+            symbol = next;
+        }
+        for (symbol = present.nextSetBit(0); symbol >= 0; symbol = present.nextSetBit(symbol + 1)) {
+            if (this.isEntitySymbol(symbol) && entities.getInt(symbol * SYMBOL_RECORD + ENTITY_LOCATION) != location) {
+                this.unlink(symbol);
+                this.link(symbol, location);
+            }
+        }
+    }
+
+    /**
+     * Puts an entity first in the list of a location
+     * @param symbol Entity id, not linked anywhere
+     * @param location Location id
+     */
+    private void link(int symbol, int location) {
+        int record = symbol * SYMBOL_RECORD;
+        int head = locations.getInt(location * LOCATION_RECORD + LOCATION_FIRST_ENTITY);
+        entities.putInt(record + ENTITY_LOCATION, location);
+        entities.putInt(record + ENTITY_PREVIOUS, SymbolTable.NO_SYMBOL);
+        entities.putInt(record + ENTITY_NEXT, head);
+        if (head != SymbolTable.NO_SYMBOL) {
+            entities.putInt(head * SYMBOL_RECORD + ENTITY_PREVIOUS, symbol);
+        }
+        locations.putInt(location * LOCATION_RECORD + LOCATION_FIRST_ENTITY, symbol);
+    }
+
+    /**
+     * Takes an entity out of the list of its location, if it is in one
+     * @param symbol Entity id
+     */
+    private void unlink(int symbol) {
+        int record = symbol * SYMBOL_RECORD;
+        int location = entities.getInt(record + ENTITY_LOCATION);
+        if (location == SymbolTable.NO_SYMBOL) {
+            return;
+        }
+        int next = entities.getInt(record + ENTITY_NEXT);
+        int previous = entities.getInt(record + ENTITY_PREVIOUS);
+        if (previous == SymbolTable.NO_SYMBOL) {
+            locations.putInt(location * LOCATION_RECORD + LOCATION_FIRST_ENTITY, next);
+        }
+        else {
+            entities.putInt(previous * SYMBOL_RECORD + ENTITY_NEXT, next);
+        }
+        if (next != SymbolTable.NO_SYMBOL) {
+            entities.putInt(next * SYMBOL_RECORD + ENTITY_PREVIOUS, previous);
+        }
+        entities.putInt(record + ENTITY_LOCATION, SymbolTable.NO_SYMBOL);
+        entities.putInt(record + ENTITY_NEXT, SymbolTable.NO_SYMBOL);
+        entities.putInt(record + ENTITY_PREVIOUS, SymbolTable.NO_SYMBOL);
+    }
+
+    /**
+     * Finds where an entity was last saved
+     * @param symbol Entity id
+     * @return Location id, or NO_SYMBOL if the entity is at no stored location
+     */
+    int getLocationOf(int symbol) {
+        if (!this.isEntitySymbol(symbol)) {
+            return SymbolTable.NO_SYMBOL;
+        }
+        return entities.getInt(symbol * SYMBOL_RECORD + ENTITY_LOCATION);
+    }
+
+    /**
+     * Reads the destinations of the paths from a location
+     * @param origin Location id of the origin
+     * @return New set of destination location ids
+     */
+    BitSet destinationsOf(int origin) {
+        BitSet destinations = new BitSet();
+        if (origin < 0 || origin >= locationCount) {
+            return destinations;
+        }
+        int record = origin * LOCATION_RECORD;
+        int first = locations.getInt(record + LOCATION_FIRST_PATH);
+        int count = locations.getInt(record + LOCATION_PATH_COUNT);
+        for (int path = first; path < first + count; path++) {
+            destinations.set(paths.getInt(path * Integer.BYTES));
+        }
+        return destinations;
+    }
+
+    /**
+     * Finds the slot of a path
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return Index of the path in the path region, or -1 if there is no such path
+     */
+    private int findPath(int origin, int destination) {
+        if (origin < 0 || origin >= locationCount) {
+            return -1;
+        }
+        int record = origin * LOCATION_RECORD;
+        int first = locations.getInt(record + LOCATION_FIRST_PATH);
+        int count = locations.getInt(record + LOCATION_PATH_COUNT);
+        for (int path = first; path < first + count; path++) {
+            if (paths.getInt(path * Integer.BYTES) == destination) {
+                return path;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tests for a path
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return True if a path leads from origin to destination
+     */
+    boolean hasPath(int origin, int destination) {
+        return this.findPath(origin, destination) >= 0;
+    }
+
+    /**
+     * Adds a path in one of the free slots of its origin
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return True if the path did not exist before
+     */
+    boolean addPath(int origin, int destination) {
+        if (destination < 0 || destination >= locationCount || this.hasPath(origin, destination)) {
+            return false;
+        }
+        int record = origin * LOCATION_RECORD;
+        int count = locations.getInt(record + LOCATION_PATH_COUNT);
+        if (count == locations.getInt(record + LOCATION_PATH_SLOTS)) {
+            StringBuilder message = new StringBuilder("No room left in the world store for another path from ");
+            message.append(this.getName(origin));
+            throw new IllegalStateException(message.toString());
+        }
+        paths.putInt((locations.getInt(record + LOCATION_FIRST_PATH) + count) * Integer.BYTES, destination);
+        locations.putInt(record + LOCATION_PATH_COUNT, count + 1);
+        return true;
+    }
+
+    /**
+     * Removes a path, moving the last path of its origin into its slot
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return True if the path existed
+     */
+    boolean removePath(int origin, int destination) {
+        int path = this.findPath(origin, destination);
+        if (path < 0) {
+            return false;
+        }
+        int record = origin * LOCATION_RECORD;
+        int count = locations.getInt(record + LOCATION_PATH_COUNT) - 1;
+        int last = locations.getInt(record + LOCATION_FIRST_PATH) + count;
+        paths.putInt(path * Integer.BYTES, paths.getInt(last * Integer.BYTES));
+        locations.putInt(record + LOCATION_PATH_COUNT, count);
+        return true;
+    }
+
+    /**
+     * Looks up the id of a name in the name table
+     * @param name Name in any case
+     * @return Id of the name or NO_SYMBOL if it is unknown
+     */
+    int findSymbol(CharSequence name) {
+        int slot = MappedWorldStore.hashOf(name) & (nameSlots - 1);
+        int symbol = names.getInt(slot * Integer.BYTES);
+        while (symbol != SymbolTable.NO_SYMBOL) {
+            if (this.nameMatches(symbol, name)) {
+                return symbol;
+            }
+            slot = (slot + 1) & (nameSlots - 1);
+            symbol = names.getInt(slot * Integer.BYTES);
+        }
+        return SymbolTable.NO_SYMBOL;
+    }
+
+    /**
+     * Compares the stored name of a symbol with a name regardless of case
+     * @param symbol Symbol id
+     * @param name Name in any case
+     * @return True if the names are equal
+     */
+    private boolean nameMatches(int symbol, CharSequence name) {
+        String stored = this.getName(symbol);
+        if (stored == null || stored.length() != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(stored.charAt(i)) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the name of a symbol as it was first spelt
+     * @param symbol Symbol id
+     * @return Name, or null for an unknown id
+     */
+    String getName(int symbol) {
+        if (symbol < 0 || symbol >= symbolCount) {
+            return null;
+        }
+        return this.readText(entities.getInt(symbol * SYMBOL_RECORD + ENTITY_NAME));
+    }
+
+    /**
+     * Checks whether commands can refer to a symbol
+     * @param symbol Symbol id
+     * @return True if the name of the symbol is a location or entity name
+     */
+    boolean isSubject(int symbol) {
+        return symbol >= 0 && symbol < symbolCount
+                && (entities.getInt(symbol * SYMBOL_RECORD + SYMBOL_FLAGS) & FLAG_SUBJECT) != 0;
+    }
+
+    /**
+     * Checks whether a symbol names an entity of the world, wherever it is now
+     * @param symbol Symbol id
+     * @return True if the symbol has an entity record
+     */
+    boolean isEntity(int symbol) {
+        return this.isEntitySymbol(symbol) && entities.getInt(symbol * SYMBOL_RECORD + ENTITY_KIND) != KIND_NONE;
+    }
+
+    /**
+     * Reads the behaviour a character was given in the entities file
+     * @param symbol Symbol id
+     * @return Behaviour specification, or null if the symbol is not a moving character
+     */
+    String getBehaviour(int symbol) {
+        if (!this.isEntitySymbol(symbol)) {
+            return null;
+        }
+        return this.readText(entities.getInt(symbol * SYMBOL_RECORD + SYMBOL_BEHAVIOUR));
+    }
+
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    /**
+     * Number of words of the longest subject, which bounds how far the tokenizer looks ahead
+     * @return Number of words
+     */
+    int getMaxSubjectWords() {
+        return maxSubjectWords;
+    }
+
+    public int getLocationCount() {
+        return locationCount;
+    }
+
+    /**
+     * Size of the text region, where every distinct name and description is stored once
+     * @return Bytes of text
+     */
+    public int getTextBytes() {
+        return texts.capacity();
+    }
+
+    /**
+     * Writes the changes made so far to the file and closes it. The mappings stay valid
+     * until they are collected.
+     * @throws IOException If the file cannot be written
+     */
+    void close() throws IOException {
+        locations.force();
+        entities.force();
+        paths.force();
+        names.force();
+        texts.force();
+        file.close();
+    }
+}
@@ -0,0 +1,175 @@
+package edu.uob;
+
+import java.util.LinkedList;
+import java.util.StringTokenizer;
+
+/**
+ * How a character moves around its world. A behaviour is asked for the next location of
+ * its character every few ticks and only ever answers with a location one path away, so
+ * characters walk the same paths players do. Behaviours are given as text, either in the
+ * "behaviour" attribute of a character in the entities file or at run time:
+ * <ul>
+ *     <li>"wander 5" moves to a random neighbouring location every 5 ticks</li>
+ *     <li>"patrol 3 cabin forest riverbank" walks the listed locations in a loop, one step
+ *     every 3 ticks</li>
+ *     <li>"follow 2 simon" steps towards the location of player simon every 2 ticks</li>
+ * </ul>
+ */
+public interface NpcBehaviour {
+    /**
+     * Ticks between two moves
+     * @return Period of the behaviour
+     */
+    long getPeriod();
+
+    /**
+     * Picks the location the character moves to next
+     * @param engine Engine moving the character, which answers questions about the world
+     * @param location Location id of the character's location
+     * @return Location id of a neighbouring location, or NO_SYMBOL to stay
+     */
+    int chooseDestination(NpcEngine engine, int location);
+
+    /**
+     * Reads a behaviour from its text
+     * @param specification Behaviour text, e.g. "wander 5"
+     * @param symbols Symbol table of the world
+     * @return The behaviour
+     */
+    static NpcBehaviour parse(String specification, SymbolTable symbols) {
+        StringTokenizer tokens = new StringTokenizer(specification);
+        if (tokens.countTokens() < 2) {
+            throw new IllegalArgumentException("Behaviour needs a kind and a number of ticks");
+        }
+        String kind = tokens.nextToken().toLowerCase();
+        long period;
+        try {
+            period = Long.parseLong(tokens.nextToken());
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Behaviour ticks must be a number");
+        }
+        if (period < 1) {
+            throw new IllegalArgumentException("Behaviour ticks must be positive");
+        }
+        switch (kind) {
+            case "wander":
+                return new Wander(period);
+            case "patrol":
+                return new Patrol(period, NpcBehaviour.parseRoute(tokens, symbols));
+            case "follow":
+                StringBuilder player = new StringBuilder();
+                while (tokens.hasMoreTokens()) {
+                    if (player.length() > 0) {
+                        player.append(' ');
+                    }
+                    player.append(tokens.nextToken());
+                }
+                if (player.length() == 0) {
+                    throw new IllegalArgumentException("Follow needs a player name");
+                }
+                return new Follow(period, player.toString());
+            default:
+                throw new IllegalArgumentException("Unknown behaviour");
+        }
+    }
+
+    /**
+     * Reads the locations of a patrol
+     * @param tokens Remaining tokens of the behaviour text
+     * @param symbols Symbol table of the world
+     * @return Location ids of the route
+     */
+    private static LinkedList<Integer> parseRoute(StringTokenizer tokens, SymbolTable symbols) {
+        LinkedList<Integer> route = new LinkedList<>();
+        while (tokens.hasMoreTokens()) {
+            int location = symbols.idOf(tokens.nextToken());
+            if (location == SymbolTable.NO_SYMBOL || !symbols.isLocation(location)) {
+                throw new IllegalArgumentException("Patrol route names an unknown location");
+            }
+            route.add(location);
+        }
+        if (route.isEmpty()) {
+            throw new IllegalArgumentException("Patrol needs at least one location");
+        }
+        return route;
+    }
+
+    /**
+     * Moves to a random neighbouring location
+     */
+    final class Wander implements NpcBehaviour {
+        private final long period;
+
+        Wander(long period) {
+            this.period = period;
+        }
+
+        @Override
+        public long getPeriod() {
+            return period;
+        }
+
+        @Override
+        public int chooseDestination(NpcEngine engine, int location) {
+            return engine.randomNeighbour(location);
+        }
+    }
+
+    /**
+     * Walks a loop of locations, taking the shortest way to the next one
+     */
+    final class Patrol implements NpcBehaviour {
+        private final long period;
+        private final LinkedList<Integer> route;
+
+        //Position in the route of the location the character is heading for
+        private int target;
+
+        Patrol(long period, LinkedList<Integer> route) {
+            this.period = period;
+            this.route = route;
+        }
+
+        @Override
+        public long getPeriod() {
+            return period;
+        }
+
+        @Override
+        public int chooseDestination(NpcEngine engine, int location) {
+            // skip past the targets already reached, at most once round the loop
+            for (int checked = 0; checked < route.size() && route.get(target) == location; checked++) {
+                target = (target + 1) % route.size();
+            }
+            return engine.nextStep(location, route.get(target));
+        }
+    }
+
+    /**
+     * Steps towards the location of a player
+     */
+    final class Follow implements NpcBehaviour {
+        private final long period;
+        private final String playerName;
+
+        Follow(long period, String playerName) {
+            this.period = period;
+            this.playerName = playerName;
+        }
+
+        @Override
+        public long getPeriod() {
+            return period;
+        }
+
+        @Override
+        public int chooseDestination(NpcEngine engine, int location) {
+            int playerLocation = engine.locationOfPlayer(playerName);
+            if (playerLocation == SymbolTable.NO_SYMBOL || playerLocation == location) {
+                return SymbolTable.NO_SYMBOL;
+            }
+            return engine.nextStep(location, playerLocation);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Moves the characters of one world that have a behaviour. Every moving character is an
+ * event on the world clock that comes due once per period of its behaviour, so a tick
+ * only touches the characters due to move at it, in one batch that the world publishes
+ * together; characters standing still and the size of the world cost nothing. Characters
+ * are spread over the ticks of their period so that equal behaviours do not all come due
+ * at once. Must be used holding the world lock.
+ */
+public final class NpcEngine {
+    private final Map<String, GameLocation> gameLocations;
+    private final PathGraph pathGraph;
+    private final SymbolTable symbols;
+    private final Map<String, GamePlayer> gamePlayers;
+    private final RouteCache routeCache;
+    private final Random random;
+
+    //Moving characters with lower case character name as key
+    private final HashMap<String, Npc> npcs = new HashMap<>();
+
+    //Reaches locations owned by other nodes of a sharded world, null if the world is not sharded
+    private ShardCoordinator shardCoordinator;
+
+    //Number of characters assigned so far, used to spread them over the ticks of their period
+    private long assigned;
+
+    private long evaluations;
+    private long moves;
+
+    /**
+     * Creates an engine for the characters of one world
+     * @param locations Locations of the world
+     * @param paths Paths of the world
+     * @param symbolTable Symbol table of the world
+     * @param players Players of the world
+     * @param routes Shortest routes over the paths of the world
+     * @param random Source of the wandering characters' choices
+     */
+    NpcEngine(Map<String, GameLocation> locations, PathGraph paths, SymbolTable symbolTable,
+              Map<String, GamePlayer> players, RouteCache routes, Random random) {
+        this.gameLocations = locations;
+        this.pathGraph = paths;
+        this.symbols = symbolTable;
+        this.gamePlayers = players;
+        this.routeCache = routes;
+        this.random = random;
+    }
+
+    /**
+     * Keeps characters out of the locations owned by other shards
+     * @param coordinator Coordinator of the local shard
+     */
+    void setShardCoordinator(ShardCoordinator coordinator) {
+        shardCoordinator = coordinator;
+    }
+
+    /**
+     * Starts moving a character, replacing the behaviour it had before
+     * @param character Character to move
+     * @param locationName Location the character is at
+     * @param behaviour How the character moves
+     * @param worldClock Clock of the world
+     */
+    void assign(GameCharacter character, String locationName, NpcBehaviour behaviour, WorldClock worldClock) {
+        this.stop(character.getName(), worldClock);
+        Npc npc = new Npc(this, character, locationName, behaviour);
+        long phase = assigned % behaviour.getPeriod();
+        assigned++;
+        npc.timer = worldClock.schedule(1 + phase, npc);
+        npcs.put(character.getName().toLowerCase(), npc);
+    }
+
+    /**
+     * Stops moving a character
+     * @param characterName Name of the character
+     * @param worldClock Clock of the world
+     * @return True if the character was moving
+     */
+    boolean stop(String characterName, WorldClock worldClock) {
+        Npc npc = npcs.remove(characterName.toLowerCase());
+        if (npc == null) {
+            return false;
+        }
+        worldClock.cancel(npc.timer);
+        return true;
+    }
+
+    /**
+     * Moves a character one step as its behaviour decides. A character that is no longer
+     * where the engine left it, because an action took it away, stops moving.
+     * @param npc Character due to move
+     * @return Ticks until the character moves again, or 0 if it stops
+     */
+    private long step(Npc npc) {
+        evaluations++;
+        GameLocation from = gameLocations.get(npc.locationName);
+        if (from == null || !from.isEntityPresent(npc.character.getSymbol())) {
+            npcs.remove(npc.character.getName().toLowerCase());
+            return 0;
+        }
+        // a stored world may have dropped the location and read it back as new entities
+        npc.character = (GameCharacter) from.getEntity(npc.character.getSymbol());
+        int destination = npc.behaviour.chooseDestination(this, from.getSymbol());
+        if (destination != SymbolTable.NO_SYMBOL && destination != from.getSymbol()) {
+            String destinationName = symbols.nameOf(destination);
+            GameLocation to = gameLocations.get(destinationName);
+            if (to != null && (shardCoordinator == null || shardCoordinator.isLocal(destinationName))) {
+                from.removeCharacter(npc.character);
+                to.addCharacter(npc.character);
+                npc.locationName = to.getLocationName();
+                moves++;
+            }
+        }
+        return npc.behaviour.getPeriod();
+    }
+
+    /**
+     * Picks one of the locations a path leads to from a location
+     * @param location Location id
+     * @return Location id of a random neighbour, or NO_SYMBOL if no path leads away
+     */
+    int randomNeighbour(int location) {
+        BitSet destinations = pathGraph.destinationsOf(location);
+        int count = destinations.cardinality();
+        if (count == 0) {
+            return SymbolTable.NO_SYMBOL;
+        }
+        int destination = destinations.nextSetBit(0);
+        for (int skip = random.nextInt(count); skip > 0; skip--) {
+            destination = destinations.nextSetBit(destination + 1);
+        }
+        return destination;
+    }
+
+    /**
+     * Finds the first step of a shortest route between two locations
+     * @param origin Location id of the start
+     * @param destination Location id of the end
+     * @return Location id of the first step, or NO_SYMBOL if the end cannot be reached
+     */
+    int nextStep(int origin, int destination) {
+        if (pathGraph.hasPath(origin, destination)) {
+            return destination;
+        }
+        LinkedList<Integer> route = routeCache.findRoute(origin, destination);
+        if (route == null) {
+            return SymbolTable.NO_SYMBOL;
+        }
+        return route.getFirst();
+    }
+
+    /**
+     * Finds the location of a player hosted by this world
+     * @param playerName Name of the player in any case
+     * @return Location id of the player, or NO_SYMBOL if the player is not here
+     */
+    int locationOfPlayer(String playerName) {
+        GamePlayer gamePlayer = gamePlayers.get(playerName);
+        if (gamePlayer == null) {
+            for (GamePlayer player : gamePlayers.values()) {
+                if (player.getName().equalsIgnoreCase(playerName)) {
+                    gamePlayer = player;
+                    break;
+                }
+            }
+        }
+        if (gamePlayer == null) {
+            return SymbolTable.NO_SYMBOL;
+        }
+        return symbols.idOf(gamePlayer.getLocation());
+    }
+
+    /**
+     * Finds where a moving character is
+     * @param characterName Name of the character
+     * @return Location name, or null if the character is not moving
+     */
+    public String getLocationOf(String characterName) {
+        Npc npc = npcs.get(characterName.toLowerCase());
+        if (npc == null) {
+            return null;
+        }
+        return npc.locationName;
+    }
+
+    /**
+     * Number of characters with a behaviour
+     * @return Moving characters
+     */
+    public int getMovingCharacters() {
+        return npcs.size();
+    }
+
+    /**
+     * Number of times a character was due and its behaviour was asked where to go
+     * @return Behaviour evaluations
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * A character with a behaviour, due on the world clock once per period
+     */
+    private static final class Npc implements TimedEvent {
+        private final NpcEngine engine;
+        private GameCharacter character;
+        private final NpcBehaviour behaviour;
+
+        //Location the character is at
+        private String locationName;
+
+        //Pending event of the character
+        private TimingWheel.Timer<TimedEvent> timer;
+
+        Npc(NpcEngine engine, GameCharacter character, String locationName, NpcBehaviour behaviour) {
+            this.engine = engine;
+            this.character = character;
+            this.locationName = locationName;
+            this.behaviour = behaviour;
+        }
+
+        @Override
+        public long fire(GameWorld gameWorld, WorldClock worldClock) {
+            long period = engine.step(this);
+            if (period > 0) {
+                timer = worldClock.schedule(period, this);
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package edu.uob;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of parsed commands keyed by the normalised command text. Lookups are
+ * lock-free; insertions take a lock and evict with the CLOCK policy, which gives every
+ * entry hit since the hand last passed a second chance. Entries remember the dictionary
+ * version they were parsed with, so changing the keyword dictionaries invalidates the
+ * cache even for parses that were still running at the time.
+ */
+public class ParseCache {
+    //Default number of cached commands, overridden by the stag.parse.cache.size property
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    //Clock of cache slots, each holding the entry stored there or null
+    private final AtomicReferenceArray<Entry> slots;
+
+    //Slot the clock hand points at, guarded by the cache lock
+    private int hand;
+
+    //Bumped whenever the keyword dictionaries change
+    private volatile long version;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ParseCache() {
+        this(Integer.getInteger("stag.parse.cache.size", DEFAULT_CAPACITY));
+    }
+
+    ParseCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Parse cache needs room for at least one command");
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Normalises command text into a cache key. Keywords are matched case-insensitively,
+     * so commands differing only in case or surrounding blanks parse the same.
+     * @param command Raw command text
+     * @return Cache key
+     */
+    static String normalise(String command) {
+        return command.trim().toLowerCase();
+    }
+
+    /**
+     * Current version of the keyword dictionaries, to be passed to {@link #put} with the
+     * result of a parse started now
+     * @return Dictionary version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Looks up a parsed command
+     * @param key Normalised command text
+     * @return Parsed command or null on a miss
+     */
+    public ParsedCommand get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.referenced = true;
+        hits.incrementAndGet();
+        return entry.parsedCommand;
+    }
+
+    /**
+     * Stores a parsed command, evicting one that was not used recently if the cache is full
+     * @param key Normalised command text
+     * @param parsedCommand Result of the parse
+     * @param parsedVersion Dictionary version read before the parse started
+     */
+    public synchronized void put(String key, ParsedCommand parsedCommand, long parsedVersion) {
+        if (parsedVersion != version) {
+            return;
+        }
+        Entry existing = entries.get(key);
+        if (existing != null && existing.version == version) {
+            return;
+        }
+        Entry victim = slots.get(hand);
+        while (victim != null && victim.referenced) {
+            victim.referenced = false;
+            hand = (hand + 1) % capacity;
+            victim = slots.get(hand);
+        }
+        if (victim != null) {
+            entries.remove(victim.key, victim);
+            evictions.incrementAndGet();
+        }
+        Entry entry = new Entry(key, parsedCommand, parsedVersion);
+        slots.set(hand, entry);
+        entries.put(key, entry);
+        hand = (hand + 1) % capacity;
+    }
+
+    /**
+     * Drops every cached command, to be called whenever the keyword dictionaries change
+     */
+    public synchronized void invalidate() {
+        version++;
+        entries.clear();
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i, null);
+        }
+        hand = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Fraction of lookups answered from the cache
+     * @return Hit rate between 0 and 1, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) hits.get() / lookups;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * A cached parse and its CLOCK reference bit
+     */
+    private static final class Entry {
+        private final String key;
+        private final ParsedCommand parsedCommand;
+        private final long version;
+        private volatile boolean referenced;
+
+        Entry(String key, ParsedCommand parsedCommand, long version) {
+            this.key = key;
+            this.parsedCommand = parsedCommand;
+            this.version = version;
+        }
+    }
+}
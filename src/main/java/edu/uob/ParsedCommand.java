@@ -0,0 +1,45 @@
+package edu.uob;
+
+import java.util.HashSet;
+
+/**
+ * Triggers and subjects found in a command, with the text left over once they were
+ * removed. Player names are looked for in the left over text by each caller, because the
+ * set of players changes while the keyword dictionaries do not. Instances are shared
+ * through the parse cache and must not be modified.
+ */
+public final class ParsedCommand {
+    private final HashSet<String> triggers;
+    private final HashSet<String> subjects;
+    private final String residual;
+
+    ParsedCommand(HashSet<String> triggers, HashSet<String> subjects, String residual) {
+        this.triggers = triggers;
+        this.subjects = subjects;
+        this.residual = residual;
+    }
+
+    /**
+     * Triggers found in the command. The set must not be modified.
+     * @return Set of triggers
+     */
+    public HashSet<String> getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * Subjects found in the command. The set must not be modified.
+     * @return Set of subjects
+     */
+    public HashSet<String> getSubjects() {
+        return subjects;
+    }
+
+    /**
+     * Command text with all triggers and subjects removed
+     * @return Left over text
+     */
+    public String getResidual() {
+        return residual;
+    }
+}
@@ -0,0 +1,109 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * One-way paths between the locations of a world, held as adjacency rows over location
+ * symbol ids. Each origin has a bitset row of destinations, so testing an edge is a
+ * single bit lookup and adding or removing one touches a single row. A graph created over
+ * a base graph shares the base's rows and copies a row the first time it changes, which
+ * lets copy-on-write world instances keep only the rows they modified.
+ */
+public class PathGraph {
+    //Graph of the shared template, null if this graph owns all its rows
+    private final PathGraph base;
+
+    //Destinations of each origin held by this graph, with origin location id as key
+    private final HashMap<Integer, BitSet> rows = new HashMap<>();
+
+    //Shared empty row returned for origins without paths
+    private static final BitSet NO_DESTINATIONS = new BitSet();
+
+    /**
+     * Creates an empty graph owning its rows
+     */
+    PathGraph() {
+        this.base = null;
+    }
+
+    /**
+     * Creates a copy-on-write graph over a base graph, which must not change afterwards
+     * @param base Graph of the template
+     */
+    PathGraph(PathGraph base) {
+        this.base = base;
+    }
+
+    /**
+     * Tests for a path
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return True if a path leads from origin to destination
+     */
+    public boolean hasPath(int origin, int destination) {
+        return origin >= 0 && destination >= 0 && this.destinationsOf(origin).get(destination);
+    }
+
+    /**
+     * Retrieves the destinations reachable in one step from a location. The set must not be
+     * modified.
+     * @param origin Location id of the origin
+     * @return Set of destination location ids
+     */
+    public BitSet destinationsOf(int origin) {
+        BitSet row = rows.get(origin);
+        if (row != null) {
+            return row;
+        }
+        if (base != null) {
+            return base.destinationsOf(origin);
+        }
+        return NO_DESTINATIONS;
+    }
+
+    /**
+     * Adds a path, copying the origin's row from the base graph first if needed
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return True if the path did not exist before
+     */
+    public boolean addPath(int origin, int destination) {
+        if (this.hasPath(origin, destination)) {
+            return false;
+        }
+        this.writableRow(origin).set(destination);
+        return true;
+    }
+
+    /**
+     * Removes a path, copying the origin's row from the base graph first if needed
+     * @param origin Location id of the origin
+     * @param destination Location id of the destination
+     * @return True if the path existed
+     */
+    public boolean removePath(int origin, int destination) {
+        if (!this.hasPath(origin, destination)) {
+            return false;
+        }
+        this.writableRow(origin).clear(destination);
+        return true;
+    }
+
+    private BitSet writableRow(int origin) {
+        BitSet row = rows.get(origin);
+        if (row == null) {
+            row = (BitSet) this.destinationsOf(origin).clone();
+            rows.put(origin, row);
+        }
+        return row;
+    }
+
+    /**
+     * Number of origin rows this graph holds itself rather than sharing with its base
+     * @return Number of own rows
+     */
+    public int getOwnRowCount() {
+        return rows.size();
+    }
+}
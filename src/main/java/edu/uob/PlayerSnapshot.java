@@ -0,0 +1,70 @@
+package edu.uob;
+
+import java.util.BitSet;
+
+/**
+ * Immutable state of a player as it was when a command last finished changing it.
+ * Inventory and health commands are answered from snapshots without taking the world lock.
+ */
+public final class PlayerSnapshot {
+    //Publish round of the world this snapshot was taken in
+    private final long version;
+
+    private final String name;
+    private final String location;
+
+    //Symbol ids of the artefacts in the inventory, which custom actions are checked against
+    private final BitSet artefactSymbols;
+
+    //Replies to the inventory and health commands
+    private final String inventory;
+    private final String health;
+
+    private PlayerSnapshot(long version, GamePlayer player, String inventory, String health) {
+        this.version = version;
+        this.name = player.getName();
+        this.location = player.getLocation();
+        this.artefactSymbols = (BitSet) player.getArtefactSymbols().clone();
+        this.inventory = inventory;
+        this.health = health;
+    }
+
+    /**
+     * Takes a snapshot of the current state of a player. Must be called by the thread
+     * holding the world lock.
+     * @param player Player to copy
+     * @param version Publish round of the world
+     * @return Snapshot of the player
+     */
+    static PlayerSnapshot capture(GamePlayer player, long version) {
+        return new PlayerSnapshot(version, player, player.showInventoryContents(), player.showHealth());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Retrieves the symbol ids of the artefacts in the inventory. The set must not be modified.
+     * @return Set of artefact ids
+     */
+    public BitSet getArtefactSymbols() {
+        return artefactSymbols;
+    }
+
+    public String getInventory() {
+        return inventory;
+    }
+
+    public String getHealth() {
+        return health;
+    }
+}
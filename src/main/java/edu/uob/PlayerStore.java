@@ -0,0 +1,117 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * On-disk store of the players a world has evicted for being idle. Each player is one small
+ * binary file holding its name, location, health and inventory, written with the same
+ * writeUTF encoding the shard protocol uses, and removed again when the player returns.
+ */
+public class PlayerStore {
+    //Format of the player files, checked when a player is read back
+    private static final int FORMAT_VERSION = 1;
+
+    private final File directory;
+
+    //Symbol table of the world, used to give restored artefacts their ids
+    private final SymbolTable symbols;
+
+    /**
+     * Creates a store over a directory, creating the directory if needed
+     * @param directory Directory holding the player files of one world
+     * @param symbols Symbol table of the world
+     */
+    PlayerStore(File directory, SymbolTable symbols) {
+        this.directory = directory;
+        this.symbols = symbols;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Cannot create player store directory");
+        }
+    }
+
+    /**
+     * File of a player, named after its lower case name so lookups ignore case
+     * @param name Name of the player
+     * @return File of the player
+     */
+    private File fileOf(String name) {
+        StringBuilder fileName = new StringBuilder(URLEncoder.encode(name.toLowerCase(), StandardCharsets.UTF_8));
+        fileName.append(".player");
+        return new File(directory, fileName.toString());
+    }
+
+    /**
+     * Writes a player to the store, replacing an earlier copy atomically
+     * @param gamePlayer Player to store
+     * @throws IOException If the player cannot be written
+     */
+    void save(GamePlayer gamePlayer) throws IOException {
+        File target = this.fileOf(gamePlayer.getName());
+        File temporary = new File(directory, target.getName().concat(".tmp"));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(gamePlayer.getName());
+            output.writeUTF(gamePlayer.getLocation());
+            output.writeInt(gamePlayer.getHealth());
+            output.writeInt(gamePlayer.getArtefacts().size());
+            for (GameArtefact artefact : gamePlayer.getArtefacts()) {
+                output.writeUTF(artefact.getName());
+                output.writeUTF(artefact.getDescription());
+            }
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a player back and removes it from the store
+     * @param name Name of the player, in any case
+     * @return The player, or null if the store does not hold it
+     */
+    GamePlayer take(String name) {
+        File file = this.fileOf(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        GamePlayer gamePlayer;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                throw new RuntimeException("Stored player has an unknown format");
+            }
+            gamePlayer = new GamePlayer(input.readUTF(), "", input.readUTF());
+            gamePlayer.restoreHealth(input.readInt());
+            int artefacts = input.readInt();
+            for (int i = 0; i < artefacts; i++) {
+                GameArtefact artefact = new GameArtefact(input.readUTF(), input.readUTF());
+                artefact.setSymbol(symbols.idOf(artefact.getName()));
+                gamePlayer.addArtefactToInventory(artefact);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Stored player could not be read");
+        }
+        if (!file.delete()) {
+            throw new RuntimeException("Stored player could not be removed from the store");
+        }
+        return gamePlayer;
+    }
+
+    /**
+     * Checks whether the store holds a player
+     * @param name Name of the player, in any case
+     * @return True if the player is stored
+     */
+    public boolean contains(String name) {
+        return this.fileOf(name).isFile();
+    }
+}
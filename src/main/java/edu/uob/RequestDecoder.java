@@ -0,0 +1,119 @@
+package edu.uob;
+
+/**
+ * Splits a request line of the form "[world/]player: command" in a single pass over its
+ * characters. The command is the text up to the next ':', as the original split on ':'
+ * produced; the player name is checked against the allowed characters while scanning
+ * instead of with a regex compiled per request.
+ */
+public final class RequestDecoder {
+    private final String worldId;
+    private final String playerName;
+    private final String command;
+    private final boolean validName;
+
+    /**
+     * Decodes a request line
+     * @param line Raw request line
+     */
+    public RequestDecoder(String line) {
+        int length = line.length();
+        int colon = -1;
+        int slash = -1;
+        for (int i = 0; i < length && colon < 0; i++) {
+            char c = line.charAt(i);
+            if (c == ':') {
+                colon = i;
+            } else if (c == '/' && slash < 0) {
+                slash = i;
+            }
+        }
+        int nameEnd = length;
+        if (colon >= 0) {
+            nameEnd = colon;
+        }
+        int nameStart = 0;
+        if (slash >= 0) {
+            worldId = line.substring(0, slash).trim();
+            nameStart = slash + 1;
+        } else {
+            worldId = GameServer.DEFAULT_WORLD;
+        }
+        // trim the name in place, then check its characters
+        while (nameStart < nameEnd && line.charAt(nameStart) <= ' ') {
+            nameStart++;
+        }
+        while (nameEnd > nameStart && line.charAt(nameEnd - 1) <= ' ') {
+            nameEnd--;
+        }
+        boolean valid = nameEnd > nameStart;
+        for (int i = nameStart; i < nameEnd && valid; i++) {
+            valid = RequestDecoder.isNameChar(line.charAt(i));
+        }
+        validName = valid;
+        playerName = line.substring(nameStart, nameEnd);
+        command = RequestDecoder.extractCommand(line, colon);
+    }
+
+    /**
+     * Retrieves the text after the first ':' up to the next one. A request whose remaining
+     * text is only ':' characters has no command, as splitting on ':' dropped trailing
+     * empty parts.
+     * @param line Raw request line
+     * @param colon Index of the first ':' or -1
+     * @return Command text or null
+     */
+    private static String extractCommand(String line, int colon) {
+        if (colon < 0) {
+            return null;
+        }
+        int end = colon + 1;
+        while (end < line.length() && line.charAt(end) != ':') {
+            end++;
+        }
+        int rest = colon + 1;
+        while (rest < line.length() && line.charAt(rest) == ':') {
+            rest++;
+        }
+        if (rest == line.length()) {
+            return null;
+        }
+        return line.substring(colon + 1, end);
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '\'' || c == '-';
+    }
+
+    /**
+     * World named by the request
+     * @return World id, or the default world id if none is named
+     */
+    public String getWorldId() {
+        return worldId;
+    }
+
+    /**
+     * Player name of the request, whether or not it is valid
+     * @return Trimmed player name
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * Checks the player name consists only of letters, spaces, apostrophes and hyphens
+     * @return True if the name is valid
+     */
+    public boolean isValidName() {
+        return validName;
+    }
+
+    /**
+     * Command text following the player name
+     * @return Command or null if the request has none
+     */
+    public String getCommand() {
+        return command;
+    }
+}
@@ -0,0 +1,140 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reply of a connection, collected in memory and then encoded straight into the socket
+ * through a fixed byte buffer, without ever being turned into a string. Buffers are reused
+ * from connection to connection through {@link ResponseBufferPool}, so a busy server does
+ * not allocate the characters and bytes of every reply anew.
+ */
+public class ResponseBuffer implements ResponseSink {
+    //Characters a buffer starts with, enough for most replies
+    static final int INITIAL_CHARS = 1024;
+
+    //Bytes encoded at a time before they are written to the channel
+    private static final int BYTE_CHUNK = 8192;
+
+    private final StringBuilder characters = new StringBuilder(INITIAL_CHARS);
+
+    //Encoder and byte buffer of the buffer, created on the first write to a channel
+    private CharsetEncoder encoder;
+    private ByteBuffer bytes;
+
+    @Override
+    public ResponseBuffer append(CharSequence text) {
+        characters.append(text);
+        return this;
+    }
+
+    @Override
+    public ResponseBuffer append(char character) {
+        characters.append(character);
+        return this;
+    }
+
+    @Override
+    public ResponseBuffer append(long number) {
+        characters.append(number);
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return characters.length();
+    }
+
+    @Override
+    public void truncate(int length) {
+        characters.setLength(length);
+    }
+
+    @Override
+    public void trim(int start) {
+        int end = characters.length();
+        while (end > start && Character.isWhitespace(characters.charAt(end - 1))) {
+            end--;
+        }
+        characters.setLength(end);
+        int first = start;
+        while (first < end && Character.isWhitespace(characters.charAt(first))) {
+            first++;
+        }
+        characters.delete(start, first);
+    }
+
+    /**
+     * Empties the buffer for the next reply
+     */
+    void clear() {
+        characters.setLength(0);
+    }
+
+    /**
+     * Number of characters the buffer can hold without growing
+     * @return Capacity in characters
+     */
+    int capacity() {
+        return characters.capacity();
+    }
+
+    /**
+     * Gives back the memory of a buffer that grew for an unusually long reply
+     */
+    void shrink() {
+        characters.setLength(0);
+        characters.trimToSize();
+        characters.ensureCapacity(INITIAL_CHARS);
+    }
+
+    /**
+     * Encodes the reply in the platform charset, as the server's writers always have, and
+     * writes it to a channel chunk by chunk
+     * @param channel Channel of the connection
+     * @throws IOException If the client can no longer be written to
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        if (encoder == null) {
+            encoder = Charset.defaultCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            bytes = ByteBuffer.allocate(BYTE_CHUNK);
+        }
+        encoder.reset();
+        CharBuffer pending = CharBuffer.wrap(characters);
+        CoderResult result = encoder.encode(pending, bytes, true);
+        while (result.isOverflow()) {
+            this.drain(channel);
+            result = encoder.encode(pending, bytes, true);
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            this.drain(channel);
+        }
+        this.drain(channel);
+    }
+
+    /**
+     * Writes the encoded bytes to a channel and empties the byte buffer
+     * @param channel Channel of the connection
+     * @throws IOException If the client can no longer be written to
+     */
+    private void drain(WritableByteChannel channel) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public String toString() {
+        return characters.toString();
+    }
+}
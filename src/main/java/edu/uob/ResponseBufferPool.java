@@ -0,0 +1,75 @@
+package edu.uob;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reply buffers free for the next connection. A connection takes a buffer when its request
+ * arrives and gives it back once the reply is written, so the server only ever holds about
+ * as many buffers as it serves connections at once.
+ */
+// singleton class
+public class ResponseBufferPool {
+    private static final ResponseBufferPool instance = new ResponseBufferPool();
+
+    //Most buffers kept free, the rest are left to the garbage collector
+    static final int MAX_POOLED = 64;
+
+    //Characters beyond which a returned buffer is shrunk, so that one huge reply does not pin its memory
+    static final int MAX_RETAINED_CHARS = 64 * 1024;
+
+    private final ConcurrentLinkedQueue<ResponseBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    //Buffers created because none was free
+    private final AtomicLong created = new AtomicLong();
+
+    private ResponseBufferPool() {}
+
+    public static ResponseBufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Takes an empty buffer, creating one if none is free
+     * @return Buffer for one reply
+     */
+    public ResponseBuffer acquire() {
+        ResponseBuffer buffer = free.poll();
+        if (buffer == null) {
+            created.incrementAndGet();
+            return new ResponseBuffer();
+        }
+        freeCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back once its reply has been written. The buffer must not be used
+     * afterwards.
+     * @param buffer Buffer taken from this pool
+     */
+    public void release(ResponseBuffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED_CHARS) {
+            buffer.shrink();
+        }
+        else {
+            buffer.clear();
+        }
+        if (freeCount.incrementAndGet() > MAX_POOLED) {
+            freeCount.decrementAndGet();
+            return;
+        }
+        free.offer(buffer);
+    }
+
+    /**
+     * Number of buffers created since the server started, which stays near the number of
+     * connections served at once
+     * @return Buffers created
+     */
+    public long getCreated() {
+        return created.get();
+    }
+}
@@ -0,0 +1,48 @@
+package edu.uob;
+
+/**
+ * Destination of the reply to a command. Commands write their reply piece by piece instead
+ * of returning it as one string, so that a long inventory or a crowded location is never
+ * held twice. What was written since a mark can be taken back, for a command that fails
+ * after it started replying.
+ */
+public interface ResponseSink {
+    /**
+     * Writes text to the reply
+     * @param text Text to write
+     * @return This sink
+     */
+    ResponseSink append(CharSequence text);
+
+    /**
+     * Writes one character to the reply
+     * @param character Character to write
+     * @return This sink
+     */
+    ResponseSink append(char character);
+
+    /**
+     * Writes a number to the reply in decimal
+     * @param number Number to write
+     * @return This sink
+     */
+    ResponseSink append(long number);
+
+    /**
+     * Number of characters written so far, which serves as a mark to truncate to
+     * @return Length of the reply
+     */
+    int length();
+
+    /**
+     * Takes back everything written after a mark
+     * @param length Mark obtained from {@link #length()}
+     */
+    void truncate(int length);
+
+    /**
+     * Removes the whitespace at both ends of what was written after a mark
+     * @param start Mark obtained from {@link #length()}
+     */
+    void trim(int start);
+}
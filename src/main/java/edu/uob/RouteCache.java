@@ -0,0 +1,187 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+/**
+ * Shortest routes over a world's path graph. A breadth-first search from an origin is kept
+ * as a tree of parents and distances and answers routes to every location it reached.
+ * When a path is added or removed only the trees the change can affect are dropped: an
+ * added path matters only if its origin is reached and it shortens the way to its
+ * destination, and a removed path matters only if the tree used it. A tree costs memory in
+ * proportion to the locations it reaches, so only the trees of the most recently routed
+ * origins are kept.
+ */
+public class RouteCache {
+    //Default number of cached trees, overridden by the stag.route.cache.size property
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final PathGraph pathGraph;
+    private final int capacity;
+
+    //Search tree of each origin searched since its last invalidation, with origin id as key,
+    //least recently used first
+    private final LinkedHashMap<Integer, RouteTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long searches;
+    private long invalidations;
+    private long evictions;
+
+    RouteCache(PathGraph pathGraph) {
+        this(pathGraph, Integer.getInteger("stag.route.cache.size", DEFAULT_CAPACITY));
+    }
+
+    RouteCache(PathGraph pathGraph, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Route cache needs room for at least one origin");
+        }
+        this.pathGraph = pathGraph;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Finds a shortest route between two locations
+     * @param origin Location id of the start
+     * @param destination Location id of the end
+     * @return Location ids along the route, excluding the origin and ending with the
+     *         destination, or null if the destination cannot be reached
+     */
+    public LinkedList<Integer> findRoute(int origin, int destination) {
+        RouteTree tree = trees.get(origin);
+        if (tree == null) {
+            tree = this.search(origin);
+            this.evictBeyondCapacity();
+            trees.put(origin, tree);
+        }
+        if (origin == destination || !tree.reached.get(destination)) {
+            return null;
+        }
+        LinkedList<Integer> route = new LinkedList<>();
+        int step = destination;
+        while (step != origin) {
+            route.addFirst(step);
+            step = tree.parents.get(step);
+        }
+        return route;
+    }
+
+    /**
+     * Drops the least recently used trees until there is room for one more
+     */
+    private void evictBeyondCapacity() {
+        Iterator<RouteTree> iterator = trees.values().iterator();
+        while (trees.size() >= capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Breadth-first search from an origin, visiting destinations in id order so that
+     * routes of equal length are chosen the same way every time
+     * @param origin Location id of the start
+     * @return Search tree
+     */
+    private RouteTree search(int origin) {
+        searches++;
+        RouteTree tree = new RouteTree();
+        LinkedList<Integer> frontier = new LinkedList<>();
+        tree.reached.set(origin);
+        tree.distances.put(origin, 0);
+        frontier.add(origin);
+        while (!frontier.isEmpty()) {
+            int location = frontier.removeFirst();
+            int distance = tree.distances.get(location);
+            BitSet destinations = pathGraph.destinationsOf(location);
+            for (int next = destinations.nextSetBit(0); next >= 0; next = destinations.nextSetBit(next + 1)) {
+                if (!tree.reached.get(next)) {
+                    tree.reached.set(next);
+                    tree.parents.put(next, location);
+                    tree.distances.put(next, distance + 1);
+                    frontier.add(next);
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Drops the trees an added path can shorten
+     * @param from Location id of the path's origin
+     * @param to Location id of the path's destination
+     */
+    public void pathAdded(int from, int to) {
+        Iterator<RouteTree> iterator = trees.values().iterator();
+        while (iterator.hasNext()) {
+            RouteTree tree = iterator.next();
+            if (!tree.reached.get(from)) {
+                continue;
+            }
+            if (!tree.reached.get(to) || tree.distances.get(to) > tree.distances.get(from) + 1) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops the trees that route over a removed path
+     * @param from Location id of the path's origin
+     * @param to Location id of the path's destination
+     */
+    public void pathRemoved(int from, int to) {
+        Iterator<RouteTree> iterator = trees.values().iterator();
+        while (iterator.hasNext()) {
+            Integer parent = iterator.next().parents.get(to);
+            if (parent != null && parent == from) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Number of breadth-first searches run, i.e. route lookups not answered from the cache
+     * @return Number of searches
+     */
+    public long getSearches() {
+        return searches;
+    }
+
+    /**
+     * Number of cached trees dropped because of path changes
+     * @return Number of invalidated trees
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Number of trees dropped to stay within the capacity
+     * @return Number of evicted trees
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Number of origins whose search tree is currently cached
+     * @return Number of cached trees
+     */
+    public int getCachedOrigins() {
+        return trees.size();
+    }
+
+    /**
+     * Breadth-first search tree of one origin
+     */
+    private static final class RouteTree {
+        private final BitSet reached = new BitSet();
+        private final HashMap<Integer, Integer> parents = new HashMap<>();
+        private final HashMap<Integer, Integer> distances = new HashMap<>();
+    }
+}
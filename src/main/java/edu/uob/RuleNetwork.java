@@ -0,0 +1,220 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Incremental match network over the preconditions of the actions of one world, in the
+ * manner of Rete. Every world condition, an entity being or not being at a named location,
+ * is a node under the alpha memory of its location, which remembers which watched
+ * entities are there. When a changed location is published only the entities watched at
+ * that location are compared with what the memory remembers, and a fact that flips
+ * updates the count of unsatisfied world conditions of the rules depending on it. Whether
+ * an action's world conditions hold is then a single count test instead of a rescan of
+ * the world; only the few conditions about the acting player are checked when the action
+ * is chosen. Must be used holding the world lock.
+ */
+public final class RuleNetwork {
+    //Rules of the actions that have conditions
+    private final HashMap<GameAction, Rule> rules = new HashMap<>();
+
+    //Alpha memories with location id as key, only for locations named by a condition
+    private final HashMap<Integer, LocationMemory> memories = new HashMap<>();
+
+    //Number of facts that flipped and were propagated to rules
+    private long propagations;
+
+    /**
+     * Compiles the conditions of a world's actions and matches them against its initial state
+     * @param gameActions Actions of the world by trigger
+     * @param initialLocations Locations of the world as loaded, which are only read
+     */
+    RuleNetwork(Collection<HashSet<GameAction>> gameActions, Map<String, GameLocation> initialLocations) {
+        for (HashSet<GameAction> actions : gameActions) {
+            for (GameAction action : actions) {
+                if (!action.getConditions().isEmpty() && !rules.containsKey(action)) {
+                    rules.put(action, new Rule());
+                    this.compile(action, initialLocations);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the conditions of one action to the network
+     * @param action Action with conditions
+     * @param initialLocations Locations of the world as loaded
+     */
+    private void compile(GameAction action, Map<String, GameLocation> initialLocations) {
+        Rule rule = rules.get(action);
+        for (ActionCondition condition : action.getConditions()) {
+            if (!condition.isWorldCondition()) {
+                rule.playerConditions.add(condition);
+                continue;
+            }
+            if (condition.getLocationSymbol() == SymbolTable.NO_SYMBOL) {
+                // a location that does not exist holds nothing
+                if (condition.getKind() == ActionCondition.Kind.PRESENT) {
+                    rule.unsatisfied++;
+                }
+                continue;
+            }
+            LocationMemory memory = memories.get(condition.getLocationSymbol());
+            if (memory == null) {
+                memory = new LocationMemory();
+                memories.put(condition.getLocationSymbol(), memory);
+            }
+            int entity = condition.getEntitySymbol();
+            GameLocation location = initialLocations.get(condition.getLocation());
+            if (entity != SymbolTable.NO_SYMBOL && !memory.watched.get(entity)) {
+                memory.watched.set(entity);
+                memory.present.set(entity, location != null && location.isEntityPresent(entity));
+            }
+            ConditionNode node = new ConditionNode(rule, condition.getKind() == ActionCondition.Kind.PRESENT);
+            node.holds = node.evaluate(entity != SymbolTable.NO_SYMBOL && memory.present.get(entity));
+            if (!node.holds) {
+                rule.unsatisfied++;
+            }
+            if (entity != SymbolTable.NO_SYMBOL) {
+                LinkedList<ConditionNode> nodes = memory.nodes.get(entity);
+                if (nodes == null) {
+                    nodes = new LinkedList<>();
+                    memory.nodes.put(entity, nodes);
+                }
+                nodes.add(node);
+            }
+        }
+    }
+
+    /**
+     * Brings the memory of a location up to date after the location changed. Locations no
+     * condition names cost a single lookup.
+     * @param location Changed location
+     */
+    void locationChanged(GameLocation location) {
+        LocationMemory memory = memories.get(location.getSymbol());
+        if (memory == null) {
+            return;
+        }
+        BitSet watched = memory.watched;
+        for (int entity = watched.nextSetBit(0); entity >= 0; entity = watched.nextSetBit(entity + 1)) {
+            boolean present = location.isEntityPresent(entity);
+            if (present == memory.present.get(entity)) {
+                continue;
+            }
+            memory.present.set(entity, present);
+            propagations++;
+            for (ConditionNode node : memory.nodes.get(entity)) {
+                boolean holds = node.evaluate(present);
+                if (holds && !node.holds) {
+                    node.rule.unsatisfied--;
+                }
+                else if (!holds && node.holds) {
+                    node.rule.unsatisfied++;
+                }
+                node.holds = holds;
+            }
+        }
+    }
+
+    /**
+     * Checks whether all conditions of an action hold for a player
+     * @param action Action to check
+     * @param gamePlayer Player performing the action
+     * @param here Location of the player
+     * @return True if the action has no conditions or all of them hold
+     */
+    boolean isEligible(GameAction action, GamePlayer gamePlayer, GameLocation here) {
+        Rule rule = rules.get(action);
+        if (rule == null) {
+            return true;
+        }
+        if (rule.unsatisfied > 0) {
+            return false;
+        }
+        for (ActionCondition condition : rule.playerConditions) {
+            if (!condition.holdsFor(gamePlayer, here)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the conditions of an action about the world hold, whoever performs it
+     * @param action Action to check
+     * @return True if no world condition of the action is unsatisfied
+     */
+    public boolean areWorldConditionsMet(GameAction action) {
+        Rule rule = rules.get(action);
+        return rule == null || rule.unsatisfied == 0;
+    }
+
+    /**
+     * Number of actions with conditions
+     * @return Rules in the network
+     */
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * Number of locations whose contents the network watches
+     * @return Alpha memories
+     */
+    public int getWatchedLocations() {
+        return memories.size();
+    }
+
+    /**
+     * Number of times a watched fact changed and was passed on to the rules
+     * @return Propagated fact changes
+     */
+    public long getPropagations() {
+        return propagations;
+    }
+
+    /**
+     * Conditions of one action and how many of its world conditions do not hold
+     */
+    private static final class Rule {
+        private int unsatisfied;
+        private final LinkedList<ActionCondition> playerConditions = new LinkedList<>();
+    }
+
+    /**
+     * Watched entities of one location and whether each is there
+     */
+    private static final class LocationMemory {
+        private final BitSet watched = new BitSet();
+        private final BitSet present = new BitSet();
+
+        //World condition nodes with entity id as key
+        private final HashMap<Integer, LinkedList<ConditionNode>> nodes = new HashMap<>();
+    }
+
+    /**
+     * One world condition of a rule and whether it holds
+     */
+    private static final class ConditionNode {
+        private final Rule rule;
+
+        //True if the entity must be at the location, false if it must not
+        private final boolean wantsPresent;
+
+        private boolean holds;
+
+        ConditionNode(Rule rule, boolean wantsPresent) {
+            this.rule = rule;
+            this.wantsPresent = wantsPresent;
+        }
+
+        boolean evaluate(boolean present) {
+            return present == wantsPresent;
+        }
+    }
+}
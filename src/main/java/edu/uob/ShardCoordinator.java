@@ -0,0 +1,464 @@
+package edu.uob;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs one shard of a location-sharded world. The node owns some locations of the world
+ * and the players standing in them; a goto across a shard boundary hands the player and
+ * its inventory over to the owning node, entities in remote locations are moved with
+ * RPCs, and commands of players living elsewhere are forwarded to their node.
+ *
+ * <p>RPCs are one request per connection, each message a count followed by that many
+ * modified UTF-8 strings. A node never holds its own world while it waits for a reply:
+ * commands only record the changes they make on other nodes, and the world sends them
+ * once it has released its lock, so two nodes calling each other cannot deadlock. A failed
+ * request is answered with its error message, which the calling node raises as its own
+ * error.
+ */
+public class ShardCoordinator {
+    static final String HANDOFF = "HANDOFF";
+    static final String TAKE = "TAKE";
+    static final String PUT = "PUT";
+    static final String COMMAND = "COMMAND";
+    static final String OK = "OK";
+    static final String NONE = "NONE";
+    static final String FAILED = "FAILED";
+
+    //Milliseconds a caller waits for a reply
+    private static final int RPC_TIMEOUT_MILLIS = 5000;
+
+    private final GameWorld gameWorld;
+    private final ShardMap shardMap;
+
+    //Address of this node as it appears in the shard map
+    private final String localNode;
+
+    //Node each player that left this node was handed to, with lower case player name as key
+    private final ConcurrentHashMap<String, String> remotePlayers = new ConcurrentHashMap<>();
+
+    //Lower case names of players that left their location here and are being handed to another node
+    private final Set<String> leavingPlayers = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService rpcHandlers = Executors.newCachedThreadPool();
+    private final GameLogger logger = GameLogger.getInstance();
+    private ServerSocket listener;
+
+    ShardCoordinator(GameWorld gameWorld, ShardMap shardMap, String localNode) {
+        this.gameWorld = gameWorld;
+        this.shardMap = shardMap;
+        this.localNode = localNode;
+    }
+
+    /**
+     * Starts listening for RPCs of the other nodes on the port of the local node address
+     * @throws IOException If the listener cannot be bound
+     */
+    void start() throws IOException {
+        listener = new ServerSocket();
+        listener.bind(this.toSocketAddress(localNode));
+        StringBuilder name = new StringBuilder("stag-shard-");
+        name.append(localNode);
+        Thread acceptor = new Thread(new Acceptor(this), name.toString());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Shard listening on ", localNode);
+    }
+
+    /**
+     * Stops listening for RPCs
+     */
+    public void close() {
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Failed to close shard listener: ", e.getMessage());
+        }
+        rpcHandlers.shutdownNow();
+    }
+
+    public String getLocalNode() {
+        return localNode;
+    }
+
+    /**
+     * Checks whether a location is owned by this node
+     * @param location Name of the location
+     * @return True if this node owns the location
+     */
+    public boolean isLocal(String location) {
+        return localNode.equals(shardMap.ownerOf(location));
+    }
+
+    /**
+     * Finds the node a player's commands must run on
+     * @param name Name of the player
+     * @param knownLocally Whether this node currently hosts the player
+     * @param startLocation Location new players start in
+     * @return Node hosting or about to host the player, or null if it is this node
+     */
+    String locatePlayer(String name, boolean knownLocally, String startLocation) {
+        if (leavingPlayers.contains(name.toLowerCase())) {
+            throw new RuntimeException("Player is moving to another shard, please try again");
+        }
+        String remoteNode = remotePlayers.get(name.toLowerCase());
+        if (remoteNode != null) {
+            return remoteNode;
+        }
+        if (knownLocally || this.isLocal(startLocation)) {
+            return null;
+        }
+        return shardMap.ownerOf(startLocation);
+    }
+
+    /**
+     * Records that a player has left its location here and is about to be handed to another
+     * node, so its commands are refused until the hand-off is done
+     * @param name Name of the player
+     */
+    void playerLeaving(String name) {
+        leavingPlayers.add(name.toLowerCase());
+    }
+
+    /**
+     * Records where a player now lives
+     * @param name Name of the player
+     * @param node Node hosting the player
+     */
+    private void recordPlayerNode(String name, String node) {
+        if (node == null || node.equals(localNode)) {
+            remotePlayers.remove(name.toLowerCase());
+        } else {
+            remotePlayers.put(name.toLowerCase(), node);
+        }
+    }
+
+    /**
+     * Node reported to a forwarding node as the home of a player after a command
+     * @param name Name of the player
+     * @return Node hosting the player
+     */
+    private String currentNodeOf(String name) {
+        String remoteNode = remotePlayers.get(name.toLowerCase());
+        if (remoteNode == null) {
+            return localNode;
+        }
+        return remoteNode;
+    }
+
+    /**
+     * Runs a command on the node hosting a player and returns its response
+     * @param node Node to forward to
+     * @param name Name of the player
+     * @param command Command text following the player name
+     * @param hops Number of times the command has already been forwarded
+     * @return Response of the hosting node
+     */
+    String forwardCommand(String node, String name, String command, int hops) {
+        if (hops >= shardMap.getNodes().size()) {
+            throw new RuntimeException("Player could not be located on any shard");
+        }
+        LinkedList<String> request = new LinkedList<>();
+        request.add(COMMAND);
+        request.add(name);
+        request.add(command);
+        request.add(String.valueOf(hops + 1));
+        LinkedList<String> reply = this.call(node, request);
+        this.recordPlayerNode(name, reply.get(1));
+        return reply.get(2);
+    }
+
+    /**
+     * Hands a player and its inventory over to the node owning its new location. Must not be
+     * called holding the world lock.
+     * @param gamePlayer Player to hand over
+     * @param location Location on the other node the player arrives at
+     * @return What the player sees at the new location
+     */
+    String handOff(GamePlayer gamePlayer, String location) {
+        String owner = shardMap.ownerOf(location);
+        LinkedList<String> request = new LinkedList<>();
+        request.add(HANDOFF);
+        request.add(gamePlayer.getName());
+        request.add(location);
+        request.add(String.valueOf(gamePlayer.getHealth()));
+        for (GameArtefact artefact : gamePlayer.getArtefacts()) {
+            request.add(artefact.getName());
+            request.add(artefact.getDescription());
+        }
+        try {
+            LinkedList<String> reply = this.call(owner, request);
+            this.recordPlayerNode(gamePlayer.getName(), owner);
+            return reply.get(1);
+        }
+        finally {
+            leavingPlayers.remove(gamePlayer.getName().toLowerCase());
+        }
+    }
+
+    /**
+     * Removes an entity from whichever other node holds it. Must not be called holding the
+     * world lock.
+     * @param entityName Name of the entity
+     * @param includeStoreroom Whether an entity in the storeroom may be taken
+     * @return The entity, or null if no other node holds it
+     */
+    GameEntity takeRemoteEntity(String entityName, boolean includeStoreroom) {
+        for (String node : shardMap.getNodes()) {
+            if (node.equals(localNode)) {
+                continue;
+            }
+            LinkedList<String> request = new LinkedList<>();
+            request.add(TAKE);
+            request.add(entityName);
+            request.add(String.valueOf(includeStoreroom));
+            LinkedList<String> reply = this.call(node, request);
+            if (reply.get(0).equals(OK)) {
+                return this.createEntity(reply.get(1), reply.get(2), reply.get(3));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Places an entity in a location owned by another node. Must not be called holding the
+     * world lock.
+     * @param location Name of the location
+     * @param entity Entity to place
+     */
+    void putRemoteEntity(String location, GameEntity entity) {
+        LinkedList<String> request = new LinkedList<>();
+        request.add(PUT);
+        request.add(location);
+        request.add(this.typeOf(entity));
+        request.add(entity.getName());
+        request.add(entity.getDescription());
+        this.call(shardMap.ownerOf(location), request);
+    }
+
+    /**
+     * Sends a request to a node and waits for its reply
+     * @param node Address of the node
+     * @param request Fields of the request
+     * @return Fields of the reply, starting with OK or NONE
+     */
+    private LinkedList<String> call(String node, LinkedList<String> request) {
+        try (Socket socket = new Socket()) {
+            socket.connect(this.toSocketAddress(node), RPC_TIMEOUT_MILLIS);
+            socket.setSoTimeout(RPC_TIMEOUT_MILLIS);
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            this.writeMessage(output, request);
+            LinkedList<String> reply = this.readMessage(new DataInputStream(socket.getInputStream()));
+            if (reply.get(0).equals(FAILED)) {
+                throw new RuntimeException(reply.get(1));
+            }
+            return reply;
+        }
+        catch (IOException e) {
+            StringBuilder message = new StringBuilder("Shard ");
+            message.append(node).append(" is unreachable");
+            throw new RuntimeException(message.toString());
+        }
+    }
+
+    /**
+     * Answers one RPC of another node
+     * @param socket Connection of the calling node
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(RPC_TIMEOUT_MILLIS);
+            LinkedList<String> request = this.readMessage(new DataInputStream(s.getInputStream()));
+            LinkedList<String> reply;
+            try {
+                reply = this.dispatch(request);
+            }
+            catch (RuntimeException e) {
+                reply = new LinkedList<>();
+                reply.add(FAILED);
+                reply.add(String.valueOf(e.getMessage()));
+            }
+            this.writeMessage(new DataOutputStream(s.getOutputStream()), reply);
+        }
+        catch (IOException e) {
+            logger.warn("Shard connection failed: ", e.getMessage());
+        }
+    }
+
+    /**
+     * Carries out an RPC against the local world
+     * @param request Fields of the request
+     * @return Fields of the reply
+     */
+    private LinkedList<String> dispatch(LinkedList<String> request) {
+        LinkedList<String> reply = new LinkedList<>();
+        Iterator<String> fields = request.iterator();
+        String operation = fields.next();
+        switch (operation) {
+            case COMMAND: {
+                String name = fields.next();
+                String command = fields.next();
+                int hops = Integer.parseInt(fields.next());
+                String response = gameWorld.runForwardedCommand(name, command, hops);
+                reply.add(OK);
+                reply.add(this.currentNodeOf(name));
+                reply.add(response);
+                return reply;
+            }
+            case HANDOFF: {
+                String name = fields.next();
+                String location = fields.next();
+                int health = Integer.parseInt(fields.next());
+                GamePlayer gamePlayer = new GamePlayer(name, "", location);
+                gamePlayer.restoreHealth(health);
+                while (fields.hasNext()) {
+                    gamePlayer.addArtefactToInventory((GameArtefact) this.createEntity("artefact", fields.next(), fields.next()));
+                }
+                String perspective = gameWorld.acceptPlayer(gamePlayer);
+                this.recordPlayerNode(name, localNode);
+                reply.add(OK);
+                reply.add(perspective);
+                return reply;
+            }
+            case TAKE: {
+                String entityName = fields.next();
+                boolean includeStoreroom = Boolean.parseBoolean(fields.next());
+                GameEntity entity = gameWorld.takeEntity(entityName, includeStoreroom);
+                if (entity == null) {
+                    reply.add(NONE);
+                    return reply;
+                }
+                reply.add(OK);
+                reply.add(this.typeOf(entity));
+                reply.add(entity.getName());
+                reply.add(entity.getDescription());
+                return reply;
+            }
+            case PUT: {
+                String location = fields.next();
+                GameEntity entity = this.createEntity(fields.next(), fields.next(), fields.next());
+                gameWorld.putEntity(location, entity);
+                reply.add(OK);
+                return reply;
+            }
+            default:
+                throw new RuntimeException("Unknown shard operation");
+        }
+    }
+
+    private void writeMessage(DataOutputStream output, LinkedList<String> fields) throws IOException {
+        output.writeInt(fields.size());
+        for (String field : fields) {
+            output.writeUTF(field);
+        }
+        output.flush();
+    }
+
+    private LinkedList<String> readMessage(DataInputStream input) throws IOException {
+        LinkedList<String> fields = new LinkedList<>();
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            fields.add(input.readUTF());
+        }
+        return fields;
+    }
+
+    /**
+     * Names the kind of an entity for the wire
+     * @param entity Entity to describe
+     * @return "character", "furniture" or "artefact"
+     */
+    private String typeOf(GameEntity entity) {
+        if (entity instanceof GameCharacter) {
+            return "character";
+        }
+        if (entity instanceof GameFurniture) {
+            return "furniture";
+        }
+        return "artefact";
+    }
+
+    /**
+     * Recreates an entity received from another node
+     * @param type Kind of the entity
+     * @param name Name of the entity
+     * @param description Description of the entity
+     * @return The new entity
+     */
+    private GameEntity createEntity(String type, String name, String description) {
+        GameEntity entity;
+        switch (type) {
+            case "character":
+                entity = new GameCharacter(name, description);
+                break;
+            case "furniture":
+                entity = new GameFurniture(name, description);
+                break;
+            default:
+                entity = new GameArtefact(name, description);
+                break;
+        }
+        entity.setSymbol(gameWorld.getSymbolTable().idOf(name));
+        return entity;
+    }
+
+    private InetSocketAddress toSocketAddress(String node) {
+        int separator = node.lastIndexOf(':');
+        return new InetSocketAddress(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1)));
+    }
+
+    /**
+     * Accepts RPC connections until the listener is closed
+     */
+    private static final class Acceptor implements Runnable {
+        private final ShardCoordinator coordinator;
+
+        Acceptor(ShardCoordinator coordinator) {
+            this.coordinator = coordinator;
+        }
+
+        @Override
+        public void run() {
+            while (!coordinator.listener.isClosed()) {
+                try {
+                    Socket socket = coordinator.listener.accept();
+                    coordinator.rpcHandlers.execute(new RpcHandler(coordinator, socket));
+                }
+                catch (IOException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Serves one RPC connection
+     */
+    private static final class RpcHandler implements Runnable {
+        private final ShardCoordinator coordinator;
+        private final Socket socket;
+
+        RpcHandler(ShardCoordinator coordinator, Socket socket) {
+            this.coordinator = coordinator;
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            coordinator.serve(socket);
+        }
+    }
+}
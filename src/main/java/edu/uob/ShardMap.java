@@ -0,0 +1,105 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Assignment of the locations of a world to the server nodes owning them. Nodes are
+ * identified by "host:port" of their shard RPC listener. Location names are matched
+ * case-insensitively; locations that are not listed belong to the default node.
+ */
+public class ShardMap {
+    //Owning node with lower case location name as key
+    private final HashMap<String, String> owners = new HashMap<>();
+
+    //All nodes in the order they were first named
+    private final LinkedHashSet<String> nodes = new LinkedHashSet<>();
+
+    //Owner of every location that is not assigned explicitly
+    private String defaultNode;
+
+    /**
+     * Reads a shard map from a file of "location=host:port" lines. A "*" location sets the
+     * default node; blank lines and lines starting with '#' are ignored.
+     * @param shardFile File to read
+     * @return Shard map described by the file
+     * @throws IOException If the file cannot be read or a line is malformed
+     */
+    public static ShardMap load(File shardFile) throws IOException {
+        ShardMap shardMap = new ShardMap();
+        try (BufferedReader reader = new BufferedReader(new FileReader(shardFile))) {
+            String line = reader.readLine();
+            while (line != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    int separator = line.indexOf('=');
+                    if (separator <= 0) {
+                        StringBuilder message = new StringBuilder("Malformed shard map line: ");
+                        message.append(line);
+                        throw new IOException(message.toString());
+                    }
+                    int nodeStart = separator + 1;
+                    String location = line.substring(0, separator).trim();
+                    String node = line.substring(nodeStart).trim();
+                    if (location.equals("*")) {
+                        shardMap.setDefaultNode(node);
+                    } else {
+                        shardMap.assign(location, node);
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        return shardMap;
+    }
+
+    /**
+     * Assigns a location to a node
+     * @param location Name of the location
+     * @param node Address of the owning node
+     */
+    public void assign(String location, String node) {
+        owners.put(location.toLowerCase(), node);
+        nodes.add(node);
+    }
+
+    /**
+     * Sets the node owning all locations that are not assigned explicitly
+     * @param node Address of the node
+     */
+    public void setDefaultNode(String node) {
+        defaultNode = node;
+        nodes.add(node);
+    }
+
+    /**
+     * Retrieves the node owning a location
+     * @param location Name of the location
+     * @return Address of the owning node, the default node (or first node named) for unassigned locations
+     */
+    public String ownerOf(String location) {
+        String owner = owners.get(location.toLowerCase());
+        if (owner != null) {
+            return owner;
+        }
+        if (defaultNode != null) {
+            return defaultNode;
+        }
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        return nodes.iterator().next();
+    }
+
+    /**
+     * Retrieves all nodes named by this map
+     * @return Node addresses
+     */
+    public LinkedHashSet<String> getNodes() {
+        return nodes;
+    }
+}
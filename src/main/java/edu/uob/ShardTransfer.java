@@ -0,0 +1,107 @@
+package edu.uob;
+
+/**
+ * Change a command makes on another shard. The command only records it while it holds the
+ * lock of its world, and the world carries it out once the lock is released, so a node never
+ * waits on another node while holding its own world.
+ */
+public final class ShardTransfer {
+    /**
+     * Kinds of change made on another shard
+     */
+    public enum Kind {
+        //A player moves to a location of another node
+        HAND_OFF,
+        //An entity is taken from another node and placed in a location
+        TAKE,
+        //An entity is placed in a location of another node
+        PUT
+    }
+
+    private final Kind kind;
+
+    //Location the player or entity ends up in
+    private final String location;
+
+    //Player handed off and the location it is put back in if the hand-off fails
+    private final GamePlayer player;
+    private final String returnLocation;
+
+    //Entity taken, and whether it may be taken from a storeroom
+    private final String entityName;
+    private final boolean includeStoreroom;
+
+    //Entity put
+    private final GameEntity entity;
+
+    private ShardTransfer(Kind kind, String location, GamePlayer player, String returnLocation, String entityName,
+                          boolean includeStoreroom, GameEntity entity) {
+        this.kind = kind;
+        this.location = location;
+        this.player = player;
+        this.returnLocation = returnLocation;
+        this.entityName = entityName;
+        this.includeStoreroom = includeStoreroom;
+        this.entity = entity;
+    }
+
+    /**
+     * Hands a player that has left its location here over to the node owning another location
+     * @param player Player, already removed from the players and locations of this node
+     * @param location Location on the other node the player arrives at
+     * @param returnLocation Location of this node the player is put back in if the other node refuses it
+     * @return The transfer
+     */
+    static ShardTransfer handOff(GamePlayer player, String location, String returnLocation) {
+        return new ShardTransfer(Kind.HAND_OFF, location, player, returnLocation, null, false, null);
+    }
+
+    /**
+     * Takes an entity from whichever other node holds it and places it in a location
+     * @param entityName Name of the entity
+     * @param includeStoreroom Whether an entity in a storeroom may be taken
+     * @param location Location the entity is placed in, on any node
+     * @return The transfer
+     */
+    static ShardTransfer take(String entityName, boolean includeStoreroom, String location) {
+        return new ShardTransfer(Kind.TAKE, location, null, null, entityName, includeStoreroom, null);
+    }
+
+    /**
+     * Places an entity, already removed from this node, in a location of another node
+     * @param entity Entity to place
+     * @param location Location of the other node
+     * @return The transfer
+     */
+    static ShardTransfer put(GameEntity entity, String location) {
+        return new ShardTransfer(Kind.PUT, location, null, null, null, false, entity);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public GamePlayer getPlayer() {
+        return player;
+    }
+
+    public String getReturnLocation() {
+        return returnLocation;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public boolean isStoreroomIncluded() {
+        return includeStoreroom;
+    }
+
+    public GameEntity getEntity() {
+        return entity;
+    }
+}
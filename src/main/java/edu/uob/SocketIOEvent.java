@@ -0,0 +1,31 @@
+package edu.uob;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("edu.uob.SocketIO")
+@Label("Socket IO")
+@Description("A request read from or a reply written to a client connection")
+public final class SocketIOEvent extends GameEvent {
+    @Label("Operation")
+    protected String operation;
+
+    @Label("Remote Address")
+    protected String remoteAddress;
+
+    @Label("Characters")
+    protected int characters;
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public void setRemoteAddress(String remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    public void setCharacters(int characters) {
+        this.characters = characters;
+    }
+}
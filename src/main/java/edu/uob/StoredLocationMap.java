@@ -0,0 +1,289 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Locations of a world kept in a {@link MappedWorldStore}, of which only a bounded number
+ * are on the heap at a time. A location is loaded from the store the first time it is
+ * looked up and saved back to it whenever the world publishes it, so a location that has
+ * been published can be dropped from the heap at any time. When more locations than the
+ * capacity are loaded, the least recently used ones are dropped, except for locations with
+ * unpublished changes or players in them, and locations looked up since the world last
+ * published. The running command may still hold those, so dropping one would let a later
+ * lookup load a second copy of it; the map grows beyond its capacity instead until the
+ * command has published. Must be used holding the world lock.
+ */
+public class StoredLocationMap extends AbstractMap<String, GameLocation> {
+    //Fewest locations kept, so that locations are not reloaded between the commands of one player
+    static final int MIN_CAPACITY = 16;
+
+    private final MappedWorldStore store;
+    private final SymbolTable symbols;
+    private final int capacity;
+
+    //Locations of the world changed since the last publish, which loaded locations report to
+    private final LinkedList<GameLocation> changedLocations;
+
+    //Loaded locations with location id as key, least recently used first
+    private final LinkedHashMap<Integer, GameLocation> loaded = new LinkedHashMap<>(16, 0.75f, true);
+
+    //Ids of the locations looked up since the world last published, which are never dropped
+    private final BitSet pinned = new BitSet();
+
+    private long loads;
+    private long evictions;
+
+    /**
+     * Creates the map over a store
+     * @param store Store holding the locations
+     * @param symbolTable Symbol table of the world
+     * @param capacity Number of locations kept on the heap, at least MIN_CAPACITY
+     * @param changed Locations of the world changed since the last publish
+     */
+    StoredLocationMap(MappedWorldStore store, SymbolTable symbolTable, int capacity, LinkedList<GameLocation> changed) {
+        this.store = store;
+        this.symbols = symbolTable;
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        this.changedLocations = changed;
+    }
+
+    /**
+     * Called when a location is dropped from the heap, for state kept about it elsewhere
+     * @param location Dropped location
+     */
+    protected void evicted(GameLocation location) {
+    }
+
+    @Override
+    public GameLocation get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int location = symbols.idOf((String) key);
+        if (!symbols.isLocation(location)) {
+            return null;
+        }
+        return this.getLocation(location, true);
+    }
+
+    /**
+     * Looks up a location by id, loading it if it is not on the heap
+     * @param location Location id
+     * @param pin Whether the location is kept on the heap until the world next publishes
+     * @return The location
+     */
+    private GameLocation getLocation(int location, boolean pin) {
+        if (pin) {
+            pinned.set(location);
+        }
+        GameLocation gameLocation = loaded.get(location);
+        if (gameLocation != null) {
+            return gameLocation;
+        }
+        gameLocation = store.loadLocation(location);
+        // the loaded contents are what the store holds, so there is nothing to publish yet
+        gameLocation.markPublished();
+        gameLocation.trackChanges(changedLocations);
+        loads++;
+        // make room for the location being loaded
+        this.evictBeyond(capacity - 1);
+        loaded.put(location, gameLocation);
+        return gameLocation;
+    }
+
+    /**
+     * Drops the least recently used locations that can be dropped until at most a number
+     * of locations are loaded
+     * @param limit Number of locations that may stay loaded
+     */
+    private void evictBeyond(int limit) {
+        Iterator<Entry<Integer, GameLocation>> iterator = loaded.entrySet().iterator();
+        while (loaded.size() > limit && iterator.hasNext()) {
+            Entry<Integer, GameLocation> entry = iterator.next();
+            GameLocation gameLocation = entry.getValue();
+            if (pinned.get(entry.getKey()) || gameLocation.hasUnpublishedChanges()
+                    || !gameLocation.getPlayers().isEmpty()) {
+                continue;
+            }
+            iterator.remove();
+            evictions++;
+            this.evicted(gameLocation);
+        }
+    }
+
+    /**
+     * Saves a published location to the store. Must be called for every location the
+     * world publishes.
+     * @param location Published location
+     */
+    void locationPublished(GameLocation location) {
+        store.saveLocation(location);
+    }
+
+    /**
+     * Lets the locations looked up so far be dropped again. Called by the world each time
+     * it publishes, once the command that looked them up can no longer use them.
+     */
+    void releasePinned() {
+        pinned.clear();
+        this.evictBeyond(capacity);
+    }
+
+    /**
+     * Number of locations that cannot be dropped until the world next publishes
+     * @return Pinned locations
+     */
+    int getPinnedCount() {
+        return pinned.cardinality();
+    }
+
+    /**
+     * Writes the store to its file and closes it
+     * @throws IOException If the file cannot be written
+     */
+    void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Finds the locations that may hold an entity, for callers that would otherwise scan
+     * every location of a world. A stored map answers from the store and its loaded
+     * locations without loading the rest of the world.
+     * @param gameLocations Locations of a world
+     * @param symbol Entity id
+     * @return Locations to search for the entity
+     */
+    static Collection<GameLocation> holdersOf(Map<String, GameLocation> gameLocations, int symbol) {
+        if (gameLocations instanceof StoredLocationMap) {
+            return ((StoredLocationMap) gameLocations).findHolders(symbol);
+        }
+        return gameLocations.values();
+    }
+
+    /**
+     * Finds the loaded locations holding an entity and the location the store last saw it
+     * at. Loaded locations may differ from the store until they are published, so both
+     * are asked.
+     * @param symbol Entity id
+     * @return Locations holding the entity
+     */
+    private LinkedList<GameLocation> findHolders(int symbol) {
+        LinkedList<GameLocation> holders = new LinkedList<>();
+        for (GameLocation gameLocation : loaded.values()) {
+            if (gameLocation.isEntityPresent(symbol)) {
+                holders.add(gameLocation);
+            }
+        }
+        int stored = store.getLocationOf(symbol);
+        if (stored != SymbolTable.NO_SYMBOL && !loaded.containsKey(stored)) {
+            holders.add(this.getLocation(stored, true));
+        }
+        return holders;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && symbols.isLocation(symbols.idOf((String) key));
+    }
+
+    @Override
+    public int size() {
+        return store.getLocationCount();
+    }
+
+    /**
+     * Number of locations on the heap
+     * @return Loaded locations
+     */
+    public int getLoadedCount() {
+        return loaded.size();
+    }
+
+    /**
+     * Number of times a location was read from the store
+     * @return Loads
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * Number of times a location was dropped from the heap
+     * @return Evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public MappedWorldStore getStore() {
+        return store;
+    }
+
+    /**
+     * Iterating the entries loads every location in turn, each of which may be dropped
+     * again before the iteration ends, so an entry must be looked up again with
+     * {@link #get(Object)} before it is kept
+     */
+    @Override
+    public Set<Entry<String, GameLocation>> entrySet() {
+        return new EntrySet(this);
+    }
+
+    /**
+     * Entries of a stored map in location id order
+     */
+    private static final class EntrySet extends AbstractSet<Entry<String, GameLocation>> {
+        private final StoredLocationMap map;
+
+        EntrySet(StoredLocationMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Entry<String, GameLocation>> iterator() {
+            return new EntryIterator(map);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * Loads the location of each id as it is reached
+     */
+    private static final class EntryIterator implements Iterator<Entry<String, GameLocation>> {
+        private final StoredLocationMap map;
+        private int next;
+
+        EntryIterator(StoredLocationMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < map.size();
+        }
+
+        @Override
+        public Entry<String, GameLocation> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            GameLocation gameLocation = map.getLocation(next, false);
+            next++;
+            return new SimpleImmutableEntry<>(gameLocation.getLocationName(), gameLocation);
+        }
+    }
+}
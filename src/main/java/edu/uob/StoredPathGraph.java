@@ -0,0 +1,42 @@
+package edu.uob;
+
+import java.util.BitSet;
+
+/**
+ * Paths of a stored world, read from and written to the path region of its
+ * {@link MappedWorldStore}, so that the paths take no heap and the paths opened or closed
+ * by actions are still there when the world is reopened. Must be used holding the world
+ * lock.
+ */
+public class StoredPathGraph extends PathGraph {
+    private final MappedWorldStore store;
+
+    StoredPathGraph(MappedWorldStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public boolean hasPath(int origin, int destination) {
+        return store.hasPath(origin, destination);
+    }
+
+    /**
+     * Reads the destinations reachable in one step from a location into a new set
+     * @param origin Location id of the origin
+     * @return Set of destination location ids
+     */
+    @Override
+    public BitSet destinationsOf(int origin) {
+        return store.destinationsOf(origin);
+    }
+
+    @Override
+    public boolean addPath(int origin, int destination) {
+        return store.addPath(origin, destination);
+    }
+
+    @Override
+    public boolean removePath(int origin, int destination) {
+        return store.removePath(origin, destination);
+    }
+}
@@ -0,0 +1,24 @@
+package edu.uob;
+
+/**
+ * Subject dictionary of a stored world, answered from the name table of its
+ * {@link MappedWorldStore}: a subject is any location or entity name of the world. The
+ * table is only written when the store is created, so the index may be read by any thread.
+ */
+public final class StoredSubjectIndex extends KeywordIndex {
+    private final MappedWorldStore store;
+
+    StoredSubjectIndex(MappedWorldStore store) {
+        super(store.getMaxSubjectWords());
+        this.store = store;
+    }
+
+    @Override
+    String lookup(CharSequence text) {
+        int symbol = store.findSymbol(text);
+        if (!store.isSubject(symbol)) {
+            return null;
+        }
+        return store.getName(symbol);
+    }
+}
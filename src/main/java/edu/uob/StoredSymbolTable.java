@@ -0,0 +1,71 @@
+package edu.uob;
+
+/**
+ * Symbol table of a stored world, answered from the name table of its
+ * {@link MappedWorldStore} instead of from maps on the heap. The names were interned when
+ * the store was written and cannot change afterwards, so the table may be read by any
+ * thread.
+ */
+public class StoredSymbolTable extends SymbolTable {
+    private final MappedWorldStore store;
+
+    StoredSymbolTable(MappedWorldStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Looks up the id of a location that was interned when the store was written
+     * @param name Location name
+     * @return Id of the location
+     */
+    @Override
+    public int internLocation(String name) {
+        int existing = this.idOf(name);
+        if (!this.isLocation(existing)) {
+            throw new IllegalStateException("Locations cannot be added to a stored world");
+        }
+        return existing;
+    }
+
+    /**
+     * Looks up the id of a name that was interned when the store was written
+     * @param name Entity, location or keyword name
+     * @return Id of the name
+     */
+    @Override
+    public int intern(String name) {
+        int existing = this.idOf(name);
+        if (existing == NO_SYMBOL) {
+            throw new IllegalStateException("Names cannot be added to a stored world");
+        }
+        return existing;
+    }
+
+    @Override
+    public int idOf(String name) {
+        if (name == null) {
+            return NO_SYMBOL;
+        }
+        return store.findSymbol(name);
+    }
+
+    @Override
+    public String nameOf(int id) {
+        return store.getName(id);
+    }
+
+    @Override
+    public boolean isLocation(int id) {
+        return id >= 0 && id < store.getLocationCount();
+    }
+
+    @Override
+    public int getLocationCount() {
+        return store.getLocationCount();
+    }
+
+    @Override
+    public int size() {
+        return store.getSymbolCount();
+    }
+}
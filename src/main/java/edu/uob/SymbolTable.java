@@ -0,0 +1,101 @@
+package edu.uob;
+
+import java.util.HashMap;
+
+/**
+ * Interns the names of a world's locations, entities and keywords as dense int ids, so
+ * that the command path compares ints instead of case-folding strings. Names are folded
+ * to lower case; the first spelling interned is kept for display and map lookups.
+ * Locations must be interned before anything else so that their ids are 0 to
+ * {@link #getLocationCount()} - 1. A table is filled while its template loads and only
+ * read afterwards.
+ */
+public class SymbolTable {
+    //Id returned for names that were never interned
+    static final int NO_SYMBOL = -1;
+
+    //Id of each interned name with lower case name as key
+    private final HashMap<String, Integer> ids = new HashMap<>();
+
+    //First spelling of each interned name with id as key
+    private final HashMap<Integer, String> names = new HashMap<>();
+
+    //Number of ids that belong to locations
+    private int locationCount;
+
+    /**
+     * Interns the name of a location
+     * @param name Location name
+     * @return Id of the location
+     */
+    public int internLocation(String name) {
+        int existing = this.idOf(name);
+        if (existing != NO_SYMBOL) {
+            return existing;
+        }
+        if (ids.size() != locationCount) {
+            throw new IllegalStateException("Locations must be interned before other names");
+        }
+        locationCount++;
+        return this.intern(name);
+    }
+
+    /**
+     * Interns a name, returning the existing id if the name is already known
+     * @param name Entity, location or keyword name
+     * @return Id of the name
+     */
+    public int intern(String name) {
+        String key = name.toLowerCase();
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        int newId = ids.size();
+        ids.put(key, newId);
+        names.put(newId, name);
+        return newId;
+    }
+
+    /**
+     * Looks up the id of a name without interning it
+     * @param name Name in any case
+     * @return Id of the name or NO_SYMBOL if it is unknown
+     */
+    public int idOf(String name) {
+        if (name == null) {
+            return NO_SYMBOL;
+        }
+        Integer id = ids.get(name.toLowerCase());
+        if (id == null) {
+            return NO_SYMBOL;
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves the spelling a name was first interned with
+     * @param id Id of the name
+     * @return Name or null for an unknown id
+     */
+    public String nameOf(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Checks whether an id belongs to a location
+     * @param id Id of a name
+     * @return True if the name is a location
+     */
+    public boolean isLocation(int id) {
+        return id >= 0 && id < locationCount;
+    }
+
+    public int getLocationCount() {
+        return locationCount;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,15 @@
+package edu.uob;
+
+/**
+ * Something that happens in a world when its time comes, fired by the world's clock while
+ * the world lock is held
+ */
+public interface TimedEvent {
+    /**
+     * Applies the event to the world
+     * @param gameWorld World the event happens in
+     * @param worldClock Clock of the world
+     * @return Ticks until the event should happen again, or 0 if it is done
+     */
+    long fire(GameWorld gameWorld, WorldClock worldClock);
+}
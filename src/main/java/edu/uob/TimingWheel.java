@@ -0,0 +1,229 @@
+package edu.uob;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hierarchical timing wheel counting time in ticks. Each level has 64 slots, and a slot of
+ * a level spans 64 times the ticks of a slot of the level below it, so six levels reach
+ * 2^36 ticks ahead. A timer goes into the lowest level whose span covers its delay and
+ * moves down a level each time the wheel reaches its slot, so scheduling, cancelling and
+ * firing a timer cost constant time however many timers are pending. Not thread-safe;
+ * the owner serialises access.
+ * @param <T> Payload handed back when a timer fires
+ */
+public final class TimingWheel<T> {
+    //Bits of a tick that select the slot of one level
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final int LEVELS = 6;
+
+    //Longest delay a timer may have
+    static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    //First timer of every slot, level by level
+    private final AtomicReferenceArray<Timer<T>> slots = new AtomicReferenceArray<>(SLOTS * LEVELS);
+
+    //Last tick the wheel has reached
+    private long currentTick;
+
+    private int pending;
+
+    /**
+     * Creates an empty wheel
+     * @param startTick Tick the wheel starts at
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Schedules a timer
+     * @param delay Ticks from now at which the timer fires, at least one
+     * @param payload Payload handed back when the timer fires
+     * @return Handle of the timer, used to cancel it
+     */
+    public Timer<T> schedule(long delay, T payload) {
+        if (delay < 1 || delay > MAX_DELAY) {
+            throw new IllegalArgumentException("Timer delay is out of range");
+        }
+        Timer<T> timer = new Timer<>(currentTick + delay, payload);
+        this.insert(timer);
+        pending++;
+        return timer;
+    }
+
+    /**
+     * Cancels a pending timer
+     * @param timer Handle of the timer
+     * @return True if the timer was pending, false if it had fired or was cancelled already
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.slot < 0) {
+            return false;
+        }
+        this.unlink(timer);
+        pending--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel on by one tick and collects the payloads of the timers due at it
+     * @param expired Receives the payloads in the order the timers were scheduled
+     */
+    public void advance(LinkedList<T> expired) {
+        currentTick++;
+        // a higher level slot is emptied into the levels below once per turn of the level below
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                break;
+            }
+            this.cascade(level * SLOTS + (int) ((currentTick >>> shift) & SLOT_MASK));
+        }
+        int slot = (int) (currentTick & SLOT_MASK);
+        Timer<T> timer = slots.get(slot);
+        slots.set(slot, null);
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.slot = -1;
+            timer.previous = null;
+            timer.next = null;
+            pending--;
+            expired.add(timer.payload);
+            timer = next;
+        }
+    }
+
+    /**
+     * Puts the timers of a slot back into the wheel, one level lower or into the slot
+     * firing at the current tick
+     * @param slot Index of the slot
+     */
+    private void cascade(int slot) {
+        Timer<T> timer = slots.get(slot);
+        slots.set(slot, null);
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            this.insert(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Links a timer into the slot covering its deadline
+     * @param timer Timer to link
+     */
+    private void insert(Timer<T> timer) {
+        long delay = timer.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((timer.deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        // timers of a slot fire in the order they were scheduled, so new ones go to the end
+        Timer<T> head = slots.get(slot);
+        timer.slot = slot;
+        if (head == null) {
+            timer.previous = timer;
+            slots.set(slot, timer);
+            return;
+        }
+        Timer<T> tail = head.previous;
+        tail.next = timer;
+        timer.previous = tail;
+        head.previous = timer;
+    }
+
+    /**
+     * Removes a timer from its slot
+     * @param timer Linked timer
+     */
+    private void unlink(Timer<T> timer) {
+        Timer<T> head = slots.get(timer.slot);
+        if (timer == head) {
+            if (timer.next != null) {
+                timer.next.previous = timer.previous;
+            }
+            slots.set(timer.slot, timer.next);
+        }
+        else {
+            timer.previous.next = timer.next;
+            if (timer.next != null) {
+                timer.next.previous = timer.previous;
+            }
+            else {
+                head.previous = timer.previous;
+            }
+        }
+        timer.slot = -1;
+        timer.previous = null;
+        timer.next = null;
+    }
+
+    /**
+     * Moves an empty wheel on by any number of ticks at once
+     * @param ticks Number of ticks
+     */
+    public void skip(long ticks) {
+        if (pending != 0) {
+            throw new IllegalStateException("Only an empty wheel can skip ticks");
+        }
+        currentTick += ticks;
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Number of timers scheduled and neither fired nor cancelled
+     * @return Pending timers
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * A scheduled timer. Slots hold their timers in a list whose head points back to its
+     * tail, so timers are appended and removed in constant time.
+     * @param <T> Payload of the timer
+     */
+    public static final class Timer<T> {
+        private final long deadline;
+        private final T payload;
+
+        //Slot the timer is linked into, -1 once it has fired or been cancelled
+        private int slot = -1;
+
+        private Timer<T> previous;
+        private Timer<T> next;
+
+        private Timer(long deadline, T payload) {
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        /**
+         * Whether the timer is still waiting to fire
+         * @return True until the timer fires or is cancelled
+         */
+        public boolean isPending() {
+            return slot >= 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package edu.uob;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket refilled at a fixed rate. Instead of a token count and a refill
+ * time it keeps the single time at which the bucket would be full again, so taking a token
+ * is one compare-and-set: each token pushes that time one refill interval further, and a
+ * request is refused when the time would lie more than a full bucket ahead of now.
+ */
+public final class TokenBucket {
+    //Nanoseconds it takes to refill one token
+    private final long refillNanos;
+
+    //Nanoseconds it takes to refill the whole bucket
+    private final long capacityNanos;
+
+    //Time in nanoseconds at which the bucket is full again
+    private final AtomicLong fullAt;
+
+    /**
+     * Creates a full bucket
+     * @param tokensPerSecond Rate at which tokens are refilled
+     * @param capacity Most tokens the bucket holds, i.e. the longest burst allowed
+     * @param now Current time in nanoseconds
+     */
+    public TokenBucket(double tokensPerSecond, int capacity, long now) {
+        if (tokensPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Token buckets need a positive rate and capacity");
+        }
+        this.refillNanos = Math.max(1, (long) (1000000000L / tokensPerSecond));
+        this.capacityNanos = refillNanos * capacity;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token if one is available
+     * @param now Current time in nanoseconds
+     * @return True if a token was taken, false if the bucket is empty
+     */
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long start = current;
+            if (current - now < 0) {
+                start = now;
+            }
+            long next = start + refillNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Whether the bucket has refilled completely, so it behaves like a new bucket
+     * @param now Current time in nanoseconds
+     * @return True if no tokens are missing
+     */
+    public boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
@@ -0,0 +1,168 @@
+package edu.uob;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+
+/**
+ * Keeps the timed events of one world on a timing wheel: health regeneration of hurt
+ * players, entities consumed from a location coming back from the storeroom, and any
+ * event scheduled by other parts of the world. The world advances its clock under the
+ * world lock, so events change the world like commands do and are published the same way.
+ */
+public final class WorldClock {
+    private final TimingWheel<TimedEvent> wheel = new TimingWheel<>(0);
+
+    //Ticks between two health points regenerated by a hurt player, 0 if health does not regenerate
+    private long regenerationTicks;
+
+    //Ticks after which a consumed entity returns to its location, 0 if entities do not return
+    private long respawnTicks;
+
+    //Lower case names of the players with a pending regeneration event
+    private final HashSet<String> regenerating = new HashSet<>();
+
+    private final LinkedList<TimedEvent> expired = new LinkedList<>();
+
+    private long firedEvents;
+
+    private final GameLogger logger = GameLogger.getInstance();
+
+    /**
+     * Sets the built in timed events of the world
+     * @param regenerationTicks Ticks per health point regenerated, 0 to turn regeneration off
+     * @param respawnTicks Ticks until a consumed entity returns, 0 to turn respawning off
+     */
+    void configure(long regenerationTicks, long respawnTicks) {
+        this.regenerationTicks = Math.max(0, regenerationTicks);
+        this.respawnTicks = Math.max(0, respawnTicks);
+    }
+
+    /**
+     * Schedules an event
+     * @param delay Ticks from now at which the event happens
+     * @param event Event to schedule
+     * @return Handle to cancel the event with
+     */
+    public TimingWheel.Timer<TimedEvent> schedule(long delay, TimedEvent event) {
+        return wheel.schedule(delay, event);
+    }
+
+    /**
+     * Cancels a scheduled event
+     * @param timer Handle returned when the event was scheduled
+     * @return True if the event had not happened yet
+     */
+    public boolean cancel(TimingWheel.Timer<TimedEvent> timer) {
+        return wheel.cancel(timer);
+    }
+
+    /**
+     * Starts regenerating a player's health unless it is regenerating already
+     * @param gamePlayer Player who lost health
+     */
+    void healthLost(GamePlayer gamePlayer) {
+        if (regenerationTicks > 0 && gamePlayer.getHealth() < 3
+                && regenerating.add(gamePlayer.getName().toLowerCase())) {
+            wheel.schedule(regenerationTicks, new HealthRegeneration(gamePlayer.getName()));
+        }
+    }
+
+    /**
+     * Lets an entity consumed from a location return to it from the storeroom later
+     * @param entity Consumed entity
+     * @param locationName Location the entity was consumed from
+     */
+    void entityConsumed(GameEntity entity, String locationName) {
+        if (respawnTicks > 0) {
+            wheel.schedule(respawnTicks, new EntityRespawn(entity.getName(), locationName));
+        }
+    }
+
+    /**
+     * Moves the clock on and fires the events that have become due, in the order they were
+     * scheduled. An event that fails is dropped. Must be called holding the world lock.
+     * @param gameWorld World the events happen in
+     * @param ticks Number of ticks to move on by
+     * @return Number of events fired
+     */
+    int advance(GameWorld gameWorld, long ticks) {
+        if (wheel.getPending() == 0) {
+            wheel.skip(ticks);
+            return 0;
+        }
+        int fired = 0;
+        for (long tick = 0; tick < ticks; tick++) {
+            wheel.advance(expired);
+            while (!expired.isEmpty()) {
+                TimedEvent event = expired.poll();
+                fired++;
+                try {
+                    long again = event.fire(gameWorld, this);
+                    if (again > 0) {
+                        wheel.schedule(again, event);
+                    }
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Timed event failed: ", e.getMessage());
+                }
+            }
+        }
+        firedEvents += fired;
+        return fired;
+    }
+
+    public long getCurrentTick() {
+        return wheel.getCurrentTick();
+    }
+
+    /**
+     * Number of events waiting to happen
+     * @return Pending events
+     */
+    public int getPendingEvents() {
+        return wheel.getPending();
+    }
+
+    public long getFiredEvents() {
+        return firedEvents;
+    }
+
+    /**
+     * Gives a hurt player one health point at a time until its health is full
+     */
+    private static final class HealthRegeneration implements TimedEvent {
+        private final String playerName;
+
+        HealthRegeneration(String playerName) {
+            this.playerName = playerName;
+        }
+
+        @Override
+        public long fire(GameWorld gameWorld, WorldClock worldClock) {
+            if (gameWorld.regenerateHealth(playerName)) {
+                return worldClock.regenerationTicks;
+            }
+            worldClock.regenerating.remove(playerName.toLowerCase());
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a consumed entity from the storeroom to the location it was consumed from
+     */
+    private static final class EntityRespawn implements TimedEvent {
+        private final String entityName;
+        private final String locationName;
+
+        EntityRespawn(String entityName, String locationName) {
+            this.entityName = entityName;
+            this.locationName = locationName;
+        }
+
+        @Override
+        public long fire(GameWorld gameWorld, WorldClock worldClock) {
+            gameWorld.respawnEntity(entityName, locationName);
+            return 0;
+        }
+    }
+}
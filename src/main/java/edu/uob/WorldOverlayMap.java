@@ -0,0 +1,201 @@
+package edu.uob;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Map of a world instance layered over the read-only map of its template. Lookups fall
+ * through to the template and only entries written by the instance, or values derived
+ * from template values on first access, are stored in the instance itself.
+ * @param <V> Type of the values
+ */
+public class WorldOverlayMap<V> extends AbstractMap<String, V> {
+    //Read-only map of the template world
+    private final Map<String, V> base;
+
+    //Entries of this instance, shadowing the template's
+    private final HashMap<String, V> delta = new HashMap<>();
+
+    WorldOverlayMap(Map<String, V> base) {
+        this.base = base;
+    }
+
+    /**
+     * Derives the value this instance uses for a template value the first time it is read.
+     * Values are shared as they are unless a subclass wraps them.
+     * @param baseValue Value of the template
+     * @return Value of this instance
+     */
+    protected V deriveValue(V baseValue) {
+        return baseValue;
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = delta.get(key);
+        if (value != null || delta.containsKey(key)) {
+            return value;
+        }
+        V baseValue = base.get(key);
+        if (baseValue == null) {
+            return null;
+        }
+        V derived = this.deriveValue(baseValue);
+        if (derived != baseValue) {
+            delta.put((String) key, derived);
+        }
+        return derived;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return delta.containsKey(key) || base.containsKey(key);
+    }
+
+    @Override
+    public V put(String key, V value) {
+        V previous = this.get(key);
+        delta.put(key, value);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        int size = base.size();
+        for (String key : delta.keySet()) {
+            if (!base.containsKey(key)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Number of entries this instance holds itself rather than sharing with the template
+     * @return Size of the delta
+     */
+    public int getDeltaSize() {
+        return delta.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new KeySet(this);
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new EntrySet<>(this);
+    }
+
+    /**
+     * Live view of the keys of an overlay map which does not resolve any values
+     */
+    private static final class KeySet extends AbstractSet<String> {
+        private final WorldOverlayMap<?> map;
+
+        KeySet(WorldOverlayMap<?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new KeyIterator(map);
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * Iterates the template keys followed by the keys only this instance has. Resolving
+     * values while iterating may add derived entries to the delta, so the keys only this
+     * instance has are collected up front.
+     */
+    private static final class KeyIterator implements Iterator<String> {
+        private final Iterator<String> baseKeys;
+        private final Iterator<String> extraKeys;
+
+        KeyIterator(WorldOverlayMap<?> map) {
+            LinkedList<String> extra = new LinkedList<>();
+            for (String key : map.delta.keySet()) {
+                if (!map.base.containsKey(key)) {
+                    extra.add(key);
+                }
+            }
+            this.baseKeys = map.base.keySet().iterator();
+            this.extraKeys = extra.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return baseKeys.hasNext() || extraKeys.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (baseKeys.hasNext()) {
+                return baseKeys.next();
+            }
+            return extraKeys.next();
+        }
+    }
+
+    /**
+     * Live view of the entries of an overlay map
+     */
+    private static final class EntrySet<V> extends AbstractSet<Entry<String, V>> {
+        private final WorldOverlayMap<V> map;
+
+        EntrySet(WorldOverlayMap<V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Entry<String,V>> iterator() {
+            return new EntryIterator<>(map, new KeyIterator(map));
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * Iterates the keys of an overlay map and resolves each through the overlay
+     */
+    private static final class EntryIterator<V> implements Iterator<Entry<String, V>> {
+        private final WorldOverlayMap<V> map;
+        private final Iterator<String> keys;
+
+        EntryIterator(WorldOverlayMap<V> map, Iterator<String> keys) {
+            this.map = map;
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return keys.hasNext();
+        }
+
+        @Override
+        public Entry<String,V> next() {
+            String key = keys.next();
+            return new AbstractMap.SimpleImmutableEntry<>(key, map.get(key));
+        }
+    }
+}
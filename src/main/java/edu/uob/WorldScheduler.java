@@ -0,0 +1,203 @@
+package edu.uob;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks of many worlds on a shared pool of worker threads. Each world has its own
+ * queue and at most one worker serves a world at a time, so tasks of a world run in
+ * submission order. Worlds with pending work take turns round-robin, one quantum of tasks
+ * per turn, so a busy world cannot starve a quiet one.
+ */
+public class WorldScheduler {
+    //Worlds with pending tasks, in the order they will be served
+    private final LinkedBlockingQueue<WorldQueue> readyWorlds = new LinkedBlockingQueue<>();
+
+    //Task queue of every world seen so far with world id as key
+    private final ConcurrentHashMap<String, WorldQueue> worldQueues = new ConcurrentHashMap<>();
+
+    private final LinkedList<Thread> workers = new LinkedList<>();
+
+    //Number of tasks a world may run before it has to give way to the next world
+    private final int quantum;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a scheduler serving one task per world turn
+     * @param workerCount Number of worker threads shared by all worlds
+     */
+    WorldScheduler(int workerCount) {
+        this(workerCount, 1);
+    }
+
+    /**
+     * Creates a scheduler
+     * @param workerCount Number of worker threads shared by all worlds
+     * @param quantum Number of tasks a world runs per turn
+     */
+    WorldScheduler(int workerCount, int quantum) {
+        this.quantum = Math.max(1, quantum);
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            StringBuilder name = new StringBuilder("stag-world-worker-");
+            name.append(i);
+            Thread worker = new Thread(new Worker(this), name.toString());
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a task behind the other tasks of its world
+     * @param gameWorld World the task acts on
+     * @param task Task to run
+     * @return Future completed with the result of the task
+     */
+    public <T> Future<T> submit(GameWorld gameWorld, Callable<T> task) {
+        if (!running) {
+            throw new IllegalStateException("Scheduler has been shut down");
+        }
+        FutureTask<T> futureTask = new FutureTask<>(task);
+        WorldQueue worldQueue = worldQueues.computeIfAbsent(gameWorld.getWorldId(), WorldQueue::new);
+        worldQueue.tasks.add(futureTask);
+        worldQueue.submitted.incrementAndGet();
+        this.markReady(worldQueue);
+        return futureTask;
+    }
+
+    /**
+     * Number of tasks of a world waiting to run
+     * @param worldId Identifier of the world
+     * @return Queue depth of the world
+     */
+    public int getPendingTasks(String worldId) {
+        WorldQueue worldQueue = worldQueues.get(worldId);
+        if (worldQueue == null) {
+            return 0;
+        }
+        return worldQueue.tasks.size();
+    }
+
+    /**
+     * Number of tasks of a world that have been queued, run or not
+     * @param worldId Identifier of the world
+     * @return Submitted task count of the world
+     */
+    public long getSubmittedTasks(String worldId) {
+        WorldQueue worldQueue = worldQueues.get(worldId);
+        if (worldQueue == null) {
+            return 0;
+        }
+        return worldQueue.submitted.get();
+    }
+
+    /**
+     * Number of tasks of a world that have been run
+     * @param worldId Identifier of the world
+     * @return Completed task count of the world
+     */
+    public long getCompletedTasks(String worldId) {
+        WorldQueue worldQueue = worldQueues.get(worldId);
+        if (worldQueue == null) {
+            return 0;
+        }
+        return worldQueue.completed.get();
+    }
+
+    /**
+     * Stops the workers. Tasks still queued are never run.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Puts a world at the back of the ready queue unless it is already queued or being served
+     * @param worldQueue Queue of the world
+     */
+    private void markReady(WorldQueue worldQueue) {
+        if (worldQueue.scheduled.compareAndSet(false, true)) {
+            readyWorlds.add(worldQueue);
+        }
+    }
+
+    /**
+     * Serves one turn of the next ready world
+     * @throws InterruptedException If the worker is interrupted while waiting for work
+     */
+    private void serveNextWorld() throws InterruptedException {
+        WorldQueue worldQueue = readyWorlds.poll(100, TimeUnit.MILLISECONDS);
+        if (worldQueue == null) {
+            return;
+        }
+        for (int i = 0; i < quantum; i++) {
+            Runnable task = worldQueue.tasks.poll();
+            if (task == null) {
+                break;
+            }
+            task.run();
+            worldQueue.completed.incrementAndGet();
+        }
+        // release the world before checking for more work so that a concurrent submit
+        // either sees it released or is seen here
+        worldQueue.scheduled.set(false);
+        if (!worldQueue.tasks.isEmpty()) {
+            this.markReady(worldQueue);
+        }
+    }
+
+    /**
+     * Pending tasks and bookkeeping of one world
+     */
+    private static final class WorldQueue {
+        private final String worldId;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+
+        WorldQueue(String worldId) {
+            this.worldId = worldId;
+        }
+
+        @Override
+        public String toString() {
+            return worldId;
+        }
+    }
+
+    /**
+     * Loop of a worker thread
+     */
+    private static final class Worker implements Runnable {
+        private final WorldScheduler scheduler;
+
+        Worker(WorldScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void run() {
+            while (scheduler.running) {
+                try {
+                    scheduler.serveNextWorld();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package edu.uob;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.TreeSet;
+
+/**
+ * Parsed contents of a pair of configuration files: locations with their initial
+ * entities, paths, actions and the keyword dictionaries derived from them. A template
+ * is either owned by a single world, which plays on it directly, or shared read-only
+ * by any number of copy-on-write world instances. The template of a stored world has no
+ * locations of its own and reads names, subjects and paths from the world's store.
+ */
+public class WorldTemplate {
+    // Map of actions in the game with trigger as key and set of action as value
+    private final HashMap<String, HashSet<GameAction>> gameActions = new HashMap<>();
+
+    //Paths between location in the game as loaded. paths are one-way
+    private final HashMap<String, HashSet<String>> gamePaths = new HashMap<>();
+
+    //Paths over location ids, played on by the world owning this template
+    private final PathGraph pathGraph;
+
+    //Map of locations with name of location as key
+    private final HashMap<String, GameLocation> gameLocations = new HashMap<>();
+
+    //Snapshots of the locations as loaded, with name of location as key
+    private final HashMap<String, LocationSnapshot> locationSnapshots = new HashMap<>();
+
+    //First location in the map is constant for all new and respawned player
+    private final StringBuilder playersStartLocation = new StringBuilder();
+
+    //All triggers from all the actions and the built-in commands, replaced rather than modified once loaded
+    private volatile HashSet<String> availableTriggers = new HashSet<>();
+
+    //All the subjects from all actions, replaced rather than modified once loaded
+    private volatile HashSet<String> availableSubjects = new HashSet<>();
+
+    //Tokenizer indexes over the dictionaries, replaced together with them
+    private volatile KeywordIndex triggerIndex;
+    private volatile KeywordIndex subjectIndex;
+
+    //Parsed commands of all worlds using these dictionaries
+    private final ParseCache parseCache = new ParseCache();
+
+    //Dense int ids of every location, entity and keyword name
+    private final SymbolTable symbolTable;
+
+    //Malformed values and bad references found while loading the actions
+    private final LinkedList<String> configurationProblems = new LinkedList<>();
+
+    private final GameLogger logger = GameLogger.getInstance();
+
+    //Parses action and entities file
+    private final FileParser fileParser = FileParser.getInstance();
+
+    /**
+     * Loads a template from a pair of configuration files
+     * @param entitiesFile The game configuration file containing all game entities
+     * @param actionsFile The game configuration file containing all game actions
+     */
+    public WorldTemplate(File entitiesFile, File actionsFile) {
+        pathGraph = new PathGraph();
+        symbolTable = new SymbolTable();
+        // read entities file
+        try {
+            fileParser.parseEntitiesFile(entitiesFile, gameLocations, gamePaths, playersStartLocation);
+            fileParser.parseActionsFile(actionsFile, gameActions, configurationProblems);
+        }
+        catch (Exception e) {
+            logger.error("Failed to load game configuration: ", e.getMessage());
+        }
+        this.computeAvailableTriggers();
+        this.computeAvailableSubjects();
+        triggerIndex = new KeywordIndex(availableTriggers);
+        subjectIndex = new KeywordIndex(availableSubjects);
+        this.buildSymbolTable();
+        this.compileActionPlans(null);
+        this.captureLocationSnapshots();
+    }
+
+    /**
+     * Loads the template of a stored world from its store and actions file. The entities
+     * file is not read again: names, subjects and paths are looked up in the store, which
+     * must have been written from the same configuration files.
+     * @param store Store of the world
+     * @param actionsFile The game configuration file containing all game actions
+     */
+    WorldTemplate(MappedWorldStore store, File actionsFile) {
+        pathGraph = new StoredPathGraph(store);
+        symbolTable = new StoredSymbolTable(store);
+        try {
+            fileParser.parseActionsFile(actionsFile, gameActions, configurationProblems);
+        }
+        catch (Exception e) {
+            logger.error("Failed to load game configuration: ", e.getMessage());
+        }
+        // the start location was interned first when the store was written
+        if (symbolTable.getLocationCount() > 0) {
+            playersStartLocation.append(symbolTable.nameOf(0));
+        }
+        this.computeAvailableTriggers();
+        triggerIndex = new KeywordIndex(availableTriggers);
+        subjectIndex = new StoredSubjectIndex(store);
+        this.internKeywords();
+        this.compileActionPlans(store);
+    }
+
+    /**
+     * Takes the initial snapshot of every location, which worlds publish until they change
+     * the location
+     */
+    private void captureLocationSnapshots() {
+        for (String locationName : gameLocations.keySet()) {
+            GameLocation location = gameLocations.get(locationName);
+            locationSnapshots.put(locationName, LocationSnapshot.capture(location, pathGraph, symbolTable, 0));
+            location.markPublished();
+        }
+    }
+
+    /**
+     * Compiles the effects of every action against the loaded world and reports names in
+     * the actions file that refer to nothing
+     * @param store Store of a stored world, or null to compile against the loaded locations
+     */
+    private void compileActionPlans(MappedWorldStore store) {
+        for (HashSet<GameAction> actions : gameActions.values()) {
+            for (GameAction action : actions) {
+                // an action is listed under each of its triggers but only compiled once
+                if (action.getPlan() == null) {
+                    action.setPlan(this.compilePlan(action, store));
+                    for (ActionCondition condition : action.getConditions()) {
+                        condition.resolveSymbols(symbolTable, action, configurationProblems);
+                    }
+                }
+            }
+        }
+        for (String problem : configurationProblems) {
+            logger.warn("Actions file: ", problem);
+        }
+    }
+
+    /**
+     * Compiles the effects of one action
+     * @param action Action to compile
+     * @param store Store of a stored world, or null to compile against the loaded locations
+     * @return Compiled plan
+     */
+    private ActionPlan compilePlan(GameAction action, MappedWorldStore store) {
+        if (store != null) {
+            return ActionPlan.compile(action, symbolTable, store, configurationProblems);
+        }
+        return ActionPlan.compile(action, symbolTable, gameLocations, configurationProblems);
+    }
+
+    /**
+     * Interns every name of the world, locations first so that their ids are dense, and
+     * stores the ids on the entities and actions that carry the names
+     */
+    private void buildSymbolTable() {
+        // the start location gets id 0, the others follow in name order so ids are repeatable
+        if (playersStartLocation.length() > 0) {
+            symbolTable.internLocation(playersStartLocation.toString());
+        }
+        for (String locationName : new TreeSet<String>(gameLocations.keySet())) {
+            gameLocations.get(locationName).setSymbol(symbolTable.internLocation(locationName));
+        }
+        for (GameLocation location : gameLocations.values()) {
+            for (GameEntity entity : location.getEntities()) {
+                entity.setSymbol(symbolTable.intern(entity.getName()));
+            }
+            location.rebuildSymbols();
+        }
+        for (String origin : gamePaths.keySet()) {
+            for (String destination : gamePaths.get(origin)) {
+                int originSymbol = symbolTable.idOf(origin);
+                int destinationSymbol = symbolTable.idOf(destination);
+                if (symbolTable.isLocation(originSymbol) && symbolTable.isLocation(destinationSymbol)) {
+                    pathGraph.addPath(originSymbol, destinationSymbol);
+                } else {
+                    logger.warn("Entities file: path between unknown locations from ", origin);
+                }
+            }
+        }
+        this.internKeywords();
+    }
+
+    /**
+     * Interns the triggers and the names the actions refer to, and stores the ids on the
+     * actions
+     */
+    private void internKeywords() {
+        for (String trigger : new TreeSet<String>(availableTriggers)) {
+            symbolTable.intern(trigger);
+        }
+        for (HashSet<GameAction> actions : gameActions.values()) {
+            for (GameAction action : actions) {
+                action.resolveSymbols(symbolTable);
+                for (String item : action.getConsumed()) {
+                    symbolTable.intern(item);
+                }
+                for (String item : action.getProduced()) {
+                    symbolTable.intern(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles a list of all the available Triggers and populate availableTriggers
+     */
+    private void computeAvailableTriggers() {
+        availableTriggers.addAll(CommandHandler.BUILT_IN_TRIGGERS);
+        availableTriggers.addAll(gameActions.keySet());
+    }
+
+    /**
+     * Compiles a list of all the available subjects and populate availableSubjects
+     */
+    private void computeAvailableSubjects(){
+        // action can be performed on artefacts, characters, furniture and location
+        if(!gameLocations.isEmpty()) {
+            for (GameLocation location : gameLocations.values()) {
+                availableSubjects.add(location.getLocationName());
+                availableSubjects.addAll(location.getArtefactNames());
+                availableSubjects.addAll(location.getCharacterNames());
+                availableSubjects.addAll(location.getFurnitureNames());
+            }
+        }
+    }
+
+    /**
+     * Adds keywords to the dictionaries after loading. The dictionaries are replaced rather
+     * than modified, so worlds parsing concurrently keep a consistent view, and the parse
+     * cache is invalidated.
+     * @param triggers Triggers to add
+     * @param subjects Subjects to add
+     */
+    public synchronized void addKeywords(Collection<String> triggers, Collection<String> subjects) {
+        HashSet<String> newTriggers = new HashSet<>(availableTriggers);
+        newTriggers.addAll(triggers);
+        HashSet<String> newSubjects = new HashSet<>(availableSubjects);
+        newSubjects.addAll(subjects);
+        triggerIndex = new KeywordIndex(newTriggers);
+        subjectIndex = new KeywordIndex(newSubjects);
+        availableTriggers = newTriggers;
+        availableSubjects = newSubjects;
+        parseCache.invalidate();
+    }
+
+    public KeywordIndex getTriggerIndex() {
+        return triggerIndex;
+    }
+
+    public KeywordIndex getSubjectIndex() {
+        return subjectIndex;
+    }
+
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+    public HashMap<String, HashSet<GameAction>> getGameActions() {
+        return gameActions;
+    }
+
+    public PathGraph getPathGraph() {
+        return pathGraph;
+    }
+
+    /**
+     * Retrieves the paths as they were loaded. Worlds play on the path graph instead.
+     * @return Destinations of each origin location
+     */
+    public HashMap<String, HashSet<String>> getGamePaths() {
+        return gamePaths;
+    }
+
+    public HashMap<String, LocationSnapshot> getLocationSnapshots() {
+        return locationSnapshots;
+    }
+
+    public HashMap<String, GameLocation> getGameLocations() {
+        return gameLocations;
+    }
+
+    public String getPlayersStartLocation() {
+        return playersStartLocation.toString();
+    }
+
+    public HashSet<String> getAvailableTriggers() {
+        return availableTriggers;
+    }
+
+    /**
+     * Retrieves the malformed values and bad references found in the actions file while loading
+     * @return Problem descriptions, empty if the file is consistent
+     */
+    public LinkedList<String> getConfigurationProblems() {
+        return configurationProblems;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public HashSet<String> getAvailableSubjects() {
+        return availableSubjects;
+    }
+}
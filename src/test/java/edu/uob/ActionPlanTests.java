@@ -0,0 +1,85 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionPlanTests {
+    private static final File EXTENDED_ENTITIES = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+
+    private WorldTemplate loadExtendedTemplate() {
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        return new WorldTemplate(EXTENDED_ENTITIES, actionsFile);
+    }
+
+    private ActionPlan planOf(WorldTemplate template, String trigger) {
+        return template.getGameActions().get(trigger).iterator().next().getPlan();
+    }
+
+    @Test
+    void testStepsAreClassifiedAtLoad() {
+        WorldTemplate template = loadExtendedTemplate();
+        assertTrue(template.getConfigurationProblems().isEmpty(), "Shipped actions file should be consistent");
+
+        ActionPlan chop = planOf(template, "chop");
+        assertEquals(1, chop.getProduceSteps().size());
+        assertEquals(ActionPlan.StepKind.ENTITY, chop.getProduceSteps().get(0).getKind());
+        assertEquals("log", chop.getProduceSteps().get(0).getTarget());
+        assertEquals(ActionPlan.StepKind.ENTITY, chop.getConsumeSteps().get(0).getKind());
+
+        ActionPlan open = planOf(template, "unlock");
+        assertEquals(ActionPlan.StepKind.PATH, open.getProduceSteps().get(0).getKind());
+        assertEquals("cellar", open.getProduceSteps().get(0).getTarget());
+
+        ActionPlan drink = planOf(template, "drink");
+        assertEquals(ActionPlan.StepKind.HEALTH, drink.getProduceSteps().get(0).getKind());
+    }
+
+    @Test
+    void testBadReferencesAreReported(@TempDir Path directory) throws IOException {
+        Path actions = directory.resolve("actions.xml");
+        Files.writeString(actions, "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\" ?>\n"
+                + "<actions>\n"
+                + "    <action>\n"
+                + "        <triggers><keyphrase>wave</keyphrase></triggers>\n"
+                + "        <subjects><entity>axe</entity></subjects>\n"
+                + "        <consumed><entity>unicorn</entity></consumed>\n"
+                + "        <produced><entity>log</entity></produced>\n"
+                + "        <narration>You wave the axe</narration>\n"
+                + "    </action>\n"
+                + "</actions>\n");
+        WorldTemplate template = new WorldTemplate(EXTENDED_ENTITIES, actions.toFile());
+        assertEquals(1, template.getConfigurationProblems().size());
+        assertTrue(template.getConfigurationProblems().getFirst().contains("unicorn"));
+        ActionPlan wave = planOf(template, "wave");
+        assertTrue(wave.getConsumeSteps().isEmpty(), "Bad references are left out of the plan");
+        assertEquals(1, wave.getProduceSteps().size());
+    }
+
+    @Test
+    void testMalformedConditionNumbersAreReported(@TempDir Path directory) throws IOException {
+        Path actions = directory.resolve("actions.xml");
+        Files.writeString(actions, "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\" ?>\n"
+                + "<actions>\n"
+                + "    <action>\n"
+                + "        <triggers><keyphrase>rest</keyphrase></triggers>\n"
+                + "        <subjects><entity>cabin</entity></subjects>\n"
+                + "        <consumed></consumed>\n"
+                + "        <produced><entity>health</entity></produced>\n"
+                + "        <conditions><health><max>2O</max></health></conditions>\n"
+                + "        <narration>You rest by the fire</narration>\n"
+                + "    </action>\n"
+                + "</actions>\n");
+        WorldTemplate template = new WorldTemplate(EXTENDED_ENTITIES, actions.toFile());
+        assertEquals(1, template.getConfigurationProblems().size());
+        String problem = template.getConfigurationProblems().getFirst();
+        assertTrue(problem.contains("rest cabin") && problem.contains("max '2O'"), problem);
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionTransactionTests {
+    private GameServer server;
+    private GameWorld world;
+    private WorldTemplate template;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        world = server.getWorld(GameServer.DEFAULT_WORLD);
+        template = new WorldTemplate(entitiesFile, actionsFile);
+    }
+
+    @Test
+    void testCustomActionsCommitFromSnapshots() {
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: goto forest");
+        assertEquals("You cut down the tree with the axe",
+                world.runFromSnapshots("simon", "chop tree with axe", new CommandEvent()));
+        assertTrue(world.runFromSnapshots("simon", "look", new CommandEvent()).contains("log"));
+        RuntimeException failure = assertThrows(RuntimeException.class,
+                () -> world.runFromSnapshots("simon", "unlock trapdoor with key", new CommandEvent()));
+        assertTrue(failure.getMessage().contains("missing"), failure.getMessage());
+        assertEquals(0, world.getTransactionConflicts());
+    }
+
+    @Test
+    void testReplacedSnapshotsFailValidation() {
+        SymbolTable symbols = template.getSymbolTable();
+        GameLocation cabin = template.getGameLocations().get("cabin");
+        GamePlayer player = new GamePlayer("simon", "", "cabin");
+        HashMap<String, PlayerSnapshot> players = new HashMap<>();
+        HashMap<String, LocationSnapshot> locations = new HashMap<>();
+        players.put("simon", PlayerSnapshot.capture(player, 1));
+        locations.put("cabin", LocationSnapshot.capture(cabin, template.getPathGraph(), symbols, 1));
+        ActionTransaction transaction = new ActionTransaction(players.get("simon"), locations.get("cabin"), null, null);
+        assertTrue(transaction.isCurrent(players, locations));
+        locations.put("cabin", LocationSnapshot.capture(cabin, template.getPathGraph(), symbols, 2));
+        assertFalse(transaction.isCurrent(players, locations), "A command changed the location");
+        transaction = new ActionTransaction(players.get("simon"), locations.get("cabin"), null, null);
+        players.put("simon", PlayerSnapshot.capture(player, 3));
+        assertFalse(transaction.isCurrent(players, locations), "A command changed the player");
+    }
+
+    @Test
+    void testConcurrentCommandsKeepActionsAtomic() throws InterruptedException {
+        server.handleCommand("simon: look");
+        server.handleCommand("sion: look");
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < 300; i++) {
+                server.handleCommand("sion: get potion");
+                server.handleCommand("sion: drop potion");
+            }
+        });
+        other.start();
+        for (int i = 0; i < 300; i++) {
+            String reply = server.handleCommand("simon: close trapdoor");
+            if (!reply.startsWith("You lock the door")) {
+                failure.set(reply);
+            }
+        }
+        other.join();
+        assertNull(failure.get());
+        assertTrue(server.handleCommand("simon: look").contains("potion"));
+    }
+}
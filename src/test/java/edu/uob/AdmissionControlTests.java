@@ -0,0 +1,168 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTests {
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    void testBucketAllowsBurstThenRefillRate() {
+        TokenBucket bucket = new TokenBucket(2, 3, 0);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0), "The burst is used up");
+        assertFalse(bucket.tryAcquire(SECOND / 4));
+        assertTrue(bucket.tryAcquire(SECOND / 2), "One token is refilled every half second");
+        assertFalse(bucket.tryAcquire(SECOND / 2));
+        assertFalse(bucket.isFull(SECOND));
+        assertTrue(bucket.isFull(2 * SECOND));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire(10 * SECOND));
+        }
+        assertFalse(bucket.tryAcquire(10 * SECOND), "An idle bucket holds no more than its capacity");
+    }
+
+    @Test
+    void testConcurrentAcquiresNeverExceedTheCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 100, 0);
+        AtomicInteger taken = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    if (bucket.tryAcquire(0)) {
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100, taken.get());
+    }
+
+    @Test
+    void testPlayersAndAddressesHaveTheirOwnBuckets() {
+        AdmissionControl control = new AdmissionControl(1, 2, 1, 3, 0);
+        assertNull(control.admitCommand("default", "simon", 0));
+        assertNull(control.admitCommand("default", "Simon", 0));
+        assertEquals(AdmissionControl.RATE_LIMITED, control.admitCommand("default", "SIMON", 0));
+        assertNull(control.admitCommand("default", "sion", 0), "Another player is not held back");
+        assertNull(control.admitCommand("castle", "simon", 0), "Nor the same name in another world");
+        assertEquals(4, control.getQueueDepth());
+        for (int i = 0; i < 4; i++) {
+            control.release();
+        }
+        for (int i = 0; i < 3; i++) {
+            assertNull(control.admitAddress("10.0.0.1", 0));
+        }
+        assertEquals(AdmissionControl.RATE_LIMITED, control.admitAddress("10.0.0.1", 0));
+        assertNull(control.admitAddress("10.0.0.2", 0));
+        assertEquals(2, control.getRateLimited());
+        assertEquals(4, control.getPeakQueueDepth());
+    }
+
+    @Test
+    void testOverloadedServerShedsRequests() {
+        AdmissionControl control = new AdmissionControl(0, 1, 0, 1, 2);
+        assertNull(control.admitCommand("default", "a", 0));
+        assertNull(control.admitCommand("default", "b", 0));
+        assertEquals(AdmissionControl.OVERLOADED, control.admitCommand("default", "c", 0));
+        assertEquals(2, control.getQueueDepth());
+        control.release();
+        assertNull(control.admitCommand("default", "c", 0));
+        assertEquals(1, control.getOverloaded());
+    }
+
+    @Test
+    void testFullBucketsAreForgotten() {
+        AdmissionControl control = new AdmissionControl(1, 1, 0, 1, 0);
+        for (int i = 0; i < 5000; i++) {
+            assertNull(control.admitCommand("default", "p" + i, i * SECOND));
+            control.release();
+        }
+        assertTrue(control.getBucketCount() < 4096, "Buckets of players gone quiet were pruned");
+    }
+
+    @Test
+    void testFloodingClientIsRefusedOverTheConnection() throws IOException {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        server.enableAdmissionControl(new AdmissionControl(0.001, 2, 0, 1, 0));
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Thread listener = new Thread(() -> {
+            try {
+                server.blockingListenOn(port);
+            }
+            catch (IOException ignored) {
+            }
+        });
+        listener.setDaemon(true);
+        listener.start();
+        try {
+            assertTrue(sendOverSocket(port, "simon: look").contains("cabin"));
+            assertTrue(sendOverSocket(port, "simon: look").contains("cabin"));
+            assertEquals(AdmissionControl.RATE_LIMITED, sendOverSocket(port, "simon: look"));
+            assertTrue(sendOverSocket(port, "sion: look").contains("cabin"));
+            assertTrue(server.handleCommand("simon: look").contains("cabin"), "Direct calls are not limited");
+            assertEquals(0, server.getAdmissionControl().getQueueDepth());
+        }
+        finally {
+            listener.interrupt();
+        }
+    }
+
+    private static String sendOverSocket(int port, String command) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try (Socket socket = new Socket("localhost", port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+                socket.setSoTimeout(5000);
+                writer.write(command);
+                writer.write("\n");
+                writer.flush();
+                StringBuilder reply = new StringBuilder();
+                String line = reader.readLine();
+                while (line != null && !line.equals(String.valueOf((char) 4))) {
+                    if (reply.length() > 0) {
+                        reply.append("\n");
+                    }
+                    reply.append(line);
+                    line = reader.readLine();
+                }
+                return reply.toString();
+            }
+            catch (IOException e) {
+                if (attempt > 50) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException interrupted) {
+                    throw new IOException(interrupted);
+                }
+            }
+        }
+    }
+}
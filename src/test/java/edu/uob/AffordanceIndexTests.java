@@ -0,0 +1,61 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AffordanceIndexTests {
+    private GameServer createServer() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        return new GameServer(entitiesFile, actionsFile);
+    }
+
+    @Test
+    void testOptionsListActionsWithAllSubjectsAtHand() {
+        GameServer server = createServer();
+        String options = server.handleCommand("simon: options");
+        assertTrue(options.contains("You can:"));
+        assertTrue(options.contains("close trapdoor"));
+        assertTrue(options.contains("drink potion"));
+        assertFalse(options.contains("open"), "The key is still in the forest");
+        assertFalse(options.contains("chop"));
+
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: goto forest");
+        options = server.handleCommand("simon: options");
+        assertTrue(options.contains("chop axe tree"), "Subjects in the inventory count");
+        assertFalse(options.contains("drink potion"));
+
+        server.handleCommand("simon: get key");
+        server.handleCommand("simon: goto cabin");
+        assertTrue(server.handleCommand("simon: options").contains("open key trapdoor"));
+    }
+
+    @Test
+    void testIndexFollowsEntitiesAsTheyMove() {
+        GameServer server = createServer();
+        GameWorld world = server.getWorld(GameServer.DEFAULT_WORLD);
+        assertTrue(server.handleCommand("simon: options").contains("drink potion"));
+        server.handleCommand("simon: drink potion");
+        server.handleCommand("simon: get axe");
+        assertFalse(server.handleCommand("simon: options").contains("drink potion"), "The potion was consumed");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: chop tree with axe");
+        long tested = world.getAffordanceIndex().getCandidatesTested();
+        assertEquals("There is nothing you can do here", server.handleCommand("simon: options"));
+        assertEquals(2, world.getAffordanceIndex().getCountedLocations());
+        // open for the key, chop for the axe and bridge for the log, not all eleven actions
+        assertEquals(3, world.getAffordanceIndex().getCandidatesTested() - tested);
+    }
+
+    @Test
+    void testOptionsRejectsSubjects() {
+        GameServer server = createServer();
+        assertTrue(server.handleCommand("simon: options potion").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("simon: options look").startsWith("[ERROR]"));
+    }
+}
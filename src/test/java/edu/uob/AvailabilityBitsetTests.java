@@ -0,0 +1,60 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AvailabilityBitsetTests {
+
+    private WorldTemplate loadExtendedTemplate() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        return new WorldTemplate(entitiesFile, actionsFile);
+    }
+
+    @Test
+    void testLocationBitsFollowContents() {
+        WorldTemplate template = loadExtendedTemplate();
+        int axe = template.getSymbolTable().idOf("axe");
+        GameLocation cabin = template.getGameLocations().get("cabin");
+        assertTrue(cabin.getEntitySymbols().get(axe));
+        GameArtefact artefact = cabin.getArtefact("axe");
+        cabin.removeArtefact("axe");
+        assertFalse(cabin.getEntitySymbols().get(axe));
+        assertFalse(cabin.isEntityPresent(axe));
+        cabin.addArtefact(artefact);
+        assertTrue(cabin.isEntityPresent(axe));
+        assertSame(artefact, cabin.getEntity(axe));
+    }
+
+    @Test
+    void testInstanceBitsAreCopiedOnWrite() {
+        WorldTemplate template = loadExtendedTemplate();
+        int axe = template.getSymbolTable().idOf("axe");
+        GameLocation cabin = template.getGameLocations().get("cabin");
+        GameLocation instance = new GameLocation(cabin);
+        assertEquals(cabin.getSymbol(), instance.getSymbol());
+        instance.removeArtefact("axe");
+        assertFalse(instance.isEntityPresent(axe));
+        assertTrue(cabin.isEntityPresent(axe), "Template location must keep its bits");
+    }
+
+    @Test
+    void testInventoryBitsFollowContents() {
+        WorldTemplate template = loadExtendedTemplate();
+        SymbolTable symbols = template.getSymbolTable();
+        GameLocation cabin = template.getGameLocations().get("cabin");
+        GamePlayer player = new GamePlayer("simon", "", "cabin");
+        player.addArtefactToInventory(cabin.getArtefact("axe"));
+        player.addArtefactToInventory(cabin.getArtefact("potion"));
+        assertTrue(player.getArtefactSymbols().get(symbols.idOf("axe")));
+        player.removeArtefactFromInventory("axe");
+        assertFalse(player.isArtefactPresentInInventory(symbols.idOf("axe")));
+        assertTrue(player.isArtefactPresentInInventory(symbols.idOf("potion")));
+        player.removeAllArtefacts();
+        assertTrue(player.getArtefactSymbols().isEmpty());
+    }
+}
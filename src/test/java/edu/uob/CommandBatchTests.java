@@ -0,0 +1,71 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandBatchTests {
+    private GameServer server;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+    }
+
+    @Test
+    void testBatchIsSplitOnSeparators() {
+        assertFalse(CommandBatch.isBatch("get axe"));
+        assertTrue(CommandBatch.isBatch("get axe; look"));
+        CommandBatch batch = new CommandBatch(" get axe ;; goto forest&&chop tree ; && inv;");
+        assertEquals(4, batch.getCommands().size());
+        assertEquals("get axe", batch.getCommands().get(0));
+        assertEquals("chop tree", batch.getCommands().get(2));
+        assertFalse(batch.isChained(1));
+        assertTrue(batch.isChained(2));
+        assertTrue(batch.isChained(3));
+        assertThrows(RuntimeException.class, () -> new CommandBatch("look;".repeat(CommandBatch.MAX_COMMANDS + 1)));
+    }
+
+    @Test
+    void testBatchRunsAllCommandsAndReturnsEveryReply() {
+        String response = server.handleCommand("simon: get axe; goto forest; chop tree with axe; look").toLowerCase();
+        assertTrue(response.contains("axe"), response);
+        assertTrue(response.contains("you cut down the tree"), response);
+        assertTrue(response.indexOf("forest") < response.lastIndexOf("log"), "Replies come in order");
+        response = server.handleCommand("simon: inv").toLowerCase();
+        assertTrue(response.contains("axe"), response);
+    }
+
+    @Test
+    void testSequenceContinuesAfterAnError() {
+        String response = server.handleCommand("simon: get key; get potion");
+        assertTrue(response.startsWith("[ERROR]"), response);
+        assertTrue(server.handleCommand("simon: inv").contains("potion"));
+    }
+
+    @Test
+    void testChainStopsAtTheFirstError() {
+        String response = server.handleCommand("simon: get key && get potion && get axe; look");
+        assertTrue(response.startsWith("[ERROR]"), response);
+        assertTrue(response.toLowerCase().contains("cabin"), "A ';' ends the chain");
+        String inventory = server.handleCommand("simon: inv");
+        assertFalse(inventory.contains("potion"), inventory);
+        assertFalse(inventory.contains("axe"), inventory);
+    }
+
+    @Test
+    void testOtherPlayersSeeTheResultOfTheWholeBatch() {
+        server.handleCommand("sion: look");
+        server.handleCommand("simon: get axe && get potion && goto forest");
+        String response = server.handleCommand("sion: look").toLowerCase();
+        assertFalse(response.contains("axe") || response.contains("potion") || response.contains("simon"), response);
+        response = server.handleCommand("simon: look").toLowerCase();
+        assertTrue(response.contains("forest"), response);
+    }
+}
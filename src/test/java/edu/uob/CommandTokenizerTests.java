@@ -0,0 +1,75 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandTokenizerTests {
+
+    @Test
+    void testViewLooksUpStringKeys() {
+        String text = "please cut down the tree";
+        KeywordView view = new KeywordView(text).reset(7, 15);
+        assertEquals("cut down".hashCode(), view.hashCode());
+        assertEquals("cut down", view.toString());
+        HashMap<String, String> keywords = new HashMap<>();
+        keywords.put("cut down", "cut down");
+        assertEquals("cut down", keywords.get(view));
+        assertNull(keywords.get(view.reset(7, 10)));
+    }
+
+    @Test
+    void testLongestKeywordWins() {
+        CommandTokenizer tokenizer = new CommandTokenizer("cut down the tree");
+        HashSet<String> found = new HashSet<>();
+        tokenizer.match(new KeywordIndex(Set.of("cut", "cut down", "chop")), found);
+        assertEquals(Set.of("cut down"), found);
+        assertEquals(" the tree", tokenizer.residual());
+    }
+
+    @Test
+    void testLaterDictionariesOnlySeeTheRest() {
+        CommandTokenizer tokenizer = new CommandTokenizer("open the trapdoor, with key!");
+        HashSet<String> triggers = new HashSet<>();
+        HashSet<String> subjects = new HashSet<>();
+        tokenizer.match(new KeywordIndex(Set.of("open", "unlock")), triggers);
+        tokenizer.match(new KeywordIndex(Set.of("trapdoor", "key", "open door")), subjects);
+        assertEquals(Set.of("open"), triggers);
+        assertEquals(Set.of("trapdoor", "key"), subjects);
+        assertEquals(" the , with !", tokenizer.residual());
+    }
+
+    @Test
+    void testKeywordsMatchWholeWordsAndTheirSeparators() {
+        HashSet<String> found = new HashSet<>();
+        new CommandTokenizer("lookaxe cut  down").match(new KeywordIndex(Set.of("look", "axe", "cut down")), found);
+        assertTrue(found.isEmpty(), "Keywords must not match inside words or across other separators");
+        new CommandTokenizer("get Axe").match(new KeywordIndex(Set.of("Axe")), found);
+        assertTrue(found.isEmpty(), "Text is expected in lower case");
+        new CommandTokenizer("get axe").match(new KeywordIndex(Set.of("Axe")), found);
+        assertEquals(Set.of("Axe"), found, "Keywords are reported as spelt in the dictionary");
+    }
+
+    @Test
+    void testRequestDecoder() {
+        RequestDecoder request = new RequestDecoder("  castle / Simon O'Neil-Smith : look: around");
+        assertEquals("castle", request.getWorldId());
+        assertEquals("Simon O'Neil-Smith", request.getPlayerName());
+        assertTrue(request.isValidName());
+        assertEquals(" look", request.getCommand());
+
+        RequestDecoder plain = new RequestDecoder("simon: get axe");
+        assertEquals(GameServer.DEFAULT_WORLD, plain.getWorldId());
+        assertEquals(" get axe", plain.getCommand());
+
+        assertFalse(new RequestDecoder("sim0n: look").isValidName());
+        assertFalse(new RequestDecoder(" : look").isValidName());
+        assertNull(new RequestDecoder("simon").getCommand());
+        assertNull(new RequestDecoder("simon:::").getCommand());
+        assertEquals("", new RequestDecoder("simon::look").getCommand());
+    }
+}
@@ -0,0 +1,115 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityFootprintTests {
+    @Test
+    void testEqualDescriptionsAreShared() {
+        GameArtefact first = new GameArtefact("cup", new StringBuilder("A chipped cup").toString());
+        GameArtefact second = new GameArtefact("mug", new StringBuilder("A chipped cup").toString());
+        assertSame(first.getDescription(), second.getDescription());
+    }
+
+    @Test
+    void testEntitiesReferToTheirLocationById() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        WorldTemplate template = new WorldTemplate(entitiesFile, actionsFile);
+        GameLocation cabin = template.getGameLocations().get("cabin");
+        assertEquals(cabin.getSymbol(), cabin.getArtefact("axe").getLocationSymbol());
+        GameLocation forest = template.getGameLocations().get("forest");
+        GameArtefact axe = cabin.getArtefact("axe");
+        int held = forest.getArtefacts().size();
+        cabin.removeArtefact("axe");
+        forest.addArtefact(axe);
+        assertEquals(forest.getSymbol(), axe.getLocationSymbol());
+        forest.addArtefact(axe);
+        assertEquals(held + 1, forest.getArtefacts().size(), "An entity is only held once");
+    }
+
+    @Test
+    void testEntityPlacedInAnInstanceRefersToTheInstanceLocation() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        WorldTemplate template = new WorldTemplate(entitiesFile, actionsFile);
+        GameLocation cabin = new GameLocation(template.getGameLocations().get("cabin"));
+        GameLocation forest = new GameLocation(template.getGameLocations().get("forest"));
+        GameArtefact axe = cabin.getArtefact("axe");
+        cabin.removeArtefact("axe");
+        forest.addArtefact(axe);
+        assertEquals(forest.getSymbol(), axe.getLocationSymbol());
+        assertTrue(forest.isEntityPresent(axe.getSymbol()));
+        assertFalse(cabin.isEntityPresent(axe.getSymbol()));
+    }
+
+    private static GameLocation hallWithSymbols(SymbolTable symbols) {
+        GameLocation hall = new GameLocation("hall", "A hall");
+        hall.setSymbol(symbols.internLocation("hall"));
+        return hall;
+    }
+
+    @Test
+    void testDuplicateAddsAreIgnoredForEveryKind() {
+        SymbolTable symbols = new SymbolTable();
+        GameLocation hall = hallWithSymbols(symbols);
+        GameArtefact cup = new GameArtefact("cup", "A chipped cup");
+        cup.setSymbol(symbols.intern("cup"));
+        GameFurniture table = new GameFurniture("table", "A long table");
+        table.setSymbol(symbols.intern("table"));
+        GameCharacter cook = new GameCharacter("cook", "A busy cook");
+        cook.setSymbol(symbols.intern("cook"));
+        for (int i = 0; i < 3; i++) {
+            hall.addEntity(cup);
+            hall.addEntity(table);
+            hall.addEntity(cook);
+        }
+        assertEquals(1, hall.getArtefacts().size());
+        assertEquals(1, hall.getFurnitures().size());
+        assertEquals(1, hall.getCharacters().size());
+        assertEquals(3, hall.getEntitySymbols().cardinality());
+        assertSame(table, hall.getEntity(table.getSymbol()));
+    }
+
+    @Test
+    void testRemoveThenAddKeepsMembershipInStep() {
+        SymbolTable symbols = new SymbolTable();
+        GameLocation hall = hallWithSymbols(symbols);
+        GameArtefact cup = new GameArtefact("cup", "A chipped cup");
+        cup.setSymbol(symbols.intern("cup"));
+        GameArtefact plate = new GameArtefact("plate", "A plate");
+        plate.setSymbol(symbols.intern("plate"));
+        hall.addArtefact(cup);
+        hall.addArtefact(plate);
+        hall.removeEntity("CUP");
+        assertFalse(hall.isEntityPresent(cup.getSymbol()), "Removing an entity clears its bit");
+        assertNull(hall.getEntity(cup.getSymbol()));
+        assertTrue(hall.isEntityPresent(plate.getSymbol()));
+        hall.addArtefact(cup);
+        hall.addArtefact(cup);
+        assertTrue(hall.isEntityPresent(cup.getSymbol()));
+        assertEquals(2, hall.getArtefacts().size(), "A re-added entity is held once");
+        assertSame(plate, hall.getArtefacts().iterator().next(), "Entities keep their arrival order");
+    }
+
+    @Test
+    void testInstanceChangesLeaveTheBaseUntouched() {
+        SymbolTable symbols = new SymbolTable();
+        GameLocation base = hallWithSymbols(symbols);
+        GameArtefact cup = new GameArtefact("cup", "A chipped cup");
+        cup.setSymbol(symbols.intern("cup"));
+        base.addArtefact(cup);
+        GameLocation instance = new GameLocation(base);
+        assertTrue(instance.isPristineInstance());
+        instance.removeArtefact("cup");
+        assertFalse(instance.isEntityPresent(cup.getSymbol()));
+        assertTrue(base.isEntityPresent(cup.getSymbol()), "The base keeps its symbol bits");
+        assertEquals(1, base.getArtefacts().size(), "The base keeps its entities");
+        instance.addArtefact(cup);
+        assertEquals(1, instance.getArtefacts().size());
+    }
+}
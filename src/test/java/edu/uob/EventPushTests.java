@@ -0,0 +1,122 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventPushTests {
+    private GameServer server;
+    private GameWorld world;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        world = server.getWorld(GameServer.DEFAULT_WORLD);
+    }
+
+    @Test
+    void testChangesArePushedToOtherPlayersAtTheLocation() throws InterruptedException {
+        server.handleCommand("simon: look");
+        server.handleCommand("sion: look");
+        EventSubscription sion = world.subscribe("Sion");
+        EventSubscription simon = world.subscribe("simon");
+        server.handleCommand("simon: get axe");
+        String batch = sion.awaitBatch(1000);
+        assertNotNull(batch);
+        assertTrue(batch.startsWith("EVENT cabin "), batch);
+        assertTrue(batch.contains("removed:axe"), batch);
+        assertNull(simon.awaitBatch(10), "The acting player gets a reply instead of an event");
+
+        server.handleCommand("simon: look");
+        assertNull(sion.awaitBatch(10), "Reads change nothing");
+        server.handleCommand("simon: goto forest");
+        batch = sion.awaitBatch(1000);
+        assertTrue(batch.contains("left:simon"), batch);
+        server.handleCommand("sion: goto forest");
+        batch = simon.awaitBatch(1000);
+        assertTrue(batch.startsWith("EVENT forest ") && batch.contains("arrived:sion"), batch);
+        world.unsubscribe(simon);
+        server.handleCommand("sion: goto cabin");
+        assertNull(simon.awaitBatch(10));
+    }
+
+    @Test
+    void testSlowSubscribersLoseEventsInsteadOfBlocking() throws InterruptedException {
+        EventSubscription subscription = new EventSubscription("simon", 2);
+        for (int i = 0; i < 5; i++) {
+            subscription.offer("EVENT cabin " + i);
+        }
+        assertEquals(3, subscription.getDropped());
+        String batch = subscription.awaitBatch(10);
+        assertTrue(batch.startsWith("MISSED 3"), batch);
+        assertTrue(batch.contains("EVENT cabin 0") && batch.contains("EVENT cabin 1"), batch);
+        assertNull(subscription.awaitBatch(10));
+    }
+
+    @Test
+    void testEventsArePushedOverTheConnection() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Thread listener = new Thread(() -> {
+            try {
+                server.blockingListenOn(port);
+            }
+            catch (IOException ignored) {
+            }
+        });
+        listener.setDaemon(true);
+        listener.start();
+        server.handleCommand("simon: look");
+        server.handleCommand("sion: look");
+        try (Socket socket = connect(port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            socket.setSoTimeout(5000);
+            writer.write("SUBSCRIBE sion\n");
+            writer.flush();
+            assertEquals("SUBSCRIBED", reader.readLine());
+            assertEquals(String.valueOf((char) 4), reader.readLine());
+            server.handleCommand("simon: drop axe");
+            server.handleCommand("simon: get potion");
+            String event = reader.readLine();
+            assertTrue(event.startsWith("EVENT cabin ") && event.contains("removed:potion"), event);
+        }
+        finally {
+            listener.interrupt();
+        }
+    }
+
+    private static Socket connect(int port) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("localhost", port);
+            }
+            catch (IOException e) {
+                if (attempt > 50) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException interrupted) {
+                    throw new IOException(interrupted);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uob;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameEventTests {
+    private GameServer server;
+    private Recording recording;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        recording = new Recording();
+        recording.enable(CommandEvent.class).withoutThreshold();
+        recording.enable(KeywordParseEvent.class).withoutThreshold();
+        recording.enable(ActionResolveEvent.class).withoutThreshold();
+        recording.enable(EntityTransferEvent.class).withoutThreshold();
+        recording.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        recording.close();
+    }
+
+    private String sendCommandToServer(String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    private List<RecordedEvent> stopAndRead() throws IOException {
+        recording.stop();
+        Path dump = Files.createTempFile("stag", ".jfr");
+        try {
+            recording.dump(dump);
+            return RecordingFile.readAllEvents(dump);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    void testCustomActionEmitsEventsWithContext() throws IOException {
+        sendCommandToServer("simon: get axe");
+        sendCommandToServer("simon: goto forest");
+        sendCommandToServer("simon: chop tree with axe");
+        List<RecordedEvent> events = stopAndRead();
+
+        RecordedEvent chop = null;
+        int transfers = 0;
+        for (RecordedEvent event : events) {
+            String type = event.getEventType().getName();
+            if (type.equals("edu.uob.Command") && "chop".equals(event.getString("trigger"))) {
+                chop = event;
+            }
+            if (type.equals("edu.uob.EntityTransfer")) {
+                transfers++;
+                assertEquals("simon", event.getString("player"));
+                assertEquals("chop", event.getString("trigger"));
+            }
+        }
+        assertNotNull(chop, "Command event for chop should have been recorded");
+        assertEquals("simon", chop.getString("player"));
+        assertEquals("OK", chop.getString("outcome"));
+        assertEquals(GameServer.DEFAULT_WORLD, chop.getString("world"));
+        assertTrue(chop.getString("action").contains("tree"), "Action label should name its subjects");
+        assertEquals(2, transfers, "Produce and consume should each emit a transfer event");
+    }
+
+    @Test
+    void testFailedCommandRecordsOutcome() throws IOException {
+        sendCommandToServer("simon: open trapdoor");
+        List<RecordedEvent> events = stopAndRead();
+
+        boolean commandSeen = false;
+        boolean parseSeen = false;
+        for (RecordedEvent event : events) {
+            String type = event.getEventType().getName();
+            if (type.equals("edu.uob.Command")) {
+                commandSeen = true;
+                assertEquals("open", event.getString("trigger"));
+                assertNotEquals("OK", event.getString("outcome"));
+            }
+            if (type.equals("edu.uob.KeywordParse")) {
+                parseSeen = true;
+            }
+        }
+        assertTrue(commandSeen, "Command event should have been recorded");
+        assertTrue(parseSeen, "Keyword parse events should have been recorded");
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameLoggerTests {
+
+    @Test
+    void testRecordsAreWrittenInOrder() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameLogger logger = new GameLogger(new PrintStream(bytes, true), 16);
+        logger.info("Received message from ", "simon: look");
+        logger.warn("Connection closed", null);
+        assertTrue(logger.flush(1000), "Logger should flush queued records");
+        logger.shutdown();
+        String output = bytes.toString();
+        assertTrue(output.contains("INFO Received message from simon: look"), output);
+        assertTrue(output.indexOf("INFO") < output.indexOf("WARN"), "Records should keep their order");
+    }
+
+    @Test
+    void testLevelsAndSampling() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameLogger logger = new GameLogger(new PrintStream(bytes, true), 64);
+        logger.setMinimumLevel(LogLevel.INFO);
+        logger.debug("hidden", null);
+        logger.setSampleRate(LogLevel.INFO, 4);
+        for (int i = 0; i < 8; i++) {
+            logger.info("sampled ", i);
+        }
+        assertTrue(logger.flush(1000));
+        logger.shutdown();
+        String output = bytes.toString();
+        assertFalse(output.contains("hidden"), "Debug records should be filtered at INFO");
+        assertEquals(2, logger.getWrittenRecords(), "Only one in four INFO records should be kept");
+    }
+
+    @Test
+    void testIdleWriterSleepsUntilTheNextRecord() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameLogger logger = new GameLogger(new PrintStream(bytes, true), 16);
+        for (int attempt = 0; attempt < 100 && !logger.isWriterParked(); attempt++) {
+            Thread.sleep(10);
+        }
+        assertTrue(logger.isWriterParked(), "An idle writer should park instead of polling");
+        logger.info("woken by ", "simon");
+        assertTrue(logger.flush(1000), "A record should wake the parked writer");
+        assertTrue(bytes.toString().contains("INFO woken by simon"));
+        logger.shutdown();
+    }
+
+    @Test
+    void testFullBufferDropsInsteadOfBlocking() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() {
+            @Override
+            public void write(int b) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        GameLogger logger = new GameLogger(new PrintStream(stalled, true), 4);
+        for (int i = 0; i < 100; i++) {
+            logger.error("flood ", i);
+        }
+        assertTrue(logger.getDroppedRecords() > 0, "Records beyond the buffer capacity should be dropped");
+        assertTrue(logger.getPendingRecords() <= 4, "Queue depth should never exceed the capacity");
+        release.countDown();
+        logger.shutdown();
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdleEvictionTests {
+    private static final long IDLE_MILLIS = 60000;
+
+    @TempDir
+    Path storeDirectory;
+
+    private GameServer server;
+    private GameWorld world;
+    private PlayerStore store;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        world = server.getWorld(GameServer.DEFAULT_WORLD);
+        store = new PlayerStore(storeDirectory.toFile(), world.getSymbolTable());
+        world.enableIdleEviction(store, IDLE_MILLIS);
+    }
+
+    @Test
+    void testIdlePlayersAreEvictedAndRestoredOnTheirNextCommand() {
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: get key");
+        server.handleCommand("sion: goto forest");
+        assertEquals(2, world.getActivePlayerCount());
+        assertEquals(0, world.evictIdlePlayers(System.currentTimeMillis()), "Nobody has been idle yet");
+
+        assertEquals(2, world.evictIdlePlayers(System.currentTimeMillis() + IDLE_MILLIS));
+        assertEquals(0, world.getActivePlayerCount());
+        assertTrue(store.contains("Simon"));
+
+        String response = server.handleCommand("sion: look").toLowerCase();
+        assertTrue(response.contains("forest"), response);
+        assertFalse(response.contains("simon"), "Evicted players are no longer seen at their location");
+        assertEquals(1, world.getActivePlayerCount());
+
+        response = server.handleCommand("simon: inv").toLowerCase();
+        assertTrue(response.contains("axe") && response.contains("key"), response);
+        assertFalse(store.contains("simon"), "A restored player is taken out of the store");
+        response = server.handleCommand("simon: look").toLowerCase();
+        assertTrue(response.contains("forest") && response.contains("sion"), response);
+        response = server.handleCommand("sion: look").toLowerCase();
+        assertTrue(response.contains("simon"), response);
+    }
+
+    @Test
+    void testHealthSurvivesEviction() {
+        server.handleCommand("simon: get potion");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: goto riverbank");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: health");
+        String before = server.handleCommand("simon: health");
+        world.evictIdlePlayers(System.currentTimeMillis() + IDLE_MILLIS);
+        assertEquals(0, world.getActivePlayerCount());
+        assertEquals(before, server.handleCommand("simon: health"));
+    }
+
+    @Test
+    void testHandedOverPlayersStartActive() {
+        world.acceptPlayer(new GamePlayer("visitor", "", "forest"));
+        assertEquals(1, world.getActivePlayerCount());
+        assertEquals(0, world.evictIdlePlayers(System.currentTimeMillis()), "A player handed over by a shard is not idle");
+        assertEquals(1, world.evictIdlePlayers(System.currentTimeMillis() + IDLE_MILLIS));
+        assertTrue(store.contains("visitor"));
+    }
+
+    @Test
+    void testSubscribedPlayersAreNeverIdle() {
+        server.handleCommand("simon: look");
+        server.handleCommand("sion: look");
+        EventSubscription subscription = world.subscribe("sion");
+        assertEquals(1, world.evictIdlePlayers(System.currentTimeMillis() + IDLE_MILLIS));
+        assertEquals(1, world.getActivePlayerCount());
+        assertFalse(store.contains("sion"));
+        world.unsubscribe(subscription);
+        assertEquals(1, world.evictIdlePlayers(System.currentTimeMillis() + IDLE_MILLIS));
+    }
+
+    @Test
+    void testWorldsAddedLaterShareTheEvictionSettings() {
+        server.enableIdleEviction(storeDirectory.toFile(), IDLE_MILLIS);
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        GameWorld other = server.addWorldInstance("other", new WorldTemplate(entitiesFile, actionsFile));
+        server.handleCommand("other/simon: look");
+        assertEquals(0, server.evictIdlePlayers());
+        assertEquals(1, other.evictIdlePlayers(System.currentTimeMillis() + IDLE_MILLIS));
+        assertTrue(new File(storeDirectory.toFile(), "other").isDirectory());
+        String response = server.handleCommand("other/simon: look").toLowerCase();
+        assertTrue(response.contains("cabin"), response);
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiWorldTests {
+    private GameServer server;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        File basicEntities = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
+        File basicActions = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+        server.addWorld("basic", basicEntities, basicActions);
+        server.addWorld("second", entitiesFile, actionsFile);
+    }
+
+    private String sendCommandToServer(String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    @Test
+    void testWorldsAreIndependent() {
+        sendCommandToServer("second/simon: get axe");
+        assertTrue(sendCommandToServer("second/simon: inv").contains("axe"));
+        assertFalse(sendCommandToServer("simon: inv").contains("axe"), "Default world should not see the other world's inventory");
+        assertTrue(sendCommandToServer("simon: look").contains("axe"), "Axe should still be in the default world's cabin");
+    }
+
+    @Test
+    void testWorldsHaveTheirOwnConfiguration() {
+        String response = sendCommandToServer("basic/simon: look");
+        assertFalse(response.contains("Room"), "Basic world has no Room location");
+        assertTrue(sendCommandToServer("simon: look").contains("Room"));
+    }
+
+    @Test
+    void testUnknownWorldIsRejected() {
+        assertTrue(sendCommandToServer("nowhere/simon: look").contains("[ERROR]"));
+        assertThrows(IllegalArgumentException.class, () -> server.addWorld("basic",
+                new File("config" + File.separator + "basic-entities.dot"),
+                new File("config" + File.separator + "basic-actions.xml")));
+    }
+
+    @Test
+    void testBusyWorldDoesNotStarveQuietWorld() throws Exception {
+        WorldScheduler scheduler = new WorldScheduler(1);
+        try {
+            AtomicInteger busyCompleted = new AtomicInteger();
+            for (int i = 0; i < 200; i++) {
+                scheduler.submit(server.getWorld("second"), () -> {
+                    Thread.sleep(2);
+                    return busyCompleted.incrementAndGet();
+                });
+            }
+            Future<Integer> quiet = scheduler.submit(server.getWorld("basic"), () -> busyCompleted.get());
+            int busyWhenQuietRan = quiet.get(1, TimeUnit.SECONDS);
+            assertTrue(busyWhenQuietRan < 10, "Quiet world should be served after at most a few busy tasks");
+            assertEquals(200, scheduler.getSubmittedTasks("second"));
+            assertEquals(1, scheduler.getSubmittedTasks("basic"));
+            // a running task has left the queue but is not counted as completed yet
+            assertTrue(scheduler.getCompletedTasks("second") + scheduler.getPendingTasks("second") <= 200,
+                    "No more tasks are run or queued than were submitted");
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
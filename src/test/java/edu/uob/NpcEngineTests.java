@@ -0,0 +1,145 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NpcEngineTests {
+    @TempDir
+    Path configDirectory;
+
+    private GameServer createServer(String elfBehaviour) throws IOException {
+        Path entities = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath();
+        String content = new String(Files.readAllBytes(entities));
+        content = content.replace("elf [description = \"An angry looking Elf\"]",
+                "elf [description = \"An angry looking Elf\", behaviour = \"" + elfBehaviour + "\"]");
+        Path entitiesFile = configDirectory.resolve("entities.dot");
+        Files.write(entitiesFile, content.getBytes());
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        return new GameServer(entitiesFile.toFile(), actionsFile);
+    }
+
+    @Test
+    void testMovingCharacterLeavesByIdentity() {
+        SymbolTable symbols = new SymbolTable();
+        GameLocation hall = new GameLocation("hall", "A hall");
+        hall.setSymbol(symbols.internLocation("hall"));
+        GameCharacter[] characters = new GameCharacter[3];
+        for (int i = 0; i < characters.length; i++) {
+            characters[i] = new GameCharacter("guard" + i, "A guard");
+            characters[i].setSymbol(symbols.intern("guard" + i));
+            hall.addCharacter(characters[i]);
+        }
+        GameCharacter stranger = new GameCharacter("stranger", "A stranger");
+        stranger.setSymbol(symbols.intern("stranger"));
+        assertFalse(hall.removeCharacter(stranger), "A character that is not here is turned away by its symbol");
+        assertTrue(hall.removeCharacter(characters[1]));
+        assertFalse(hall.removeCharacter(characters[1]));
+        assertFalse(hall.isEntityPresent(characters[1].getSymbol()));
+        assertArrayEquals(new GameCharacter[] {characters[0], characters[2]}, hall.getCharacters().toArray(),
+                "The others keep their order");
+        hall.addCharacter(characters[1]);
+        assertTrue(hall.isEntityPresent(characters[1].getSymbol()));
+        assertEquals(3, hall.getCharacters().size());
+    }
+
+    @Test
+    void testCharacterPatrolsItsRoute() throws IOException {
+        GameServer server = createServer("patrol 2 cabin forest riverbank");
+        GameWorld world = server.getWorld(GameServer.DEFAULT_WORLD);
+        assertEquals(1, world.getNpcEngine().getMovingCharacters());
+        assertTrue(server.handleCommand("simon: look").contains("cabin"));
+        assertFalse(server.handleCommand("simon: look").contains("Elf"));
+        world.advanceClock(1);
+        assertTrue(server.handleCommand("simon: look").contains("Elf"), "The elf comes up from the cellar");
+        world.advanceClock(2);
+        assertEquals("forest", world.getNpcEngine().getLocationOf("elf"));
+        assertFalse(server.handleCommand("simon: look").contains("Elf"));
+        world.advanceClock(2);
+        assertEquals("riverbank", world.getNpcEngine().getLocationOf("elf"));
+        world.advanceClock(4);
+        assertEquals("cabin", world.getNpcEngine().getLocationOf("elf"), "The patrol loops back the way it came");
+        assertEquals(5, world.getNpcEngine().getMoves());
+        assertEquals(5, world.getNpcEngine().getEvaluations());
+    }
+
+    @Test
+    void testCharacterFollowsAPlayer() throws IOException {
+        GameServer server = createServer("follow 1 simon");
+        GameWorld world = server.getWorld(GameServer.DEFAULT_WORLD);
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: goto riverbank");
+        world.advanceClock(2);
+        assertEquals("forest", world.getNpcEngine().getLocationOf("elf"));
+        world.advanceClock(5);
+        assertTrue(server.handleCommand("simon: look").contains("Elf"));
+        assertEquals(3, world.getNpcEngine().getMoves(), "A character next to its player stays put");
+    }
+
+    @Test
+    void testBehavioursCanBeChangedAndStopped() throws IOException {
+        GameServer server = createServer("wander 1");
+        GameWorld world = server.getWorld(GameServer.DEFAULT_WORLD);
+        world.advanceClock(50);
+        assertTrue(world.getNpcEngine().getMoves() > 0);
+        assertTrue(world.setCharacterBehaviour("elf", null));
+        long moves = world.getNpcEngine().getMoves();
+        world.advanceClock(50);
+        assertEquals(moves, world.getNpcEngine().getMoves());
+        assertEquals(0, world.getWorldClock().getPendingEvents());
+        assertFalse(world.setCharacterBehaviour("axe", "wander 1"), "Only characters move");
+        assertThrows(IllegalArgumentException.class, () -> world.setCharacterBehaviour("elf", "patrol 1 moon"));
+        assertThrows(IllegalArgumentException.class, () -> world.setCharacterBehaviour("elf", "dance 1"));
+        assertTrue(world.setCharacterBehaviour("elf", "patrol 1 clearing"));
+        world.advanceClock(10);
+        String location = world.getNpcEngine().getLocationOf("elf");
+        assertNotEquals("clearing", location, "No path leads into the clearing");
+    }
+
+    @Test
+    void testTickWorkDependsOnDueCharactersOnly() {
+        SymbolTable symbols = new SymbolTable();
+        HashMap<String, GameLocation> locations = new HashMap<>();
+        PathGraph paths = new PathGraph();
+        int locationCount = 1000;
+        for (int i = 0; i < locationCount; i++) {
+            GameLocation location = new GameLocation("l" + i, "");
+            location.setSymbol(symbols.internLocation("l" + i));
+            locations.put("l" + i, location);
+        }
+        for (int i = 0; i < locationCount; i++) {
+            paths.addPath(i, (i + 1) % locationCount);
+            paths.addPath(i, (i + locationCount - 1) % locationCount);
+        }
+        WorldClock clock = new WorldClock();
+        NpcEngine engine = new NpcEngine(locations, paths, symbols, new HashMap<>(), new RouteCache(paths), new Random(7));
+        int characterCount = 100000;
+        for (int i = 0; i < characterCount; i++) {
+            String locationName = "l" + (i % locationCount);
+            GameCharacter character = new GameCharacter("npc" + i, "");
+            character.setSymbol(symbols.intern(character.getName()));
+            locations.get(locationName).addCharacter(character);
+            engine.assign(character, locationName, new NpcBehaviour.Wander(1000), clock);
+        }
+        assertEquals(characterCount, clock.getPendingEvents());
+        clock.advance(null, 10);
+        assertEquals(1000, engine.getEvaluations(), "Only the characters due in these ticks were looked at");
+        assertEquals(1000, engine.getMoves());
+        int present = 0;
+        for (GameLocation location : locations.values()) {
+            present += location.getCharacters().size();
+        }
+        assertEquals(characterCount, present, "Moves keep every character in exactly one location");
+        clock.advance(null, 2000);
+        assertEquals(2L * characterCount + 1000, engine.getEvaluations(), "Every character was due once per period");
+    }
+}
@@ -0,0 +1,86 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseCacheTests {
+
+    private ParsedCommand parsed(String residual) {
+        return new ParsedCommand(new HashSet<>(Set.of("look")), new HashSet<>(), residual);
+    }
+
+    @Test
+    void testHitsAndMissesAreCounted() {
+        ParseCache cache = new ParseCache(4);
+        assertNull(cache.get("look"));
+        cache.put("look", parsed(""), cache.getVersion());
+        assertNotNull(cache.get("look"));
+        assertNotNull(cache.get("look"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testClockEvictsEntriesNotUsedRecently() {
+        ParseCache cache = new ParseCache(2);
+        cache.put("look", parsed(""), cache.getVersion());
+        cache.put("inv", parsed(""), cache.getVersion());
+        cache.get("look");
+        // the hand gives "look" a second chance and evicts "inv"
+        cache.put("health", parsed(""), cache.getVersion());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get("look"));
+        assertNull(cache.get("inv"));
+        assertNotNull(cache.get("health"));
+    }
+
+    @Test
+    void testInvalidateDropsEntriesAndStaleParses() {
+        ParseCache cache = new ParseCache(4);
+        long before = cache.getVersion();
+        cache.put("look", parsed(""), before);
+        cache.invalidate();
+        assertNull(cache.get("look"));
+        cache.put("inv", parsed(""), before);
+        assertNull(cache.get("inv"), "A parse started before the dictionaries changed must not be cached");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testRepeatedCommandsHitTheCache() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        WorldTemplate template = new WorldTemplate(entitiesFile, actionsFile);
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        server.addWorldInstance("one", template);
+        server.addWorldInstance("two", template);
+        ParseCache cache = template.getParseCache();
+
+        assertTrue(send(server, "one/simon: look").contains("cabin"));
+        assertTrue(send(server, "two/simon: LOOK ").contains("cabin"));
+        assertEquals(1, cache.getHits(), "Instances of a template share parsed commands");
+
+        // the cached parse of "look sion" must still be checked against the current players
+        assertFalse(send(server, "one/simon: look sion").contains("[ERROR]"));
+        send(server, "one/sion: look");
+        assertTrue(send(server, "one/simon: look sion").contains("[ERROR]"));
+        assertEquals(3, cache.getHits(), "Second \"look sion\" and sion's \"look\" should be hits");
+
+        template.addKeywords(Set.of("dance"), Set.of());
+        assertEquals(0, cache.size(), "Changing the dictionaries should invalidate the cache");
+    }
+
+    private String send(GameServer server, String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+}
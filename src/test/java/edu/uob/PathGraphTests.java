@@ -0,0 +1,61 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathGraphTests {
+
+    @Test
+    void testEdgesCanBeAddedAndRemoved() {
+        PathGraph graph = new PathGraph();
+        assertTrue(graph.addPath(0, 1));
+        assertFalse(graph.addPath(0, 1), "Adding an existing path changes nothing");
+        assertTrue(graph.hasPath(0, 1));
+        assertFalse(graph.hasPath(1, 0), "Paths are one-way");
+        assertTrue(graph.removePath(0, 1));
+        assertFalse(graph.removePath(0, 1));
+        assertTrue(graph.destinationsOf(0).isEmpty());
+        assertFalse(graph.hasPath(SymbolTable.NO_SYMBOL, 0));
+    }
+
+    @Test
+    void testOverlayCopiesOnlyChangedRows() {
+        PathGraph base = new PathGraph();
+        base.addPath(0, 1);
+        base.addPath(1, 2);
+        PathGraph instance = new PathGraph(base);
+        assertTrue(instance.hasPath(0, 1));
+        assertEquals(0, instance.getOwnRowCount());
+        instance.addPath(0, 2);
+        instance.removePath(0, 1);
+        assertEquals(1, instance.getOwnRowCount());
+        assertTrue(instance.hasPath(0, 2));
+        assertFalse(instance.hasPath(0, 1));
+        assertTrue(base.hasPath(0, 1), "Base graph must not change");
+        assertFalse(base.hasPath(0, 2));
+        assertTrue(instance.hasPath(1, 2), "Unchanged rows are still shared");
+    }
+
+    @Test
+    void testTemplateGraphMatchesLoadedPaths() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        WorldTemplate template = new WorldTemplate(entitiesFile, actionsFile);
+        SymbolTable symbols = template.getSymbolTable();
+        PathGraph graph = template.getPathGraph();
+        int edges = 0;
+        for (String origin : template.getGamePaths().keySet()) {
+            for (String destination : template.getGamePaths().get(origin)) {
+                assertTrue(graph.hasPath(symbols.idOf(origin), symbols.idOf(destination)));
+                edges++;
+            }
+            edges -= graph.destinationsOf(symbols.idOf(origin)).cardinality();
+        }
+        assertEquals(0, edges, "Graph should hold exactly the loaded paths");
+        assertFalse(graph.hasPath(symbols.idOf("cabin"), symbols.idOf("cellar")));
+    }
+}
@@ -0,0 +1,151 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseBufferTests {
+    @TempDir
+    Path configDirectory;
+
+    private static File configFile(String name) {
+        return Paths.get("config" + File.separator + name).toAbsolutePath().toFile();
+    }
+
+    @Test
+    void testLongRepliesAreEncodedInChunks() throws IOException {
+        ResponseBuffer buffer = new ResponseBuffer();
+        for (int i = 0; i < 5000; i++) {
+            buffer.append("café ").append(i).append('\n');
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buffer.writeTo(Channels.newChannel(bytes));
+        assertArrayEquals(buffer.toString().getBytes(Charset.defaultCharset()), bytes.toByteArray());
+        bytes.reset();
+        buffer.writeTo(Channels.newChannel(bytes));
+        assertArrayEquals(buffer.toString().getBytes(Charset.defaultCharset()), bytes.toByteArray(),
+                "A buffer can be written again");
+    }
+
+    @Test
+    void testTruncateAndTrimWorkFromAMark() {
+        ResponseBuffer buffer = new ResponseBuffer();
+        buffer.append("kept");
+        int mark = buffer.length();
+        buffer.append("  taken back");
+        buffer.truncate(mark);
+        assertEquals("kept", buffer.toString());
+        buffer.append("\n  reply \n\n");
+        buffer.trim(mark);
+        assertEquals("keptreply", buffer.toString());
+    }
+
+    @Test
+    void testBuffersAreReused() {
+        GameServer server = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        server.handleCommand("simon: look");
+        long created = ResponseBufferPool.getInstance().getCreated();
+        for (int i = 0; i < 200; i++) {
+            server.handleCommand("simon: get axe");
+            server.handleCommand("simon: look");
+            server.handleCommand("simon: drop axe");
+            server.handleCommand("simon: inv");
+        }
+        assertTrue(ResponseBufferPool.getInstance().getCreated() - created < 8, "Replies are written into pooled buffers");
+    }
+
+    @Test
+    void testFailedCommandRepliesWithItsErrorOnly() {
+        GameServer server = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        assertEquals("[ERROR]: Artefact could not be found in current location",
+                server.handleCommand("simon: get log"));
+        String batch = server.handleCommand("simon: inv; get log; health");
+        assertTrue(batch.startsWith("simon has:"), batch);
+        assertTrue(batch.contains("[ERROR]: Artefact could not be found in current location"), batch);
+        assertTrue(batch.endsWith("simon's health is: 3"), batch);
+    }
+
+    @Test
+    void testCrowdedLocationIsWrittenToTheConnection() throws IOException {
+        StringBuilder dot = new StringBuilder("digraph layout {\n subgraph locations {\n  subgraph cluster1 {\n");
+        dot.append("   node [shape = \"none\"];\n   hall [description = \"A crowded hall\"];\n   subgraph artefacts {\n");
+        dot.append("    node [shape = \"diamond\"];\n");
+        for (int i = 0; i < 500; i++) {
+            dot.append("    trinket").append(i).append(" [description = \"A trinket\"];\n");
+        }
+        dot.append("   }\n  }\n  subgraph cluster2 {\n   node [shape = \"none\"];\n   porch [description = \"A quiet porch\"];\n");
+        dot.append("  }\n }\n subgraph paths {\n  hall -> porch;\n }\n}\n");
+        Path entities = configDirectory.resolve("crowded-entities.dot");
+        Files.writeString(entities, dot.toString());
+        GameServer server = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        server.addWorld("crowded", entities.toFile(), configFile("extended-actions.xml"));
+        String expected = server.handleCommand("crowded/simon: look");
+        assertTrue(expected.length() > 10000, expected);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Thread listener = new Thread(() -> {
+            try {
+                server.blockingListenOn(port);
+            }
+            catch (IOException ignored) {
+            }
+        });
+        listener.setDaemon(true);
+        listener.start();
+        try (Socket socket = connect(port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            socket.setSoTimeout(5000);
+            writer.write("crowded/simon: look\n");
+            writer.flush();
+            StringBuilder reply = new StringBuilder();
+            String line = reader.readLine();
+            while (line != null && !line.equals(String.valueOf((char) 4))) {
+                reply.append(line).append('\n');
+                line = reader.readLine();
+            }
+            assertEquals(expected.strip(), reply.toString().strip());
+        }
+        finally {
+            listener.interrupt();
+        }
+    }
+
+    private static Socket connect(int port) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("localhost", port);
+            }
+            catch (IOException e) {
+                if (attempt > 50) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException interrupted) {
+                    throw new IOException(interrupted);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteCacheTests {
+
+    private static PathGraph chain() {
+        // 0 -> 1 -> 2 -> 3, and 0 -> 4
+        PathGraph graph = new PathGraph();
+        graph.addPath(0, 1);
+        graph.addPath(1, 2);
+        graph.addPath(2, 3);
+        graph.addPath(0, 4);
+        return graph;
+    }
+
+    @Test
+    void testShortestRouteIsFoundAndCached() {
+        RouteCache cache = new RouteCache(chain());
+        assertEquals(List.of(1, 2, 3), cache.findRoute(0, 3));
+        assertEquals(List.of(4), cache.findRoute(0, 4));
+        assertEquals(1, cache.getSearches(), "Second lookup from the same origin is answered from the cache");
+        assertNull(cache.findRoute(3, 0), "Paths are one-way");
+        assertNull(cache.findRoute(0, 0));
+        assertEquals(2, cache.getCachedOrigins());
+    }
+
+    @Test
+    void testAddedShortcutInvalidatesOnlyAffectedOrigins() {
+        PathGraph graph = chain();
+        RouteCache cache = new RouteCache(graph);
+        cache.findRoute(0, 3);
+        cache.findRoute(4, 0);
+        graph.addPath(1, 3);
+        cache.pathAdded(1, 3);
+        assertEquals(1, cache.getInvalidations(), "Origin 4 cannot reach the new path");
+        assertEquals(List.of(1, 3), cache.findRoute(0, 3));
+
+        // a path that does not shorten any route keeps the tree
+        graph.addPath(1, 4);
+        cache.pathAdded(1, 4);
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    void testRemovedPathInvalidatesOnlyTreesUsingIt() {
+        PathGraph graph = chain();
+        graph.addPath(4, 3);
+        RouteCache cache = new RouteCache(graph);
+        LinkedList<Integer> route = cache.findRoute(0, 3);
+        assertEquals(List.of(4, 3), route);
+        graph.removePath(1, 2);
+        cache.pathRemoved(1, 2);
+        assertEquals(1, cache.getInvalidations(), "Tree of origin 0 reaches 2 through 1");
+        assertEquals(List.of(4, 3), cache.findRoute(0, 3));
+        graph.removePath(4, 3);
+        cache.pathRemoved(4, 3);
+        assertNull(cache.findRoute(0, 3));
+    }
+
+    @Test
+    void testLeastRecentlyRoutedOriginsAreEvicted() {
+        RouteCache cache = new RouteCache(chain(), 2);
+        cache.findRoute(0, 3);
+        cache.findRoute(1, 3);
+        cache.findRoute(0, 4);
+        cache.findRoute(2, 3);
+        assertEquals(2, cache.getCachedOrigins(), "The cache stays within its capacity");
+        assertEquals(1, cache.getEvictions());
+        assertEquals(List.of(1, 2, 3), cache.findRoute(0, 3));
+        assertEquals(3, cache.getSearches(), "Origin 0 was used last and kept its tree");
+        assertEquals(List.of(2, 3), cache.findRoute(1, 3));
+        assertEquals(4, cache.getSearches(), "Origin 1 was evicted and searched again");
+        assertThrows(IllegalArgumentException.class, () -> new RouteCache(chain(), 0));
+    }
+
+    @Test
+    void testTravelCommandMovesAlongRoute() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        String response = assertTimeoutPreemptively(Duration.ofMillis(1000),
+                () -> server.handleCommand("simon: travel to the riverbank"));
+        assertTrue(response.toLowerCase().startsWith("you travel through forest riverbank"), response);
+        response = server.handleCommand("simon: look").toLowerCase();
+        assertTrue(response.contains("riverbank"), response);
+        response = server.handleCommand("simon: travel to clearing").toLowerCase();
+        assertFalse(response.contains("you travel"), "Clearing is not reachable without the tree being cut down");
+        response = server.handleCommand("simon: travel to riverbank").toLowerCase();
+        assertFalse(response.contains("you travel"), "Travelling to the current location is rejected");
+    }
+}
@@ -0,0 +1,133 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleNetworkTests {
+    @TempDir
+    Path configDirectory;
+
+    private static final String ACTIONS = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <actions>
+                <action>
+                    <triggers><keyphrase>trip</keyphrase></triggers>
+                    <subjects><entity>trapdoor</entity></subjects>
+                    <consumed><entity>health</entity></consumed>
+                    <produced></produced>
+                    <narration>You trip over the trapdoor</narration>
+                </action>
+                <action>
+                    <triggers><keyphrase>rest</keyphrase></triggers>
+                    <subjects><entity>cabin</entity></subjects>
+                    <consumed></consumed>
+                    <produced><entity>health</entity></produced>
+                    <conditions><health><max>2</max></health></conditions>
+                    <narration>You rest by the fire</narration>
+                </action>
+                <action>
+                    <triggers><keyphrase>sneak</keyphrase></triggers>
+                    <subjects><entity>trapdoor</entity></subjects>
+                    <consumed></consumed>
+                    <produced></produced>
+                    <conditions>
+                        <absent><entity>elf</entity><location>cellar</location></absent>
+                    </conditions>
+                    <narration>You sneak through the trapdoor unseen</narration>
+                </action>
+                <action>
+                    <triggers><keyphrase>sneak</keyphrase></triggers>
+                    <subjects><entity>trapdoor</entity></subjects>
+                    <consumed></consumed>
+                    <produced></produced>
+                    <conditions>
+                        <present><entity>elf</entity><location>cellar</location></present>
+                    </conditions>
+                    <narration>The elf hears the trapdoor creak</narration>
+                </action>
+                <action>
+                    <triggers><keyphrase>flip</keyphrase></triggers>
+                    <subjects><entity>coin</entity></subjects>
+                    <consumed></consumed>
+                    <produced></produced>
+                    <conditions><absent><entity>axe</entity></absent></conditions>
+                    <narration>You flip the coin</narration>
+                </action>
+            </actions>
+            """;
+
+    private GameServer createServer() throws IOException {
+        Path actionsFile = configDirectory.resolve("actions.xml");
+        Files.write(actionsFile, ACTIONS.getBytes());
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        return new GameServer(entitiesFile, actionsFile.toFile());
+    }
+
+    @Test
+    void testHealthConditionGatesAction() throws IOException {
+        GameServer server = createServer();
+        assertTrue(server.handleCommand("simon: rest cabin").contains("not met"), "Full health cannot rest");
+        assertTrue(server.handleCommand("simon: trip trapdoor").contains("trip"));
+        assertTrue(server.handleCommand("simon: rest cabin").contains("rest by the fire"));
+        assertTrue(server.handleCommand("simon: health").contains("3"));
+    }
+
+    @Test
+    void testWorldFactsPickBetweenActions() throws IOException {
+        GameServer server = createServer();
+        GameWorld world = server.getWorld(GameServer.DEFAULT_WORLD);
+        RuleNetwork network = world.getRuleNetwork();
+        assertEquals(4, network.getRuleCount());
+        assertEquals(1, network.getWatchedLocations());
+        assertTrue(server.handleCommand("simon: sneak trapdoor").contains("hears"), "The elf starts in the cellar");
+        world.setCharacterBehaviour("elf", "patrol 1 cabin");
+        world.advanceClock(1);
+        assertEquals("cabin", world.getNpcEngine().getLocationOf("elf"));
+        assertEquals(1, network.getPropagations());
+        assertTrue(server.handleCommand("simon: sneak trapdoor").contains("unseen"));
+        server.handleCommand("simon: goto forest");
+        assertEquals(1, network.getPropagations(), "Locations without conditions are not matched");
+    }
+
+    @Test
+    void testEntityAtHandCondition() throws IOException {
+        GameServer server = createServer();
+        assertTrue(server.handleCommand("simon: flip coin").contains("not met"), "The axe lies in the cabin");
+        server.handleCommand("simon: get coin");
+        server.handleCommand("simon: goto forest");
+        assertTrue(server.handleCommand("simon: flip coin").contains("flip the coin"));
+        server.handleCommand("simon: goto cabin");
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: goto forest");
+        assertTrue(server.handleCommand("simon: flip coin").contains("not met"), "An axe in the inventory counts too");
+    }
+
+    @Test
+    void testInstancesKeepTheirOwnFacts() throws IOException {
+        Path actionsFile = configDirectory.resolve("actions.xml");
+        Files.write(actionsFile, ACTIONS.getBytes());
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        WorldTemplate template = new WorldTemplate(entitiesFile, actionsFile.toFile());
+        GameWorld first = new GameWorld("first", template);
+        GameWorld second = new GameWorld("second", template);
+        first.setCharacterBehaviour("elf", "patrol 1 cabin");
+        first.advanceClock(1);
+        GameAction unseen = null;
+        for (GameAction action : template.getGameActions().get("sneak")) {
+            if (action.getNarration().contains("unseen")) {
+                unseen = action;
+            }
+        }
+        assertNotNull(unseen);
+        assertTrue(first.getRuleNetwork().areWorldConditionsMet(unseen));
+        assertFalse(second.getRuleNetwork().areWorldConditionsMet(unseen));
+    }
+}
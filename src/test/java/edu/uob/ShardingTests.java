@@ -0,0 +1,164 @@
+package edu.uob;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Both nodes run in this JVM but only talk to each other over loopback sockets
+class ShardingTests {
+    private GameServer cabinNode;
+    private GameServer forestNode;
+
+    @BeforeEach
+    void setup() throws IOException {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        String cabinAddress = "127.0.0.1:" + freePort();
+        String forestAddress = "127.0.0.1:" + freePort();
+        ShardMap shardMap = new ShardMap();
+        shardMap.setDefaultNode(cabinAddress);
+        shardMap.assign("forest", forestAddress);
+        shardMap.assign("riverbank", forestAddress);
+        cabinNode = new GameServer(entitiesFile, actionsFile);
+        forestNode = new GameServer(entitiesFile, actionsFile);
+        cabinNode.enableSharding(shardMap, cabinAddress);
+        forestNode.enableSharding(shardMap, forestAddress);
+    }
+
+    @AfterEach
+    void teardown() {
+        cabinNode.getWorld(GameServer.DEFAULT_WORLD).getShardCoordinator().close();
+        forestNode.getWorld(GameServer.DEFAULT_WORLD).getShardCoordinator().close();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private String send(GameServer node, String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(5000), () -> node.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    @Test
+    void testRemoteLocationsStartEmpty() {
+        assertTrue(send(cabinNode, "simon: look").contains("axe"));
+        send(cabinNode, "simon: goto forest");
+        assertTrue(send(forestNode, "simon: look").contains("tree"), "Forest node should own the tree");
+    }
+
+    @Test
+    void testGotoHandsPlayerAndInventoryOver() {
+        send(cabinNode, "simon: get axe");
+        String response = send(cabinNode, "simon: goto forest");
+        assertTrue(response.contains("deep dark forest"), "Goto should show the location on the other node");
+        assertTrue(send(forestNode, "simon: inv").contains("axe"), "Inventory should move with the player");
+        assertTrue(send(cabinNode, "simon: inv").contains("axe"), "Commands sent to the old node should be forwarded");
+        assertTrue(send(cabinNode, "simon: look").contains("deep dark forest"));
+    }
+
+    @Test
+    void testActionMovesEntitiesBetweenNodes() {
+        send(cabinNode, "simon: get axe");
+        send(cabinNode, "simon: goto forest");
+        // the tree goes to the storeroom on the cabin node and the log comes back from it
+        assertTrue(send(cabinNode, "simon: chop tree with axe").contains("You cut down the tree"));
+        String response = send(forestNode, "simon: look");
+        assertTrue(response.contains("heavy wooden log"), "Log should be produced from the remote storeroom");
+        assertFalse(response.contains("pine tree"), "Tree should have been consumed");
+        send(forestNode, "simon: get log");
+        send(forestNode, "simon: goto cabin");
+        String inventory = send(cabinNode, "simon: inv");
+        assertTrue(inventory.contains("log") && inventory.contains("axe"));
+        assertTrue(send(forestNode, "simon: look").contains("log cabin"), "Forest node should forward to the cabin node");
+    }
+
+    @Test
+    void testNewPlayerStartsOnStartLocationOwner() {
+        String response = send(forestNode, "sion: look");
+        assertTrue(response.contains("log cabin"), "New player should be created where the start location lives");
+        send(cabinNode, "simon: goto forest");
+        assertTrue(send(forestNode, "simon: look").contains("deep dark forest"));
+        assertFalse(send(forestNode, "sion: look").contains("deep dark forest"));
+    }
+
+    @Test
+    void testNodesHandingPlayersToEachOtherAtOnceDoNotWait() throws Exception {
+        // each crossing holds no world while it calls the other node, so opposite crossings never wait on each other
+        send(cabinNode, "alice: look");
+        send(cabinNode, "bob: goto forest");
+        ExecutorService players = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> alice = players.submit(() -> crossRepeatedly(cabinNode, forestNode, "alice", "forest", "cabin"));
+            Future<String> bob = players.submit(() -> crossRepeatedly(forestNode, cabinNode, "bob", "cabin", "forest"));
+            assertEquals("", alice.get(10, TimeUnit.SECONDS));
+            assertEquals("", bob.get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            players.shutdownNow();
+        }
+        assertTrue(send(cabinNode, "alice: look").contains("log cabin"));
+        assertTrue(send(forestNode, "bob: look").contains("deep dark forest"));
+    }
+
+    private static String crossRepeatedly(GameServer home, GameServer away, String name, String there, String back) {
+        for (int i = 0; i < 25; i++) {
+            String response = home.handleCommand(name + ": goto " + there);
+            if (response.contains("[ERROR]")) {
+                return response;
+            }
+            response = away.handleCommand(name + ": goto " + back);
+            if (response.contains("[ERROR]")) {
+                return response;
+            }
+        }
+        return "";
+    }
+
+    @Test
+    void testPlayerStaysWhereItDiedIfItsStartNodeIsDown() throws IOException {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        String cabinAddress = "127.0.0.1:" + freePort();
+        String cellarAddress = "127.0.0.1:" + freePort();
+        ShardMap shardMap = new ShardMap();
+        shardMap.setDefaultNode(cabinAddress);
+        shardMap.assign("cellar", cellarAddress);
+        GameServer startNode = new GameServer(entitiesFile, actionsFile);
+        GameServer cellarNode = new GameServer(entitiesFile, actionsFile);
+        startNode.enableSharding(shardMap, cabinAddress);
+        cellarNode.enableSharding(shardMap, cellarAddress);
+        try {
+            send(startNode, "simon: goto forest");
+            send(startNode, "simon: get key");
+            send(startNode, "simon: goto cabin");
+            send(startNode, "simon: open trapdoor");
+            assertTrue(send(startNode, "simon: goto cellar").contains("dusty cellar"));
+            startNode.getWorld(GameServer.DEFAULT_WORLD).getShardCoordinator().close();
+            send(cellarNode, "simon: attack elf");
+            send(cellarNode, "simon: attack elf");
+            assertTrue(send(cellarNode, "simon: attack elf").contains("[ERROR]"), "The respawn cannot reach the start node");
+            String response = send(cellarNode, "simon: look");
+            assertTrue(response.contains("dusty cellar") && response.contains("Elf"), response);
+            assertTrue(send(cellarNode, "simon: health").contains("3"), "The player respawned where it died");
+        }
+        finally {
+            startNode.getWorld(GameServer.DEFAULT_WORLD).getShardCoordinator().close();
+            cellarNode.getWorld(GameServer.DEFAULT_WORLD).getShardCoordinator().close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotReadTests {
+    private GameServer server;
+    private GameWorld world;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        world = server.getWorld(GameServer.DEFAULT_WORLD);
+    }
+
+    @Test
+    void testReadOnlyCommandsAreServedFromSnapshots() {
+        assertNull(world.runFromSnapshots("simon", "look", new CommandEvent()), "Unknown players run under the lock");
+        server.handleCommand("simon: look");
+        assertTrue(world.runFromSnapshots("simon", "look", new CommandEvent()).contains("axe"));
+        assertTrue(world.runFromSnapshots("Simon", "inv", new CommandEvent()).startsWith("simon has:"));
+        assertTrue(world.runFromSnapshots("simon", "health", new CommandEvent()).contains("3"));
+        assertNull(world.runFromSnapshots("simon", "get axe", new CommandEvent()), "Changes run under the lock");
+        assertThrows(RuntimeException.class, () -> world.runFromSnapshots("simon", "look axe", new CommandEvent()));
+    }
+
+    @Test
+    void testChangesArePublishedOnceTheCommandFinishes() {
+        server.handleCommand("simon: look");
+        long version = world.getLocationSnapshotVersion("cabin");
+        server.handleCommand("simon: look");
+        assertEquals(version, world.getLocationSnapshotVersion("cabin"), "Reads publish nothing");
+        server.handleCommand("simon: get axe");
+        assertTrue(world.getLocationSnapshotVersion("cabin") > version);
+        assertFalse(world.runFromSnapshots("simon", "look", new CommandEvent()).contains("axe"));
+        assertTrue(world.runFromSnapshots("simon", "inv", new CommandEvent()).contains("axe"));
+        server.handleCommand("simon: goto forest");
+        assertTrue(world.runFromSnapshots("simon", "look", new CommandEvent()).contains("tree"));
+        server.handleCommand("simon: chop tree");
+        assertTrue(world.runFromSnapshots("simon", "look", new CommandEvent()).contains("log"));
+    }
+
+    @Test
+    void testReadersSeeWholeSnapshotsWhileCommandsRun() throws InterruptedException {
+        server.handleCommand("simon: look");
+        server.handleCommand("sion: look");
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                server.handleCommand("sion: get axe");
+                server.handleCommand("sion: drop axe");
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            String look = world.runFromSnapshots("simon", "look", new CommandEvent());
+            if (!look.startsWith("You are in") || !look.contains("Player :sion") || !look.contains("forest")) {
+                failure.set(look);
+            }
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertTrue(world.runFromSnapshots("simon", "look", new CommandEvent()).contains("axe"));
+    }
+}
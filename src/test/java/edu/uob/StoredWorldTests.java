@@ -0,0 +1,214 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoredWorldTests {
+    @TempDir
+    Path storeDirectory;
+
+    private static File configFile(String name) {
+        return Paths.get("config" + File.separator + name).toAbsolutePath().toFile();
+    }
+
+    private GameServer createServer(int cachedLocations) {
+        GameServer server = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        server.addStoredWorld("stored", configFile("extended-entities.dot"), configFile("extended-actions.xml"),
+                storeDirectory.resolve("stored.world").toFile(), cachedLocations);
+        return server;
+    }
+
+    /**
+     * Writes a ring of locations, each with one artefact, and a storeroom
+     */
+    private File writeRing(int locationCount) throws IOException {
+        StringBuilder dot = new StringBuilder("digraph layout {\n subgraph locations {\n");
+        for (int i = 0; i < locationCount; i++) {
+            dot.append("  subgraph cluster").append(i).append(" {\n   node [shape = \"none\"];\n   room").append(i)
+                    .append(" [description = \"A generated room\"];\n   subgraph artefacts {\n    node [shape = \"diamond\"];\n    coin")
+                    .append(i).append(" [description = \"A gold coin\"];\n   }\n  }\n");
+        }
+        dot.append("  subgraph clusterstore {\n   node [shape = \"none\"];\n   storeroom [description = \"Storage\"];\n  }\n }\n subgraph paths {\n");
+        for (int i = 0; i < locationCount; i++) {
+            dot.append("  room").append(i).append(" -> room").append((i + 1) % locationCount).append(";\n");
+        }
+        dot.append(" }\n}\n");
+        Path entities = storeDirectory.resolve("ring-entities.dot");
+        Files.writeString(entities, dot.toString());
+        return entities.toFile();
+    }
+
+    private static TreeSet<String> sortedLines(String response) {
+        return new TreeSet<>(Arrays.asList(response.split("\n")));
+    }
+
+    @Test
+    void testStoredWorldPlaysLikeHeapWorld() {
+        GameServer server = createServer(16);
+        String[] commands = {"look", "get axe", "goto forest", "chop tree with axe", "get log", "inv", "goto cabin", "look"};
+        for (String command : commands) {
+            // a stored location lists its entities in the order they were stored
+            assertEquals(sortedLines(server.handleCommand("simon: " + command)),
+                    sortedLines(server.handleCommand("stored/simon: " + command)), command);
+        }
+        assertTrue(server.handleCommand("stored/simon: inv").contains("log"));
+        assertTrue(server.handleCommand("stored/simon: options").contains("drink potion"));
+    }
+
+    @Test
+    void testHeapHoldsOnlyCachedLocations() throws IOException {
+        int locationCount = 200;
+        GameServer server = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        GameWorld world = server.addStoredWorld("ring", writeRing(locationCount), configFile("extended-actions.xml"),
+                storeDirectory.resolve("ring.world").toFile(), 16);
+        StoredLocationMap locations = world.getStoredLocations();
+        assertEquals("simon picked up coin0", server.handleCommand("ring/simon: get coin0").trim());
+        for (int i = 1; i < locationCount; i++) {
+            server.handleCommand("ring/simon: goto room" + i);
+            assertTrue(locations.getLoadedCount() <= StoredLocationMap.MIN_CAPACITY, "Only the cached locations stay on the heap");
+        }
+        assertTrue(locations.getEvictions() > 0);
+        // the coin dropped at the far end of the ring is read back after its room was dropped
+        server.handleCommand("ring/simon: drop coin0");
+        server.handleCommand("ring/simon: goto room0");
+        for (int i = 1; i < 40; i++) {
+            server.handleCommand("ring/simon: goto room" + i);
+        }
+        assertTrue(locations.getLoadedCount() <= StoredLocationMap.MIN_CAPACITY);
+        GameLocation farEnd = locations.get("room" + (locationCount - 1));
+        assertTrue(farEnd.isEntityPresent("coin0"));
+        assertTrue(farEnd.isEntityPresent("coin" + (locationCount - 1)));
+        assertFalse(locations.get("room0").isEntityPresent("coin0"));
+        server.closeWorlds();
+    }
+
+    @Test
+    void testLocationsLookedUpByACommandStayUntilItPublishes() throws IOException {
+        int locationCount = 50;
+        WorldTemplate template = new WorldTemplate(writeRing(locationCount), configFile("extended-actions.xml"));
+        MappedWorldStore store = MappedWorldStore.create(storeDirectory.resolve("pinned.world").toFile(), template, 0);
+        StoredLocationMap locations = new StoredLocationMap(store, template.getSymbolTable(), 16, new LinkedList<>());
+        // one command holding the first room while it looks up more rooms than the map keeps
+        GameLocation room0 = locations.get("room0");
+        for (int i = 1; i < 30; i++) {
+            locations.get("room" + i);
+        }
+        assertSame(room0, locations.get("room0"), "A location in use must not be loaded a second time");
+        assertEquals(0, locations.getEvictions());
+        assertEquals(30, locations.getPinnedCount());
+        locations.releasePinned();
+        assertEquals(0, locations.getPinnedCount());
+        assertTrue(locations.getLoadedCount() <= 16, "Published locations are dropped down to the capacity");
+        assertTrue(locations.getEvictions() > 0);
+        store.close();
+    }
+
+    @Test
+    void testStoreSharesTextsAndTracksEntities() throws IOException {
+        int locationCount = 50;
+        WorldTemplate template = new WorldTemplate(writeRing(locationCount), configFile("extended-actions.xml"));
+        SymbolTable symbols = template.getSymbolTable();
+        MappedWorldStore store = MappedWorldStore.create(storeDirectory.resolve("texts.world").toFile(), template, 0);
+        int coin = symbols.idOf("coin7");
+        assertEquals(symbols.idOf("room7"), store.getLocationOf(coin));
+        assertEquals("A gold coin", store.loadLocation(symbols.idOf("room7")).getEntity(coin).getDescription());
+        PathGraph paths = new StoredPathGraph(store);
+        assertTrue(paths.hasPath(symbols.idOf("room7"), symbols.idOf("room8")));
+        assertFalse(paths.hasPath(symbols.idOf("room8"), symbols.idOf("room7")));
+        // names are distinct, but the three descriptions are stored once each
+        int nameBytes = 0;
+        for (int i = 0; i < symbols.size(); i++) {
+            nameBytes += symbols.nameOf(i).getBytes(StandardCharsets.UTF_8).length + Integer.BYTES;
+        }
+        assertTrue(store.getTextBytes() < nameBytes + 100, "Repeated descriptions are stored once");
+
+        GameLocation room7 = store.loadLocation(symbols.idOf("room7"));
+        GameLocation room8 = store.loadLocation(symbols.idOf("room8"));
+        GameEntity entity = room7.getEntity(coin);
+        room7.removeEntity("coin7");
+        room8.addEntity(entity);
+        store.saveLocation(room8);
+        store.saveLocation(room7);
+        assertEquals(symbols.idOf("room8"), store.getLocationOf(coin));
+        assertTrue(store.loadLocation(symbols.idOf("room8")).isEntityPresent("coin7"));
+        assertFalse(store.loadLocation(symbols.idOf("room7")).isEntityPresent("coin7"));
+        store.close();
+    }
+
+    @Test
+    void testStoreAnswersNameAndSubjectLookups() throws IOException {
+        WorldTemplate template = new WorldTemplate(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        SymbolTable parsed = template.getSymbolTable();
+        MappedWorldStore store = MappedWorldStore.create(storeDirectory.resolve("names.world").toFile(), template, 0);
+        SymbolTable stored = new StoredSymbolTable(store);
+        assertEquals(parsed.size(), stored.size());
+        assertEquals(parsed.getLocationCount(), stored.getLocationCount());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.nameOf(i), stored.nameOf(i));
+            assertEquals(i, stored.idOf(parsed.nameOf(i).toUpperCase()), parsed.nameOf(i));
+        }
+        assertEquals(SymbolTable.NO_SYMBOL, stored.idOf("unicorn"));
+        assertThrows(IllegalStateException.class, () -> stored.intern("unicorn"));
+        KeywordIndex subjects = new StoredSubjectIndex(store);
+        assertEquals("axe", subjects.lookup("axe"));
+        assertEquals("cellar", subjects.lookup("cellar"));
+        assertNull(subjects.lookup("chop"), "Triggers are not subjects");
+        assertNull(subjects.lookup("unicorn"));
+        store.close();
+    }
+
+    @Test
+    void testStoredWorldIsReopenedAsItWasLeft() {
+        GameServer server = createServer(16);
+        server.handleCommand("stored/simon: get axe");
+        server.handleCommand("stored/simon: goto forest");
+        server.handleCommand("stored/simon: get key");
+        server.handleCommand("stored/simon: chop tree with axe");
+        server.handleCommand("stored/simon: goto cabin");
+        server.handleCommand("stored/simon: open trapdoor");
+        server.closeWorlds();
+
+        GameServer restarted = createServer(16);
+        String cabin = restarted.handleCommand("stored/sion: look");
+        assertTrue(cabin.contains("cellar"), "The path opened before the restart is still there");
+        assertFalse(cabin.contains("axe"), "The axe left with the player");
+        String forest = restarted.handleCommand("stored/sion: goto forest");
+        assertTrue(forest.contains("log"), "The log produced before the restart is still there");
+        assertFalse(forest.contains("tree"), "The chopped tree is still gone");
+        restarted.closeWorlds();
+    }
+
+    @Test
+    void testStoreIsWrittenAgainWhenTheConfigurationChanges() throws IOException {
+        int locationCount = 20;
+        File entities = writeRing(locationCount);
+        GameServer server = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        File storeFile = storeDirectory.resolve("ring.world").toFile();
+        server.addStoredWorld("ring", entities, configFile("extended-actions.xml"), storeFile, 16);
+        server.handleCommand("ring/simon: get coin0");
+        server.closeWorlds();
+
+        GameServer restarted = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        restarted.addStoredWorld("ring", entities, configFile("extended-actions.xml"), storeFile, 16);
+        assertFalse(restarted.handleCommand("ring/sion: look").contains("coin0"), "The coin was taken before the restart");
+        restarted.closeWorlds();
+
+        assertTrue(entities.setLastModified(entities.lastModified() + 60_000));
+        GameServer changed = new GameServer(configFile("extended-entities.dot"), configFile("extended-actions.xml"));
+        changed.addStoredWorld("ring", entities, configFile("extended-actions.xml"), storeFile, 16);
+        assertTrue(changed.handleCommand("ring/sion: look").contains("coin0"), "A changed world starts afresh");
+        changed.closeWorlds();
+    }
+}
@@ -0,0 +1,64 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTests {
+
+    private WorldTemplate loadExtendedTemplate() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        return new WorldTemplate(entitiesFile, actionsFile);
+    }
+
+    @Test
+    void testNamesAreCaseFolded() {
+        SymbolTable symbols = new SymbolTable();
+        int cabin = symbols.internLocation("Cabin");
+        assertEquals(cabin, symbols.intern("cabin"));
+        assertEquals(cabin, symbols.idOf("CABIN"));
+        assertEquals("Cabin", symbols.nameOf(cabin));
+        assertEquals(SymbolTable.NO_SYMBOL, symbols.idOf("axe"));
+    }
+
+    @Test
+    void testLocationsMustComeFirst() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.internLocation("cabin");
+        symbols.intern("axe");
+        assertThrows(IllegalStateException.class, () -> symbols.internLocation("forest"));
+        assertEquals(0, symbols.internLocation("cabin"), "Known locations can be interned again");
+    }
+
+    @Test
+    void testTemplateInternsLocationsDensely() {
+        WorldTemplate template = loadExtendedTemplate();
+        SymbolTable symbols = template.getSymbolTable();
+        assertEquals(template.getGameLocations().size(), symbols.getLocationCount());
+        assertEquals(0, symbols.idOf(template.getPlayersStartLocation()), "Start location should get the first id");
+        for (String location : template.getGameLocations().keySet()) {
+            assertTrue(symbols.isLocation(symbols.idOf(location)));
+        }
+        assertFalse(symbols.isLocation(symbols.idOf("axe")));
+    }
+
+    @Test
+    void testEntitiesAndActionsCarryTheirIds() {
+        WorldTemplate template = loadExtendedTemplate();
+        SymbolTable symbols = template.getSymbolTable();
+        for (GameLocation location : template.getGameLocations().values()) {
+            for (GameEntity entity : location.getEntities()) {
+                assertEquals(symbols.idOf(entity.getName()), entity.getSymbol());
+            }
+        }
+        GameAction chop = template.getGameActions().get("chop").iterator().next();
+        assertTrue(chop.getSubjectSymbols().get(symbols.idOf("tree")));
+        assertTrue(chop.getSubjectSymbols().get(symbols.idOf("axe")));
+        assertEquals(2, chop.getSubjectSymbols().cardinality());
+        assertNotEquals(SymbolTable.NO_SYMBOL, symbols.idOf("log"), "Produced entities should be interned");
+    }
+}
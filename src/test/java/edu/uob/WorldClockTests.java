@@ -0,0 +1,120 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldClockTests {
+    private GameServer server;
+    private GameWorld world;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        world = server.getWorld(GameServer.DEFAULT_WORLD);
+    }
+
+    @Test
+    void testTimersFireAtTheirDeadlineOnEveryLevel() {
+        TimingWheel<Long> wheel = new TimingWheel<>(5);
+        Random random = new Random(42);
+        LinkedList<Long> deadlines = new LinkedList<>();
+        for (int i = 0; i < 2000; i++) {
+            long delay = 1 + (long) (random.nextDouble() * random.nextDouble() * 300000);
+            deadlines.add(5 + delay);
+            wheel.schedule(delay, 5 + delay);
+        }
+        wheel.schedule(TimingWheel.MAX_DELAY, -1L);
+        assertEquals(2001, wheel.getPending());
+        LinkedList<Long> expired = new LinkedList<>();
+        while (wheel.getCurrentTick() < 300010) {
+            wheel.advance(expired);
+            for (Long deadline : expired) {
+                assertEquals(wheel.getCurrentTick(), deadline.longValue());
+                assertTrue(deadlines.remove(deadline));
+            }
+            expired.clear();
+        }
+        assertTrue(deadlines.isEmpty());
+        assertEquals(1, wheel.getPending());
+        assertThrows(IllegalArgumentException.class, () -> wheel.schedule(0, 0L));
+    }
+
+    @Test
+    void testCancelledTimersNeverFireAndOrderIsKept() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        wheel.schedule(100, "first");
+        TimingWheel.Timer<String> cancelled = wheel.schedule(100, "second");
+        wheel.schedule(100, "third");
+        TimingWheel.Timer<String> last = wheel.schedule(100, "fourth");
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertTrue(wheel.cancel(last));
+        wheel.schedule(100, "fifth");
+        LinkedList<String> expired = new LinkedList<>();
+        for (int i = 0; i < 100; i++) {
+            wheel.advance(expired);
+        }
+        assertEquals("[first, third, fifth]", expired.toString());
+        assertEquals(0, wheel.getPending());
+        wheel.skip(1000);
+        assertEquals(1100, wheel.getCurrentTick());
+    }
+
+    @Test
+    void testHurtPlayersRegenerateHealth() {
+        world.enableTimedEvents(10, 0);
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: get key");
+        server.handleCommand("simon: goto cabin");
+        server.handleCommand("simon: open trapdoor");
+        server.handleCommand("simon: goto cellar");
+        server.handleCommand("simon: hit elf");
+        server.handleCommand("simon: hit elf");
+        assertTrue(server.handleCommand("simon: health").contains("1"));
+        assertEquals(1, world.getWorldClock().getPendingEvents(), "One regeneration per player");
+        world.advanceClock(9);
+        assertTrue(server.handleCommand("simon: health").contains("1"));
+        world.advanceClock(1);
+        assertTrue(server.handleCommand("simon: health").contains("2"));
+        world.advanceClock(100);
+        assertTrue(server.handleCommand("simon: health").contains("3"));
+        assertEquals(0, world.getWorldClock().getPendingEvents());
+    }
+
+    @Test
+    void testConsumedEntitiesReturnFromTheStoreroom() {
+        world.enableTimedEvents(0, 50);
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: chop tree");
+        assertFalse(server.handleCommand("simon: look").contains("tree"));
+        assertEquals(1, world.getWorldClock().getPendingEvents(), "The tree is due to return");
+        assertEquals(1, server.advanceClocks(50));
+        assertTrue(server.handleCommand("simon: look").contains("tree"));
+        assertTrue(server.handleCommand("simon: chop tree").contains("cut down"));
+    }
+
+    @Test
+    void testEventsCanBeScheduledAndRepeat() {
+        LinkedList<Long> firedAt = new LinkedList<>();
+        world.scheduleEvent(3, (gameWorld, clock) -> {
+            firedAt.add(clock.getCurrentTick());
+            if (firedAt.size() < 3) {
+                return 5;
+            }
+            return 0;
+        });
+        world.advanceClock(100);
+        assertEquals("[3, 8, 13]", firedAt.toString());
+        assertEquals(3, world.getWorldClock().getFiredEvents());
+    }
+}
@@ -0,0 +1,67 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldInstanceTests {
+    private GameServer server;
+    private WorldTemplate template;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        template = new WorldTemplate(entitiesFile, actionsFile);
+        for (int i = 0; i < 1000; i++) {
+            server.addWorldInstance("run" + i, template);
+        }
+    }
+
+    private String sendCommandToServer(String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    @Test
+    void testInstancesDoNotShareChanges() {
+        sendCommandToServer("run1/simon: get axe");
+        sendCommandToServer("run1/simon: get coin");
+        sendCommandToServer("run1/simon: goto forest");
+        assertTrue(sendCommandToServer("run1/simon: chop tree").contains("cut down"));
+        sendCommandToServer("run1/simon: goto cabin");
+        sendCommandToServer("run1/simon: goto forest");
+        assertFalse(sendCommandToServer("run1/simon: look").contains("tree"), "Tree should be gone in run1");
+
+        sendCommandToServer("run2/simon: goto forest");
+        String response = sendCommandToServer("run2/simon: look");
+        assertTrue(response.contains("tree"), "Tree should still stand in run2");
+        assertTrue(sendCommandToServer("run3/simon: look").contains("axe"), "Axe should still be in run3's cabin");
+        assertTrue(template.getGameLocations().get("cabin").isArtefactPresent("axe"), "Template must not change");
+        assertTrue(template.getGameLocations().get("forest").isFurniturePresent("tree"), "Template must not change");
+    }
+
+    @Test
+    void testPathChangesStayInTheirInstance() {
+        sendCommandToServer("run1/simon: goto forest");
+        sendCommandToServer("run1/simon: get key");
+        sendCommandToServer("run1/simon: goto cabin");
+        sendCommandToServer("run1/simon: open trapdoor");
+        assertTrue(sendCommandToServer("run1/simon: look").contains("cellar"));
+        assertFalse(sendCommandToServer("run2/simon: look").contains("cellar"));
+        assertFalse(template.getGamePaths().get("cabin").contains("cellar"), "Template paths must not change");
+    }
+
+    @Test
+    void testUntouchedInstancesHoldNoState() {
+        sendCommandToServer("run5/simon: look");
+        assertEquals(0, server.getWorld("run6").getDeltaSize(), "An unplayed instance should share everything");
+        assertTrue(server.getWorld("run5").getDeltaSize() <= 1, "Looking around should only materialise the start location");
+    }
+}